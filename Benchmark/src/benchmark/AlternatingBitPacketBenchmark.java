@@ -0,0 +1,147 @@
+package benchmark;
+
+import java.net.DatagramPacket;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import protocolPackets.AlternatingBitPacket;
+
+/**
+ * <b>JMH benchmark of the AlternatingBitPacket codec.</b>
+ *
+ * Measures both constructors, checkChecksum and createDatagram for several
+ * payload sizes. Run it with the main method (the GC profiler is added
+ * there) or with "java -jar benchmarks.jar AlternatingBitPacket -prof gc"
+ * to get bytes/op next to ns/op.<br>
+ * <br>
+ * Classpath: jmh-core, jmh-generator-annprocess (as annotation processor)
+ * and the Sender sources.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlternatingBitPacketBenchmark {
+
+	/**
+	 * <b>Number of content bytes per packet.</b>
+	 */
+	@Param({ "0", "64", "512", "1400" })
+	public int payloadSize;
+
+	/**
+	 * <b>Content of the encoded packets.</b>
+	 */
+	private byte[] content;
+
+	/**
+	 * <b>An encoded packet.</b>
+	 */
+	private AlternatingBitPacket encoded;
+
+	/**
+	 * <b>A datagram as the other endpoint receives it.</b>
+	 */
+	private DatagramPacket received;
+
+	/**
+	 * <b>A decoded packet.</b>
+	 */
+	private AlternatingBitPacket decoded;
+
+	/**
+	 * <b>Create the packets once per trial.</b>
+	 *
+	 * @throws UnknownHostException
+	 *             never, the address is a literal
+	 */
+	@Setup
+	public void setup() throws UnknownHostException {
+		content = new byte[payloadSize];
+		new Random(42).nextBytes(content);
+		encoded = new AlternatingBitPacket(1, false, false, content, "127.0.0.1", 9876);
+		// copy the bytes, so decoding does not share the array with encoded
+		final DatagramPacket datagram = encoded.createDatagram();
+		final byte[] data = datagram.getData().clone();
+		received = new DatagramPacket(data, data.length);
+		decoded = new AlternatingBitPacket(received);
+	}
+
+	/**
+	 * <b>Build a packet from content (sender side).</b>
+	 *
+	 * @return the packet
+	 * @throws UnknownHostException
+	 *             never, the address is a literal
+	 */
+	@Benchmark
+	public AlternatingBitPacket encode() throws UnknownHostException {
+		return new AlternatingBitPacket(1, false, false, content, "127.0.0.1", 9876);
+	}
+
+	/**
+	 * <b>Build a packet from a received datagram (receiver side).</b>
+	 *
+	 * @return the packet
+	 */
+	@Benchmark
+	public AlternatingBitPacket decode() {
+		return new AlternatingBitPacket(received);
+	}
+
+	/**
+	 * <b>Compare the received with the calculated checksum.</b>
+	 *
+	 * @return true, if the checksum is valid
+	 */
+	@Benchmark
+	public boolean checkChecksum() {
+		return decoded.checkChecksum();
+	}
+
+	/**
+	 * <b>Get the datagram of an encoded packet.</b>
+	 *
+	 * @return the datagram
+	 */
+	@Benchmark
+	public DatagramPacket createDatagram() {
+		return encoded.createDatagram();
+	}
+
+	/**
+	 * <b>Run this benchmark with the GC profiler.</b>
+	 *
+	 * @param args
+	 *            are not used
+	 * @throws RunnerException
+	 *             when JMH fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		final Options options = new OptionsBuilder()
+				.include(AlternatingBitPacketBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,39 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * <b>Silences the console output of Sender and Receiver.</b>
+ *
+ * Both print every packet, that would be measured too.
+ */
+final class Console {
+
+	/**
+	 * <b>Not to be instantiated.</b>
+	 */
+	private Console() {
+	}
+
+	/**
+	 * <b>Discard everything written to System.out.</b>
+	 *
+	 * @return the previous System.out, to print results and to restore it
+	 */
+	static PrintStream mute() {
+		final PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				// discard
+			}
+		}));
+		return console;
+	}
+}
@@ -0,0 +1,481 @@
+package benchmark;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import decorator.Bottleneck;
+import decorator.BrokenDatagramSocket;
+import decorator.BrokenNetwork;
+import decorator.DelayLine;
+import decorator.GilbertElliottLossModel;
+import decorator.ImpairmentPipeline;
+import decorator.ImpairmentProfile;
+import decorator.Link;
+import decorator.LossModel;
+import metrics.MetricsSnapshot;
+import receiver.Receiver;
+import sender.Sender;
+import transport.Network;
+import transport.UdpNetwork;
+
+/**
+ * <b>End-to-end benchmark: Sender and Receiver in one JVM over
+ * loopback.</b>
+ *
+ * Sweeps file sizes and BrokenDatagramSocket settings (bit mistake, loss,
+ * duplicate chance, used on both directions) and prints one CSV line per
+ * run with completion time, goodput and retransmission ratio.<br>
+ * <br>
+ * Every run sends the whole file: all runs go to one Receiver and one
+ * directory, so Delta and resuming are turned off, otherwise later runs would
+ * only send the difference to the file of an earlier one. Compression is
+ * negotiated as usual (the content is random, so it is hardly used).<br>
+ * <br>
+ * Classpath: the Sender and the Receiver sources.
+ */
+public class LoopbackBenchmark {
+
+	/**
+	 * <b>Default file sizes in bytes.</b>
+	 */
+	private static final int[] DEFAULT_SIZES = { 16 * 1024, 64 * 1024, 256 * 1024 };
+
+	/**
+	 * <b>Default error settings (bit mistake/loss/duplicate in %).</b>
+	 */
+	private static final int[][] DEFAULT_ERRORS = { { 0, 0, 0 }, { 1, 1, 1 }, { 5, 5, 5 }, { 10, 10, 10 },
+			{ 20, 20, 20 } };
+
+	/**
+	 * <b>Default number of runs per combination.</b>
+	 */
+	private static final int DEFAULT_REPETITIONS = 3;
+
+	/**
+	 * <b>Error settings of the current run, read by the socket factory of the
+	 * Receiver thread.</b>
+	 */
+	private static volatile int[] currentErrors = DEFAULT_ERRORS[0];
+
+	/**
+	 * <b>Loss model of the Receiver in the current run.</b>
+	 */
+	private static volatile LossModel currentLossModel = LossModel.uniform(0);
+
+	/**
+	 * <b>The program starts here.</b><br>
+	 * All arguments are optional:<br>
+	 * <br>
+	 * <b>-sizes</b> comma separated file sizes in bytes<br>
+	 * <b>-errors</b> comma separated settings like "5/5/5" (bit mistake/loss
+	 * /duplicate in %)<br>
+	 * <b>-burst</b> bursty loss like "1/25/0/100" (Gilbert-Elliott chances
+	 * good to bad/bad to good/loss in good/loss in bad in %), replaces the
+	 * loss of the error settings<br>
+	 * <b>-delay</b> delay of both directions like "20/5/normal/2/30" (latency
+	 * /jitter in ms/distribution/reorder chance in %/reorder delay in ms, the
+	 * last three are optional)<br>
+	 * <b>-bottleneck</b> bandwidth limit of both directions like "256/4096/16"
+	 * (rate in KiB/s/bucket size in bytes/queue limit in packets), in front of
+	 * the delay<br>
+	 * <b>-profile</b> file with the stages of an ImpairmentPipeline of both
+	 * directions (see ImpairmentProfile), between the bottleneck and the
+	 * delay<br>
+	 * <b>-forwardReceive</b> errors on receiving data at the Receiver like
+	 * "5/5/5/10/20/5" (bit mistake/loss/duplicate/delay chance in %/latency
+	 * /jitter of delayed datagrams in ms, the last three are optional)<br>
+	 * <b>-reverseReceive</b> errors on receiving ACKs at the Sender, like
+	 * -forwardReceive<br>
+	 * <b>-repetitions</b> number of runs per combination<br>
+	 * <b>-out</b> CSV file (default: standard output)<br>
+	 *
+	 * @param args
+	 *            contains the given arguments
+	 */
+	public static void main(String[] args) {
+		int[] sizes = DEFAULT_SIZES;
+		int[][] errors = DEFAULT_ERRORS;
+		double[] burst = null;
+		String delay = null;
+		String bottleneck = null;
+		String profile = null;
+		String forwardReceive = null;
+		String reverseReceive = null;
+		int repetitions = DEFAULT_REPETITIONS;
+		String out = null;
+		try {
+			for (int index = 0; index < args.length; index += 2) {
+				if (index + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + args[index]);
+				}
+				final String value = args[index + 1];
+				switch (args[index]) {
+				case "-sizes":
+					sizes = parseSizes(value);
+					break;
+				case "-errors":
+					errors = parseErrors(value);
+					break;
+				case "-burst":
+					burst = parseBurst(value);
+					break;
+				case "-delay":
+					// fail here and not in the middle of the benchmark
+					createDelayLine(value).close();
+					delay = value;
+					break;
+				case "-bottleneck":
+					// fail here and not in the middle of the benchmark
+					createLink(value, null).close();
+					bottleneck = value;
+					break;
+				case "-profile":
+					// fail here and not in the middle of the benchmark
+					ImpairmentProfile.load(Paths.get(value));
+					profile = value;
+					break;
+				case "-forwardReceive":
+					// fail here and not in the middle of the benchmark
+					createNetwork(value);
+					forwardReceive = value;
+					break;
+				case "-reverseReceive":
+					createNetwork(value);
+					reverseReceive = value;
+					break;
+				case "-repetitions":
+					repetitions = Integer.parseInt(value);
+					break;
+				case "-out":
+					out = value;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument " + args[index]);
+				}
+			}
+			run(sizes, errors, burst, delay, bottleneck, profile, forwardReceive, reverseReceive, repetitions, out == null ? new PrintWriter(System.out, true) : new PrintWriter(out));
+		} catch (IllegalArgumentException exception) {
+			System.err.println(exception.getMessage());
+			System.err.println("Usage: LoopbackBenchmark [-sizes 16384,65536] [-errors 0/0/0,5/5/5] [-burst 1/25/0/100] [-delay 20/5/normal/2/30] [-bottleneck 256/4096/16] [-profile lab.txt] [-forwardReceive 5/5/5/10/20/5] [-reverseReceive 5/5/5] [-repetitions 3] [-out results.csv]");
+		} catch (IOException exception) {
+			System.err.println("Sorry! The benchmark failed: " + exception.getMessage());
+		}
+	}
+
+	/**
+	 * <b>Run all combinations and write the results as CSV.</b>
+	 *
+	 * @param sizes
+	 *            are the file sizes in bytes
+	 * @param errors
+	 *            are the error settings (bit mistake/loss/duplicate in %)
+	 * @param burst
+	 *            are the Gilbert-Elliott chances replacing the uniform loss,
+	 *            null to keep the loss of the error settings
+	 * @param delay
+	 *            is the delay of both directions (see main), null to send
+	 *            right away
+	 * @param bottleneck
+	 *            is the bandwidth limit of both directions (see main), null
+	 *            for no limit
+	 * @param profile
+	 *            is the profile file of the impairment pipeline of both
+	 *            directions, null for none
+	 * @param forwardReceive
+	 *            are the errors on receiving data (see main), null for none
+	 * @param reverseReceive
+	 *            are the errors on receiving ACKs (see main), null for none
+	 * @param repetitions
+	 *            is the number of runs per combination
+	 * @param csv
+	 *            receives the results, it is closed at the end
+	 * @throws IOException
+	 *             when a temporary file can not be written
+	 */
+	public static void run(int[] sizes, int[][] errors, double[] burst, String delay, String bottleneck,
+			String profile, String forwardReceive, String reverseReceive, int repetitions, PrintWriter csv) throws IOException {
+		final Path directory = Files.createTempDirectory("ndpk-benchmark");
+		// the Receiver thread may still write when the benchmark ends
+		directory.toFile().deleteOnExit();
+
+		// one Receiver for all runs: it keeps answering late duplicates of
+		// the last run, so the Sender always gets its final ACK
+		// one link per direction for all runs, it outlives the sockets
+		final Link receiverLink = createLink(bottleneck,
+				createPipeline(profile, delay == null ? null : createDelayLine(delay)));
+		final Link senderLink = createLink(bottleneck,
+				createPipeline(profile, delay == null ? null : createDelayLine(delay)));
+
+		final Receiver receiver = new Receiver(directory.resolve("received").toString());
+		receiver.setNetwork(createNetwork(forwardReceive));
+		// the Receiver keeps its socket, so the errors of the current
+		// setting are looked up for every ACK
+		receiver.setSocketFactory(endpoint -> new DatagramSocket((SocketAddress) null) {
+			@Override
+			public void send(DatagramPacket packet) throws IOException {
+				final int[] current = currentErrors;
+				try (final DatagramSocket socket = new BrokenDatagramSocket(endpoint, current[0], currentLossModel, current[2], receiverLink)) {
+					socket.send(packet);
+				}
+			}
+		});
+
+		final PrintStream console = Console.mute();
+
+		final Thread receiverThread = new Thread(() -> {
+			try {
+				receiver.receive();
+			} catch (FileNotFoundException exception) {
+				console.println("Sorry! The file to write to could not be found.");
+			} catch (IOException exception) {
+				console.println("Sorry! An Error occured while writing the File.");
+			}
+		}, "receiver");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+
+		try {
+			csv.println("fileSize,bitMistake,loss,duplicate,delay,bottleneck,profile,forwardReceive,reverseReceive,run,completionMillis,goodputKiBps,packetsSent,retransmits,retransmissionRatio,timeouts");
+			final Random random = new Random(42);
+			for (final int size : sizes) {
+				// random content, so later compression can not cheat
+				final byte[] content = new byte[size];
+				random.nextBytes(content);
+				final Path file = directory.resolve("file-" + size);
+				Files.write(file, content);
+				for (final int[] error : errors) {
+					currentErrors = error;
+					for (int run = 1; run <= repetitions; run++) {
+						// a fresh channel per run and direction, bursts must not
+						// carry over from the last run
+						currentLossModel = createLossModel(error, burst);
+						final LossModel lossModel = createLossModel(error, burst);
+						final Sender sender = new Sender(file, "127.0.0.1");
+						// full transfers, not a Delta to the file of the last run
+						sender.setDelta(false);
+						sender.setResume(false);
+						sender.setNetwork(createNetwork(reverseReceive));
+						sender.setSocketFactory(endpoint -> new BrokenDatagramSocket(endpoint, error[0], lossModel, error[2], senderLink));
+						final long start = System.nanoTime();
+						sender.send();
+						final long completionNanos = System.nanoTime() - start;
+						// every transfer is stored in a file of its own, with
+						// the name kept next to it
+						receiver.deleteFile(sender.getConnectionId());
+						final MetricsSnapshot snapshot = sender.getMetrics().snapshot();
+						csv.println(size + "," + error[0] + "," + formatLoss(error, burst) + "," + error[2] + ","
+								+ (delay == null ? "0" : delay) + "," + (bottleneck == null ? "0" : bottleneck) + ","
+								+ (profile == null ? "0" : profile) + ","
+								+ (forwardReceive == null ? "0" : forwardReceive) + ","
+								+ (reverseReceive == null ? "0" : reverseReceive) + "," + run + ","
+								+ String.format("%.1f", completionNanos / 1e6) + ","
+								+ String.format("%.1f", size * 1e9 / completionNanos / 1024) + ","
+								+ snapshot.getPacketsSent() + "," + snapshot.getRetransmits() + ","
+								+ String.format("%.3f", snapshot.getRetransmissionRatio()) + ","
+								+ snapshot.getTimeouts());
+						csv.flush();
+					}
+				}
+				Files.delete(file);
+			}
+		} finally {
+			System.setOut(console);
+			csv.close();
+			if (receiverLink != null) {
+				receiverLink.close();
+				senderLink.close();
+			}
+		}
+	}
+
+	/**
+	 * <b>Parse a comma separated list of sizes.</b>
+	 *
+	 * @param value
+	 *            is the list
+	 * @return the sizes
+	 */
+	static int[] parseSizes(String value) {
+		final String[] parts = value.split(",");
+		final int[] sizes = new int[parts.length];
+		for (int index = 0; index < parts.length; index++) {
+			sizes[index] = Integer.parseInt(parts[index].trim());
+			if (sizes[index] <= 0) {
+				throw new IllegalArgumentException("File sizes must be greater than 0");
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * <b>Parse a comma separated list of error settings like "5/5/5".</b>
+	 *
+	 * @param value
+	 *            is the list
+	 * @return the settings
+	 */
+	static int[][] parseErrors(String value) {
+		final String[] parts = value.split(",");
+		final int[][] errors = new int[parts.length][];
+		for (int index = 0; index < parts.length; index++) {
+			final String[] chances = parts[index].trim().split("/");
+			if (chances.length != 3) {
+				throw new IllegalArgumentException("Error settings look like \"bitMistake/loss/duplicate\"");
+			}
+			errors[index] = new int[] { Integer.parseInt(chances[0]), Integer.parseInt(chances[1]),
+					Integer.parseInt(chances[2]) };
+		}
+		return errors;
+	}
+
+	/**
+	 * <b>Parse Gilbert-Elliott chances like "1/25/0/100" or "1/25".</b>
+	 *
+	 * @param value
+	 *            is good to bad/bad to good[/loss in good/loss in bad] in %
+	 * @return the four chances
+	 */
+	static double[] parseBurst(String value) {
+		final String[] chances = value.trim().split("/");
+		if (chances.length != 2 && chances.length != 4) {
+			throw new IllegalArgumentException("Burst settings look like \"goodToBad/badToGood[/goodLoss/badLoss]\"");
+		}
+		final double[] burst = { 0, 0, 0, 100 };
+		for (int index = 0; index < chances.length; index++) {
+			burst[index] = Double.parseDouble(chances[index]);
+		}
+		// fail here and not in the middle of the benchmark
+		createLossModel(null, burst);
+		return burst;
+	}
+
+	/**
+	 * <b>Create the loss model of one direction of a run.</b>
+	 *
+	 * @param error
+	 *            is the error setting (bit mistake/loss/duplicate in %)
+	 * @param burst
+	 *            are the Gilbert-Elliott chances, null for uniform loss
+	 * @return the loss model
+	 */
+	private static LossModel createLossModel(int[] error, double[] burst) {
+		return burst == null ? LossModel.uniform(error[1])
+				: new GilbertElliottLossModel(burst[0], burst[1], burst[2], burst[3]);
+	}
+
+	/**
+	 * <b>Format the loss of a run for the CSV.</b>
+	 *
+	 * @param error
+	 *            is the error setting (bit mistake/loss/duplicate in %)
+	 * @param burst
+	 *            are the Gilbert-Elliott chances, null for uniform loss
+	 * @return the uniform chance or "ge:" with the four chances
+	 */
+	private static String formatLoss(int[] error, double[] burst) {
+		return burst == null ? Integer.toString(error[1])
+				: "ge:" + burst[0] + "/" + burst[1] + "/" + burst[2] + "/" + burst[3];
+	}
+
+	/**
+	 * <b>Create a delay line from settings like "20/5/normal/2/30".</b>
+	 *
+	 * @param value
+	 *            is latency/jitter in ms[/distribution[/reorder chance in
+	 *            %/reorder delay in ms]]
+	 * @return the delay line
+	 * @throws SocketException
+	 *             when the socket of the delay line can not be created
+	 */
+	private static DelayLine createDelayLine(String value) throws SocketException {
+		final String[] settings = value.trim().split("/");
+		if (settings.length != 2 && settings.length != 3 && settings.length != 5) {
+			throw new IllegalArgumentException("Delay settings look like \"latency/jitter[/distribution[/reorderChance/reorderDelay]]\"");
+		}
+		final DelayLine.Jitter distribution = settings.length > 2 ? DelayLine.Jitter.valueOf(settings[2])
+				: DelayLine.Jitter.uniform;
+		return settings.length == 5
+				? new DelayLine(Double.parseDouble(settings[0]), Double.parseDouble(settings[1]), distribution,
+						Integer.parseInt(settings[3]), Double.parseDouble(settings[4]))
+				: new DelayLine(Double.parseDouble(settings[0]), Double.parseDouble(settings[1]), distribution);
+	}
+
+	/**
+	 * <b>Put a bottleneck from settings like "256/4096/16" in front of a
+	 * link.</b>
+	 *
+	 * @param value
+	 *            is rate in KiB/s/bucket size in bytes/queue limit in packets,
+	 *            null for no bottleneck
+	 * @param next
+	 *            is the link behind the bottleneck (may be null)
+	 * @return the bottleneck, or next if there is none
+	 * @throws SocketException
+	 *             when the socket of the bottleneck can not be created
+	 */
+	private static Link createLink(String value, Link next) throws SocketException {
+		if (value == null) {
+			return next;
+		}
+		final String[] settings = value.trim().split("/");
+		if (settings.length != 3) {
+			throw new IllegalArgumentException("Bottleneck settings look like \"rate/bucketSize/queueLimit\"");
+		}
+		return new Bottleneck(Double.parseDouble(settings[0]) * 1024, Integer.parseInt(settings[1]),
+				Integer.parseInt(settings[2]), next);
+	}
+
+	/**
+	 * <b>Put an impairment pipeline from a profile file in front of a
+	 * link.</b>
+	 *
+	 * @param profile
+	 *            is the profile file, null for no pipeline
+	 * @param next
+	 *            is the link behind the pipeline (may be null)
+	 * @return the pipeline, or next if there is none
+	 * @throws IOException
+	 *             when the profile can not be read or the socket of the
+	 *             pipeline can not be created
+	 */
+	private static Link createPipeline(String profile, Link next) throws IOException {
+		if (profile == null) {
+			return next;
+		}
+		return new ImpairmentPipeline(ImpairmentProfile.load(Paths.get(profile)), next);
+	}
+
+	/**
+	 * <b>Create the network an endpoint receives from, with errors from
+	 * settings like "5/5/5/10/20/5".</b>
+	 *
+	 * @param value
+	 *            is bit mistake/loss/duplicate[/delay chance in %[/latency
+	 *            [/jitter in ms]]], null for no errors
+	 * @return the network
+	 */
+	private static Network createNetwork(String value) {
+		if (value == null) {
+			return UdpNetwork.INSTANCE;
+		}
+		final String[] settings = value.trim().split("/");
+		if (settings.length < 3 || settings.length > 6) {
+			throw new IllegalArgumentException("Receive errors look like \"bitMistake/loss/duplicate[/delayChance[/latency[/jitter]]]\"");
+		}
+		return new BrokenNetwork(UdpNetwork.INSTANCE, Integer.parseInt(settings[0]),
+				LossModel.uniform(Integer.parseInt(settings[1])), Integer.parseInt(settings[2]),
+				settings.length > 3 ? Integer.parseInt(settings[3]) : 0,
+				settings.length > 4 ? Double.parseDouble(settings[4]) : 0,
+				settings.length > 5 ? Double.parseDouble(settings[5]) : 0, DelayLine.Jitter.uniform);
+	}
+}
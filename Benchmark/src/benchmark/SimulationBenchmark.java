@@ -0,0 +1,265 @@
+package benchmark;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import metrics.MetricsSnapshot;
+import receiver.Receiver;
+import sender.Sender;
+import transport.SimulatedClock;
+import transport.SimulatedNetwork;
+
+/**
+ * <b>Deterministic end-to-end runs on a SimulatedNetwork.</b>
+ *
+ * Sender, Receiver and the Timers run on a virtual clock, so timeouts cost
+ * no real time and every run with the same seed sends the same packets,
+ * loses the same packets and ends at the same virtual time. A failing run
+ * can be reproduced by passing its seed again.<br>
+ * <br>
+ * Prints one CSV line per run with the virtual completion time, the real
+ * time the simulation took, the metrics of the Sender and a CRC32 of the
+ * received file.<br>
+ * <br>
+ * Classpath: the Sender and the Receiver sources.
+ */
+public class SimulationBenchmark {
+
+	/**
+	 * <b>Default seed of the first run.</b>
+	 */
+	private static final long DEFAULT_SEED = 1;
+
+	/**
+	 * <b>Default file sizes in bytes.</b>
+	 */
+	private static final int[] DEFAULT_SIZES = { 16 * 1024, 64 * 1024, 256 * 1024 };
+
+	/**
+	 * <b>Default error settings (bit mistake/loss/duplicate in %).</b>
+	 */
+	private static final int[][] DEFAULT_ERRORS = { { 0, 0, 0 }, { 5, 5, 5 }, { 20, 20, 20 } };
+
+	/**
+	 * <b>Default one way latency in ms.</b>
+	 */
+	private static final long DEFAULT_LATENCY = 10;
+
+	/**
+	 * <b>Default number of runs (with consecutive seeds) per combination.</b>
+	 */
+	private static final int DEFAULT_REPETITIONS = 3;
+
+	/**
+	 * <b>A run is given up after this much virtual time in ms.</b>
+	 */
+	private static final long MAX_VIRTUAL_TIME = 60 * 60 * 1000;
+
+	/**
+	 * <b>Virtual time in ms the Receiver gets to finish after the Sender.</b>
+	 */
+	private static final long SETTLE_TIME = 1000;
+
+	/**
+	 * <b>The program starts here.</b><br>
+	 * All arguments are optional:<br>
+	 * <br>
+	 * <b>-seed</b> seed of the first run, the following runs count up<br>
+	 * <b>-sizes</b> comma separated file sizes in bytes<br>
+	 * <b>-errors</b> comma separated settings like "5/5/5" (bit mistake/loss
+	 * /duplicate in %)<br>
+	 * <b>-latency</b> one way latency in ms<br>
+	 * <b>-repetitions</b> number of runs per combination<br>
+	 * <b>-out</b> CSV file (default: standard output)<br>
+	 *
+	 * @param args
+	 *            contains the given arguments
+	 */
+	public static void main(String[] args) {
+		long seed = DEFAULT_SEED;
+		int[] sizes = DEFAULT_SIZES;
+		int[][] errors = DEFAULT_ERRORS;
+		long latency = DEFAULT_LATENCY;
+		int repetitions = DEFAULT_REPETITIONS;
+		String out = null;
+		try {
+			for (int index = 0; index < args.length; index += 2) {
+				if (index + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + args[index]);
+				}
+				final String value = args[index + 1];
+				switch (args[index]) {
+				case "-seed":
+					seed = Long.parseLong(value);
+					break;
+				case "-sizes":
+					sizes = LoopbackBenchmark.parseSizes(value);
+					break;
+				case "-errors":
+					errors = LoopbackBenchmark.parseErrors(value);
+					break;
+				case "-latency":
+					latency = Long.parseLong(value);
+					break;
+				case "-repetitions":
+					repetitions = Integer.parseInt(value);
+					break;
+				case "-out":
+					out = value;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument " + args[index]);
+				}
+			}
+			run(seed, sizes, errors, latency, repetitions,
+					out == null ? new PrintWriter(System.out, true) : new PrintWriter(out));
+		} catch (IllegalArgumentException exception) {
+			System.err.println(exception.getMessage());
+			System.err.println("Usage: SimulationBenchmark [-seed 1] [-sizes 16384,65536] [-errors 0/0/0,5/5/5] [-latency 10] [-repetitions 3] [-out results.csv]");
+		} catch (IOException exception) {
+			System.err.println("Sorry! The benchmark failed: " + exception.getMessage());
+		}
+	}
+
+	/**
+	 * <b>Run all combinations and write the results as CSV.</b>
+	 *
+	 * @param seed
+	 *            is the seed of the first run
+	 * @param sizes
+	 *            are the file sizes in bytes
+	 * @param errors
+	 *            are the error settings (bit mistake/loss/duplicate in %)
+	 * @param latency
+	 *            is the one way latency in ms
+	 * @param repetitions
+	 *            is the number of runs per combination
+	 * @param csv
+	 *            receives the results, it is closed at the end
+	 * @throws IOException
+	 *             when a temporary file can not be written
+	 */
+	public static void run(long seed, int[] sizes, int[][] errors, long latency, int repetitions, PrintWriter csv)
+			throws IOException {
+		final Path directory = Files.createTempDirectory("ndpk-simulation");
+		final PrintStream console = Console.mute();
+		try {
+			csv.println("seed,fileSize,bitMistake,loss,duplicate,latencyMillis,virtualMillis,realMillis,packetsSent,retransmits,timeouts,receivedCrc,intact");
+			final Random random = new Random(42);
+			long runSeed = seed;
+			for (final int size : sizes) {
+				// random content, so later compression can not cheat
+				final byte[] content = new byte[size];
+				random.nextBytes(content);
+				final Path file = directory.resolve("file-" + size);
+				Files.write(file, content);
+				for (final int[] error : errors) {
+					for (int run = 1; run <= repetitions; run++) {
+						final long start = System.nanoTime();
+						final SimulatedNetwork network = new SimulatedNetwork(runSeed, error[0], error[1], error[2], latency);
+						final Receiver receiver = new Receiver(directory.resolve("received").toString());
+						receiver.setNetwork(network);
+						// the network breaks the packets, send through the endpoints
+						receiver.setSocketFactory(endpoint -> endpoint);
+						final Sender sender = new Sender(file, "127.0.0.1");
+						sender.setNetwork(network);
+						sender.setSocketFactory(endpoint -> endpoint);
+						// the only random choice outside the network
+						sender.setConnectionId((int) runSeed);
+						final Path received = Paths.get(receiver.getFile(sender.getConnectionId()));
+						final long virtualNanos = simulate(network.getClock(), sender, receiver, console);
+						final long realNanos = System.nanoTime() - start;
+						final MetricsSnapshot snapshot = sender.getMetrics().snapshot();
+						final byte[] receivedContent = Files.exists(received) ? Files.readAllBytes(received) : new byte[0];
+						final CRC32 crc = new CRC32();
+						crc.update(receivedContent);
+						csv.println(runSeed + "," + size + "," + error[0] + "," + error[1] + "," + error[2] + ","
+								+ latency + ","
+								+ (virtualNanos < 0 ? "" : String.format("%.1f", virtualNanos / 1e6))
+								+ "," + String.format("%.1f", realNanos / 1e6) + ","
+								+ snapshot.getPacketsSent() + "," + snapshot.getRetransmits() + ","
+								+ snapshot.getTimeouts() + ","
+								+ String.format("%08x", crc.getValue()) + ","
+								+ isIntact(content, receivedContent));
+						csv.flush();
+						// with the name kept next to it
+						receiver.deleteFile(sender.getConnectionId());
+						runSeed++;
+					}
+				}
+				Files.delete(file);
+			}
+		} finally {
+			System.setOut(console);
+			csv.close();
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	/**
+	 * <b>Transfer one file in a simulation.</b>
+	 *
+	 * @param clock
+	 *            is the clock of the simulated network both endpoints use
+	 * @param sender
+	 *            is the Sender
+	 * @param receiver
+	 *            is the Receiver
+	 * @param console
+	 *            is where errors are printed
+	 * @return the virtual time the Sender finished at in ns, -1 if the time
+	 *         limit was reached
+	 */
+	private static long simulate(SimulatedClock clock, Sender sender, Receiver receiver, PrintStream console) {
+		final long[] finished = { -1 };
+		final Thread receiverThread = clock.start(() -> {
+			try {
+				receiver.receive();
+			} catch (FileNotFoundException exception) {
+				console.println("Sorry! The file to write to could not be found.");
+			} catch (IOException exception) {
+				console.println("Sorry! An Error occured while writing the File.");
+			}
+		}, "receiver");
+		final Thread senderThread = clock.start(() -> {
+			sender.send();
+			finished[0] = clock.nanoTime();
+		}, "sender");
+
+		try {
+			if (clock.awaitTermination(senderThread, MAX_VIRTUAL_TIME)) {
+				// let the Receiver answer late duplicates, until all block
+				clock.awaitTermination(receiverThread, SETTLE_TIME);
+			} else {
+				console.println("Sorry! The transfer did not finish within " + MAX_VIRTUAL_TIME + " ms virtual time.");
+			}
+		} finally {
+			clock.stop();
+		}
+		return finished[0];
+	}
+
+	/**
+	 * <b>Check if the received file starts with the send content.</b>
+	 *
+	 * The Receiver pads the last packet, so trailing bytes are ignored.
+	 *
+	 * @param content
+	 *            is the send content
+	 * @param received
+	 *            is the received content
+	 * @return true, if all send bytes arrived
+	 */
+	private static boolean isIntact(byte[] content, byte[] received) {
+		return received.length >= content.length
+				&& Arrays.equals(content, Arrays.copyOf(received, content.length));
+	}
+}
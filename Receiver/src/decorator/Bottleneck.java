@@ -0,0 +1,312 @@
+package decorator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import transport.Clock;
+import transport.SystemClock;
+
+/**
+ * A link with a limited bandwidth, to emulate a bottleneck on loopback.
+ *
+ * The bandwidth is enforced with a token bucket: tokens (bytes) flow in at
+ * the configured rate up to the bucket size, a packet may pass when there
+ * are tokens for all its bytes. Packets that have to wait are queued, when
+ * the queue is full the new packet is dropped (tail-drop), like in the
+ * buffer of a router.<br>
+ * <br>
+ * Packets that pass go on to the next link (usually a DelayLine, so the
+ * bottleneck sits in front of the propagation delay), or are sent through
+ * the attached endpoint if there is none.
+ *
+ * @author nico
+ */
+public class Bottleneck implements Link {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the rate tokens flow in at in bytes per ns.
+     */
+    private final double rate;
+
+    /**
+     * Saves the maximum number of tokens (bytes) in the bucket.
+     */
+    private final double bucketSize;
+
+    /**
+     * Saves the maximum number of waiting packets.
+     */
+    private final int queueLimit;
+
+    /**
+     * Saves the link the packets go on to. Null if they are sent right away.
+     */
+    private final Link next;
+
+    /**
+     * Tells the time the tokens flow in by.
+     */
+    private final Clock clock;
+
+    /**
+     * Sends the packets if there is no next link and no endpoint attached.
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * Saves the socket of the endpoint attached last. Null if the packets
+     * are sent with the own socket.
+     */
+    private volatile DatagramSocket endpoint;
+
+    /**
+     * Sends the waiting packets once there are enough tokens.
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Holds the waiting packets.
+     */
+    private final Queue<DatagramPacket> queue;
+
+    /**
+     * Saves the number of tokens in the bucket.
+     */
+    private double tokens;
+
+    /**
+     * Saves the time the tokens were last refilled at in ns.
+     */
+    private long refilled;
+
+    /**
+     * Saves the number of packets dropped because the queue was full.
+     */
+    private long dropped;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new bottleneck that sends with a socket of its own.
+     *
+     * @param rate The bandwidth in bytes per second.
+     * @param bucketSize The largest burst in bytes that may pass at once.
+     * @param queueLimit The number of packets that may wait.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public Bottleneck(double rate, int bucketSize, int queueLimit) throws SocketException {
+        //call other constructor without next link
+        this(rate, bucketSize, queueLimit, null);
+    }
+
+    /**
+     * Initializes a new bottleneck.
+     *
+     * @param rate The bandwidth in bytes per second.
+     * @param bucketSize The largest burst in bytes that may pass at once.
+     * @param queueLimit The number of packets that may wait.
+     * @param next The link the packets go on to (null to send right away).
+     * It is closed with this bottleneck.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public Bottleneck(double rate, int bucketSize, int queueLimit, Link next) throws SocketException {
+        //call other constructor with the system clock
+        this(SystemClock.INSTANCE, rate, bucketSize, queueLimit, next);
+    }
+
+    /**
+     * Initializes a new bottleneck with a clock.
+     *
+     * @param clock The clock the tokens flow in by.
+     * @param rate The bandwidth in bytes per second.
+     * @param bucketSize The largest burst in bytes that may pass at once.
+     * @param queueLimit The number of packets that may wait.
+     * @param next The link the packets go on to (null to send right away).
+     * It is closed with this bottleneck.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public Bottleneck(Clock clock, double rate, int bucketSize, int queueLimit, Link next) throws SocketException {
+        //check if input params are correct
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock must not be null");
+        }
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Rate must be greater than 0");
+        }
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("Bucket size must be greater than 0");
+        }
+        if (queueLimit < 0) {
+            throw new IllegalArgumentException("Queue limit must not be negative");
+        }
+        //initialize object variables
+        this.rate = rate / 1e9;
+        this.bucketSize = bucketSize;
+        this.queueLimit = queueLimit;
+        this.next = next;
+        this.clock = clock;
+        this.socket = next == null ? new DatagramSocket() : null;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, (Runnable runnable) -> {
+            final Thread thread = new Thread(runnable, "bottleneck");
+            //waiting packets must not keep the program alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.queue = new ArrayDeque<>();
+        //start with a full bucket
+        this.tokens = bucketSize;
+        this.refilled = clock.nanoTime();
+        this.dropped = 0;
+    }
+
+    /**
+     * Lets the packet pass if there are enough tokens, queues it otherwise
+     * and drops it if the queue is full.
+     *
+     * @param packet The packet to be sent.
+     */
+    @Override
+    public synchronized void send(DatagramPacket packet) {
+        //copy now, the sender may reuse the buffer
+        final byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+        final DatagramPacket waiting = new DatagramPacket(data, data.length, packet.getAddress(), packet.getPort());
+        refill();
+        //nobody is waiting and there are enough tokens
+        if (queue.isEmpty() && hasTokensFor(waiting)) {
+            pass(waiting);
+        } //tail-drop, counted (see getDroppedPackets)
+        else if (queue.size() >= queueLimit) {
+            dropped++;
+        } //wait for tokens
+        else {
+            queue.add(waiting);
+            if (queue.size() == 1) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    /**
+     * Passes the endpoint on to the next link, or sends through it.
+     *
+     * @param endpoint The socket of the endpoint.
+     */
+    @Override
+    public void attach(DatagramSocket endpoint) {
+        if (next != null) {
+            next.attach(endpoint);
+        } else {
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Drops all waiting packets, closes the socket and the next link.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (socket != null) {
+            socket.close();
+        }
+        if (next != null) {
+            next.close();
+        }
+    }
+
+    /**
+     * Get the number of packets dropped because the queue was full.
+     *
+     * @return the number of dropped packets
+     */
+    public synchronized long getDroppedPackets() {
+        return dropped;
+    }
+
+    /**
+     * Get the number of waiting packets.
+     *
+     * @return the queue length
+     */
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    //Getter and Setter and Private Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Lets the tokens flow in that accumulated since the last refill.
+     */
+    private void refill() {
+        final long now = clock.nanoTime();
+        tokens = Math.min(bucketSize, tokens + (now - refilled) * rate);
+        refilled = now;
+    }
+
+    /**
+     * Checks if a packet may pass. A packet larger than the bucket may pass
+     * with a full bucket and leaves a debt.
+     *
+     * @param packet The packet.
+     * @return true, if there are enough tokens
+     */
+    private boolean hasTokensFor(DatagramPacket packet) {
+        return tokens >= Math.min(packet.getLength(), bucketSize);
+    }
+
+    /**
+     * Sends the waiting packets there are tokens for.
+     */
+    private synchronized void drain() {
+        refill();
+        while (!queue.isEmpty() && hasTokensFor(queue.peek())) {
+            pass(queue.poll());
+        }
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Wakes the scheduler up when there are enough tokens for the first
+     * waiting packet.
+     */
+    private void scheduleDrain() {
+        final double missing = Math.min(queue.peek().getLength(), bucketSize) - tokens;
+        scheduler.schedule(this::drain, Math.max(0, (long) Math.ceil(missing / rate)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes the tokens of a packet and sends it on.
+     *
+     * @param packet The packet.
+     */
+    private void pass(DatagramPacket packet) {
+        tokens -= packet.getLength();
+        if (next != null) {
+            next.send(packet);
+        } else {
+            final DatagramSocket out = endpoint == null ? socket : endpoint;
+            //the endpoint is gone, like a pulled cable
+            if (out.isClosed()) {
+                return;
+            }
+            try {
+                out.send(packet);
+            } catch (IOException exception) {
+                System.out.println("An error has occured while writing data: ");
+                System.out.println(exception.toString());
+            }
+        }
+    }
+}
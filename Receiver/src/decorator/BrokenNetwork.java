@@ -0,0 +1,106 @@
+package decorator;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+import transport.Clock;
+import transport.Network;
+
+/**
+ * A network whose receive sockets are broken: every socket opened is wrapped
+ * in a BrokenReceiveSocket. Sending is not changed, the sending side is
+ * broken by the DatagramSocketFactory of the endpoint.
+ *
+ * @author nico
+ */
+public class BrokenNetwork implements Network {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the network to break.
+     */
+    private final Network network;
+
+    /**
+     * Saves the bit mistake chance (0-100).
+     */
+    private final int bitMistakeChance;
+
+    /**
+     * Decides which datagrams are lost.
+     */
+    private final LossModel lossModel;
+
+    /**
+     * Saves the package duplicate chance (0-100).
+     */
+    private final int packageDuplicateChance;
+
+    /**
+     * Saves the delay chance (0-100).
+     */
+    private final int delayChance;
+
+    /**
+     * Holds delayed and duplicated datagrams back, for all sockets.
+     */
+    private final HoldBackQueue holdBack;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new broken network.
+     *
+     * @param network The network to break.
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which datagrams are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param delayChance The chance of delaying a datagram. Must be between 0
+     * and 100.
+     * @param latency The fixed delay of a delayed datagram in ms.
+     * @param jitter The jitter of a delayed datagram in ms.
+     * @param distribution The distribution of the jitter.
+     */
+    public BrokenNetwork(Network network, int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, int delayChance, double latency, double jitter, DelayLine.Jitter distribution) {
+        this.network = network;
+        this.bitMistakeChance = bitMistakeChance;
+        this.lossModel = lossModel;
+        this.packageDuplicateChance = packageDuplicateChance;
+        this.delayChance = delayChance;
+        this.holdBack = new HoldBackQueue(network.getClock(), latency, jitter, distribution);
+    }
+
+    @Override
+    public DatagramSocket open() throws SocketException {
+        return breakSocket(network.open());
+    }
+
+    @Override
+    public DatagramSocket open(int port) throws SocketException {
+        return breakSocket(network.open(port));
+    }
+
+    @Override
+    public Clock getClock() {
+        return network.getClock();
+    }
+
+    /**
+     * Wraps a socket in a BrokenReceiveSocket.
+     *
+     * @param socket The socket to break.
+     * @return the broken socket
+     * @throws SocketException if the socket can not be wrapped
+     */
+    private DatagramSocket breakSocket(DatagramSocket socket) throws SocketException {
+        try {
+            return new BrokenReceiveSocket(socket, bitMistakeChance, lossModel, packageDuplicateChance, delayChance, holdBack);
+        } catch (SocketException | RuntimeException exception) {
+            socket.close();
+            throw exception;
+        }
+    }
+}
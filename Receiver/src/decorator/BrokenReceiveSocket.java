@@ -0,0 +1,406 @@
+package decorator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A class representing a broken input stream: it wraps an arbitrary
+ * DatagramSocket and breaks the datagrams it receives.
+ *
+ * Following things are possible:<br>
+ * <br>
+ * - zufällig mit einer konfigurierbaren Wahrscheinlichkeit einen Bitfehler im
+ * empfangenen Paket verursacht<br>
+ * - zufällig ein empfangenes Paket verwirft (siehe LossModel)<br>
+ * - zufällig mit einer konfigurierbaren Wahrscheinlichkeit ein empfangenes
+ * Paket dupliziert<br>
+ * - zufällig mit einer konfigurierbaren Wahrscheinlichkeit ein empfangenes
+ * Paket verzögert (siehe HoldBackQueue)<br>
+ * <br>
+ * Together with a BrokenDatagramSocket on the sending side the forward and
+ * the reverse path of a transfer can be broken differently. Sending is not
+ * changed. The faults are counted instead of printed and all random numbers,
+ * the byte of a bit mistake too, come from one source: ThreadLocalRandom, or
+ * a generator every thread splits off a seeded SplittableRandom.
+ *
+ * @author nico
+ */
+public class BrokenReceiveSocket extends DatagramSocket {
+
+    /**
+     * The things that can happen to a received datagram.
+     */
+    private enum Fault {
+        normal, bitMistake, packageLoss, packageDuplicate, delay
+    }
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the Socket
+     */
+    private final DatagramSocket in;
+
+    /**
+     * Saves the bit mistake chance as threshold for a number from 0 to 1.
+     */
+    private final double bitMistakeThreshold;
+
+    /**
+     * Decides which datagrams are lost.
+     */
+    private final LossModel lossModel;
+
+    /**
+     * Saves the package duplicate chance as threshold for a number from 0 to
+     * 1.
+     */
+    private final double packageDuplicateThreshold;
+
+    /**
+     * Saves the delay chance as threshold for a number from 0 to 1.
+     */
+    private final double delayThreshold;
+
+    /**
+     * Holds delayed and duplicated datagrams back.
+     */
+    private final HoldBackQueue holdBack;
+
+    /**
+     * Generates the numbers of this socket, one generator per thread. Null if
+     * ThreadLocalRandom is used.
+     */
+    private final ThreadLocal<SplittableRandom> numberGenerator;
+
+    /**
+     * Hands out the numbers of the generator to the loss model.
+     */
+    private final DoubleSupplier uniform;
+
+    /**
+     * Counts the datagrams received with a bit mistake.
+     */
+    private final LongAdder bitMistakes;
+
+    /**
+     * Counts the datagrams that were lost.
+     */
+    private final LongAdder packageLosses;
+
+    /**
+     * Counts the datagrams that were received twice.
+     */
+    private final LongAdder packageDuplicates;
+
+    /**
+     * Counts the datagrams that were delayed.
+     */
+    private final LongAdder delays;
+
+    /**
+     * Saves the timeout of receive in ms (0 = wait forever). The timeout of
+     * the wrapped socket is changed while waiting.
+     */
+    private int timeout;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new Broken Input Stream.
+     *
+     * @param in The DatagramSocket to break!
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which datagrams are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param delayChance The chance of delaying a datagram. Must be between 0
+     * and 100.
+     * @param holdBack Holds delayed and duplicated datagrams back. It must be
+     * shared by all receive sockets of an endpoint.
+     * @throws SocketException if the timeout of the wrapped socket can not be
+     * read
+     */
+    public BrokenReceiveSocket(DatagramSocket in, int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, int delayChance, HoldBackQueue holdBack) throws SocketException {
+        //call other constructor with ThreadLocalRandom
+        this(in, bitMistakeChance, lossModel, packageDuplicateChance, delayChance, holdBack, null);
+    }
+
+    /**
+     * Initializes a new Broken Input Stream with reproducible errors.
+     *
+     * @param in The DatagramSocket to break!
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which datagrams are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param delayChance The chance of delaying a datagram. Must be between 0
+     * and 100.
+     * @param holdBack Holds delayed and duplicated datagrams back. It must be
+     * shared by all receive sockets of an endpoint.
+     * @param seededRandom A seeded generator shared by all sockets of an
+     * endpoint (null to use ThreadLocalRandom). Every socket splits a
+     * generator of its own off it, and every thread one off that.
+     * @throws SocketException if the timeout of the wrapped socket can not be
+     * read
+     */
+    public BrokenReceiveSocket(DatagramSocket in, int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, int delayChance, HoldBackQueue holdBack, SplittableRandom seededRandom) throws SocketException {
+
+        //call super constructor
+        super();
+        //check if input params are correct
+        if (in == null || lossModel == null || holdBack == null) {
+            throw new IllegalArgumentException("Socket, loss model and hold back queue must not be null");
+        }
+        if (bitMistakeChance > 100 || bitMistakeChance < 0) {
+            throw new IllegalArgumentException("Bit mistake chance must be between 0 and 100");
+        }
+        if (packageDuplicateChance > 100 || packageDuplicateChance < 0) {
+            throw new IllegalArgumentException("Package duplicate chance must be between 0 and 100");
+        }
+        if (delayChance > 100 || delayChance < 0) {
+            throw new IllegalArgumentException("Delay chance must be between 0 and 100");
+        }
+        //initialize object variables
+        this.in = in;
+        this.bitMistakeThreshold = bitMistakeChance / 100.0;
+        this.lossModel = lossModel;
+        this.packageDuplicateThreshold = packageDuplicateChance / 100.0;
+        this.delayThreshold = delayChance / 100.0;
+        this.holdBack = holdBack;
+        if (seededRandom == null) {
+            this.numberGenerator = null;
+        } else {
+            //SplittableRandom is not thread safe, split once per socket and
+            //once per thread receiving through it
+            final SplittableRandom generator;
+            synchronized (seededRandom) {
+                generator = seededRandom.split();
+            }
+            this.numberGenerator = ThreadLocal.withInitial(() -> {
+                synchronized (generator) {
+                    return generator.split();
+                }
+            });
+        }
+        this.uniform = this::nextDouble;
+        this.bitMistakes = new LongAdder();
+        this.packageLosses = new LongAdder();
+        this.packageDuplicates = new LongAdder();
+        this.delays = new LongAdder();
+        this.timeout = in.getSoTimeout();
+    }
+
+    /**
+     * The only method that we change. Held back datagrams that are due are
+     * received first, every other datagram may be broken (Duplicate, Bit
+     * mistake, Package loss or Delay).
+     *
+     * @param packet Receives the datagram.
+     * @throws IOException
+     */
+    @Override
+    public void receive(DatagramPacket packet) throws IOException {
+        final long deadline = timeout == 0 ? Long.MAX_VALUE : getHoldBack().getClock().nanoTime() + timeout * 1_000_000L;
+        try {
+            while (true) {
+                if (getHoldBack().poll(packet)) {
+                    return;
+                }
+                //wait until the timeout or the next held back datagram
+                final long now = getHoldBack().getClock().nanoTime();
+                final long wait = Math.min(deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - now, getHoldBack().nanosUntilNext());
+                if (wait <= 0 && now >= deadline) {
+                    throw new SocketTimeoutException("Receive timed out");
+                }
+                getIn().setSoTimeout(wait == Long.MAX_VALUE ? 0 : (int) Math.max(1, Math.min(Integer.MAX_VALUE, (wait + 999_999) / 1_000_000)));
+                try {
+                    getIn().receive(packet);
+                } catch (SocketTimeoutException exception) {
+                    //a held back datagram is due or the time is over
+                    continue;
+                }
+                switch (chooseFault()) {
+                    case bitMistake:
+                        //choose the byte to change randomly and change it to 0
+                        if (packet.getLength() > 0) {
+                            packet.getData()[packet.getOffset() + nextInt(packet.getLength())] = 0;
+                        }
+                        bitMistakes.increment();
+                        return;
+                    case packageLoss:
+                        packageLosses.increment();
+                        break;
+                    case packageDuplicate:
+                        getHoldBack().hold(packet, false);
+                        packageDuplicates.increment();
+                        return;
+                    case delay:
+                        getHoldBack().hold(packet, true);
+                        delays.increment();
+                        break;
+                    default:
+                        return;
+                }
+            }
+        } finally {
+            if (!getIn().isClosed()) {
+                getIn().setSoTimeout(timeout);
+            }
+        }
+    }
+
+    @Override
+    public void send(DatagramPacket packet) throws IOException {
+        getIn().send(packet);
+    }
+
+    @Override
+    public synchronized void setSoTimeout(int timeout) throws SocketException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout < 0");
+        }
+        getIn().setSoTimeout(timeout);
+        this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized int getSoTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return getIn().getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return getIn().getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return getIn().getLocalSocketAddress();
+    }
+
+    @Override
+    public boolean isBound() {
+        return getIn().isBound();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return getIn().isClosed();
+    }
+
+    @Override
+    public void close() {
+        getIn().close();
+        super.close();
+    }
+
+    /**
+     * Gets the number of datagrams received with a bit mistake.
+     *
+     * @return the number of bit mistakes
+     */
+    public long getBitMistakes() {
+        return bitMistakes.sum();
+    }
+
+    /**
+     * Gets the number of datagrams that were lost.
+     *
+     * @return the number of lost datagrams
+     */
+    public long getPackageLosses() {
+        return packageLosses.sum();
+    }
+
+    /**
+     * Gets the number of datagrams that were received twice.
+     *
+     * @return the number of duplicates
+     */
+    public long getPackageDuplicates() {
+        return packageDuplicates.sum();
+    }
+
+    /**
+     * Gets the number of datagrams that were delayed.
+     *
+     * @return the number of delayed datagrams
+     */
+    public long getDelays() {
+        return delays.sum();
+    }
+
+    //Getter and Setter and Private Methods
+    //--------------------------------------------------------------------------
+    private DatagramSocket getIn() {
+        return in;
+    }
+
+    private HoldBackQueue getHoldBack() {
+        return holdBack;
+    }
+
+    /**
+     * Draws which of the errors happens. Every error is drawn on its own, if
+     * more than one happened one of them is chosen randomly.
+     *
+     * @return the error (normal if none happened)
+     */
+    private Fault chooseFault() {
+        final boolean bitMistake = nextDouble() < bitMistakeThreshold;
+        final boolean packageLoss = lossModel.isLost(uniform);
+        final boolean packageDuplicate = nextDouble() < packageDuplicateThreshold;
+        final boolean delay = nextDouble() < delayThreshold;
+        final int count = (bitMistake ? 1 : 0) + (packageLoss ? 1 : 0) + (packageDuplicate ? 1 : 0) + (delay ? 1 : 0);
+        if (count == 0) {
+            return Fault.normal;
+        }
+        int choice = count == 1 ? 0 : nextInt(count);
+        if (bitMistake && choice-- == 0) {
+            return Fault.bitMistake;
+        }
+        if (packageLoss && choice-- == 0) {
+            return Fault.packageLoss;
+        }
+        if (packageDuplicate && choice-- == 0) {
+            return Fault.packageDuplicate;
+        }
+        return Fault.delay;
+    }
+
+    /**
+     * Draws a number from 0 (inclusive) to 1 (exclusive).
+     *
+     * @return the number
+     */
+    private double nextDouble() {
+        return numberGenerator == null ? ThreadLocalRandom.current().nextDouble() : numberGenerator.get().nextDouble();
+    }
+
+    /**
+     * Draws a number from 0 (inclusive) to bound (exclusive).
+     *
+     * @param bound The upper bound.
+     * @return the number
+     */
+    private int nextInt(int bound) {
+        return numberGenerator == null ? ThreadLocalRandom.current().nextInt(bound) : numberGenerator.get().nextInt(bound);
+    }
+}
@@ -0,0 +1,29 @@
+package decorator;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+/**
+ * Creates the socket an endpoint sends with. This way the errors caused by
+ * a BrokenDatagramSocket can be configured from outside, for example by a
+ * benchmark.
+ *
+ * An endpoint has a single socket for all its packets, the peer answers to
+ * the address and port the packets come from. So the created socket must
+ * not send on its own, but through the socket of the endpoint.
+ *
+ * @author nico
+ */
+@FunctionalInterface
+public interface DatagramSocketFactory {
+
+    /**
+     * Creates a socket that sends through the socket of an endpoint.
+     *
+     * @param endpoint The socket of the endpoint, bound and used to receive.
+     * @return the socket (the endpoint itself to send without errors)
+     * @throws SocketException if the socket can not be created
+     */
+    DatagramSocket create(DatagramSocket endpoint) throws SocketException;
+
+}
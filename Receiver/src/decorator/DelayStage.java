@@ -0,0 +1,122 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.util.PriorityQueue;
+
+import transport.Clock;
+
+/**
+ * Holds every packet back for a fixed latency plus a random jitter. Jitter
+ * larger than the time between two packets reorders them.
+ *
+ * @author nico
+ */
+public class DelayStage implements ImpairmentStage {
+
+    /**
+     * A packet waiting to be released.
+     */
+    private static class DelayedPacket implements Comparable<DelayedPacket> {
+
+        /**
+         * Saves the time it is due at in ns.
+         */
+        private final long due;
+
+        /**
+         * Saves the order it came in, for packets due at the same time.
+         */
+        private final long order;
+
+        /**
+         * Saves the packet.
+         */
+        private final DatagramPacket packet;
+
+        /**
+         * Initializes a new delayed packet.
+         *
+         * @param due The time it is due at in ns.
+         * @param order The order it came in.
+         * @param packet The packet.
+         */
+        private DelayedPacket(long due, long order, DatagramPacket packet) {
+            this.due = due;
+            this.order = order;
+            this.packet = packet;
+        }
+
+        @Override
+        public int compareTo(DelayedPacket other) {
+            final int byDue = Long.compare(due, other.due);
+            return byDue != 0 ? byDue : Long.compare(order, other.order);
+        }
+    }
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the fixed latency in ms.
+     */
+    private final double latency;
+
+    /**
+     * Saves the jitter in ms.
+     */
+    private final double jitter;
+
+    /**
+     * Saves the distribution of the jitter.
+     */
+    private final DelayLine.Jitter distribution;
+
+    /**
+     * Holds the packets, ordered by the time they are due.
+     */
+    private final PriorityQueue<DelayedPacket> queue;
+
+    /**
+     * Saves the number of packets that came in.
+     */
+    private long count;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new delay stage.
+     *
+     * @param latency The fixed latency in ms.
+     * @param jitter The jitter in ms.
+     * @param distribution The distribution of the jitter.
+     */
+    public DelayStage(double latency, double jitter, DelayLine.Jitter distribution) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Latency and jitter must not be negative");
+        }
+        if (distribution == null) {
+            throw new IllegalArgumentException("Jitter distribution must not be null");
+        }
+        this.latency = latency;
+        this.jitter = jitter;
+        this.distribution = distribution;
+        this.queue = new PriorityQueue<>();
+        this.count = 0;
+    }
+
+    @Override
+    public void accept(PacketBatch in, PacketBatch out, Clock clock) {
+        final long now = clock.nanoTime();
+        for (int index = 0; index < in.size(); index++) {
+            final double delay = Math.max(0, latency + distribution.draw(jitter));
+            queue.add(new DelayedPacket(now + Math.round(delay * 1_000_000), count++, in.get(index)));
+        }
+        while (!queue.isEmpty() && queue.peek().due <= now) {
+            out.add(queue.poll().packet);
+        }
+    }
+
+    @Override
+    public long nextRelease() {
+        return queue.isEmpty() ? Long.MAX_VALUE : queue.peek().due;
+    }
+}
@@ -0,0 +1,43 @@
+package decorator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import transport.Clock;
+
+/**
+ * Duplicates packets with a configurable chance.
+ *
+ * @author nico
+ */
+public class DuplicateStage implements ImpairmentStage {
+
+    /**
+     * Saves the package duplicate chance as threshold for a number from 0 to
+     * 1.
+     */
+    private final double packageDuplicateThreshold;
+
+    /**
+     * Initializes a new duplicate stage.
+     *
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     */
+    public DuplicateStage(double packageDuplicateChance) {
+        if (packageDuplicateChance > 100 || packageDuplicateChance < 0) {
+            throw new IllegalArgumentException("Package duplicate chance must be between 0 and 100");
+        }
+        this.packageDuplicateThreshold = packageDuplicateChance / 100.0;
+    }
+
+    @Override
+    public void accept(PacketBatch in, PacketBatch out, Clock clock) {
+        final ThreadLocalRandom numberGenerator = ThreadLocalRandom.current();
+        for (int index = 0; index < in.size(); index++) {
+            out.add(in.get(index));
+            if (numberGenerator.nextDouble() < packageDuplicateThreshold) {
+                out.add(in.get(index));
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package decorator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.List;
+
+import transport.Clock;
+import transport.SystemClock;
+
+/**
+ * Sends packets through a chain of ImpairmentStages, to put together a lab
+ * scenario (loss, corruption, duplicates, delay, shaping, reordering) in any
+ * order without changing code. An ImpairmentProfile reads the chain from a
+ * file.
+ *
+ * Senders only copy their packet into the ingress batch. A single thread
+ * takes the whole batch at once, hands it from stage to stage and sends what
+ * comes out, so the locking and the wake up are paid per batch and not per
+ * packet. It also wakes up when a stage wants to release a packet it holds
+ * back. Two batches are swapped between the stages, so they do not allocate
+ * to pass packets on.
+ *
+ * @author nico
+ */
+public class ImpairmentPipeline implements Link {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the stages in the order the packets pass them.
+     */
+    private final ImpairmentStage[] stages;
+
+    /**
+     * Saves the clock the stages read the time from.
+     */
+    private final Clock clock;
+
+    /**
+     * Takes the packets behind the last stage (may be null).
+     */
+    private final Link next;
+
+    /**
+     * Sends the packets behind the last stage, if there is no next link and
+     * no endpoint attached.
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * Saves the socket of the endpoint attached last. Null if the packets
+     * are sent with the own socket.
+     */
+    private volatile DatagramSocket endpoint;
+
+    /**
+     * Runs the stages.
+     */
+    private final Thread thread;
+
+    /**
+     * Collects the packets of the senders, guarded by this.
+     */
+    private PacketBatch ingress;
+
+    /**
+     * Saves the time the next stage wants to release a packet at, guarded by
+     * this.
+     */
+    private long nextRelease;
+
+    /**
+     * Saves if the pipeline was closed, guarded by this.
+     */
+    private boolean closed;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a pipeline that sends with a socket of its own.
+     *
+     * @param stages The stages in the order the packets pass them.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public ImpairmentPipeline(List<ImpairmentStage> stages) throws SocketException {
+        //call other constructor without next link
+        this(stages, null);
+    }
+
+    /**
+     * Initializes a new pipeline.
+     *
+     * @param stages The stages in the order the packets pass them.
+     * @param next The link behind the last stage, null to send with a socket
+     * of its own.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public ImpairmentPipeline(List<ImpairmentStage> stages, Link next) throws SocketException {
+        //check if input params are correct
+        if (stages == null || stages.contains(null)) {
+            throw new IllegalArgumentException("Stages must not be null");
+        }
+        //initialize object variables
+        this.stages = stages.toArray(new ImpairmentStage[0]);
+        this.clock = SystemClock.INSTANCE;
+        this.next = next;
+        this.socket = next == null ? new DatagramSocket() : null;
+        this.ingress = new PacketBatch();
+        this.nextRelease = Long.MAX_VALUE;
+        this.closed = false;
+        this.thread = new Thread(this::pump, "impairment-pipeline");
+        //packets still in the pipeline must not keep the program alive
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Puts a copy of the packet into the ingress batch.
+     *
+     * @param packet The packet to be sent.
+     */
+    @Override
+    public void send(DatagramPacket packet) {
+        //copy now, the sender may reuse the buffer
+        final byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+        final DatagramPacket copy = new DatagramPacket(data, data.length, packet.getAddress(), packet.getPort());
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            ingress.add(copy);
+            //the first packet of a batch wakes the thread up
+            if (ingress.size() == 1) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Passes the endpoint on to the next link, or sends through it.
+     *
+     * @param endpoint The socket of the endpoint.
+     */
+    @Override
+    public void attach(DatagramSocket endpoint) {
+        if (next != null) {
+            next.attach(endpoint);
+        } else {
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Drops all packets still in the pipeline and closes the socket or the
+     * next link.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (next != null) {
+            next.close();
+        } else {
+            socket.close();
+        }
+    }
+
+    //Getter and Setter and Private Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Body of the thread: waits for a batch or a release and runs the stages.
+     */
+    private void pump() {
+        PacketBatch in = new PacketBatch();
+        PacketBatch out = new PacketBatch();
+        while (true) {
+            synchronized (this) {
+                if (!awaitWork()) {
+                    return;
+                }
+                //take the whole batch, the senders go on with the empty one
+                final PacketBatch taken = ingress;
+                ingress = in;
+                in = taken;
+            }
+            long release = Long.MAX_VALUE;
+            for (final ImpairmentStage stage : stages) {
+                out.clear();
+                stage.accept(in, out, clock);
+                release = Math.min(release, stage.nextRelease());
+                //the output of this stage is the input of the next one
+                final PacketBatch swap = in;
+                in = out;
+                out = swap;
+            }
+            transmit(in);
+            in.clear();
+            synchronized (this) {
+                nextRelease = release;
+            }
+        }
+    }
+
+    /**
+     * Waits until there are packets or a stage wants to release one. The
+     * caller must hold the monitor of this.
+     *
+     * @return false, if the pipeline was closed
+     */
+    private boolean awaitWork() {
+        while (!closed && ingress.isEmpty()) {
+            final long wait = nextRelease - clock.nanoTime();
+            if (nextRelease != Long.MAX_VALUE && wait <= 0) {
+                break;
+            }
+            try {
+                if (nextRelease == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+            } catch (InterruptedException exception) {
+                return false;
+            }
+        }
+        return !closed;
+    }
+
+    /**
+     * Sends the packets that came out of the last stage.
+     *
+     * @param batch The packets.
+     */
+    private void transmit(PacketBatch batch) {
+        final DatagramSocket out = endpoint == null ? socket : endpoint;
+        for (int index = 0; index < batch.size(); index++) {
+            if (next != null) {
+                next.send(batch.get(index));
+                continue;
+            }
+            //the endpoint is gone, like a pulled cable
+            if (out.isClosed()) {
+                return;
+            }
+            try {
+                out.send(batch.get(index));
+            } catch (IOException exception) {
+                System.out.println("An error has occured while writing data: ");
+                System.out.println(exception.toString());
+            }
+        }
+    }
+}
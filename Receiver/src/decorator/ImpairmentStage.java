@@ -0,0 +1,28 @@
+package decorator;
+
+import transport.Clock;
+
+/**
+ * One step of an ImpairmentPipeline: takes the packets of the input batch
+ * and appends the ones that go on to the output batch.
+ *
+ * A stage may drop packets, change them, add packets or hold them back and
+ * append them in a later call. Stages are only called by the thread of the
+ * pipeline, so they need no locks. A stage must not change a packet it got,
+ * because a duplicate may share it: it appends a changed copy instead.
+ *
+ * @author nico
+ */
+public interface ImpairmentStage extends TriConsumer<PacketBatch, PacketBatch, Clock> {
+
+    /**
+     * Get the time this stage wants to be called again at, to release a
+     * packet it holds back.
+     *
+     * @return the time in ns of the clock, Long.MAX_VALUE if it holds none
+     */
+    default long nextRelease() {
+        return Long.MAX_VALUE;
+    }
+
+}
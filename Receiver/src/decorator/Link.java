@@ -0,0 +1,41 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+/**
+ * The way between a BrokenDatagramSocket and the wire, for example a
+ * DelayLine or a Bottleneck.
+ *
+ * A link lives longer than the sockets that use it: it is created once and
+ * shared by the endpoints that follow each other, like the transfers of a
+ * benchmark. It sends through the socket of the endpoint attached last, so
+ * the peer answers to that endpoint, or with a socket of its own before.
+ *
+ * @author nico
+ */
+public interface Link extends AutoCloseable {
+
+    /**
+     * Takes a packet on its way. The packet is copied, the caller may reuse
+     * it.
+     *
+     * @param packet The packet to be sent.
+     */
+    void send(DatagramPacket packet);
+
+    /**
+     * Sends through the socket of an endpoint from now on. Packets still on
+     * their way when that socket is closed are lost.
+     *
+     * @param endpoint The socket of the endpoint.
+     */
+    void attach(DatagramSocket endpoint);
+
+    /**
+     * Drops all packets still on their way and releases the own socket.
+     */
+    @Override
+    void close();
+
+}
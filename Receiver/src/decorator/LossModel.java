@@ -0,0 +1,44 @@
+package decorator;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides whether a BrokenDatagramSocket loses a packet.
+ *
+ * A model may keep state between packets (for example the state of a
+ * Gilbert-Elliott channel). Because a channel outlives the sockets that use
+ * it (a Sender opens a new socket for every transfer), such a model has to be
+ * created once and handed to every socket, so it must be thread safe. It is asked for every packet and
+ * should neither allocate nor lock.
+ *
+ * @author nico
+ */
+@FunctionalInterface
+public interface LossModel {
+
+    /**
+     * Decides the fate of the next packet.
+     *
+     * @param numberGenerator Draws numbers from 0 (inclusive) to 1
+     * (exclusive) with the random numbers of the socket.
+     * @return true, if the packet shall be lost
+     */
+    boolean isLost(DoubleSupplier numberGenerator);
+
+    /**
+     * Creates a model that loses every packet independently with the same
+     * chance (the behaviour BrokenDatagramSocket always had).
+     *
+     * @param packageLossChance The package loss chance. Must be between 0 and
+     * 100.
+     * @return the model
+     */
+    static LossModel uniform(int packageLossChance) {
+        if (packageLossChance > 100 || packageLossChance < 0) {
+            throw new IllegalArgumentException("Package loss chance must be between 0 and 100");
+        }
+        final double threshold = packageLossChance / 100.0;
+        return (DoubleSupplier numberGenerator) -> numberGenerator.getAsDouble() < threshold;
+    }
+
+}
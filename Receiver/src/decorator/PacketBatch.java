@@ -0,0 +1,89 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.util.Arrays;
+
+/**
+ * A reusable batch of packets handed from one ImpairmentStage to the next.
+ *
+ * The pipeline keeps two batches and swaps them between the stages, so after
+ * warming up no stage allocates to pass packets on.
+ *
+ * @author nico
+ */
+public class PacketBatch {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the packets.
+     */
+    private DatagramPacket[] packets;
+
+    /**
+     * Saves the number of packets.
+     */
+    private int size;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes an empty batch.
+     */
+    public PacketBatch() {
+        this.packets = new DatagramPacket[16];
+        this.size = 0;
+    }
+
+    /**
+     * Appends a packet.
+     *
+     * @param packet The packet.
+     */
+    public void add(DatagramPacket packet) {
+        if (size == packets.length) {
+            packets = Arrays.copyOf(packets, size * 2);
+        }
+        packets[size++] = packet;
+    }
+
+    /**
+     * Get a packet.
+     *
+     * @param index The index from 0 to size() - 1.
+     * @return the packet
+     */
+    public DatagramPacket get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        return packets[index];
+    }
+
+    /**
+     * Get the number of packets.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if there are no packets.
+     *
+     * @return true, if the batch is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all packets.
+     */
+    public void clear() {
+        //let the packets be collected
+        Arrays.fill(packets, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,53 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <b>JFR event: waiting for a datagram ended.</b>
+ *
+ * The duration of the event is the time spent waiting.
+ */
+@Name("ndpk.PacketReceived")
+@Label("Packet Received")
+@Category({ "ndpk", "Transfer" })
+@Description("Waited for a data packet or ACK and validated it")
+public class PacketReceivedEvent extends Event {
+
+	/**
+	 * <b>Sequence number of the packet.</b>
+	 */
+	@Label("Sequence Number")
+	public int sequenceNumber;
+
+	/**
+	 * <b>Size of the datagram including the header.</b>
+	 */
+	@Label("Size")
+	@DataAmount
+	public int size;
+
+	/**
+	 * <b>Store if the packet is an ACK.</b>
+	 */
+	@Label("ACK")
+	public boolean ack;
+
+	/**
+	 * <b>State of the endpoint while receiving.</b>
+	 */
+	@Label("State")
+	public String state;
+
+	/**
+	 * <b>Outcome of the validation ("accepted", "checksum", "duplicate",
+	 * "unexpected" or "error").</b>
+	 */
+	@Label("Cause")
+	public String cause;
+
+}
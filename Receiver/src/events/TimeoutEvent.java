@@ -0,0 +1,26 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * <b>JFR event: a retransmission timer expired.</b>
+ */
+@Name("ndpk.Timeout")
+@Label("Timeout")
+@Category({ "ndpk", "Transfer" })
+@Description("A retransmission timer expired before the ACK arrived")
+public class TimeoutEvent extends Event {
+
+	/**
+	 * <b>The time the timer waited.</b>
+	 */
+	@Label("Timeout")
+	@Timespan(Timespan.MILLISECONDS)
+	public long timeout;
+
+}
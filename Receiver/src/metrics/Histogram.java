@@ -0,0 +1,292 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>Log-linear histogram of long values (HDR style).</b>
+ *
+ * Values below 2^precision get a bucket of their own, above that every
+ * power of two is split into 2^(precision - 1) equally wide buckets. So the
+ * relative error of a reported value is at most 2^(1 - precision).<br>
+ * <br>
+ * Recording never allocates and may happen from several threads at once.
+ * Histograms with the same configuration can be merged, for example to
+ * combine the samples of several transfers.
+ */
+public class Histogram {
+
+	/**
+	 * <b>Default precision: 5 bits, which means a relative error of at most
+	 * 6.25%.</b>
+	 */
+	public static final int DEFAULT_PRECISION = 5;
+
+	/**
+	 * <b>Default highest value: 2^40 (about 18 minutes in ns).</b>
+	 */
+	public static final int DEFAULT_MAGNITUDE = 40;
+
+	/**
+	 * <b>Number of bits of the linear part.</b>
+	 */
+	private final int precision;
+
+	/**
+	 * <b>Values are tracked up to 2^magnitude - 1, higher values are
+	 * clamped.</b>
+	 */
+	private final int magnitude;
+
+	/**
+	 * <b>Number of buckets per power of two (2^(precision - 1)).</b>
+	 */
+	private final int halfBucketCount;
+
+	/**
+	 * <b>Count of every bucket.</b>
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * <b>Number of recorded values.</b>
+	 */
+	private final AtomicLong totalCount;
+
+	/**
+	 * <b>Sum of all recorded values.</b>
+	 */
+	private final AtomicLong sum;
+
+	/**
+	 * <b>Highest recorded value.</b>
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * <b>Create a new histogram with the default precision and
+	 * magnitude.</b>
+	 */
+	public Histogram() {
+		this(DEFAULT_PRECISION, DEFAULT_MAGNITUDE);
+	}
+
+	/**
+	 * <b>Create a new histogram with following params.</b>
+	 *
+	 * @param precision
+	 *            is the number of bits of the linear part (1 to 16)
+	 * @param magnitude
+	 *            is the number of bits of the highest value (precision to
+	 *            62)
+	 */
+	public Histogram(int precision, int magnitude) {
+		if (precision < 1 || precision > 16) {
+			throw new IllegalArgumentException("Precision must be between 1 and 16");
+		}
+		if (magnitude < precision || magnitude > 62) {
+			throw new IllegalArgumentException("Magnitude must be between precision and 62");
+		}
+		this.precision = precision;
+		this.magnitude = magnitude;
+		this.halfBucketCount = 1 << (precision - 1);
+		this.counts = new AtomicLongArray(indexOf((1L << magnitude) - 1) + 1);
+		this.totalCount = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * <b>Record a value.</b>
+	 *
+	 * Negative values are recorded as 0, values above the magnitude as the
+	 * highest trackable value.
+	 *
+	 * @param value
+	 *            is the value to record
+	 */
+	public void record(long value) {
+		final long clamped = Math.max(0, Math.min(value, getHighestTrackableValue()));
+		counts.incrementAndGet(indexOf(clamped));
+		totalCount.incrementAndGet();
+		sum.addAndGet(clamped);
+		long currentMax = max.get();
+		while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * <b>Add all values of another histogram to this one.</b>
+	 *
+	 * @param other
+	 *            is the histogram to add, it must have the same precision
+	 *            and magnitude
+	 */
+	public void add(Histogram other) {
+		if (other.precision != precision || other.magnitude != magnitude) {
+			throw new IllegalArgumentException("Only histograms with the same configuration can be merged");
+		}
+		for (int index = 0; index < counts.length(); index++) {
+			final long count = other.counts.get(index);
+			if (count != 0) {
+				counts.addAndGet(index, count);
+			}
+		}
+		totalCount.addAndGet(other.getCount());
+		sum.addAndGet(other.sum.get());
+		final long otherMax = other.getMax();
+		long currentMax = max.get();
+		while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * <b>Create an independent copy of this histogram.</b>
+	 *
+	 * @return the copy
+	 */
+	public Histogram copy() {
+		final Histogram copy = new Histogram(precision, magnitude);
+		copy.add(this);
+		return copy;
+	}
+
+	/**
+	 * <b>Remove all recorded values.</b>
+	 */
+	public void reset() {
+		for (int index = 0; index < counts.length(); index++) {
+			counts.set(index, 0);
+		}
+		totalCount.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * <b>Get the value below or at which the given percentage of all
+	 * values lies.</b>
+	 *
+	 * The result is the highest value of the bucket the percentile falls
+	 * into.
+	 *
+	 * @param percentile
+	 *            is the percentile from 0 to 100
+	 * @return the value, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		final long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		final double clamped = Math.max(0, Math.min(percentile, 100));
+		final long wanted = Math.max(1, (long) Math.ceil(clamped / 100 * total));
+		long seen = 0;
+		for (int index = 0; index < counts.length(); index++) {
+			seen += counts.get(index);
+			if (seen >= wanted) {
+				return Math.min(highestValueOf(index), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * <b>Get the number of recorded values.</b>
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * <b>Get the highest recorded value.</b>
+	 *
+	 * @return the maximum, 0 if nothing was recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * <b>Get the mean of all recorded values.</b>
+	 *
+	 * @return the mean, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		final long total = getCount();
+		return total == 0 ? 0 : (double) sum.get() / total;
+	}
+
+	/**
+	 * <b>Get the highest value that can be recorded without clamping.</b>
+	 *
+	 * @return the highest trackable value
+	 */
+	public long getHighestTrackableValue() {
+		return (1L << magnitude) - 1;
+	}
+
+	/**
+	 * <b>Summary with count, p50, p99, p999 and maximum.</b>
+	 *
+	 * @param unit
+	 *            is the number of recorded units per reported unit (for
+	 *            example 1000 to report microseconds recorded as ns)
+	 * @return the summary
+	 */
+	public String toString(double unit) {
+		return "n=" + getCount()
+				+ " p50=" + String.format("%.1f", getValueAtPercentile(50) / unit)
+				+ " p99=" + String.format("%.1f", getValueAtPercentile(99) / unit)
+				+ " p999=" + String.format("%.1f", getValueAtPercentile(99.9) / unit)
+				+ " max=" + String.format("%.1f", getMax() / unit);
+	}
+
+	/**
+	 * <b>toString implemented.</b>
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return toString(1);
+	}
+
+	/**
+	 * <b>Get the bucket of a value.</b>
+	 *
+	 * @param value
+	 *            is a value from 0 to the highest trackable value
+	 * @return the index of the bucket
+	 */
+	private int indexOf(long value) {
+		// linear part
+		if (value < (halfBucketCount << 1)) {
+			return (int) value;
+		}
+		// logarithmic part: shift so that the value fits into the upper half
+		final int shift = 64 - Long.numberOfLeadingZeros(value) - precision;
+		return (shift * halfBucketCount) + (int) (value >>> shift);
+	}
+
+	/**
+	 * <b>Get the highest value that falls into a bucket.</b>
+	 *
+	 * @param index
+	 *            is the index of the bucket
+	 * @return the highest value of this bucket
+	 */
+	private long highestValueOf(int index) {
+		// linear part
+		if (index < (halfBucketCount << 1)) {
+			return index;
+		}
+		final int shift = index / halfBucketCount - 1;
+		final long subBucket = index - ((long) shift * halfBucketCount);
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
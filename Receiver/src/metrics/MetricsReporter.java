@@ -0,0 +1,66 @@
+package metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <b>Hands a snapshot of TransferMetrics to a consumer periodically.</b>
+ *
+ * The consumer runs on a daemon thread, so a forgotten reporter never keeps
+ * the program alive.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+	/**
+	 * <b>The metrics to report.</b>
+	 */
+	private final TransferMetrics metrics;
+
+	/**
+	 * <b>Executes the reporting task.</b>
+	 */
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * <b>Start reporting with following params.</b>
+	 *
+	 * @param metrics
+	 *            are the metrics to report
+	 * @param periodMillis
+	 *            is the time between two snapshots in ms
+	 * @param consumer
+	 *            receives every snapshot
+	 */
+	public MetricsReporter(TransferMetrics metrics, long periodMillis, Consumer<MetricsSnapshot> consumer) {
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("The period must be greater than 0");
+		}
+		this.metrics = metrics;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(() -> consumer.accept(getMetrics().snapshot()), periodMillis, periodMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * <b>Stop reporting.</b>
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * <b>Get the metrics to report.</b>
+	 *
+	 * @return the metrics
+	 */
+	private TransferMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -5,7 +5,6 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 public class AlternatingBitPacket implements Packet {
@@ -14,15 +13,35 @@ public class AlternatingBitPacket implements Packet {
     //--------------------------------------------------------------------------
     //Static Private:
     private final static int SEQUENCENUMBEROFF = 3;
-    private final static int ACKOFF = 4;
-    private final static int ENDOFF = 5;
-    private final static int CHECKOFF = 6;
-    private final static int CONTENTOFF = 14;
+    private final static int FLAGSOFF = 4;
+    private final static int CONNECTIONOFF = 5;
+    private final static int STREAMOFF = 9;
+    private final static int LENGTHOFF = 11;
+    private final static int CHECKOFF = 13;
+    private final static int CONTENTOFF = 21;
+
+    //Bits of the flags byte:
+    private final static int FLAG_ACK = 1;
+    private final static int FLAG_END = 2;
+    private final static int FLAG_SYN = 4;
+    private final static int FLAG_FIN = 8;
+    private final static int FLAG_COMPRESSED = 16;
 
     //Static Public:
     public final static int PACKETSIZE = 1400;
     public final static int HEADERSIZE = CONTENTOFF;
 
+    /**
+     * The largest stream ID (the field has 16 bits).
+     */
+    public final static int MAX_STREAM_ID = 0xFFFF;
+
+    /**
+     * The largest number of bytes compressed content may stand for (the field
+     * has 16 bits).
+     */
+    public final static int MAX_LENGTH = 0xFFFF;
+
     //Private:
     /**
      * Saves if this an ACKnowledgement.
@@ -34,11 +53,47 @@ public class AlternatingBitPacket implements Packet {
      */
     final private boolean endFlag;
 
+    /**
+     * Saves if this is a packet of the handshake (SYN or SYN-ACK).
+     */
+    final private boolean SYN;
+
+    /**
+     * Saves if this packet closes the connection (FIN or FIN-ACK).
+     */
+    final private boolean FIN;
+
+    /**
+     * Saves if the content is compressed (Deflate).
+     */
+    final private boolean compressed;
+
+    /**
+     * Saves the number of bytes of the content before compression.
+     */
+    final private int length;
+
     /**
      * Saves the sequenceNumber of this package.
      */
     final private int sequenceNumber;
 
+    /**
+     * Saves the connection ID, which tells the transfers of one host apart.
+     */
+    final private int connectionId;
+
+    /**
+     * Saves the stream ID, which tells the streams of a transfer apart. Each
+     * stream has sequence numbers of its own.
+     */
+    final private int streamId;
+
+    /**
+     * Saves the algorithm of the checksum.
+     */
+    final private ChecksumAlgorithm checksumAlgorithm;
+
     /**
      * Saves the checksum of this package's content.
      */
@@ -51,23 +106,109 @@ public class AlternatingBitPacket implements Packet {
 
     //Constructors
     //--------------------------------------------------------------------------
+    /**
+     * Initialize Alternating Bit Packet of connection 0. This C-tor will
+     * create a packet from given constants.
+     *
+     * @param sequenceNumber The sequence number either 1 or 0.
+     * @param ACK Is this a acknowledgement (True = yes).
+     * @param content The content this package will have.
+     * @throws UnknownHostException
+     */
+    public AlternatingBitPacket(int sequenceNumber, boolean ACK, boolean endFlag, byte[] content, String ipAddress, int port) throws UnknownHostException {
+        this(0, sequenceNumber, ACK, endFlag, content, ipAddress, port);
+    }
+
     /**
      * Initialize Alternating Bit Packet. This C-tor will create a packet from
      * given constants.
      *
+     * @param connectionId The connection ID of the transfer.
      * @param sequenceNumber The sequence number either 1 or 0.
      * @param ACK Is this a acknowledgement (True = yes).
      * @param content The content this package will have.
      * @throws UnknownHostException
      */
-    public AlternatingBitPacket(int sequenceNumber, boolean ACK, boolean endFlag, byte[] content, String ipAddress, int port) throws UnknownHostException {
+    public AlternatingBitPacket(int connectionId, int sequenceNumber, boolean ACK, boolean endFlag, byte[] content, String ipAddress, int port) throws UnknownHostException {
+        this(connectionId, sequenceNumber, ACK, endFlag, false, false, content, ipAddress, port, ChecksumAlgorithm.crc32);
+    }
+
+    /**
+     * Initialize Alternating Bit Packet. This C-tor will create a packet from
+     * given constants.
+     *
+     * @param connectionId The connection ID of the transfer.
+     * @param sequenceNumber The sequence number either 1 or 0.
+     * @param ACK Is this a acknowledgement (True = yes).
+     * @param SYN Is this a packet of the handshake (True = yes).
+     * @param FIN Does this packet close the connection (True = yes).
+     * @param content The content this package will have.
+     * @param checksumAlgorithm The checksum of the transfer, a packet of the
+     * handshake always uses CRC-32.
+     * @throws UnknownHostException
+     */
+    public AlternatingBitPacket(int connectionId, int sequenceNumber, boolean ACK, boolean endFlag, boolean SYN, boolean FIN, byte[] content, String ipAddress, int port, ChecksumAlgorithm checksumAlgorithm) throws UnknownHostException {
+        this(connectionId, 0, sequenceNumber, ACK, endFlag, SYN, FIN, content, ipAddress, port, checksumAlgorithm);
+    }
+
+    /**
+     * Initialize Alternating Bit Packet of a stream. This C-tor will create a
+     * packet from given constants.
+     *
+     * @param connectionId The connection ID of the transfer.
+     * @param streamId The stream ID, between 0 and MAX_STREAM_ID.
+     * @param sequenceNumber The sequence number of the stream either 1 or 0.
+     * @param ACK Is this a acknowledgement (True = yes).
+     * @param endFlag Is this the last packet of the stream (True = yes).
+     * @param SYN Is this a packet of the handshake (True = yes).
+     * @param FIN Does this packet close the connection (True = yes).
+     * @param content The content this package will have.
+     * @param checksumAlgorithm The checksum of the transfer, a packet of the
+     * handshake always uses CRC-32.
+     * @throws UnknownHostException
+     */
+    public AlternatingBitPacket(int connectionId, int streamId, int sequenceNumber, boolean ACK, boolean endFlag, boolean SYN, boolean FIN, byte[] content, String ipAddress, int port, ChecksumAlgorithm checksumAlgorithm) throws UnknownHostException {
+        this(connectionId, streamId, sequenceNumber, ACK, endFlag, SYN, FIN, false, content.length, content, ipAddress, port, checksumAlgorithm);
+    }
+
+    /**
+     * Initialize Alternating Bit Packet of a stream, whose content may be
+     * compressed. This C-tor will create a packet from given constants.
+     *
+     * @param connectionId The connection ID of the transfer.
+     * @param streamId The stream ID, between 0 and MAX_STREAM_ID.
+     * @param sequenceNumber The sequence number of the stream either 1 or 0.
+     * @param ACK Is this a acknowledgement (True = yes).
+     * @param endFlag Is this the last packet of the stream (True = yes).
+     * @param SYN Is this a packet of the handshake (True = yes).
+     * @param FIN Does this packet close the connection (True = yes).
+     * @param compressed Is the content compressed with Deflate (True = yes).
+     * @param length The number of bytes of the content before compression,
+     * between 0 and MAX_LENGTH.
+     * @param content The content this package will have.
+     * @param checksumAlgorithm The checksum of the transfer, a packet of the
+     * handshake always uses CRC-32.
+     * @throws UnknownHostException
+     */
+    public AlternatingBitPacket(int connectionId, int streamId, int sequenceNumber, boolean ACK, boolean endFlag, boolean SYN, boolean FIN, boolean compressed, int length, byte[] content, String ipAddress, int port, ChecksumAlgorithm checksumAlgorithm) throws UnknownHostException {
         if (content.length > PACKETSIZE) {
             throw new IllegalArgumentException("The content length is to big!");
+        } else if (streamId < 0 || streamId > MAX_STREAM_ID) {
+            throw new IllegalArgumentException("The stream ID must be between 0 and " + MAX_STREAM_ID + "!");
+        } else if (length < 0 || length > MAX_LENGTH || (!compressed && length != content.length)) {
+            throw new IllegalArgumentException("The length must be between 0 and " + MAX_LENGTH + ", the content length if it is not compressed!");
         } else {
+            this.connectionId = connectionId;
+            this.streamId = streamId;
             this.sequenceNumber = sequenceNumber;
             this.ACK = ACK;
             this.endFlag = endFlag;
-            //create the first part of the header (sequence number + ack flag)
+            this.SYN = SYN;
+            this.FIN = FIN;
+            this.compressed = compressed;
+            this.length = length;
+            this.checksumAlgorithm = SYN ? ChecksumAlgorithm.crc32 : checksumAlgorithm;
+            //create the first part of the header (sequence number + flags + connection ID + stream ID + length)
             final byte[] firstHeaderPart = createHeader();
             //create the an array for calculating the checksum (sequence number + ackflag + content)
             final byte[] checksumArray = new byte[CHECKOFF + content.length];
@@ -85,19 +226,43 @@ public class AlternatingBitPacket implements Packet {
     }
 
     /**
-     * Initialize Alternating Bit Packet. This C-tor will create a packet from a
-     * existing udpPacket.
+     * Initialize Alternating Bit Packet of a transfer using CRC-32. This C-tor
+     * will create a packet from a existing udpPacket.
      *
      * @param udpPacket
      */
     public AlternatingBitPacket(DatagramPacket udpPacket) {
+        this(udpPacket, ChecksumAlgorithm.crc32);
+    }
+
+    /**
+     * Initialize Alternating Bit Packet. This C-tor will create a packet from a
+     * existing udpPacket (offset 0), only its length is used.
+     *
+     * @param udpPacket
+     * @param checksumAlgorithm The checksum of the transfer, a packet of the
+     * handshake always uses CRC-32.
+     */
+    public AlternatingBitPacket(DatagramPacket udpPacket, ChecksumAlgorithm checksumAlgorithm) {
         this.udpPacket = udpPacket;
         this.ACK = isACKPackage();
         this.endFlag = isEndFlagPackage();
+        this.SYN = isSYNPackage();
+        this.FIN = isFINPackage();
+        this.compressed = isCompressedPackage();
+        this.length = getLengthPackage();
         this.sequenceNumber = getSequenceNumberPackage();
-
+        this.connectionId = getConnectionIdPackage();
+        this.streamId = getStreamIdPackage();
+        this.checksumAlgorithm = SYN ? ChecksumAlgorithm.crc32 : checksumAlgorithm;
+
+        if (getUdpPacket().getLength() < CONTENTOFF) {
+            //to short, no CRC is negative
+            this.checksum = -1;
+            return;
+        }
         // get content
-        final byte[] content = Arrays.copyOfRange(getUdpPacket().getData(), CONTENTOFF, getUdpPacket().getData().length);
+        final byte[] content = getContent();
         final byte[] checksumArray = new byte[CHECKOFF + content.length];
         final byte[] firstHeaderPart = Arrays.copyOfRange(getUdpPacket().getData(), 0, CHECKOFF);
         System.arraycopy(firstHeaderPart, 0, checksumArray, 0, CHECKOFF);
@@ -145,6 +310,54 @@ public class AlternatingBitPacket implements Packet {
         return getSequenceNumber() == sequenceNumber;
     }
 
+    /**
+     * Returns if this is a packet of the handshake or not.
+     *
+     * @return True if it is a SYN or SYN-ACK.
+     */
+    @Override
+    public boolean isSYN() {
+        return SYN;
+    }
+
+    /**
+     * Returns if this packet closes the connection or not.
+     *
+     * @return True if it is a FIN or FIN-ACK.
+     */
+    @Override
+    public boolean isFIN() {
+        return FIN;
+    }
+
+    /**
+     * Returns if the content of this packet is compressed or not.
+     *
+     * @return True if it has to be inflated to getLength() bytes.
+     */
+    @Override
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Get the number of bytes of the content before compression.
+     *
+     * @return The length, the content length if it is not compressed.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the content of this Packet, without the header.
+     *
+     * @return A copy of the content.
+     */
+    public byte[] getContent() {
+        return Arrays.copyOfRange(getUdpPacket().getData(), CONTENTOFF, Math.max(CONTENTOFF, getUdpPacket().getLength()));
+    }
+
     /**
      * Simply returns if this an ACK or not.
      *
@@ -176,6 +389,42 @@ public class AlternatingBitPacket implements Packet {
     	return sequenceNumber;
     }
     
+    /**
+     * Get the connection ID of this Packet.
+     *
+     * @return The connection ID.
+     */
+    @Override
+    public int getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * Get the stream ID of this Packet.
+     *
+     * @return The stream ID (0 if the transfer has a single stream).
+     */
+    @Override
+    public int getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * Reads the connection ID of a Datagram Packet without checking or
+     * copying anything else, to find the transfer it belongs to cheaply.
+     *
+     * @param udpPacket The Datagram Packet (offset 0).
+     * @return The connection ID, which may be broken.
+     * @throws IllegalArgumentException If the packet is shorter than the
+     * header.
+     */
+    public static int peekConnectionId(DatagramPacket udpPacket) {
+        if (udpPacket.getLength() < HEADERSIZE) {
+            throw new IllegalArgumentException("The packet is shorter than the header!");
+        }
+        return ByteBuffer.wrap(udpPacket.getData(), CONNECTIONOFF, Integer.BYTES).getInt();
+    }
+
     /**
      * <b>toString implemented.</b>
      * 
@@ -185,15 +434,25 @@ public class AlternatingBitPacket implements Packet {
     public String toString() {
     	
     	return "Object: "
-    			+ "SeqNr: " + getSequenceNumber() 
+    			+ "ConnId: " + getConnectionId()
+    			+ ", Stream: " + getStreamId()
+    			+ ", SeqNr: " + getSequenceNumber() 
     			+ ", ACK: " + isACK() 
     			+ ", END :" + isEndFlag()
+    			+ ", SYN: " + isSYN()
+    			+ ", FIN: " + isFIN()
+    			+ ", Compressed: " + isCompressed() + " (" + getLength() + ")"
     			+ ", Checksum: " + getChecksum()
     			+ "\r\n"
     			+ "Package: "
-    	    	+ "SeqNr: " + getSequenceNumberPackage() 
+    	    	+ "ConnId: " + getConnectionIdPackage()
+    	    	+ ", Stream: " + getStreamIdPackage()
+    	    	+ ", SeqNr: " + getSequenceNumberPackage() 
     	    	+ ", ACK: " + isACKPackage()
     	    	+ ", END :" + isEndFlagPackage()
+    	    	+ ", SYN: " + isSYNPackage()
+    	    	+ ", FIN: " + isFINPackage()
+    	    	+ ", Compressed: " + isCompressedPackage() + " (" + getLengthPackage() + ")"
     	    	+ ", Checksum: " + getChecksumPackage();
     }
 
@@ -205,7 +464,7 @@ public class AlternatingBitPacket implements Packet {
      * @return True if the Datagram packet is an ACK
      */
     private boolean isACKPackage() {
-        return getUdpPacket().getData()[ACKOFF] == 1;
+        return (getUdpPacket().getData()[FLAGSOFF] & FLAG_ACK) != 0;
     }
 
     /**
@@ -214,7 +473,44 @@ public class AlternatingBitPacket implements Packet {
      * @return true, if it is the last packet
      */
     private boolean isEndFlagPackage() {
-    	return getUdpPacket().getData()[ENDOFF] == 1;
+    	return (getUdpPacket().getData()[FLAGSOFF] & FLAG_END) != 0;
+    }
+
+    /**
+     * Checks the Datagram Packet in this object if it belongs to the handshake.
+     *
+     * @return true, if it is a SYN or SYN-ACK
+     */
+    private boolean isSYNPackage() {
+        return (getUdpPacket().getData()[FLAGSOFF] & FLAG_SYN) != 0;
+    }
+
+    /**
+     * Checks the Datagram Packet in this object if it closes the connection.
+     *
+     * @return true, if it is a FIN or FIN-ACK
+     */
+    private boolean isFINPackage() {
+        return (getUdpPacket().getData()[FLAGSOFF] & FLAG_FIN) != 0;
+    }
+
+    /**
+     * Checks the Datagram Packet in this object if its content is compressed.
+     *
+     * @return true, if the compressed flag is set
+     */
+    private boolean isCompressedPackage() {
+        return (getUdpPacket().getData()[FLAGSOFF] & FLAG_COMPRESSED) != 0;
+    }
+
+    /**
+     * Returns the length of the content before compression of the Datagram
+     * Packet.
+     *
+     * @return The length as int.
+     */
+    private int getLengthPackage() {
+        return ByteBuffer.wrap(getUdpPacket().getData(), LENGTHOFF, Short.BYTES).getShort() & MAX_LENGTH;
     }
 
     /**
@@ -226,6 +522,24 @@ public class AlternatingBitPacket implements Packet {
         return getUdpPacket().getData()[SEQUENCENUMBEROFF];
     }
 
+    /**
+     * Returns the connection ID of the Datagram Packet.
+     *
+     * @return The connection ID as int.
+     */
+    private int getConnectionIdPackage() {
+        return ByteBuffer.wrap(getUdpPacket().getData(), CONNECTIONOFF, Integer.BYTES).getInt();
+    }
+
+    /**
+     * Returns the stream ID of the Datagram Packet.
+     *
+     * @return The stream ID as int.
+     */
+    private int getStreamIdPackage() {
+        return ByteBuffer.wrap(getUdpPacket().getData(), STREAMOFF, Short.BYTES).getShort() & MAX_STREAM_ID;
+    }
+
     /**
      * Gets the checksum from the UDP packet.
      *
@@ -239,18 +553,18 @@ public class AlternatingBitPacket implements Packet {
     }
 
     /**
-     * Calculates the CRC-32 checksum of a given byte array.
+     * Calculates the checksum of a given byte array.
      *
      * @param content The byte array to calculate the checksum from.
      * @return The checksum as a long value.
      */
     private long calculateChecksum(byte[] content) {
         //create checksum object
-        final Checksum checksumCRC32 = new CRC32();
+        final Checksum checksum = getChecksumAlgorithm().create();
         //update the checksum with the content
-        checksumCRC32.update(content, 0, content.length);
+        checksum.update(content, 0, content.length);
         //return long value
-        return checksumCRC32.getValue();
+        return checksum.getValue();
     }
 
     /**
@@ -286,16 +600,35 @@ public class AlternatingBitPacket implements Packet {
      */
     private byte[] createHeader() {
 
-        //first 13 bytes (sequence number + ACKFlag + ENDFlag)
-        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + 1 + 1);
+        //first 13 bytes (sequence number + flags + connection ID + stream ID + length)
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + 1 + Integer.BYTES + Short.BYTES + Short.BYTES);
         //fill the sequence number into the buffer
         buffer.putInt(getSequenceNumber());
-        //set flags
-        final byte ackFlag = (byte) (isACK() ? 1 : 0);
-        final byte endFlag = (byte) (isEndFlag() ? 1 : 0);
+        //set flags, one bit each
+        int flags = 0;
+        if (isACK()) {
+            flags |= FLAG_ACK;
+        }
+        if (isEndFlag()) {
+            flags |= FLAG_END;
+        }
+        if (isSYN()) {
+            flags |= FLAG_SYN;
+        }
+        if (isFIN()) {
+            flags |= FLAG_FIN;
+        }
+        if (isCompressed()) {
+            flags |= FLAG_COMPRESSED;
+        }
         //put flags to buffer
-        buffer.put(ackFlag);
-        buffer.put(endFlag);
+        buffer.put((byte) flags);
+        //put the connection ID to buffer
+        buffer.putInt(getConnectionId());
+        //put the stream ID to buffer
+        buffer.putShort((short) getStreamId());
+        //put the length before compression to buffer
+        buffer.putShort((short) getLength());
         //return the new array
         return buffer.array();
     }
@@ -310,6 +643,15 @@ public class AlternatingBitPacket implements Packet {
         return checksum;
     }
 
+    /**
+     * Get the algorithm of the checksum of this Packet.
+     *
+     * @return The algorithm.
+     */
+    private ChecksumAlgorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
     /**
      * Gets the Datagram Packet representation of this Packet.
      *
@@ -0,0 +1,247 @@
+package protocolPackets;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What the receiver already has of a transfer, exchanged in the handshake of
+ * a resumable transfer.
+ *
+ * The sender adds the identity of its data to the SYN: a SHA-256 hash of all
+ * streams. A receiver that stored part of the same data before, in a transfer
+ * that broke off, answers with the number of bytes it has of each stream in
+ * the SYN-ACK. The sender goes on from there. A stream arrives in order, so
+ * its received part is always the start of the stream and one offset per
+ * stream is all there is to say.
+ *
+ * The SYN also names the file: a SHA-256 hash of its name. It stays the same
+ * when the file changes, so a receiver takes only an old version stored
+ * under the same name as basis of a delta transfer.
+ *
+ * Content layout (big endian, after the ConnectionParameters): identity (32
+ * bytes), number of streams (short), per stream: offset (int), then in a SYN
+ * the name (32 bytes, optional).
+ */
+public final class Checkpoint {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    //Static Public:
+    /**
+     * Size of the identity in bytes.
+     */
+    public final static int IDENTITY_SIZE = 32;
+
+    //Private:
+    /**
+     * The SHA-256 hash of all streams.
+     */
+    final private byte[] identity;
+
+    /**
+     * The number of bytes the receiver has, by stream ID.
+     */
+    final private int[] offsets;
+
+    /**
+     * The SHA-256 hash of the file name, null if it is not known.
+     */
+    final private byte[] name;
+
+    //Constructors
+    //--------------------------------------------------------------------------
+    /**
+     * Initialize the checkpoint without a name.
+     *
+     * @param identity The SHA-256 hash of all streams.
+     * @param offsets The number of bytes the receiver has, by stream ID.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public Checkpoint(byte[] identity, int[] offsets) {
+        this(identity, offsets, null);
+    }
+
+    /**
+     * Initialize the checkpoint.
+     *
+     * @param identity The SHA-256 hash of all streams.
+     * @param offsets The number of bytes the receiver has, by stream ID.
+     * @param name The SHA-256 hash of the file name (see nameOf), null if it
+     * is not known.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public Checkpoint(byte[] identity, int[] offsets, byte[] name) {
+        if (identity.length != IDENTITY_SIZE || (name != null && name.length != IDENTITY_SIZE)) {
+            throw new IllegalArgumentException("The identity and the name must have " + IDENTITY_SIZE + " bytes!");
+        }
+        if (offsets.length > ConnectionParameters.MAX_STREAMS) {
+            throw new IllegalArgumentException("There must be at most " + ConnectionParameters.MAX_STREAMS + " streams!");
+        }
+        for (int offset : offsets) {
+            if (offset < 0) {
+                throw new IllegalArgumentException("An offset must not be negative!");
+            }
+        }
+        this.identity = identity.clone();
+        this.offsets = offsets.clone();
+        this.name = name == null ? null : name.clone();
+    }
+
+    //public Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Computes the identity of the data of a transfer.
+     *
+     * @param streams The contents of the streams, by stream ID.
+     * @return The SHA-256 hash of the number, the lengths and the contents
+     * of the streams.
+     */
+    public static byte[] identity(List<byte[]> streams) {
+        final MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(streams.size()).array());
+        for (byte[] stream : streams) {
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(stream.length).array());
+            digest.update(stream);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Computes the name of a file, as send in the SYN.
+     *
+     * @param fileName The name of the file, without its directories.
+     * @return The SHA-256 hash of the name (UTF-8).
+     */
+    public static byte[] nameOf(String fileName) {
+        return sha256().digest(fileName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes the checkpoint in the content of a SYN or SYN-ACK.
+     *
+     * @param content The content of the packet.
+     * @param offset The start of the checkpoint, after the parameters.
+     * @return The checkpoint.
+     * @throws IllegalArgumentException If the content holds no valid
+     * checkpoint.
+     */
+    public static Checkpoint decode(byte[] content, int offset) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(content, offset, content.length - offset);
+            final byte[] identity = new byte[IDENTITY_SIZE];
+            buffer.get(identity);
+            final int[] offsets = new int[Short.toUnsignedInt(buffer.getShort())];
+            for (int stream = 0; stream < offsets.length; stream++) {
+                offsets[stream] = buffer.getInt();
+            }
+            byte[] name = null;
+            if (buffer.remaining() >= IDENTITY_SIZE) {
+                name = new byte[IDENTITY_SIZE];
+                buffer.get(name);
+            }
+            return new Checkpoint(identity, offsets, name);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException exception) {
+            throw new IllegalArgumentException("The content is to short for the checkpoint!");
+        }
+    }
+
+    /**
+     * Encodes the checkpoint, to be added to the parameters of a SYN or
+     * SYN-ACK.
+     *
+     * @return The content.
+     */
+    public byte[] encode() {
+        final ByteBuffer buffer = ByteBuffer.allocate(IDENTITY_SIZE + Short.BYTES + offsets.length * Integer.BYTES + (name == null ? 0 : IDENTITY_SIZE));
+        buffer.put(identity);
+        buffer.putShort((short) offsets.length);
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        if (name != null) {
+            buffer.put(name);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Appends the checkpoint to the parameters in a SYN or SYN-ACK.
+     *
+     * @param parameters The encoded parameters.
+     * @return The content.
+     */
+    public byte[] appendTo(byte[] parameters) {
+        final byte[] checkpoint = encode();
+        return ByteBuffer.allocate(parameters.length + checkpoint.length).put(parameters).put(checkpoint).array();
+    }
+
+    /**
+     * Checks if this checkpoint belongs to some data.
+     *
+     * @param identity The identity of the data.
+     * @return True if the identities are equal.
+     */
+    public boolean isOf(byte[] identity) {
+        return MessageDigest.isEqual(this.identity, identity);
+    }
+
+    /**
+     * Get the SHA-256 hash of all streams.
+     *
+     * @return A copy of the identity.
+     */
+    public byte[] getIdentity() {
+        return identity.clone();
+    }
+
+    /**
+     * Get the SHA-256 hash of the file name.
+     *
+     * @return A copy of the name, null if the SYN has none.
+     */
+    public byte[] getName() {
+        return name == null ? null : name.clone();
+    }
+
+    /**
+     * Get the number of bytes the receiver has of a stream.
+     *
+     * @param streamId The stream ID.
+     * @return The offset to go on from, 0 for an unknown stream.
+     */
+    public int getOffset(int streamId) {
+        return streamId < offsets.length ? offsets[streamId] : 0;
+    }
+
+    /**
+     * <b>toString implemented.</b>
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Offsets: " + Arrays.toString(offsets);
+    }
+
+    //private Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return The digest.
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+}
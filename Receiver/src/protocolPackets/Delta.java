@@ -0,0 +1,212 @@
+package protocolPackets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A new version of a file, described by the blocks of the old version the
+ * receiver has (see Signature) and the bytes between them.
+ *
+ * In a delta transfer the receiver sends the Signature of its old version in
+ * the ACKs of SIGNATURE_STREAM first: the sender asks for the next part with
+ * empty packets, the ACK of the last part has the end flag. Then stream 0
+ * holds the delta instead of the file, so only the changed bytes are sent.
+ *
+ * Content layout (big endian): length of the new file (long), then
+ * instructions until the file is complete: COPY, first block (int), number of
+ * blocks (int) or LITERAL, number of bytes (int), the bytes.
+ */
+public final class Delta {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    //Static Public:
+    /**
+     * The stream whose ACKs hold the Signature.
+     */
+    public final static int SIGNATURE_STREAM = 1;
+
+    /**
+     * Instruction: copy blocks of the old version.
+     */
+    public final static int COPY = 1;
+
+    /**
+     * Instruction: the bytes follow.
+     */
+    public final static int LITERAL = 2;
+
+    //Constructors
+    //--------------------------------------------------------------------------
+    /**
+     * There are static methods only.
+     */
+    private Delta() {
+    }
+
+    //public Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Encodes a file as delta to the old version of the receiver.
+     *
+     * The rolling checksum is moved over the file one byte at a time, a
+     * block whose strong hash matches as well is copied. Blocks that follow
+     * each other in both versions become one instruction.
+     *
+     * @param data The new version.
+     * @param basis The Signature of the old version, null to send all bytes.
+     * @return The content of stream 0.
+     */
+    public static byte[] encode(byte[] data, Signature basis) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(data.length);
+            if (basis == null || basis.getBlocks() == 0 || data.length < basis.getBlockSize()) {
+                literal(output, data, 0, data.length);
+                return bytes.toByteArray();
+            }
+            final int blockSize = basis.getBlockSize();
+            final Map<Integer, List<Integer>> blocks = index(basis);
+            // most positions match no block, look those up without boxing
+            final boolean[] tags = new boolean[1 << 16];
+            for (int block = 0; block < basis.getBlocks(); block++) {
+                tags[tag(basis.getRolling(block))] = true;
+            }
+            final MessageDigest digest = Signature.digest();
+            int literalStart = 0;
+            int copyStart = -1;
+            int copyCount = 0;
+            int position = 0;
+            int checksum = Signature.rolling(data, 0, blockSize);
+            while (position + blockSize <= data.length) {
+                final int match = tags[tag(checksum)] ? find(basis, blocks.get(checksum), digest, data, position, copyStart + copyCount) : -1;
+                if (match >= 0) {
+                    if (position > literalStart) {
+                        copy(output, copyStart, copyCount);
+                        copyCount = 0;
+                        literal(output, data, literalStart, position - literalStart);
+                    }
+                    if (copyCount == 0 || match != copyStart + copyCount) {
+                        copy(output, copyStart, copyCount);
+                        copyStart = match;
+                        copyCount = 0;
+                    }
+                    copyCount++;
+                    position += blockSize;
+                    literalStart = position;
+                    if (position + blockSize <= data.length) {
+                        checksum = Signature.rolling(data, position, blockSize);
+                    }
+                } else {
+                    if (position + blockSize < data.length) {
+                        checksum = Signature.roll(checksum, data[position], data[position + blockSize], blockSize);
+                    }
+                    position++;
+                }
+            }
+            copy(output, copyStart, copyCount);
+            literal(output, data, literalStart, data.length - literalStart);
+        } catch (IOException exception) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    //private Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Maps the rolling checksums of the old version to its blocks.
+     *
+     * @param basis The Signature of the old version.
+     * @return The blocks, by rolling checksum.
+     */
+    private static Map<Integer, List<Integer>> index(Signature basis) {
+        final Map<Integer, List<Integer>> blocks = new HashMap<>();
+        for (int block = 0; block < basis.getBlocks(); block++) {
+            blocks.computeIfAbsent(basis.getRolling(block), rolling -> new ArrayList<>(1)).add(block);
+        }
+        return blocks;
+    }
+
+    /**
+     * Folds a rolling checksum to 16 bits.
+     *
+     * @param checksum The rolling checksum.
+     * @return The tag, from 0 to 65535.
+     */
+    private static int tag(int checksum) {
+        return (checksum ^ checksum >>> 16) & 0xffff;
+    }
+
+    /**
+     * Finds the block of the old version at a position of the new one.
+     *
+     * @param basis The Signature of the old version.
+     * @param candidates The blocks with the same rolling checksum, null if
+     * there are none.
+     * @param digest The digest for the strong hash.
+     * @param data The new version.
+     * @param position The start of the block in the new version.
+     * @param preferred The block that would continue the last copy.
+     * @return The block, -1 if there is none.
+     */
+    private static int find(Signature basis, List<Integer> candidates, MessageDigest digest, byte[] data, int position, int preferred) {
+        if (candidates == null) {
+            return -1;
+        }
+        final byte[] hash = Signature.strong(digest, data, position, basis.getBlockSize());
+        int match = -1;
+        for (int block : candidates) {
+            if (basis.isStrong(block, hash)) {
+                if (block == preferred) {
+                    return block;
+                }
+                if (match < 0) {
+                    match = block;
+                }
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Writes a copy instruction, if there are blocks to copy.
+     *
+     * @param output The delta.
+     * @param start The first block.
+     * @param count The number of blocks.
+     * @throws IOException Never, the delta is in memory.
+     */
+    private static void copy(DataOutputStream output, int start, int count) throws IOException {
+        if (count > 0) {
+            output.writeByte(COPY);
+            output.writeInt(start);
+            output.writeInt(count);
+        }
+    }
+
+    /**
+     * Writes a literal instruction, if there are bytes.
+     *
+     * @param output The delta.
+     * @param data The new version.
+     * @param offset The start of the bytes.
+     * @param length The number of bytes.
+     * @throws IOException Never, the delta is in memory.
+     */
+    private static void literal(DataOutputStream output, byte[] data, int offset, int length) throws IOException {
+        if (length > 0) {
+            output.writeByte(LITERAL);
+            output.writeInt(length);
+            output.write(data, offset, length);
+        }
+    }
+
+}
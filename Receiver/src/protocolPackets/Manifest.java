@@ -0,0 +1,284 @@
+package protocolPackets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The list of the directories and files of a directory transfer.
+ *
+ * It is the content of stream 0 and is sent before anything else, so the
+ * receiver can create the tree and knows where each byte of the other streams
+ * belongs. The files are spread over the streams 1 to getStreams() in turn:
+ * file n (counting the files only) is sent in stream 1 + n % getStreams(),
+ * right after the file before it in the same stream. So there is no handshake
+ * per file, and a small file does not wait behind a big one.
+ *
+ * Content layout (big endian): streams (short), number of entries (int), then
+ * per entry: path (modified UTF-8, '/' between the names), size (long, -1 for
+ * a directory), time of the last modification (long, ms since the epoch).
+ */
+public final class Manifest {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    //Static Public:
+    /**
+     * The size of a directory entry.
+     */
+    public final static long DIRECTORY = -1;
+
+    //Private:
+    /**
+     * The number of streams the files are spread over.
+     */
+    final private int streams;
+
+    /**
+     * The directories and files, parents before their content.
+     */
+    final private List<Entry> entries;
+
+    //Constructors
+    //--------------------------------------------------------------------------
+    /**
+     * Initialize the manifest.
+     *
+     * @param streams The number of streams the files are spread over.
+     * @param entries The directories and files, parents before their content.
+     * @throws IllegalArgumentException If the number of streams is out of
+     * range.
+     */
+    public Manifest(int streams, List<Entry> entries) {
+        if (streams < 0 || streams >= ConnectionParameters.MAX_STREAMS) {
+            throw new IllegalArgumentException("The number of streams must be between 0 and " + (ConnectionParameters.MAX_STREAMS - 1) + "!");
+        }
+        if (streams == 0 && entries.stream().anyMatch(entry -> !entry.isDirectory())) {
+            throw new IllegalArgumentException("There must be a stream for the files!");
+        }
+        this.streams = streams;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    //public Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Decodes the manifest in the content of stream 0.
+     *
+     * @param content The content of the stream.
+     * @return The manifest.
+     * @throws IllegalArgumentException If the content holds no valid
+     * manifest.
+     */
+    public static Manifest decode(byte[] content) {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(content))) {
+            final int streams = input.readUnsignedShort();
+            final int count = input.readInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("The number of entries is negative!");
+            }
+            final List<Entry> entries = new ArrayList<>();
+            for (int index = 0; index < count; index++) {
+                entries.add(new Entry(input.readUTF(), input.readLong(), input.readLong()));
+            }
+            return new Manifest(streams, entries);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("The content is to short for the manifest!");
+        }
+    }
+
+    /**
+     * Encodes the manifest as content of stream 0.
+     *
+     * @return The content.
+     */
+    public byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeShort(getStreams());
+            output.writeInt(getEntries().size());
+            for (Entry entry : getEntries()) {
+                output.writeUTF(entry.getPath());
+                output.writeLong(entry.getSize());
+                output.writeLong(entry.getModified());
+            }
+        } catch (IOException exception) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the files of a stream, in the order they are sent.
+     *
+     * @param streamId The stream ID, from 1 to getStreams().
+     * @return The files.
+     */
+    public List<Entry> getFiles(int streamId) {
+        final List<Entry> files = new ArrayList<>();
+        int file = 0;
+        for (Entry entry : getEntries()) {
+            if (!entry.isDirectory()) {
+                if (getStream(file) == streamId) {
+                    files.add(entry);
+                }
+                file++;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get the stream a file is sent in.
+     *
+     * @param file The number of the file, counting the files only.
+     * @return The stream ID.
+     */
+    public int getStream(int file) {
+        return 1 + file % getStreams();
+    }
+
+    /**
+     * Get the number of streams the files are spread over.
+     *
+     * @return The number of streams, without stream 0.
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * Get the directories and files.
+     *
+     * @return The entries, parents before their content.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * <b>toString implemented.</b>
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Entries: " + getEntries().size()
+                + ", Streams: " + getStreams();
+    }
+
+    /**
+     * A directory or file of the manifest.
+     */
+    public static final class Entry {
+
+        //Object Variables
+        //----------------------------------------------------------------------
+        //Private:
+        /**
+         * The path relative to the transferred directory.
+         */
+        final private String path;
+
+        /**
+         * The number of bytes, DIRECTORY for a directory.
+         */
+        final private long size;
+
+        /**
+         * The time of the last modification in ms since the epoch.
+         */
+        final private long modified;
+
+        //Constructors
+        //----------------------------------------------------------------------
+        /**
+         * Initialize the entry.
+         *
+         * @param path The path relative to the transferred directory, with '/'
+         * between the names. It must not leave the directory.
+         * @param size The number of bytes, DIRECTORY for a directory.
+         * @param modified The time of the last modification in ms since the
+         * epoch.
+         * @throws IllegalArgumentException If the path or size is invalid.
+         */
+        public Entry(String path, long size, long modified) {
+            if (!isRelative(path)) {
+                throw new IllegalArgumentException("The path \"" + path + "\" is not inside the directory!");
+            }
+            if (size < DIRECTORY) {
+                throw new IllegalArgumentException("The size must not be negative!");
+            }
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        //public Methods
+        //----------------------------------------------------------------------
+        /**
+         * Get the path relative to the transferred directory.
+         *
+         * @return The path, with '/' between the names.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the number of bytes.
+         *
+         * @return The size, DIRECTORY for a directory.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Get the time of the last modification.
+         *
+         * @return The time in ms since the epoch.
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Checks if the entry is a directory.
+         *
+         * @return True for a directory, false for a file.
+         */
+        public boolean isDirectory() {
+            return size == DIRECTORY;
+        }
+
+        //private Methods
+        //----------------------------------------------------------------------
+        /**
+         * Checks if a path stays inside the directory on every platform: no
+         * root, drive or empty name and no "." or "..".
+         *
+         * @param path The path.
+         * @return True if the path is relative.
+         */
+        private static boolean isRelative(String path) {
+            if (path.isEmpty() || path.indexOf('\\') >= 0 || path.indexOf(':') >= 0 || path.indexOf('\0') >= 0) {
+                return false;
+            }
+            for (String name : path.split("/", -1)) {
+                if (name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
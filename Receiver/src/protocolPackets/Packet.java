@@ -14,8 +14,18 @@ public interface Packet {
     
     boolean isACK();
 
-	int getSequenceNumber();
-
 	boolean isEndFlag();
 
+	boolean isSYN();
+
+	boolean isFIN();
+
+	boolean isCompressed();
+
+	int getConnectionId();
+
+	int getStreamId();
+
+	int getSequenceNumber();
+    
 }
@@ -0,0 +1,54 @@
+package receiver;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * <b>Sends through a DatagramChannel in non-blocking mode.</b>
+ *
+ * The socket of a channel can only send in blocking mode, but a shard of the
+ * ShardedReceiverServer has to answer through the channel its selector
+ * waits on. A datagram that does not fit into the send buffer right now is
+ * lost, like on a full link. Only send is supported.
+ */
+final class ChannelSocket extends DatagramSocket {
+
+	/**
+	 * <b>The channel to send through, it is not closed by this socket.</b>
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param channel
+	 *            is the channel to send through
+	 * @throws SocketException
+	 *             when the (unused) socket of the super class can not be
+	 *             created
+	 */
+	ChannelSocket(DatagramChannel channel) throws SocketException {
+		super((SocketAddress) null);
+		this.channel = channel;
+	}
+
+	@Override
+	public void send(DatagramPacket packet) throws IOException {
+		channel.send(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()), packet.getSocketAddress());
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public int getLocalPort() {
+		return channel.socket().getLocalPort();
+	}
+}
@@ -0,0 +1,244 @@
+package receiver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import protocolPackets.Delta;
+import protocolPackets.Signature;
+
+/**
+ * <b>Writes a new version of a file from its Delta to an old version.</b>
+ *
+ * The instructions are read as the packets arrive: the bytes of a literal go
+ * to the file, a copy instruction reads the blocks from the old version. The
+ * file ends at the length in front of the Delta, the padding of the last
+ * packet is dropped.
+ */
+final class DeltaOutputStream extends OutputStream {
+
+	/**
+	 * <b>Size of the buffer in front of the file in bytes.</b>
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * <b>The file to write.</b>
+	 */
+	private final Path target;
+
+	/**
+	 * <b>The old version.</b>
+	 */
+	private final Path basis;
+
+	/**
+	 * <b>The Signature of the old version, which the sender knows.</b>
+	 */
+	private final Signature signature;
+
+	/**
+	 * <b>Collects a number of the Delta split over two packets.</b>
+	 */
+	private final ByteBuffer field;
+
+	/**
+	 * <b>The instruction being read (0 between two instructions).</b>
+	 */
+	private int instruction;
+
+	/**
+	 * <b>Number of bytes of the literal still to come.</b>
+	 */
+	private int literal;
+
+	/**
+	 * <b>Number of bytes the file still misses (-1 before the length has
+	 * arrived).</b>
+	 */
+	private long remaining;
+
+	/**
+	 * <b>Writes the file (null before the length has arrived and when
+	 * closed).</b>
+	 */
+	private OutputStream output;
+
+	/**
+	 * <b>Reads the old version (null before the first copy).</b>
+	 */
+	private FileChannel input;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param target
+	 *            is the file to write
+	 * @param basis
+	 *            is the old version
+	 * @param signature
+	 *            is the Signature of the old version
+	 */
+	DeltaOutputStream(Path target, Path basis, Signature signature) {
+		this.target = target;
+		this.basis = basis;
+		this.signature = signature;
+		this.field = ByteBuffer.allocate(Long.BYTES);
+		this.remaining = -1;
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	/**
+	 * <b>Carry out the next bytes of the Delta.</b>
+	 *
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 * @throws IOException
+	 *             when the Delta is broken or a file can not be used
+	 */
+	@Override
+	public void write(byte[] content, int offset, int length) throws IOException {
+		final int end = offset + length;
+		while (offset < end && remaining != 0) {
+			if (literal > 0) {
+				final int bytes = Math.min(literal, end - offset);
+				output.write(content, offset, bytes);
+				offset += bytes;
+				literal -= bytes;
+				remaining -= bytes;
+			} else if (remaining < 0) {
+				offset = fill(content, offset, end, Long.BYTES);
+				if (field.hasRemaining()) {
+					return;
+				}
+				field.flip();
+				remaining = field.getLong();
+				field.clear();
+				if (remaining < 0) {
+					throw new IOException("The Delta for " + target + " is broken.");
+				}
+				output = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE);
+			} else if (instruction == 0) {
+				instruction = content[offset++];
+				if (instruction != Delta.COPY && instruction != Delta.LITERAL) {
+					throw new IOException("The Delta for " + target + " is broken.");
+				}
+			} else {
+				offset = fill(content, offset, end, instruction == Delta.COPY ? 2 * Integer.BYTES : Integer.BYTES);
+				if (field.hasRemaining()) {
+					return;
+				}
+				field.flip();
+				if (instruction == Delta.COPY) {
+					copy(field.getInt(), field.getInt());
+				} else {
+					literal = field.getInt();
+					if (literal < 1 || literal > remaining) {
+						throw new IOException("The Delta for " + target + " is broken.");
+					}
+				}
+				field.clear();
+				instruction = 0;
+			}
+		}
+	}
+
+	/**
+	 * <b>Hand everything received so far to the file system.</b>
+	 *
+	 * @see java.io.OutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (output != null) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * <b>Close the files, what has been written so far is kept.</b>
+	 *
+	 * @see java.io.OutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (input != null) {
+				input.close();
+				input = null;
+			}
+		} finally {
+			if (output != null) {
+				final OutputStream closing = output;
+				output = null;
+				closing.close();
+			}
+		}
+	}
+
+	/**
+	 * <b>Read the bytes of a number of the Delta.</b>
+	 *
+	 * @param content
+	 *            is the array holding the content
+	 * @param offset
+	 *            is the start of the number in the array
+	 * @param end
+	 *            is the end of the content in the array
+	 * @param size
+	 *            is the size of the number in bytes
+	 * @return the offset after the bytes read
+	 */
+	private int fill(byte[] content, int offset, int end, int size) {
+		field.limit(size);
+		final int bytes = Math.min(field.remaining(), end - offset);
+		field.put(content, offset, bytes);
+		return offset + bytes;
+	}
+
+	/**
+	 * <b>Copy blocks of the old version to the file.</b>
+	 *
+	 * @param start
+	 *            is the first block
+	 * @param count
+	 *            is the number of blocks
+	 * @throws IOException
+	 *             when the blocks are not in the old version or it can not be
+	 *             read
+	 */
+	private void copy(int start, int count) throws IOException {
+		final long bytes = (long) count * signature.getBlockSize();
+		if (start < 0 || count < 1 || (long) start + count > signature.getBlocks() || bytes > remaining) {
+			throw new IOException("The Delta for " + target + " is broken.");
+		}
+		if (input == null) {
+			input = FileChannel.open(basis, StandardOpenOption.READ);
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bytes, BUFFER_SIZE));
+		long position = (long) start * signature.getBlockSize();
+		long left = bytes;
+		while (left > 0) {
+			buffer.clear().limit((int) Math.min(left, buffer.capacity()));
+			if (input.read(buffer, position) < 0) {
+				throw new IOException("The file " + basis + " got shorter.");
+			}
+			buffer.flip();
+			output.write(buffer.array(), 0, buffer.limit());
+			position += buffer.limit();
+			left -= buffer.limit();
+		}
+		remaining -= bytes;
+	}
+}
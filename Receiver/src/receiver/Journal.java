@@ -0,0 +1,238 @@
+package receiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import protocolPackets.Checkpoint;
+import protocolPackets.ConnectionParameters;
+
+/**
+ * <b>The checkpoint of a resumable transfer, kept next to its file.</b>
+ *
+ * It holds the identity of the data and, per stream, the number of bytes in
+ * the file and if the stream is finished. It is replaced as a whole (written
+ * to a temporary file first), so a crash leaves either the old or the new
+ * journal. The bytes it names have been written to the file before, so the
+ * file may hold more than the journal says, never less.
+ *
+ * Layout (big endian): identity (32 bytes), number of streams (short), per
+ * stream: stream ID (short), offset (long), finished (boolean).
+ */
+final class Journal {
+
+	/**
+	 * <b>Extension added to the file of the transfer.</b>
+	 */
+	static final String EXTENSION = ".journal";
+
+	/**
+	 * <b>The SHA-256 hash of all streams.</b>
+	 */
+	private final byte[] identity;
+
+	/**
+	 * <b>Map that maps a stream ID to the number of bytes in its file.</b>
+	 */
+	private final Map<Integer, Long> offsets;
+
+	/**
+	 * <b>The IDs of the finished streams.</b>
+	 */
+	private final Set<Integer> finished;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param identity
+	 *            is the SHA-256 hash of all streams
+	 */
+	Journal(byte[] identity) {
+		this.identity = identity.clone();
+		this.offsets = new HashMap<>();
+		this.finished = new HashSet<>();
+	}
+
+	/**
+	 * <b>Get the journal of a transfer stored in a file.</b>
+	 *
+	 * @param file
+	 *            is the file of the transfer (stream 0)
+	 * @return the path of the journal
+	 */
+	static Path pathOf(Path file) {
+		return file.resolveSibling(file.getFileName() + EXTENSION);
+	}
+
+	/**
+	 * <b>Get the file of the transfer a journal belongs to.</b>
+	 *
+	 * @param journal
+	 *            is the path of the journal
+	 * @return the file of the transfer (stream 0)
+	 */
+	static Path fileOf(Path journal) {
+		final String name = journal.getFileName().toString();
+		return journal.resolveSibling(name.substring(0, name.length() - EXTENSION.length()));
+	}
+
+	/**
+	 * <b>Find the journal of some data in a directory.</b>
+	 * Broken journals are skipped.
+	 *
+	 * @param directory
+	 *            is the directory the files of the transfers are stored in
+	 * @param identity
+	 *            is the identity of the data
+	 * @return the path of the journal, null if there is none
+	 * @throws IOException
+	 *             when the directory can not be read
+	 */
+	static Path find(Path directory, byte[] identity) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return null;
+		}
+		try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			for (Path journal : journals) {
+				final byte[] stored = new byte[Checkpoint.IDENTITY_SIZE];
+				try (InputStream input = Files.newInputStream(journal)) {
+					if (input.readNBytes(stored, 0, stored.length) == stored.length && MessageDigest.isEqual(stored, identity)) {
+						return journal;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * <b>Read a journal.</b>
+	 *
+	 * @param path
+	 *            is the path of the journal
+	 * @return the journal
+	 * @throws IOException
+	 *             when it can not be read or is broken
+	 */
+	static Journal read(Path path) throws IOException {
+		try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+			final byte[] identity = new byte[Checkpoint.IDENTITY_SIZE];
+			input.readFully(identity);
+			final Journal journal = new Journal(identity);
+			final int count = input.readUnsignedShort();
+			for (int index = 0; index < count; index++) {
+				final int streamId = input.readUnsignedShort();
+				final long offset = input.readLong();
+				if (offset < 0) {
+					throw new IOException("The journal " + path + " is broken.");
+				}
+				journal.put(streamId, offset, input.readBoolean());
+			}
+			return journal;
+		}
+	}
+
+	/**
+	 * <b>Write the journal, replacing the old one.</b>
+	 *
+	 * @param path
+	 *            is the path of the journal
+	 * @throws IOException
+	 *             when it can not be written
+	 */
+	void write(Path path) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			output.write(identity);
+			output.writeShort(offsets.size());
+			for (Map.Entry<Integer, Long> entry : offsets.entrySet()) {
+				output.writeShort(entry.getKey());
+				output.writeLong(entry.getValue());
+				output.writeBoolean(finished.contains(entry.getKey()));
+			}
+		}
+		final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.write(temporary, bytes.toByteArray());
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * <b>Store what a stream has.</b>
+	 *
+	 * @param streamId
+	 *            is the stream ID
+	 * @param offset
+	 *            is the number of bytes in its file
+	 * @param complete
+	 *            is true, if the stream is finished
+	 */
+	void put(int streamId, long offset, boolean complete) {
+		offsets.put(streamId, offset);
+		if (complete) {
+			finished.add(streamId);
+		} else {
+			finished.remove(streamId);
+		}
+	}
+
+	/**
+	 * <b>Get the checkpoint to answer the SYN with.</b>
+	 *
+	 * @param skipped
+	 *            are the IDs of the streams that start over
+	 * @return the checkpoint (streams a sender can not have are left out)
+	 */
+	Checkpoint toCheckpoint(Collection<Integer> skipped) {
+		final int[] received = new int[offsets.isEmpty() ? 0 : Math.min(Collections.max(offsets.keySet()) + 1, ConnectionParameters.MAX_STREAMS)];
+		for (Map.Entry<Integer, Long> entry : offsets.entrySet()) {
+			if (entry.getKey() < received.length && !skipped.contains(entry.getKey())) {
+				received[entry.getKey()] = (int) Math.min(entry.getValue(), Integer.MAX_VALUE);
+			}
+		}
+		return new Checkpoint(identity, received);
+	}
+
+	/**
+	 * <b>Get the number of bytes in the file of a stream.</b>
+	 *
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the number of bytes, 0 for an unknown stream
+	 */
+	long getOffset(int streamId) {
+		return offsets.getOrDefault(streamId, 0L);
+	}
+
+	/**
+	 * <b>Get if a stream is finished.</b>
+	 *
+	 * @param streamId
+	 *            is the stream ID
+	 * @return true, if its last packet has arrived
+	 */
+	boolean isFinished(int streamId) {
+		return finished.contains(streamId);
+	}
+
+	/**
+	 * <b>Get the IDs of the streams in the journal.</b>
+	 *
+	 * @return the stream IDs
+	 */
+	Set<Integer> getStreams() {
+		return offsets.keySet();
+	}
+}
@@ -2,6 +2,13 @@ package receiver;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import javax.management.JMException;
+
+import metrics.TransferMetrics;
+import trace.PacketTraceRecorder;
 
 public class Main {
 	
@@ -9,6 +16,10 @@ public class Main {
 	 * <b>The program starts here.</b><br>
 	 * Call the program with argument "-help" to see the use instructions<br>
 	 * <br>
+	 * Optional: <b>-server</b> receives every transfer on a thread of its own,
+	 * <b>-shards &lt;n&gt;</b> receives with n sockets on one port,
+	 * <b>-trace &lt;file&gt;</b> records every datagram<br>
+	 * 
 	 * @param args contains the given arguments
 	 */
 	public static void main(String[] args) {
@@ -17,11 +28,78 @@ public class Main {
 			// show help
 			showHelp();
 		} 
+		// check the optional arguments
+		else if (!validOptions(args)) {
+			showError(
+					"The optional arguments are \"-server\" or \"-shards <n>\" and \"-trace <file>\"."
+					+ "\r\n"
+					+ "If you need help, start the program with the -help argument."
+					);
+		}
+		// server start
+		else if (Arrays.asList(args).contains("-server")) {
+			try {
+				// create a new ReceiverServer object
+				final ReceiverServer server = new ReceiverServer("files/file.zip");
+				// make the metrics visible in JConsole
+				registerMetrics(server.getMetrics(), "files/file.zip");
+				// capture every datagram if wanted
+				final String traceFile = findTraceFile(args);
+				if (traceFile != null) {
+					final PacketTraceRecorder recorder = startTrace(traceFile);
+					if (recorder == null) {
+						return;
+					}
+					server.setTraceRecorder(recorder);
+				}
+				// start serving
+				server.serve();
+			} catch (IOException exception) {
+				showError(
+						"Sorry! The socket to receive with could not be opened."
+						);
+			}
+		}
+		// sharded server start
+		else if (findShards(args) > 0) {
+			try {
+				// create a new ShardedReceiverServer object
+				final ShardedReceiverServer server = new ShardedReceiverServer("files/file.zip", findShards(args));
+				// make the metrics visible in JConsole
+				registerMetrics(server.getMetrics(), "files/file.zip");
+				// capture every datagram if wanted
+				final String traceFile = findTraceFile(args);
+				if (traceFile != null) {
+					final PacketTraceRecorder recorder = startTrace(traceFile);
+					if (recorder == null) {
+						return;
+					}
+					server.setTraceRecorder(recorder);
+				}
+				// start serving
+				server.serve();
+			} catch (IOException exception) {
+				showError(
+						"Sorry! The sockets to receive with could not be opened."
+						);
+			}
+		}
 		// normal start
 		else {
 			try {
 				// create a new Receiver object
 				final Receiver receiver = new Receiver("files/file.zip");
+				// make the metrics visible in JConsole
+				registerMetrics(receiver.getMetrics(), "files/file.zip");
+				// capture every datagram if wanted
+				final String traceFile = findTraceFile(args);
+				if (traceFile != null) {
+					final PacketTraceRecorder recorder = startTrace(traceFile);
+					if (recorder == null) {
+						return;
+					}
+					receiver.setTraceRecorder(recorder);
+				}
 				// start receiving
 				receiver.receive();
 			} catch (FileNotFoundException exception) {
@@ -48,9 +126,130 @@ public class Main {
 				+ "\r\n"
 				+ "The program has to be called with no arguments.\r\n"
 				+ "\r\n"
+				+ "Any number of transfers can be received at once. Every file is\r\n"
+				+ "stored as \"files/file-<connection ID>.zip\", every directory\r\n"
+				+ "as \"files/file-<connection ID>\".\r\n"
+				+ "\r\n"
+				+ "Optional: -server\r\n"
+				+ "\tReceives every transfer on a thread of its own (a virtual\r\n"
+				+ "\tthread on Java 21 and later), for thousands of transfers.\r\n"
+				+ "\r\n"
+				+ "Optional: -shards <n>\r\n"
+				+ "\tReceives with n sockets on the same port, each with a thread\r\n"
+				+ "\tof its own, for high packet rates. Use the number of cores and\r\n"
+				+ "\tbind the process to them with taskset. Not with -server.\r\n"
+				+ "\r\n"
+				+ "Optional: -trace <file>\r\n"
+				+ "\tRecords every datagram send or received in the given file.\r\n"
+				+ "\tAnalyze it with \"java trace.TraceAnalyzer <file>\".\r\n"
+				+ "\r\n"
 				+ "Have fun!");
 	}
 	
+	/**
+	 * <b>Check the optional arguments.</b>
+	 * 
+	 * @param args contains the given arguments
+	 * @return true, if there are only "-server" or "-shards &lt;n&gt;" and
+	 *         "-trace &lt;file&gt;", each at most once
+	 */
+	private static boolean validOptions(String[] args) {
+		boolean server = false;
+		boolean trace = false;
+		for (int index = 0; index < args.length; index++) {
+			if ("-server".equals(args[index]) && !server) {
+				server = true;
+			} else if ("-shards".equals(args[index]) && !server && index + 1 < args.length && args[index + 1].matches("[1-9][0-9]{0,3}")) {
+				server = true;
+				// skip the number
+				index++;
+			} else if ("-trace".equals(args[index]) && !trace && index + 1 < args.length) {
+				trace = true;
+				// skip the file
+				index++;
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * <b>Get the file given with "-trace".</b>
+	 * 
+	 * @param args contains the given (valid) arguments
+	 * @return the trace file, null if capturing is not wanted
+	 */
+	private static String findTraceFile(String[] args) {
+		for (int index = 0; index + 1 < args.length; index++) {
+			if ("-trace".equals(args[index])) {
+				return args[index + 1];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * <b>Get the number of shards given with "-shards".</b>
+	 * 
+	 * @param args contains the given (valid) arguments
+	 * @return the number of shards, 0 if sharding is not wanted
+	 */
+	private static int findShards(String[] args) {
+		for (int index = 0; index + 1 < args.length; index++) {
+			if ("-shards".equals(args[index])) {
+				return Integer.parseInt(args[index + 1]);
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * <b>Register the metrics of the receiver as MBean.</b>
+	 * Receiving works without them, so a failure is only reported.
+	 * 
+	 * @param metrics are the metrics to register
+	 * @param name is the name of the receiver
+	 */
+	private static void registerMetrics(TransferMetrics metrics, String name) {
+		try {
+			metrics.register("Receiver", name);
+		} catch (JMException exception) {
+			showError("The metrics could not be registered: " + exception.getMessage());
+		}
+	}
+	
+	/**
+	 * <b>Create the recorder for capturing.</b>
+	 * The Receiver runs until it is killed, so the trace is closed by a
+	 * shutdown hook. A trace file that can not be created is reported on its
+	 * own, it is no error of the transfer.
+	 * 
+	 * @param file is the trace file
+	 * @return the recorder, null if the trace file can not be created
+	 */
+	private static PacketTraceRecorder startTrace(String file) {
+		final PacketTraceRecorder recorder;
+		try {
+			recorder = new PacketTraceRecorder(Paths.get(file));
+		} catch (IOException exception) {
+			showError(
+					"Sorry! The trace file \"" + file + "\" could not be created."
+					+ "\r\n"
+					+ "Please check the path or start without -trace."
+					);
+			return null;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				recorder.close();
+			} catch (IOException exception) {
+				showError("Sorry! The trace could not be closed.");
+			}
+		}));
+		return recorder;
+	}
+	
 	/**
 	 * <b>Print the given Error Message.</b>
 	 * 
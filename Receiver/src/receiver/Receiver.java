@@ -1,39 +1,62 @@
 package receiver;
 
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import decorator.BrokenDatagramSocket;
+import decorator.DatagramSocketFactory;
+import events.PacketReceivedEvent;
+import events.PacketSentEvent;
+import events.StateTransitionEvent;
 import generics.Pair;
+import metrics.TransferMetrics;
 import protocolPackets.AlternatingBitPacket;
+import protocolPackets.Checkpoint;
+import protocolPackets.ChecksumAlgorithm;
+import protocolPackets.ConnectionParameters;
+import protocolPackets.Packet;
 import receiver.states.Message;
 import receiver.states.State;
 import receiver.states.Transition;
+import trace.PacketTraceRecorder;
+import transport.Network;
+import transport.UdpNetwork;
 
 /**
  * <b>Receiver class.</b>
  * 
- * Sends to port 8765 and receives on port 9876
+ * Receives on port 9876 and answers through the same socket, to the address
+ * and port each packet came from<br>
+ * <br>
+ * Any number of transfers can run at once. The packets are told apart by
+ * the IP-Address of the sender and the connection ID in their header, every
+ * transfer has a Session of its own and is stored in a file of its own (see
+ * getFile(int)). The files of a transfer with several streams are stored
+ * next to it (see getFile(int, int)).<br>
+ * <br>
+ * A transfer starts with a SYN offering the parameters of the sender. The
+ * Receiver chooses the ones to use from the offer and what it supports and
+ * sends them back in a SYN-ACK (see ConnectionParameters). A FIN closes the
+ * transfer, its Session answers late duplicates for a short time (see
+ * Session.TIME_WAIT) and is dropped afterwards.
  */
 public class Receiver {
 
 	/**
-	 * <b>The port to send to.</b>
+	 * <b>The Port to listen to.</b>
 	 */
-	private static final int SEND_PORT = 8765;
+	private static final int RECEIVE_PORT = 9876;
 
 	/**
-	 * <b>The Port to listen to.</b>
+	 * <b>A session without packets for this long in ms is dropped.</b>
 	 */
-	private static final int RECEIVE_PORT = 9876;
+	private static final long SESSION_TIMEOUT = 60 * 1000;
 
 	/**
 	 * <b>Current state.</b>
@@ -41,14 +64,25 @@ public class Receiver {
 	private State currentState;
 
 	/**
-	 * <b>Stores the current sequence number.</b>
+	 * <b>Maps the IP-Address of the sender and the connection ID to the
+	 * Session of a transfer.</b>
 	 */
-	private int currentSeqNr;
+	private final Map<Pair<String, Integer>, Session> sessions;
 
 	/**
-	 * <b>IP-Address of the sender.</b>
+	 * <b>The Session the last packet belongs to.</b>
 	 */
-	private String ipAdress;
+	private Session currentSession;
+
+	/**
+	 * <b>The Stream the last data packet belongs to.</b>
+	 */
+	private Stream currentStream;
+
+	/**
+	 * <b>Time the sessions were last checked for timeouts in ns.</b>
+	 */
+	private long lastSweep;
 
 	/**
 	 * <b>Map that maps a State to its code.</b>
@@ -60,37 +94,61 @@ public class Receiver {
 	 */
 	private final Map<Pair<State, Message>, Transition> transitions;
 
-	/**
-	 * <b>Stores every byte packet.</b>
-	 */
-	private ArrayList<byte[]> data;
-
 	/**
 	 * <b>Store if Receiver is receiving or not.</b>
 	 */
 	private boolean receiving;
 
 	/**
-	 * <b>File to write to.</b>
+	 * <b>File to write to, the connection ID is added to the name.</b>
 	 */
 	private final String file;
+
+	/**
+	 * <b>Socket to receive with, stays open between packets (may be
+	 * null).</b>
+	 */
+	private DatagramSocket socket;
+
+	/**
+	 * <b>Sends the ACKs through the socket to receive with (null if that is
+	 * not open).</b>
+	 */
+	private DatagramSocket sendSocket;
+
+	/**
+	 * <b>Counters and gauges of all transfers.</b>
+	 */
+	private final TransferMetrics metrics;
+
+	/**
+	 * <b>Records every datagram if capturing is enabled (may be null).</b>
+	 */
+	private PacketTraceRecorder traceRecorder;
+
+	/**
+	 * <b>Creates the socket to send with.</b>
+	 */
+	private DatagramSocketFactory socketFactory;
+
+	/**
+	 * <b>Provides the socket and the Clock.</b>
+	 */
+	private Network network;
 	
 	
 	/**
 	 * <b>Constructor with following params.</b>
 	 * 
 	 * @param file
-	 *            is the file to be send
-	 * @param ipAdress
-	 *            is the IP-Address of the receiver
-	 * @throws IOException
-	 *             when an error occurs while reading the file in a byte[]
+	 *            is the file to write to, the connection ID of each
+	 *            transfer is added to the name
 	 */
 	public Receiver(String file) {
 		this.file = file;
 		
-		// init data list
-		this.data = new ArrayList<>();
+		// no transfers yet
+		this.sessions = new HashMap<>();
 		
 		// implement all possible actions
 		this.actions = new HashMap<>();
@@ -103,50 +161,114 @@ public class Receiver {
 		// set start state
 		this.currentState = State.waitForData;
 		
-		// init current sequence nr with -1 to know that this is the start
-		this.currentSeqNr = -1;
-
 		// Receiver is not receiving yet
 		this.receiving = false;
+
+		// no packets counted yet
+		this.metrics = new TransferMetrics();
+
+		// send ACKs with errors
+		this.socketFactory = BrokenDatagramSocket::new;
+
+		// receive from the real network
+		this.network = UdpNetwork.INSTANCE;
 	}
 
 	
 	
 	/**
-	 * <b>Start sending the file.</b>
+	 * <b>Start receiving files, one after another.</b>
 	 * @throws IOException 
 	 * @throws FileNotFoundException 
 	 */
 	public void receive() throws FileNotFoundException, IOException {
 		// program shall run endlessly
 		while (true) {
-			// set receiving true
-			setReceiving(true);
-			System.out.println("Start receiving");
-			
-			// loop as long there was no end-packet
-			while (isReceiving()) {
-				System.out.println();
-				System.out.println(getCurrentState().toString() + " (" + getData().size() * AlternatingBitPacket.PACKETSIZE + " Bytes received)");
-				// get the action of the current state and execute it, next state
-				// will be returned and set as new current state
-				setCurrentState(getActions().get(getCurrentState()).execute());
-			}
-			System.out.println("Finished receiving");
-			
-			// writing file packet by packet
-			try (final FileOutputStream writer = new FileOutputStream(getFile())) {
-				for (final byte[] packet : getData()) {
-					writer.write(packet);
-				}
-			}
-			System.out.println("File stored!");
+			receiveFile();
+		}
+	}
 
-			// clear the data array for next incoming file
-			setData(new ArrayList<>());
-			
-			System.out.println("-------------------------------------------------------------------------");
+	/**
+	 * <b>Receive packets of all transfers until one transfer is stored and
+	 * closed.</b>
+	 * @throws IOException 
+	 * @throws FileNotFoundException 
+	 */
+	public void receiveFile() throws FileNotFoundException, IOException {
+		// set receiving true
+		setReceiving(true);
+		System.out.println("Start receiving");
+		
+		// loop as long there was no end-packet
+		while (isReceiving()) {
+			System.out.println();
+			System.out.println(getCurrentState().toString() + " (" + getSessions().size() + " Sessions)");
+			// get the action of the current state and execute it, next state
+			// will be returned and set as new current state
+			setCurrentState(getActions().get(getCurrentState()).execute());
+		}
+		System.out.println("Finished receiving");
+		for (Stream stream : getCurrentSession().getStreams()) {
+			System.out.println("File " + stream.getFile() + " stored! (" + stream.getBytesReceived() + " Bytes)");
 		}
+		System.out.println(getMetrics().snapshot());
+		System.out.println("-------------------------------------------------------------------------");
+	}
+
+	/**
+	 * <b>Get the file a transfer is stored in.</b>
+	 * The connection ID is added to the name of the file given to the
+	 * constructor, in front of the extension: "files/file.zip" becomes
+	 * "files/file-0000002a.zip" for connection 42.
+	 * 
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the file path as String
+	 */
+	public String getFile(int connectionId) {
+		return Session.fileName(getFile(), connectionId);
+	}
+
+	/**
+	 * <b>Delete the file a transfer is stored in.</b>
+	 * The name the sender gave it and the Journal, which the Receiver keeps
+	 * next to the file, are deleted with it.
+	 * 
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @throws IOException
+	 *             when a file can not be deleted
+	 */
+	public void deleteFile(int connectionId) throws IOException {
+		Session.delete(Paths.get(getFile(connectionId)));
+	}
+
+	/**
+	 * <b>Get the file a stream of a transfer is stored in.</b>
+	 * Stream 0 is stored in getFile(int), the stream ID is added to the
+	 * names of the others: "files/file-0000002a-3.zip" for stream 3.
+	 * 
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the file path as String
+	 */
+	public String getFile(int connectionId, int streamId) {
+		return Session.fileName(getFile(), connectionId, streamId);
+	}
+
+	/**
+	 * <b>Get the directory a directory transfer is stored in.</b>
+	 * It is getFile(int) without extension: "files/file.zip" becomes
+	 * "files/file-0000002a" for connection 42.
+	 * 
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the directory path as String
+	 */
+	public String getDirectory(int connectionId) {
+		return Session.directoryName(getFile(), connectionId);
 	}
 
 	/**
@@ -158,6 +280,47 @@ public class Receiver {
 		return receiving;
 	}
 
+	/**
+	 * <b>Get the counters and gauges of all transfers.</b>
+	 * 
+	 * @return the metrics
+	 */
+	public TransferMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * <b>Set the factory for the socket to send with.</b>
+	 * By default a BrokenDatagramSocket with its standard params is used.
+	 *
+	 * @param socketFactory
+	 *            is the factory to use
+	 */
+	public void setSocketFactory(DatagramSocketFactory socketFactory) {
+		this.socketFactory = socketFactory;
+	}
+
+	/**
+	 * <b>Set where the socket and the Clock come from.</b>
+	 * By default the real network and the wall clock are used.
+	 *
+	 * @param network
+	 *            is the network to use
+	 */
+	public void setNetwork(Network network) {
+		this.network = network;
+	}
+
+	/**
+	 * <b>Enable capturing: every datagram send or received is recorded.</b>
+	 *
+	 * @param traceRecorder
+	 *            is the recorder to use, null disables capturing
+	 */
+	public void setTraceRecorder(PacketTraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
 	
 	
 	
@@ -177,34 +340,141 @@ public class Receiver {
 	 */
 	private void implementTransitions() {
 		// implement transition waitForData -> sendAck -> waitForData
-		getTransitions().put(new Pair<State, Message>(State.waitForData, Message.sendAck), () -> {
-			sendAck();
+		addTransition(State.waitForData, Message.sendAck, () -> {
+			sendAck(false, false);
+			return State.waitForData;
+		});
+
+		// implement transition waitForData -> sendSynAck -> waitForData
+		addTransition(State.waitForData, Message.sendSynAck, () -> {
+			sendAck(true, false);
+			return State.waitForData;
+		});
+
+		// implement transition waitForData -> sendFinAck -> waitForData
+		addTransition(State.waitForData, Message.sendFinAck, () -> {
+			sendAck(false, true);
 			return State.waitForData;
 		});
 	}
 
 	/**
-	 * <b>Builds a ACK and sends it with a BrokenDatagramSocket.</b>
+	 * <b>Record a datagram if capturing is enabled.</b>
+	 * 
+	 * @param direction
+	 *            is the direction of the datagram
+	 * @param packet
+	 *            is the packet inside the datagram
+	 * @param length
+	 *            is the length of the datagram
+	 */
+	private void trace(PacketTraceRecorder.Direction direction, Packet packet, int length) {
+		if (getTraceRecorder() != null) {
+			try {
+				getTraceRecorder().record(direction, packet, length);
+			} catch (IOException exception) {
+				System.err.println("Sorry, the packet trace could not be written. Capturing stopped.");
+				setTraceRecorder(null);
+			}
+		}
+	}
+
+	/**
+	 * <b>Map the code of a Transition to a Pair of State and Message.</b>
+	 * The Transition is wrapped, so that every execution is visible as
+	 * StateTransitionEvent in a flight recording.
+	 * 
+	 * @param from
+	 *            is the state the Transition starts in
+	 * @param message
+	 *            is the Message that causes the Transition
+	 * @param transition
+	 *            is the code of the Transition
+	 */
+	private void addTransition(State from, Message message, Transition transition) {
+		getTransitions().put(new Pair<State, Message>(from, message), () -> {
+			final StateTransitionEvent event = new StateTransitionEvent();
+			event.begin();
+			final State to = transition.execute();
+			if (event.shouldCommit()) {
+				event.from = from.toString();
+				event.to = to.toString();
+				event.cause = message.toString();
+				event.commit();
+			}
+			return to;
+		});
+	}
+
+	/**
+	 * <b>Builds a ACK (or the SYN-ACK with the parameters, or the FIN-ACK) and
+	 * sends it to the address and port of the sender.</b>
+	 * 
+	 * @param syn
+	 *            is true, to answer the SYN
+	 * @param fin
+	 *            is true, to answer the FIN
 	 */
-	private void sendAck() {
+	private void sendAck(boolean syn, boolean fin) {
 		// send the packet with the BrokenDatagramSocket to create errors
-		try (final BrokenDatagramSocket socket = new BrokenDatagramSocket()) {
-			// set sequenceNr depending on which state we are going to
-			// create a packet with SeqNr, ACK = false and content
-			final DatagramPacket packet = new AlternatingBitPacket(getCurrentSeqNr(), true, false, new byte[AlternatingBitPacket.PACKETSIZE], getIpAdress(), SEND_PORT)
-					.createDatagram();
+		try {
+			// the SYN-ACK has the initial sequence number and the parameters
+			final ConnectionParameters parameters = getCurrentSession().getParameters();
+			final int seqNr = syn ? parameters.getInitialSequenceNumber() : fin ? 0 : getCurrentSeqNr();
+			final int streamId = syn || fin ? 0 : getCurrentStream().getId();
+			final byte[] content = syn ? getCurrentSession().getAnswer() : fin ? new byte[0] : getCurrentSession().getAckContent(getCurrentStream());
+			// the last part of the Signature of a delta transfer ends its
+			// stream
+			final boolean endFlag = !syn && !fin && getCurrentSession().isLastAck(getCurrentStream());
+			// create a packet with stream, SeqNr, ACK = true and content
+			final AlternatingBitPacket abPacket = new AlternatingBitPacket(getCurrentSession().getConnectionId(), streamId, seqNr, true, endFlag, syn, fin, content, getIpAdress(), getCurrentSession().getPort(), getCurrentSession().getChecksumAlgorithm());
+			final DatagramPacket packet = abPacket.createDatagram();
 			// send the packet
-			socket.send(packet);
-			System.out.println("\tACK " + getCurrentSeqNr() + " send to " + getIpAdress() + ":" + SEND_PORT);
-		} catch (SocketException exception) {
-			System.err.println("Sorry, something went wrong with the Socket.");
-			exception.printStackTrace();
+			final PacketSentEvent event = new PacketSentEvent();
+			event.begin();
+			getSendSocket().send(packet);
+			getMetrics().packetSent();
+			trace(PacketTraceRecorder.Direction.sent, abPacket, packet.getLength());
+			if (event.shouldCommit()) {
+				event.sequenceNumber = seqNr;
+				event.size = packet.getLength();
+				event.ack = true;
+				event.state = getCurrentState().toString();
+				event.cause = syn ? "synack" : fin ? "finack" : "ack";
+				event.commit();
+			}
+			System.out.println("\t" + (syn ? "SYN-ACK " : fin ? "FIN-ACK " : "ACK ") + seqNr + " send to " + getIpAdress() + ":" + getCurrentSession().getPort());
 		} catch (IOException exception) {
 			System.err.println("Sorry, something went wrong while sending a packet.");
 			exception.printStackTrace();
 		}
 	}
 
+	/**
+	 * <b>Record a received packet, if the event is enabled.</b>
+	 * 
+	 * @param event
+	 *            is the event begun when waiting started
+	 * @param sequenceNumber
+	 *            is the sequence number of the packet
+	 * @param size
+	 *            is the number of bytes of the datagram
+	 * @param ack
+	 *            is true, if the packet was an ACK
+	 * @param cause
+	 *            is what became of the packet
+	 */
+	private void recordReceived(PacketReceivedEvent event, int sequenceNumber, int size, boolean ack, String cause) {
+		if (event.shouldCommit()) {
+			event.sequenceNumber = sequenceNumber;
+			event.size = size;
+			event.ack = ack;
+			event.state = getCurrentState().toString();
+			event.cause = cause;
+			event.commit();
+		}
+	}
+
 	/**
 	 * <b>Waits for a incoming packet and validates it.</b> Returns a new State
 	 * after calling the transition, if the packet was valid
@@ -213,47 +483,263 @@ public class Receiver {
 	 */
 	private State waitForData() {
 		State nextState = getCurrentState();
-
-		try (final DatagramSocket socket = new DatagramSocket(RECEIVE_PORT)) {
+		final PacketReceivedEvent event = new PacketReceivedEvent();
+		event.begin();
+		// the event is only filled if it is recorded
+		int sequenceNumber = 0;
+		int size = 0;
+		boolean ack = false;
+		String cause = "error";
+
+		try {
+			// the socket stays open, so no packet of another transfer is lost
+			// between two packets
+			if (getSocket() == null) {
+				setSocket(getNetwork().open(RECEIVE_PORT));
+				// the ACKs leave through it, the senders get them from the
+				// port they send to
+				setSendSocket(getSocketFactory().create(getSocket()));
+			}
 			// Received data will be stored in this array (header and content)
 			final byte[] receivedData = new byte[AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE];
 			// receive packet
 			final DatagramPacket datagramPacket = new DatagramPacket(receivedData, receivedData.length);
-			socket.receive(datagramPacket);
+			getSocket().receive(datagramPacket);
+			final long receivedNanos = getNetwork().getClock().nanoTime();
+			// the transfer knows the checksum of its data packets
+			final Session known = findKnownSession(datagramPacket);
 			// Wrap in AlternatingBitPacket
-			final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket);
-			System.out.println("\tPacket " + packet.getSequenceNumber() + " received!");
+			final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket, known == null ? ChecksumAlgorithm.crc32 : known.getChecksumAlgorithm());
+			System.out.println("\tPacket " + packet.getSequenceNumber() + " of connection " + packet.getConnectionId() + " received!");
+			getMetrics().packetReceived();
+			trace(PacketTraceRecorder.Direction.received, packet, datagramPacket.getLength());
+			dropIdleSessions(receivedNanos);
 
 			// check if packet is correct
 			final boolean checksumValid = packet.checkChecksum();
 			final boolean isAck = packet.isACK();
-			final boolean duplicate = getCurrentSeqNr() == packet.getSequenceNumber();
-			// valid?
-			if (checksumValid && !isAck) {
-				System.out.println("\tPacket " + packet.getSequenceNumber() + " accepted!");
+			final boolean isSyn = packet.isSYN();
+			final boolean isFin = packet.isFIN();
+			final ConnectionParameters offer = checksumValid && isSyn && !isAck ? readOffer(packet) : null;
+			sequenceNumber = packet.getSequenceNumber();
+			size = datagramPacket.getLength();
+			ack = isAck;
+			if (!checksumValid) {
+				getMetrics().checksumFailure();
+				cause = "checksum";
+			} else if (offer != null) {
+				cause = "syn";
+			} else if (isAck || isSyn || known == null) {
+				// data before the SYN is dropped, the sender repeats the SYN
+				cause = "unexpected";
+			} else if (isFin) {
+				cause = "fin";
+			}
+
+			// a SYN opens the transfer, a repeated SYN gets the same answer
+			if (offer != null) {
+				// find the transfer, the SYN starts a new one (only now, a
+				// broken connection ID must not)
+				final Session session = findSession(datagramPacket.getAddress().getHostAddress(), datagramPacket.getPort(), packet.getConnectionId(), receivedNanos);
+				setCurrentSession(session);
+				session.setLastActive(receivedNanos);
+				session.setPort(datagramPacket.getPort());
+				if (!session.isOpen()) {
+					session.open(offer.negotiate(ConnectionParameters.supported()), readCheckpoint(packet));
+				}
+				System.out.println("\tSYN accepted! " + session.getParameters());
+				// execute transition and set next state
+				nextState = getTransitions().get(new Pair<State, Message>(getCurrentState(), Message.sendSynAck))
+						.execute();
+			}
+			// a FIN closes the transfer, a repeated FIN gets the same answer
+			else if (checksumValid && !isAck && !isSyn && isFin && known != null) {
+				setCurrentSession(known);
+				known.setLastActive(receivedNanos);
+				known.setPort(datagramPacket.getPort());
+				// the sender may only know all streams are stored once it
+				// closes, so stop receiving after answering the FIN
+				final boolean complete = !known.isTimeWait() && known.isFinished();
+				if (!known.isTimeWait()) {
+					if (!known.isFinished()) {
+						System.err.println("Transfer " + known.getConnectionId() + " from " + known.getIpAdress() + " was closed early, " + known.getFile() + " is incomplete.");
+					}
+					try {
+						known.startTimeWait(receivedNanos);
+					} catch (IOException exception) {
+						System.err.println("Sorry! An Error occured while writing the File " + known.getFile() + ".");
+					}
+				}
+				System.out.println("\tFIN accepted!");
+				// execute transition and set next state
+				nextState = getTransitions().get(new Pair<State, Message>(getCurrentState(), Message.sendFinAck))
+						.execute();
+				if (complete) {
+					setReceiving(false);
+				}
+			}
+			// valid? (the stream is null if there are too many)
+			else if (checksumValid && !isAck && !isSyn && known != null && known.getStream(packet.getStreamId()) != null) {
+				final Session session = known;
+				final Stream stream = session.getStream(packet.getStreamId());
+				setCurrentSession(session);
+				setCurrentStream(stream);
+				session.setLastActive(receivedNanos);
+				session.setPort(datagramPacket.getPort());
+				// everything of a finished stream or closed transfer is a late
+				// duplicate
+				final boolean duplicate = session.isTimeWait() || stream.isFinished() || getCurrentSeqNr() == packet.getSequenceNumber();
+				if (duplicate) {
+					getMetrics().duplicate();
+					cause = "duplicate";
+				} else {
+					cause = "accepted";
+				}
+				System.out.println("\tPacket " + packet.getSequenceNumber() + " of stream " + stream.getId() + " accepted!");
 				// only store data if it is not a duplicate
 				if (!duplicate) {
 					// store received data (without the header)
-					getData().add(Arrays.copyOfRange(receivedData, AlternatingBitPacket.HEADERSIZE, AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE));
+					final int length = datagramPacket.getLength() - AlternatingBitPacket.HEADERSIZE;
+					if (packet.isCompressed()) {
+						getMetrics().delivered(stream.inflate(receivedData, AlternatingBitPacket.HEADERSIZE, length, packet.getLength()));
+					} else {
+						stream.write(receivedData, AlternatingBitPacket.HEADERSIZE, length);
+						getMetrics().delivered(length);
+					}
+					session.checkpoint(false);
 				}
-				// store sender IP-Address
-				setIpAdress(datagramPacket.getAddress().getHostAddress());
 				// store sequence number
-				setCurrentSeqNr(packet.getSequenceNumber());
+				stream.setCurrentSeqNr(packet.getSequenceNumber());
 				// execute transition and set next state
 				nextState = getTransitions().get(new Pair<State, Message>(getCurrentState(), Message.sendAck))
 						.execute();
-				// stop receiving if end-of-file flag was set
-				setReceiving(!packet.isEndFlag());
+				getMetrics().deliveryTime(getNetwork().getClock().nanoTime() - receivedNanos);
+				// finish the stream if end-of-file flag was set or the sender
+				// has the whole Signature
+				if (!duplicate && session.isLastAck(stream)) {
+					session.finish(stream);
+					System.out.println("\tSignature of " + stream.getFile() + " sent!");
+				} else if (!duplicate && packet.isEndFlag()) {
+					session.finish(stream);
+					System.out.println("\tFile " + stream.getFile() + " stored! (" + stream.getBytesReceived() + " Bytes)");
+				}
 			}
 		} catch (IOException exception) {
 			System.err.println("Ups, somethig went wrong while receiving the data. Waiting for next packet...");
+			// start over with a new socket
+			if (getSendSocket() != null) {
+				getSendSocket().close();
+				setSendSocket(null);
+			}
+			if (getSocket() != null) {
+				getSocket().close();
+				setSocket(null);
+			}
 		}
+		recordReceived(event, sequenceNumber, size, ack, cause);
 		// return current state if there was an error or next state if it was
 		// successful
 		return nextState;
 	}
 
+	/**
+	 * <b>Get the open Session a datagram belongs to.</b>
+	 * Only the connection ID is read, the packet is not checked yet.
+	 * 
+	 * @param datagramPacket
+	 *            is the received datagram
+	 * @return the Session, null if there is no open one
+	 */
+	private Session findKnownSession(DatagramPacket datagramPacket) {
+		if (datagramPacket.getLength() < AlternatingBitPacket.HEADERSIZE) {
+			return null;
+		}
+		final Session session = getSessions().get(new Pair<String, Integer>(datagramPacket.getAddress().getHostAddress(), AlternatingBitPacket.peekConnectionId(datagramPacket)));
+		return session != null && session.isOpen() ? session : null;
+	}
+
+	/**
+	 * <b>Read the offer of the sender from a SYN.</b>
+	 * 
+	 * @param packet
+	 *            is the SYN
+	 * @return the offer, null if it is broken
+	 */
+	private static ConnectionParameters readOffer(AlternatingBitPacket packet) {
+		try {
+			return ConnectionParameters.decode(packet.getContent());
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * <b>Read the identity of the data and the name of the file from a
+	 * SYN.</b>
+	 *
+	 * @param packet
+	 *            is the SYN
+	 * @return the Checkpoint, null if the SYN has none
+	 */
+	private static Checkpoint readCheckpoint(AlternatingBitPacket packet) {
+		try {
+			return Checkpoint.decode(packet.getContent(), ConnectionParameters.SIZE);
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * <b>Get the Session of a transfer, a new one if it is unknown.</b>
+	 * 
+	 * @param ipAdress
+	 *            is the IP-Address of the sender
+	 * @param port
+	 *            is the port of the sender
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @param now
+	 *            is the current time in ns (Clock of the network)
+	 * @return the Session
+	 */
+	private Session findSession(String ipAdress, int port, int connectionId, long now) {
+		return getSessions().computeIfAbsent(new Pair<String, Integer>(ipAdress, connectionId), key -> {
+			System.out.println("\tNew transfer " + connectionId + " from " + ipAdress + ":" + port);
+			return new Session(connectionId, ipAdress, port, getFile(connectionId), now);
+		});
+	}
+
+	/**
+	 * <b>Drop the sessions TIME_WAIT after their FIN, or without packets for
+	 * SESSION_TIMEOUT.</b>
+	 * Unfinished files keep what has been received so far. To keep packets
+	 * cheap, the sessions are only checked once per TIME_WAIT.
+	 * 
+	 * @param now
+	 *            is the current time in ns (Clock of the network)
+	 */
+	private void dropIdleSessions(long now) {
+		if (now - getLastSweep() < Session.TIME_WAIT * 1_000_000) {
+			return;
+		}
+		setLastSweep(now);
+		final Iterator<Session> iterator = getSessions().values().iterator();
+		while (iterator.hasNext()) {
+			final Session session = iterator.next();
+			if (now - session.getExpiry(SESSION_TIMEOUT) >= 0) {
+				iterator.remove();
+				if (!session.isFinished() && !session.isTimeWait()) {
+					System.err.println("Transfer " + session.getConnectionId() + " from " + session.getIpAdress() + " timed out, " + session.getFile() + " is incomplete.");
+				}
+				try {
+					session.close();
+				} catch (IOException exception) {
+					System.err.println("Sorry! An Error occured while writing the File " + session.getFile() + ".");
+				}
+			}
+		}
+	}
+
 	/**
 	 * <b>Store if Receiver is receiving or not.</b>
 	 * 
@@ -302,65 +788,155 @@ public class Receiver {
 	}
 
 	/**
-	 * <b>Get all byte packets.</b>
+	 * <b>Get the map of all sessions.</b>
 	 * 
-	 * @return a list of all byte packets
+	 * @return the mapping
 	 */
-	private ArrayList<byte[]> getData() {
-		return data;
+	private Map<Pair<String, Integer>, Session> getSessions() {
+		return sessions;
 	}
-	
+
 	/**
-	 * <b>Set a new data List.</b>
+	 * <b>Get the Session the last packet belongs to.</b>
 	 * 
-	 * @param data is te new (empty) list
+	 * @return the Session
 	 */
-	private void setData(ArrayList<byte[]> data) {
-		this.data = data;
+	private Session getCurrentSession() {
+		return currentSession;
 	}
 
 	/**
-	 * <b>Get IP-Address of the sender.</b>
+	 * <b>Set the Session the last packet belongs to.</b>
 	 * 
-	 * @return the IP-Address
+	 * @param currentSession is the Session
 	 */
-	private String getIpAdress() {
-		return ipAdress;
+	private void setCurrentSession(Session currentSession) {
+		this.currentSession = currentSession;
 	}
-	
+
+	/**
+	 * <b>Get the Stream the last data packet belongs to.</b>
+	 * 
+	 * @return the Stream
+	 */
+	private Stream getCurrentStream() {
+		return currentStream;
+	}
+
 	/**
-	 * <b>Set IP-Address of the sender.</b>
+	 * <b>Set the Stream the last data packet belongs to.</b>
 	 * 
-	 * @param ipAdress is the new IP-Address
+	 * @param currentStream is the Stream
 	 */
-	private void setIpAdress(String ipAdress) {
-		this.ipAdress = ipAdress;
+	private void setCurrentStream(Stream currentStream) {
+		this.currentStream = currentStream;
+	}
+
+	/**
+	 * <b>Get IP-Address of the sender of the current Session.</b>
+	 * 
+	 * @return the IP-Address
+	 */
+	private String getIpAdress() {
+		return getCurrentSession().getIpAdress();
 	}
 	
 	/**
-	 * <b>Get the current sequence number.</b>
+	 * <b>Get the current sequence number of the current Stream.</b>
 	 * 
 	 * @return the current sequence number
 	 */
 	private int getCurrentSeqNr() {
-		return currentSeqNr;
+		return getCurrentStream().getCurrentSeqNr();
 	}
-	
+
+	/**
+	 * <b>Get the time the sessions were last checked for timeouts.</b>
+	 * 
+	 * @return the time in ns (Clock of the network)
+	 */
+	private long getLastSweep() {
+		return lastSweep;
+	}
+
 	/**
-	 * <b>Set the current sequence number.</b>
+	 * <b>Set the time the sessions were last checked for timeouts.</b>
 	 * 
-	 * @param currentSeqNr is the new sequence number
+	 * @param lastSweep is the time in ns (Clock of the network)
 	 */
-	private void setCurrentSeqNr(int currentSeqNr) {
-		this.currentSeqNr = currentSeqNr;
+	private void setLastSweep(long lastSweep) {
+		this.lastSweep = lastSweep;
 	}
 
 	/**
-	 * <b>Get the file to write to.</b>
+	 * <b>Get the socket to receive with.</b>
+	 * 
+	 * @return the socket, null if none is open
+	 */
+	private DatagramSocket getSocket() {
+		return socket;
+	}
+
+	/**
+	 * <b>Set the socket to receive with.</b>
+	 * 
+	 * @param socket is the socket, null if none is open
+	 */
+	private void setSocket(DatagramSocket socket) {
+		this.socket = socket;
+	}
+
+	/**
+	 * <b>Get the socket to send the ACKs with.</b>
+	 * 
+	 * @return the socket, null if none is open
+	 */
+	private DatagramSocket getSendSocket() {
+		return sendSocket;
+	}
+
+	/**
+	 * <b>Set the socket to send the ACKs with.</b>
+	 * 
+	 * @param sendSocket is the socket, null if none is open
+	 */
+	private void setSendSocket(DatagramSocket sendSocket) {
+		this.sendSocket = sendSocket;
+	}
+
+	/**
+	 * <b>Get the file to write to, without connection ID.</b>
 	 * 
 	 * @return the file path as String
 	 */
 	private String getFile() {
 		return file;
 	}
+
+	/**
+	 * <b>Get the recorder used for capturing.</b>
+	 * 
+	 * @return the recorder, null if capturing is disabled
+	 */
+	private PacketTraceRecorder getTraceRecorder() {
+		return traceRecorder;
+	}
+
+	/**
+	 * <b>Get the factory for the sockets to send with.</b>
+	 * 
+	 * @return the factory
+	 */
+	private DatagramSocketFactory getSocketFactory() {
+		return socketFactory;
+	}
+
+	/**
+	 * <b>Get where the socket to receive with and the Clock come from.</b>
+	 * 
+	 * @return the network
+	 */
+	private Network getNetwork() {
+		return network;
+	}
 }
@@ -0,0 +1,426 @@
+package receiver;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import decorator.DatagramSocketFactory;
+import generics.Pair;
+import metrics.TransferMetrics;
+import protocolPackets.AlternatingBitPacket;
+import trace.PacketTraceRecorder;
+import transport.Network;
+
+/**
+ * <b>Server mode of the Receiver: one thread per transfer.</b>
+ *
+ * Receives on port 9876 and answers through the same socket, like the
+ * Receiver.<br>
+ * <br>
+ * A single dispatcher owns the socket to receive with. It only reads the
+ * connection ID of every datagram and puts the datagram into the mailbox of
+ * the transfer. Each transfer has a Handler of its own, which waits for its
+ * packets with blocking code like Receiver.waitForData, checks them, writes
+ * the file and sends the ACKs. The checksums are calculated by the handlers,
+ * so the dispatcher stays cheap.<br>
+ * <br>
+ * On Java 21 and later the handlers run on virtual threads, so thousands of
+ * transfers cost only some memory each. Older runtimes use a cached pool of
+ * platform threads instead, which is fine for hundreds of transfers.
+ */
+public class ReceiverServer {
+
+	/**
+	 * <b>The Port to listen to.</b>
+	 */
+	private static final int RECEIVE_PORT = 9876;
+
+	/**
+	 * <b>A handler without packets (and FIN) for this long in ms ends.</b>
+	 */
+	private static final long SESSION_TIMEOUT = 60 * 1000;
+
+	/**
+	 * <b>Number of datagrams waiting for a handler, more are dropped like by
+	 * a full socket buffer.</b>
+	 */
+	private static final int MAILBOX_SIZE = 64;
+
+	/**
+	 * <b>Maps the IP-Address of the sender and the connection ID to the
+	 * Handler of a transfer.</b>
+	 */
+	private final Map<Pair<String, Integer>, Handler> handlers;
+
+	/**
+	 * <b>Runs the handlers.</b>
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * <b>File to write to, the connection ID is added to the name.</b>
+	 */
+	private final String file;
+
+	/**
+	 * <b>Checks the packets, writes the files and sends the ACKs.</b>
+	 */
+	private final SessionProcessor processor;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param file
+	 *            is the file to write to, the connection ID of each
+	 *            transfer is added to the name
+	 */
+	public ReceiverServer(String file) {
+		this.file = file;
+		this.handlers = new ConcurrentHashMap<>();
+		this.executor = createExecutor();
+		// send ACKs with errors, receive from the real network
+		this.processor = new SessionProcessor();
+	}
+
+	/**
+	 * <b>Receive the datagrams of all transfers and hand them to their
+	 * handlers, endlessly.</b>
+	 *
+	 * @throws IOException
+	 *             when the socket to receive with can not be opened
+	 */
+	public void serve() throws IOException {
+		System.out.println("Start serving");
+		try (final DatagramSocket socket = getNetwork().open(RECEIVE_PORT);
+				final DatagramSocket out = getProcessor().open(socket)) {
+			while (true) {
+				// a buffer of its own, the handler keeps it
+				final byte[] receivedData = new byte[AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE];
+				final DatagramPacket datagramPacket = new DatagramPacket(receivedData, receivedData.length);
+				try {
+					socket.receive(datagramPacket);
+				} catch (IOException exception) {
+					System.err.println("Ups, somethig went wrong while receiving the data. Waiting for next packet...");
+					continue;
+				}
+				dispatch(datagramPacket, out);
+			}
+		} finally {
+			getExecutor().shutdownNow();
+		}
+	}
+
+	/**
+	 * <b>Get the file a transfer is stored in.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the file path as String
+	 * @see Receiver#getFile(int)
+	 */
+	public String getFile(int connectionId) {
+		return Session.fileName(file, connectionId);
+	}
+
+	/**
+	 * <b>Get the file a stream of a transfer is stored in.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the file path as String
+	 * @see Receiver#getFile(int, int)
+	 */
+	public String getFile(int connectionId, int streamId) {
+		return Session.fileName(file, connectionId, streamId);
+	}
+
+	/**
+	 * <b>Get the directory a directory transfer is stored in.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the directory path as String
+	 * @see Receiver#getDirectory(int)
+	 */
+	public String getDirectory(int connectionId) {
+		return Session.directoryName(file, connectionId);
+	}
+
+	/**
+	 * <b>Get the counters and gauges of all transfers.</b>
+	 *
+	 * @return the metrics
+	 */
+	public TransferMetrics getMetrics() {
+		return getProcessor().getMetrics();
+	}
+
+	/**
+	 * <b>Set the factory for the socket to send with.</b>
+	 * By default a BrokenDatagramSocket with its standard params is used.
+	 *
+	 * @param socketFactory
+	 *            is the factory to use
+	 */
+	public void setSocketFactory(DatagramSocketFactory socketFactory) {
+		getProcessor().setSocketFactory(socketFactory);
+	}
+
+	/**
+	 * <b>Set where the socket to receive with and the Clock come from.</b>
+	 * By default the real network and the wall clock are used. The handlers
+	 * wait in real time, so a SimulatedNetwork can not be used.
+	 *
+	 * @param network
+	 *            is the network to use
+	 */
+	public void setNetwork(Network network) {
+		getProcessor().setNetwork(network);
+	}
+
+	/**
+	 * <b>Enable capturing: every datagram send or received is recorded.</b>
+	 *
+	 * @param traceRecorder
+	 *            is the recorder to use, null disables capturing
+	 */
+	public void setTraceRecorder(PacketTraceRecorder traceRecorder) {
+		getProcessor().setTraceRecorder(traceRecorder);
+	}
+
+	/**
+	 * <b>Hand a datagram to the handler of its transfer, start one if the
+	 * transfer is new.</b>
+	 * Only a valid SYN starts a handler. A handler that ends closes its
+	 * mailbox under the same lock the datagrams are put in with, so a
+	 * datagram either reaches the mailbox before or goes to a new handler.
+	 *
+	 * @param datagramPacket
+	 *            is the datagram
+	 * @param out
+	 *            is the socket to answer with
+	 */
+	private void dispatch(DatagramPacket datagramPacket, DatagramSocket out) {
+		if (datagramPacket.getLength() < AlternatingBitPacket.HEADERSIZE) {
+			getMetrics().packetReceived();
+			getMetrics().checksumFailure();
+			return;
+		}
+		final int connectionId = AlternatingBitPacket.peekConnectionId(datagramPacket);
+		final String ipAdress = datagramPacket.getAddress().getHostAddress();
+		final Pair<String, Integer> key = new Pair<String, Integer>(ipAdress, connectionId);
+		while (true) {
+			Handler handler = getHandlers().get(key);
+			if (handler == null) {
+				// a broken connection ID must not start a handler
+				if (!getProcessor().opens(datagramPacket)) {
+					return;
+				}
+				final Handler started = new Handler(key, new Session(connectionId, ipAdress, datagramPacket.getPort(), getFile(connectionId), getNetwork().getClock().nanoTime()), out);
+				handler = getHandlers().computeIfAbsent(key, ignored -> started);
+				if (handler == started) {
+					getExecutor().execute(started);
+				}
+			}
+			if (handler.deliver(datagramPacket)) {
+				return;
+			}
+			// the handler has ended, its successor takes the datagram
+			getHandlers().remove(key, handler);
+		}
+	}
+
+	/**
+	 * <b>Create the executor for the handlers.</b>
+	 * Virtual threads are looked up by reflection, so the Receiver still
+	 * compiles and runs on Java 17.
+	 *
+	 * @return an executor with a virtual thread per task, or a cached pool
+	 */
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException exception) {
+			// before Java 21 (or without --enable-preview on 19 and 20)
+			final AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(runnable -> {
+				final Thread thread = new Thread(runnable, "session-" + count.incrementAndGet());
+				// open transfers must not keep the program alive
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * <b>Get the map of all handlers.</b>
+	 *
+	 * @return the mapping
+	 */
+	private Map<Pair<String, Integer>, Handler> getHandlers() {
+		return handlers;
+	}
+
+	/**
+	 * <b>Get the executor running the handlers.</b>
+	 *
+	 * @return the executor
+	 */
+	private ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * <b>Get the processor of the packets.</b>
+	 *
+	 * @return the processor
+	 */
+	private SessionProcessor getProcessor() {
+		return processor;
+	}
+
+	/**
+	 * <b>Get where the socket to receive with and the Clock come from.</b>
+	 *
+	 * @return the network
+	 */
+	private Network getNetwork() {
+		return getProcessor().getNetwork();
+	}
+
+	/**
+	 * <b>Receives one transfer with blocking code.</b>
+	 *
+	 * Only its own thread touches the Session. A closed transfer keeps its
+	 * handler for Session.TIME_WAIT, to answer late duplicates of the last
+	 * packet and the FIN.
+	 */
+	private final class Handler implements Runnable {
+
+		/**
+		 * <b>The key of the transfer in the map of all handlers.</b>
+		 */
+		private final Pair<String, Integer> key;
+
+		/**
+		 * <b>The state of the transfer.</b>
+		 */
+		private final Session session;
+
+		/**
+		 * <b>Datagrams of the transfer waiting to be checked.</b>
+		 */
+		private final BlockingQueue<DatagramPacket> mailbox;
+
+		/**
+		 * <b>The socket to answer with, shared by all handlers.</b>
+		 */
+		private final DatagramSocket out;
+
+		/**
+		 * <b>True, once the handler takes no more datagrams (guarded by the
+		 * mailbox).</b>
+		 */
+		private boolean closed;
+
+		/**
+		 * <b>Constructor with following params.</b>
+		 *
+		 * @param key
+		 *            is the key of the transfer
+		 * @param session
+		 *            is the state of the transfer
+		 * @param out
+		 *            is the socket to answer with
+		 */
+		private Handler(Pair<String, Integer> key, Session session, DatagramSocket out) {
+			this.key = key;
+			this.session = session;
+			this.out = out;
+			this.mailbox = new LinkedBlockingQueue<>(MAILBOX_SIZE);
+			this.closed = false;
+		}
+
+		/**
+		 * <b>Handle packets until the transfer is idle.</b>
+		 */
+		@Override
+		public void run() {
+			try {
+				while (waitForData()) {
+					// next packet
+				}
+			} finally {
+				final List<DatagramPacket> late = new ArrayList<>();
+				synchronized (mailbox) {
+					closed = true;
+					mailbox.drainTo(late);
+				}
+				getHandlers().remove(key, this);
+				getProcessor().close(session);
+				// what came after the last packet goes to a new handler
+				for (final DatagramPacket datagramPacket : late) {
+					if (getExecutor().isShutdown()) {
+						break;
+					}
+					dispatch(datagramPacket, out);
+				}
+			}
+		}
+
+		/**
+		 * <b>Put a datagram into the mailbox, unless the handler has ended.</b>
+		 * A full mailbox drops the datagram, like a full socket buffer.
+		 *
+		 * @param datagramPacket
+		 *            is the datagram
+		 * @return false, if the handler has ended and takes no more datagrams
+		 */
+		private boolean deliver(DatagramPacket datagramPacket) {
+			synchronized (mailbox) {
+				if (closed) {
+					return false;
+				}
+				if (!mailbox.offer(datagramPacket)) {
+					System.err.println("Transfer " + session.getConnectionId() + " from " + session.getIpAdress() + " is too slow, a packet was dropped.");
+				}
+				return true;
+			}
+		}
+
+		/**
+		 * <b>Waits for a incoming packet of the transfer and validates it.</b>
+		 *
+		 * @return false, if the time wait after the FIN is over, no packet
+		 *         came for SESSION_TIMEOUT or the thread was interrupted
+		 */
+		private boolean waitForData() {
+			final long wait = session.getExpiry(SESSION_TIMEOUT) - getNetwork().getClock().nanoTime();
+			if (wait <= 0) {
+				return false;
+			}
+			final DatagramPacket datagramPacket;
+			try {
+				datagramPacket = mailbox.poll(wait, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException exception) {
+				return false;
+			}
+			if (datagramPacket == null) {
+				return false;
+			}
+			return getProcessor().process(session, datagramPacket, out);
+		}
+	}
+}
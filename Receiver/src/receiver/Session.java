@@ -0,0 +1,916 @@
+package receiver;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import protocolPackets.AlternatingBitPacket;
+import protocolPackets.Checkpoint;
+import protocolPackets.ChecksumAlgorithm;
+import protocolPackets.ConnectionParameters;
+import protocolPackets.Delta;
+import protocolPackets.Manifest;
+import protocolPackets.Signature;
+
+/**
+ * <b>One transfer the Receiver takes part in.</b>
+ *
+ * A session is identified by the IP-Address of the sender and the
+ * connection ID of the transfer, the ACKs go to the port its packets came
+ * from. It starts with the SYN of the sender and
+ * keeps the parameters chosen for it. Its streams have their own sequence
+ * numbers and files (see Stream), and the accepted packets are written to
+ * them right away, so hundreds of transfers at once do not have to be held in
+ * memory. A directory transfer starts with its Manifest in stream 0, the tree
+ * is created when it is complete and the files of the other streams are stored
+ * in it (see TreeOutputStream). A resumable transfer keeps a Journal next to
+ * its file: a transfer with the same data takes over the files of one that
+ * broke off and goes on where it ended. A single file can come as Delta to
+ * the newest complete file an earlier transfer stored of a file with the same
+ * name (the SYN names it, a file next to every stored one keeps its name):
+ * its Signature goes back in the ACKs of Delta.SIGNATURE_STREAM, then stream
+ * 0 is written by a DeltaOutputStream. A FIN
+ * closes the session, it stays in the table of the Receiver for TIME_WAIT
+ * (a session without FIN until it is idle), to answer late duplicates of the
+ * last packet and the FIN without touching the file again.
+ */
+final class Session {
+
+	/**
+	 * <b>Time in ms a closed session answers late duplicates.</b>
+	 * Longer than the Sender resends its FIN.
+	 */
+	static final long TIME_WAIT = 2 * 1000;
+
+	/**
+	 * <b>Number of bytes received between two checkpoints of the
+	 * Journal.</b>
+	 */
+	static final long CHECKPOINT_INTERVAL = 1024 * 1024;
+
+	/**
+	 * <b>Extension of the file that keeps the name the sender gave a stored
+	 * file (the SHA-256 hash, see Checkpoint).</b>
+	 */
+	static final String NAME_EXTENSION = ".name";
+
+	/**
+	 * <b>Connection ID of the transfer.</b>
+	 */
+	private final int connectionId;
+
+	/**
+	 * <b>IP-Address of the sender.</b>
+	 */
+	private final String ipAdress;
+
+	/**
+	 * <b>Port of the sender, where its last packet came from.</b>
+	 */
+	private int port;
+
+	/**
+	 * <b>File to write stream 0 to.</b>
+	 */
+	private final String file;
+
+	/**
+	 * <b>The parameters of the transfer (null before the SYN).</b>
+	 */
+	private ConnectionParameters parameters;
+
+	/**
+	 * <b>Map that maps a stream ID to its Stream.</b>
+	 */
+	private final Map<Integer, Stream> streams;
+
+	/**
+	 * <b>Content of stream 0 of a directory transfer.</b>
+	 */
+	private final ByteArrayOutputStream manifestContent;
+
+	/**
+	 * <b>The Manifest of a directory transfer (null until stream 0 is
+	 * complete).</b>
+	 */
+	private Manifest manifest;
+
+	/**
+	 * <b>What is stored of a resumable transfer (null if it is not).</b>
+	 */
+	private Journal journal;
+
+	/**
+	 * <b>The old version of a delta transfer (null if it is not).</b>
+	 */
+	private Path basis;
+
+	/**
+	 * <b>The Signature of the old version (null if it is not a delta
+	 * transfer).</b>
+	 */
+	private Signature signature;
+
+	/**
+	 * <b>The encoded Signature, send in parts in the ACKs.</b>
+	 */
+	private byte[] signatureContent;
+
+	/**
+	 * <b>The answer to the SYN (null before the SYN).</b>
+	 */
+	private byte[] answer;
+
+	/**
+	 * <b>Number of bytes received at the last checkpoint.</b>
+	 */
+	private long checkpointed;
+
+	/**
+	 * <b>Time the last packet arrived at in ns (Clock of the network).</b>
+	 */
+	private long lastActive;
+
+	/**
+	 * <b>Store if the FIN has arrived.</b>
+	 */
+	private boolean timeWait;
+
+	/**
+	 * <b>Time the FIN arrived at in ns (Clock of the network).</b>
+	 */
+	private long closedAt;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @param ipAdress
+	 *            is the IP-Address of the sender
+	 * @param port
+	 *            is the port of the sender
+	 * @param file
+	 *            is the file to write stream 0 to
+	 * @param now
+	 *            is the current time in ns (Clock of the network)
+	 */
+	Session(int connectionId, String ipAdress, int port, String file, long now) {
+		this.connectionId = connectionId;
+		this.ipAdress = ipAdress;
+		this.port = port;
+		this.file = file;
+		this.streams = new HashMap<>();
+		this.manifestContent = new ByteArrayOutputStream();
+		this.lastActive = now;
+	}
+
+	/**
+	 * <b>Get the file a transfer is stored in.</b>
+	 * The connection ID is added to the name in front of the extension:
+	 * "files/file.zip" becomes "files/file-0000002a.zip" for connection 42.
+	 *
+	 * @param file
+	 *            is the file name without connection ID
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the file path as String
+	 */
+	static String fileName(String file, int connectionId) {
+		return insert(file, String.format("%08x", connectionId));
+	}
+
+	/**
+	 * <b>Get the file a stream of a transfer is stored in.</b>
+	 * Stream 0 is stored in the file of the transfer, the others get their
+	 * stream ID added as well: "files/file-0000002a-3.zip" for stream 3.
+	 *
+	 * @param file
+	 *            is the file name without connection ID
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the file path as String
+	 */
+	static String fileName(String file, int connectionId, int streamId) {
+		return streamFileName(fileName(file, connectionId), streamId);
+	}
+
+	/**
+	 * <b>Get the file a stream is stored in.</b>
+	 *
+	 * @param file
+	 *            is the file of the transfer (stream 0)
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the file path as String
+	 */
+	private static String streamFileName(String file, int streamId) {
+		return streamId == 0 ? file : insert(file, Integer.toString(streamId));
+	}
+
+	/**
+	 * <b>Get the directory a directory transfer is stored in.</b>
+	 * It is the file of the transfer without extension: "files/file.zip"
+	 * becomes "files/file-0000002a" for connection 42.
+	 *
+	 * @param file
+	 *            is the file name without connection ID
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the directory path as String
+	 */
+	static String directoryName(String file, int connectionId) {
+		return withoutExtension(fileName(file, connectionId));
+	}
+
+	/**
+	 * <b>Remove the extension from a file name.</b>
+	 *
+	 * @param file
+	 *            is the file name
+	 * @return the file path as String
+	 */
+	private static String withoutExtension(String file) {
+		final int separator = Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar));
+		final int dot = file.lastIndexOf('.');
+		return dot > separator + 1 ? file.substring(0, dot) : file;
+	}
+
+	/**
+	 * <b>Add an ID to a file name, in front of the extension.</b>
+	 *
+	 * @param file
+	 *            is the file name
+	 * @param id
+	 *            is the ID to add
+	 * @return the file path as String
+	 */
+	private static String insert(String file, String id) {
+		final int separator = Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar));
+		final int dot = file.lastIndexOf('.');
+		if (dot > separator + 1) {
+			return file.substring(0, dot) + "-" + id + file.substring(dot);
+		}
+		return file + "-" + id;
+	}
+
+	/**
+	 * <b>Get a stream of the open transfer, a new one if it is unknown.</b>
+	 * The sender decides about the number of streams, up to
+	 * ConnectionParameters.MAX_STREAMS.
+	 *
+	 * The files of a directory transfer can only be stored once its Manifest
+	 * is complete.
+	 *
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the Stream, null if there are too many or it can not be stored
+	 *         yet
+	 */
+	Stream getStream(int streamId) {
+		Stream stream = streams.get(streamId);
+		if (stream == null && streams.size() < ConnectionParameters.MAX_STREAMS) {
+			final int initialSequenceNumber = parameters.getInitialSequenceNumber();
+			// the Manifest is send again when a transfer is resumed
+			final boolean resumed = journal != null && !(isDirectory() && streamId == 0);
+			final long offset = resumed ? journal.getOffset(streamId) : 0;
+			if (isDelta()) {
+				// the packets of the Signature stream only ask for the next part
+				if (streamId == 0) {
+					stream = new Stream(streamId, file, new DeltaOutputStream(Paths.get(file), basis, signature), initialSequenceNumber);
+				} else if (streamId == Delta.SIGNATURE_STREAM) {
+					stream = new Stream(streamId, basis.toString(), OutputStream.nullOutputStream(), initialSequenceNumber);
+				} else {
+					return null;
+				}
+			} else if (!isDirectory()) {
+				stream = new Stream(streamId, streamFileName(file, streamId), initialSequenceNumber);
+			} else if (streamId == 0) {
+				stream = new Stream(streamId, getDirectory(), manifestContent, initialSequenceNumber);
+			} else if (manifest != null && streamId <= manifest.getStreams()) {
+				stream = new Stream(streamId, getDirectory(), new TreeOutputStream(Paths.get(getDirectory()), manifest.getFiles(streamId), offset), initialSequenceNumber);
+			} else {
+				return null;
+			}
+			if (resumed) {
+				stream.resume(offset, journal.isFinished(streamId));
+			}
+			streams.put(streamId, stream);
+		}
+		return stream;
+	}
+
+	/**
+	 * <b>Mark a stream as finished and close its file.</b>
+	 * The end of the Manifest creates the directories of the tree.
+	 *
+	 * @param stream
+	 *            is the Stream
+	 * @throws IOException
+	 *             when the rest of the file can not be written or the
+	 *             Manifest is broken
+	 */
+	void finish(Stream stream) throws IOException {
+		stream.finish();
+		checkpoint(true);
+		if (isDirectory() && stream.getId() == 0) {
+			try {
+				manifest = Manifest.decode(manifestContent.toByteArray());
+			} catch (IllegalArgumentException exception) {
+				throw new IOException("The Manifest of " + getDirectory() + " is broken: " + exception.getMessage());
+			}
+			final Path root = Paths.get(getDirectory());
+			Files.createDirectories(root);
+			for (Manifest.Entry entry : manifest.getEntries()) {
+				if (entry.isDirectory()) {
+					Files.createDirectories(TreeOutputStream.resolve(root, entry));
+				}
+			}
+			System.out.println("Manifest of " + getDirectory() + " received! (" + manifest + ")");
+		}
+	}
+
+	/**
+	 * <b>Get if a directory is transferred.</b>
+	 *
+	 * @return true, if stream 0 holds a Manifest
+	 */
+	boolean isDirectory() {
+		return parameters != null && parameters.hasFeature(ConnectionParameters.FEATURE_MANIFEST);
+	}
+
+	/**
+	 * <b>Get the directory a directory transfer is stored in.</b>
+	 *
+	 * @return the directory path as String
+	 */
+	String getDirectory() {
+		return withoutExtension(file);
+	}
+
+	/**
+	 * <b>Get the streams received so far.</b>
+	 *
+	 * @return the streams
+	 */
+	Collection<Stream> getStreams() {
+		return streams.values();
+	}
+
+	/**
+	 * <b>Write the Journal of a resumable transfer, once another
+	 * CHECKPOINT_INTERVAL bytes have been received.</b>
+	 * The files get everything received so far first. That survives a crash
+	 * of the Receiver, not one of the system.
+	 *
+	 * @param force
+	 *            is true, to write it anyway
+	 * @throws IOException
+	 *             when a file or the Journal can not be written
+	 */
+	void checkpoint(boolean force) throws IOException {
+		if (journal == null || !force && getBytesReceived() - checkpointed < CHECKPOINT_INTERVAL) {
+			return;
+		}
+		for (Stream stream : streams.values()) {
+			stream.flush();
+			if (!(isDirectory() && stream.getId() == 0)) {
+				journal.put(stream.getId(), stream.getBytesReceived(), stream.isFinished());
+			}
+		}
+		journal.write(Journal.pathOf(Paths.get(file)));
+		checkpointed = getBytesReceived();
+	}
+
+	/**
+	 * <b>Close the transfer after the FIN and the file.</b>
+	 * From now on every packet is a late duplicate. The Journal of a
+	 * finished transfer is deleted, an unfinished one can be resumed.
+	 *
+	 * @param now
+	 *            is the current time in ns (Clock of the network)
+	 * @throws IOException
+	 *             when the rest of the file can not be written
+	 */
+	void startTimeWait(long now) throws IOException {
+		timeWait = true;
+		closedAt = now;
+		close();
+		if (journal != null) {
+			if (isFinished()) {
+				Files.deleteIfExists(Journal.pathOf(Paths.get(file)));
+			} else {
+				checkpoint(true);
+			}
+		}
+	}
+
+	/**
+	 * <b>Close the files, what has been received so far is kept.</b>
+	 * A resumable transfer without FIN writes its Journal.
+	 *
+	 * @throws IOException
+	 *             when the rest of a file can not be written
+	 */
+	void close() throws IOException {
+		IOException failure = null;
+		for (Stream stream : streams.values()) {
+			try {
+				stream.close();
+			} catch (IOException exception) {
+				failure = exception;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		if (!timeWait) {
+			checkpoint(true);
+		}
+	}
+
+	/**
+	 * <b>Get the connection ID of the transfer.</b>
+	 *
+	 * @return the connection ID
+	 */
+	int getConnectionId() {
+		return connectionId;
+	}
+
+	/**
+	 * <b>Get IP-Address of the sender.</b>
+	 *
+	 * @return the IP-Address
+	 */
+	String getIpAdress() {
+		return ipAdress;
+	}
+
+	/**
+	 * <b>Get the port of the sender.</b>
+	 *
+	 * @return the port the last packet came from
+	 */
+	int getPort() {
+		return port;
+	}
+
+	/**
+	 * <b>Set the port of the sender.</b>
+	 * A NAT may move the sender to another port during the transfer, so the
+	 * port of every valid packet is taken.
+	 *
+	 * @param port
+	 *            is the port the packet came from
+	 */
+	void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * <b>Get the file to write stream 0 to.</b>
+	 *
+	 * @return the file path as String
+	 */
+	String getFile() {
+		return file;
+	}
+
+	/**
+	 * <b>Get the parameters of the transfer.</b>
+	 *
+	 * @return the parameters, null before the SYN
+	 */
+	ConnectionParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * <b>Open the transfer with the parameters chosen for it.</b>
+	 * A resumable transfer takes over the files of an earlier transfer of
+	 * the same data, if there is a Journal of it. A delta transfer needs an
+	 * old version of a file with the same name.
+	 *
+	 * @param parameters
+	 *            are the parameters
+	 * @param syn
+	 *            is the Checkpoint of the SYN with the identity of the data
+	 *            and the name of the file, null if it has none
+	 */
+	void open(ConnectionParameters parameters, Checkpoint syn) {
+		final byte[] identity = syn == null ? null : syn.getIdentity();
+		final byte[] name = syn == null ? null : syn.getName();
+		ConnectionParameters chosen = parameters;
+		if (!chosen.hasFeature(ConnectionParameters.FEATURE_RESUME)) {
+			journal = null;
+		} else if (identity == null) {
+			chosen = chosen.without(ConnectionParameters.FEATURE_RESUME);
+		} else {
+			try {
+				journal = resume(identity);
+			} catch (IOException exception) {
+				System.err.println("Sorry! The transfer to " + file + " could not be resumed, starting over.");
+				journal = new Journal(identity);
+			}
+		}
+		// going on with a broken off transfer sends less than a Delta
+		if (chosen.hasFeature(ConnectionParameters.FEATURE_DELTA)) {
+			if ((journal == null || journal.getStreams().isEmpty()) && name != null && openBasis(name)) {
+				journal = null;
+				chosen = chosen.without(ConnectionParameters.FEATURE_RESUME);
+			} else {
+				chosen = chosen.without(ConnectionParameters.FEATURE_DELTA);
+			}
+		}
+		this.parameters = chosen;
+		// a later version of the file finds this one as its old version
+		if (!isDirectory() && name != null) {
+			writeName(name);
+		}
+		if (journal != null) {
+			// the Manifest is send again
+			final Set<Integer> skipped = isDirectory() ? Collections.singleton(0) : Collections.emptySet();
+			answer = journal.toCheckpoint(skipped).appendTo(chosen.encode());
+		} else {
+			answer = chosen.encode();
+		}
+	}
+
+	/**
+	 * <b>Find the old version for a delta transfer and compute its
+	 * Signature.</b>
+	 * It is the newest file an earlier transfer stored under the same name,
+	 * that the sender gave the same name as this one. One with a Journal is
+	 * not complete.
+	 *
+	 * @param name
+	 *            is the SHA-256 hash of the name the sender gave the file
+	 * @return true, if there is an old version with a block
+	 */
+	private boolean openBasis(byte[] name) {
+		final Path own = Paths.get(file).toAbsolutePath();
+		final String ownName = own.getFileName().toString();
+		final String id = "-" + String.format("%08x", connectionId);
+		final int at = ownName.lastIndexOf(id);
+		if (at < 0) {
+			return false;
+		}
+		final Pattern earlier = Pattern.compile(Pattern.quote(ownName.substring(0, at)) + "-[0-9a-f]{8}" + Pattern.quote(ownName.substring(at + id.length())));
+		Path newest = null;
+		FileTime newestTime = null;
+		try {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(own.getParent())) {
+				for (Path candidate : files) {
+					if (earlier.matcher(candidate.getFileName().toString()).matches() && !candidate.equals(own)
+							&& Files.isRegularFile(candidate) && !Files.exists(Journal.pathOf(candidate)) && isNamed(candidate, name)) {
+						final FileTime modified = Files.getLastModifiedTime(candidate);
+						if (newest == null || modified.compareTo(newestTime) > 0) {
+							newest = candidate;
+							newestTime = modified;
+						}
+					}
+				}
+			}
+			if (newest == null) {
+				return false;
+			}
+			try (InputStream input = new BufferedInputStream(Files.newInputStream(newest))) {
+				signature = Signature.of(input, Files.size(newest));
+			}
+		} catch (IOException exception) {
+			System.err.println("Sorry! No old version of " + file + " could be read, the whole file is send.");
+			signature = null;
+			return false;
+		}
+		if (signature.getBlocks() == 0) {
+			signature = null;
+			return false;
+		}
+		basis = newest;
+		signatureContent = signature.encode();
+		System.out.println("Transfer " + connectionId + " is a Delta to " + basis + " (" + signature + ")");
+		return true;
+	}
+
+	/**
+	 * <b>Get if the sender gave a stored file some name.</b>
+	 *
+	 * @param stored
+	 *            is the stored file
+	 * @param name
+	 *            is the SHA-256 hash of the name
+	 * @return true, if the name kept next to the file is the same
+	 * @throws IOException
+	 *             when the name can not be read
+	 */
+	private static boolean isNamed(Path stored, byte[] name) throws IOException {
+		final Path kept = nameOf(stored);
+		return Files.isRegularFile(kept) && MessageDigest.isEqual(Files.readAllBytes(kept), name);
+	}
+
+	/**
+	 * <b>Keep the name the sender gave the file next to it.</b>
+	 * Without it the file is no old version of a later delta transfer, so a
+	 * failure is only reported.
+	 *
+	 * @param name
+	 *            is the SHA-256 hash of the name
+	 */
+	private void writeName(byte[] name) {
+		try {
+			Files.write(nameOf(Paths.get(file)), name);
+		} catch (IOException exception) {
+			System.err.println("Sorry! The name of " + file + " could not be kept, it will not be the old version of a Delta.");
+		}
+	}
+
+	/**
+	 * <b>Get the path of the name kept next to a stored file.</b>
+	 *
+	 * @param stored
+	 *            is the stored file
+	 * @return the path of the name
+	 */
+	static Path nameOf(Path stored) {
+		return stored.resolveSibling(stored.getFileName() + NAME_EXTENSION);
+	}
+
+	/**
+	 * <b>Delete a stored file together with the name and the Journal kept
+	 * next to it.</b>
+	 *
+	 * @param stored
+	 *            is the stored file
+	 * @throws IOException
+	 *             when a file can not be deleted
+	 */
+	static void delete(Path stored) throws IOException {
+		Files.deleteIfExists(stored);
+		Files.deleteIfExists(nameOf(stored));
+		Files.deleteIfExists(Journal.pathOf(stored));
+	}
+
+	/**
+	 * <b>Take over the files of an earlier transfer of the same data.</b>
+	 * They are moved to the names of this transfer, with their Journal.
+	 * Streams with less in their file than the Journal says start over.
+	 *
+	 * @param identity
+	 *            is the identity of the data
+	 * @return the Journal of this transfer
+	 * @throws IOException
+	 *             when the files can not be moved
+	 */
+	private Journal resume(byte[] identity) throws IOException {
+		final Path own = Paths.get(file).toAbsolutePath();
+		final Path found = Journal.find(own.getParent(), identity);
+		if (found == null) {
+			return new Journal(identity);
+		}
+		final Journal previous = Journal.read(found);
+		final Path previousFile = Journal.fileOf(found);
+		if (!previousFile.equals(own)) {
+			if (isDirectory()) {
+				move(Paths.get(withoutExtension(previousFile.toString())), Paths.get(getDirectory()));
+			} else {
+				for (int streamId : new HashSet<>(previous.getStreams())) {
+					move(Paths.get(streamFileName(previousFile.toString(), streamId)), Paths.get(streamFileName(file, streamId)));
+				}
+				// the name is kept again under the new name
+				Files.deleteIfExists(nameOf(previousFile));
+			}
+		}
+		if (!isDirectory()) {
+			for (int streamId : new HashSet<>(previous.getStreams())) {
+				final Path stored = Paths.get(streamFileName(file, streamId));
+				if (!Files.exists(stored) || Files.size(stored) < previous.getOffset(streamId)) {
+					previous.put(streamId, 0, false);
+				}
+			}
+		}
+		previous.write(Journal.pathOf(own));
+		if (!found.equals(Journal.pathOf(own))) {
+			Files.delete(found);
+		}
+		System.out.println("Transfer " + connectionId + " resumes " + previousFile + " (" + previous.toCheckpoint(Collections.emptySet()) + ")");
+		return previous;
+	}
+
+	/**
+	 * <b>Move a file or directory, if it exists.</b>
+	 *
+	 * @param from
+	 *            is the old path
+	 * @param to
+	 *            is the new path
+	 * @throws IOException
+	 *             when it can not be moved
+	 */
+	private static void move(Path from, Path to) throws IOException {
+		if (Files.exists(from)) {
+			Files.move(from, to);
+		}
+	}
+
+	/**
+	 * <b>Get the content of the ACK of the last packet of a stream.</b>
+	 * The ACKs of the Signature stream hold the next part of the Signature,
+	 * the others are empty packets of full size.
+	 *
+	 * @param stream
+	 *            is the Stream
+	 * @return the content
+	 */
+	byte[] getAckContent(Stream stream) {
+		if (!isSignatureStream(stream)) {
+			return new byte[AlternatingBitPacket.PACKETSIZE];
+		}
+		final int part = parameters.getPayloadSize();
+		final int start = Math.max(0, stream.getPackets() - 1) * part;
+		return Arrays.copyOfRange(signatureContent, Math.min(start, signatureContent.length), Math.min(start + part, signatureContent.length));
+	}
+
+	/**
+	 * <b>Get if the ACK of the last packet of a stream ends it.</b>
+	 * That is the ACK with the last part of the Signature, the sender asks
+	 * for no more then.
+	 *
+	 * @param stream
+	 *            is the Stream
+	 * @return true, if the ACK gets the end flag
+	 */
+	boolean isLastAck(Stream stream) {
+		return isSignatureStream(stream) && (long) stream.getPackets() * parameters.getPayloadSize() >= signatureContent.length;
+	}
+
+	/**
+	 * <b>Get if a stream holds the Signature of a delta transfer.</b>
+	 *
+	 * @param stream
+	 *            is the Stream
+	 * @return true, if its ACKs hold the Signature
+	 */
+	private boolean isSignatureStream(Stream stream) {
+		return isDelta() && stream.getId() == Delta.SIGNATURE_STREAM;
+	}
+
+	/**
+	 * <b>Get if a file is send as Delta to an old version.</b>
+	 *
+	 * @return true, if the transfer is a delta transfer
+	 */
+	boolean isDelta() {
+		return parameters != null && parameters.hasFeature(ConnectionParameters.FEATURE_DELTA);
+	}
+
+	/**
+	 * <b>Get the answer to the SYN: the parameters, and what is stored
+	 * already of a resumable transfer.</b>
+	 *
+	 * @return the content of the SYN-ACK
+	 */
+	byte[] getAnswer() {
+		return answer;
+	}
+
+	/**
+	 * <b>Get if the SYN has arrived.</b>
+	 *
+	 * @return true, if the transfer has its parameters
+	 */
+	boolean isOpen() {
+		return parameters != null;
+	}
+
+	/**
+	 * <b>Get the checksum of the data packets.</b>
+	 *
+	 * @return the chosen algorithm, CRC-32 before the SYN
+	 */
+	ChecksumAlgorithm getChecksumAlgorithm() {
+		return parameters == null ? ChecksumAlgorithm.crc32 : parameters.getChecksumAlgorithm();
+	}
+
+	/**
+	 * <b>Get the number of bytes written to the files.</b>
+	 *
+	 * @return the number of bytes
+	 */
+	long getBytesReceived() {
+		long bytesReceived = 0;
+		for (Stream stream : streams.values()) {
+			bytesReceived += stream.getBytesReceived();
+		}
+		return bytesReceived;
+	}
+
+	/**
+	 * <b>Get if the last packets of all streams have arrived.</b>
+	 *
+	 * @return true, if the transfer is finished
+	 */
+	boolean isFinished() {
+		final Set<Integer> known = new HashSet<>(streams.keySet());
+		if (journal != null) {
+			// streams finished before the transfer was resumed are skipped
+			known.addAll(journal.getStreams());
+		}
+		if (isDelta()) {
+			known.add(0);
+			known.add(Delta.SIGNATURE_STREAM);
+		}
+		if (isDirectory()) {
+			if (manifest == null) {
+				return false;
+			}
+			for (int streamId = 0; streamId <= manifest.getStreams(); streamId++) {
+				known.add(streamId);
+			}
+		}
+		if (known.isEmpty()) {
+			return false;
+		}
+		for (int streamId : known) {
+			if (!isFinished(streamId)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <b>Get if the last packet of a stream has arrived.</b>
+	 *
+	 * @param streamId
+	 *            is the stream ID
+	 * @return true, if the stream is finished (in this or the broken off
+	 *         transfer)
+	 */
+	private boolean isFinished(int streamId) {
+		final Stream stream = streams.get(streamId);
+		if (stream != null) {
+			return stream.isFinished();
+		}
+		return journal != null && journal.isFinished(streamId);
+	}
+
+	/**
+	 * <b>Get if the FIN has arrived.</b>
+	 *
+	 * @return true, if the transfer is closed
+	 */
+	boolean isTimeWait() {
+		return timeWait;
+	}
+
+	/**
+	 * <b>Get the time the session can be dropped at.</b>
+	 *
+	 * @param sessionTimeout
+	 *            is the time in ms a session without FIN may be idle
+	 * @return TIME_WAIT after the FIN, or sessionTimeout after the last
+	 *         packet, in ns (Clock of the network)
+	 */
+	long getExpiry(long sessionTimeout) {
+		return timeWait ? closedAt + TIME_WAIT * 1_000_000 : lastActive + sessionTimeout * 1_000_000;
+	}
+
+	/**
+	 * <b>Get the time the last packet arrived at.</b>
+	 *
+	 * @return the time in ns (Clock of the network)
+	 */
+	long getLastActive() {
+		return lastActive;
+	}
+
+	/**
+	 * <b>Set the time the last packet arrived at.</b>
+	 *
+	 * @param lastActive
+	 *            is the time in ns (Clock of the network)
+	 */
+	void setLastActive(long lastActive) {
+		this.lastActive = lastActive;
+	}
+}
@@ -0,0 +1,429 @@
+package receiver;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+import decorator.BrokenDatagramSocket;
+import decorator.DatagramSocketFactory;
+import events.PacketReceivedEvent;
+import events.PacketSentEvent;
+import metrics.TransferMetrics;
+import protocolPackets.AlternatingBitPacket;
+import protocolPackets.Checkpoint;
+import protocolPackets.ConnectionParameters;
+import protocolPackets.Packet;
+import receiver.states.State;
+import trace.PacketTraceRecorder;
+import transport.Network;
+import transport.UdpNetwork;
+
+/**
+ * <b>Checks the packets of a Session, writes its file and sends the
+ * ACKs.</b>
+ *
+ * The part of Receiver.waitForData the server modes share: a SYN opens the
+ * Session and is answered with the chosen parameters, the data packets of an
+ * open Session are stored in their Stream and acknowledged and a FIN closes
+ * it. Any number of
+ * threads may use one processor at once, as long as each Session is only
+ * used by one thread.
+ */
+final class SessionProcessor {
+
+	/**
+	 * <b>Counters and gauges of all transfers.</b>
+	 */
+	private final TransferMetrics metrics;
+
+	/**
+	 * <b>Records every datagram if capturing is enabled (may be null).</b>
+	 */
+	private volatile PacketTraceRecorder traceRecorder;
+
+	/**
+	 * <b>Creates the sockets to answer with.</b>
+	 */
+	private volatile DatagramSocketFactory socketFactory;
+
+	/**
+	 * <b>Provides the Clock.</b>
+	 */
+	private volatile Network network;
+
+	/**
+	 * <b>Create a new processor sending ACKs with errors on the real
+	 * network.</b>
+	 */
+	SessionProcessor() {
+		this.metrics = new TransferMetrics();
+		this.socketFactory = BrokenDatagramSocket::new;
+		this.network = UdpNetwork.INSTANCE;
+	}
+
+	/**
+	 * <b>Validate a packet of a Session, store it and answer it.</b>
+	 *
+	 * @param session
+	 *            is the Session the packet was sent to
+	 * @param datagramPacket
+	 *            is the received datagram, its buffer holds a whole packet
+	 * @param out
+	 *            is the socket to answer with (see open)
+	 * @return false, if the file could not be written and the Session is
+	 *         broken
+	 */
+	boolean process(Session session, DatagramPacket datagramPacket, DatagramSocket out) {
+		final PacketReceivedEvent event = new PacketReceivedEvent();
+		event.begin();
+		// the event is only filled if it is recorded
+		String cause = "error";
+		final long receivedNanos = getNetwork().getClock().nanoTime();
+		// Wrap in AlternatingBitPacket, with the checksum of the transfer
+		final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket, session.getChecksumAlgorithm());
+		getMetrics().packetReceived();
+		trace(PacketTraceRecorder.Direction.received, packet, datagramPacket.getLength());
+
+		// check if packet is correct
+		final boolean checksumValid = packet.checkChecksum();
+		final boolean isAck = packet.isACK();
+		final boolean isSyn = packet.isSYN();
+		final boolean isFin = packet.isFIN();
+		final ConnectionParameters offer = checksumValid && isSyn && !isAck ? readOffer(packet) : null;
+		// the stream of a data packet, null if there are too many
+		final Stream stream = checksumValid && !isAck && !isSyn && !isFin && session.isOpen() ? session.getStream(packet.getStreamId()) : null;
+		// everything of a finished stream or closed transfer is a late duplicate
+		final boolean duplicate = session.isTimeWait() || stream != null && (stream.isFinished() || stream.getCurrentSeqNr() == packet.getSequenceNumber());
+		if (!checksumValid) {
+			getMetrics().checksumFailure();
+			cause = "checksum";
+		} else if (offer != null) {
+			cause = "syn";
+		} else if (isAck || isSyn || !session.isOpen()) {
+			// data before the SYN is dropped, the sender repeats the SYN
+			cause = "unexpected";
+		} else if (isFin) {
+			cause = "fin";
+		} else if (stream == null) {
+			cause = "unexpected";
+		} else if (duplicate) {
+			getMetrics().duplicate();
+			cause = "duplicate";
+		} else {
+			cause = "accepted";
+		}
+
+		// open the transfer, a repeated SYN gets the same answer
+		if (offer != null) {
+			session.setLastActive(receivedNanos);
+			session.setPort(datagramPacket.getPort());
+			if (!session.isOpen()) {
+				session.open(offer.negotiate(ConnectionParameters.supported()), readCheckpoint(packet));
+				System.out.println("New transfer " + session.getConnectionId() + " from " + session.getIpAdress() + " (" + session.getParameters() + ")");
+			}
+			sendAck(out, session, null, true, false);
+		}
+		// close the transfer, a repeated FIN gets the same answer
+		else if (checksumValid && !isAck && !isSyn && isFin && session.isOpen()) {
+			session.setLastActive(receivedNanos);
+			session.setPort(datagramPacket.getPort());
+			try {
+				if (!session.isTimeWait()) {
+					if (!session.isFinished()) {
+						System.err.println("Transfer " + session.getConnectionId() + " from " + session.getIpAdress() + " was closed early, " + session.getFile() + " is incomplete.");
+					}
+					session.startTimeWait(receivedNanos);
+				}
+			} catch (IOException exception) {
+				System.err.println("Sorry! An Error occured while writing the File " + session.getFile() + ".");
+			}
+			sendAck(out, session, null, false, true);
+		}
+		// valid?
+		else if (stream != null) {
+			session.setLastActive(receivedNanos);
+			session.setPort(datagramPacket.getPort());
+			try {
+				// only store data if it is not a duplicate
+				if (!duplicate) {
+					// store received data (without the header)
+					final int length = datagramPacket.getLength() - AlternatingBitPacket.HEADERSIZE;
+					if (packet.isCompressed()) {
+						getMetrics().delivered(stream.inflate(datagramPacket.getData(), AlternatingBitPacket.HEADERSIZE, length, packet.getLength()));
+					} else {
+						stream.write(datagramPacket.getData(), AlternatingBitPacket.HEADERSIZE, length);
+						getMetrics().delivered(length);
+					}
+					session.checkpoint(false);
+				}
+				// store sequence number
+				stream.setCurrentSeqNr(packet.getSequenceNumber());
+				sendAck(out, session, stream, false, false);
+				getMetrics().deliveryTime(getNetwork().getClock().nanoTime() - receivedNanos);
+				// finish the stream if end-of-file flag was set or the sender
+				// has the whole Signature
+				if (!duplicate && session.isLastAck(stream)) {
+					session.finish(stream);
+					System.out.println("Signature of " + stream.getFile() + " sent!");
+				} else if (!duplicate && packet.isEndFlag()) {
+					session.finish(stream);
+					System.out.println("File " + stream.getFile() + " stored! (" + stream.getBytesReceived() + " Bytes)");
+				}
+			} catch (IOException exception) {
+				System.err.println("Sorry! An Error occured while writing the File " + stream.getFile() + ".");
+				recordReceived(event, packet.getSequenceNumber(), datagramPacket.getLength(), isAck, cause);
+				return false;
+			}
+		}
+		recordReceived(event, packet.getSequenceNumber(), datagramPacket.getLength(), isAck, cause);
+		return true;
+	}
+
+	/**
+	 * <b>Tell if a datagram of an unknown transfer may start a Session.</b>
+	 * Only a SYN with a valid checksum does, like in Receiver.findSession, so
+	 * a broken connection ID does not start a Session that lives for the
+	 * session timeout. Every other datagram is counted and dropped here.
+	 *
+	 * @param datagramPacket
+	 *            is the received datagram, its buffer holds a whole packet
+	 * @return true, if a Session should be started for it
+	 */
+	boolean opens(DatagramPacket datagramPacket) {
+		// a packet of the handshake always uses CRC-32
+		final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket);
+		final boolean checksumValid = packet.checkChecksum();
+		if (checksumValid && packet.isSYN() && !packet.isACK()) {
+			return true;
+		}
+		final PacketReceivedEvent event = new PacketReceivedEvent();
+		event.begin();
+		getMetrics().packetReceived();
+		trace(PacketTraceRecorder.Direction.received, packet, datagramPacket.getLength());
+		if (!checksumValid) {
+			getMetrics().checksumFailure();
+		}
+		recordReceived(event, packet.getSequenceNumber(), datagramPacket.getLength(), packet.isACK(), checksumValid ? "unexpected" : "checksum");
+		return false;
+	}
+
+	/**
+	 * <b>Record a received packet, if the event is enabled.</b>
+	 * 
+	 * @param event
+	 *            is the event begun when waiting started
+	 * @param sequenceNumber
+	 *            is the sequence number of the packet
+	 * @param size
+	 *            is the number of bytes of the datagram
+	 * @param ack
+	 *            is true, if the packet was an ACK
+	 * @param cause
+	 *            is what became of the packet
+	 */
+	private void recordReceived(PacketReceivedEvent event, int sequenceNumber, int size, boolean ack, String cause) {
+		if (event.shouldCommit()) {
+			event.sequenceNumber = sequenceNumber;
+			event.size = size;
+			event.ack = ack;
+			event.state = State.waitForData.toString();
+			event.cause = cause;
+			event.commit();
+		}
+	}
+
+	/**
+	 * <b>Close the file of a Session that ends.</b>
+	 * Unfinished files keep what has been received so far.
+	 *
+	 * @param session
+	 *            is the Session
+	 */
+	void close(Session session) {
+		if (!session.isFinished() && !session.isTimeWait()) {
+			System.err.println("Transfer " + session.getConnectionId() + " from " + session.getIpAdress() + " timed out, " + session.getFile() + " is incomplete.");
+		}
+		try {
+			session.close();
+		} catch (IOException exception) {
+			System.err.println("Sorry! An Error occured while writing the File " + session.getFile() + ".");
+		}
+	}
+
+	/**
+	 * <b>Create the socket to answer with.</b>
+	 * It sends through the socket the datagrams are received with, so the
+	 * senders get the ACKs from the port they send to.
+	 *
+	 * @param endpoint
+	 *            is the socket to receive with
+	 * @return the socket of the DatagramSocketFactory
+	 * @throws SocketException
+	 *             when the socket can not be created
+	 */
+	DatagramSocket open(DatagramSocket endpoint) throws SocketException {
+		return getSocketFactory().create(endpoint);
+	}
+
+	/**
+	 * <b>Get the counters and gauges of all transfers.</b>
+	 *
+	 * @return the metrics
+	 */
+	TransferMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * <b>Set the factory for the sockets to answer with.</b>
+	 *
+	 * @param socketFactory
+	 *            is the factory to use
+	 */
+	void setSocketFactory(DatagramSocketFactory socketFactory) {
+		this.socketFactory = socketFactory;
+	}
+
+	/**
+	 * <b>Get where the Clock comes from.</b>
+	 *
+	 * @return the network
+	 */
+	Network getNetwork() {
+		return network;
+	}
+
+	/**
+	 * <b>Set where the Clock comes from.</b>
+	 *
+	 * @param network
+	 *            is the network to use
+	 */
+	void setNetwork(Network network) {
+		this.network = network;
+	}
+
+	/**
+	 * <b>Enable capturing: every datagram send or received is recorded.</b>
+	 *
+	 * @param traceRecorder
+	 *            is the recorder to use, null disables capturing
+	 */
+	void setTraceRecorder(PacketTraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
+	/**
+	 * <b>Read the offer of the sender from a SYN.</b>
+	 *
+	 * @param packet
+	 *            is the SYN
+	 * @return the offer, null if it is broken
+	 */
+	private static ConnectionParameters readOffer(AlternatingBitPacket packet) {
+		try {
+			return ConnectionParameters.decode(packet.getContent());
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * <b>Read the identity of the data and the name of the file from a
+	 * SYN.</b>
+	 *
+	 * @param packet
+	 *            is the SYN
+	 * @return the Checkpoint, null if the SYN has none
+	 */
+	private static Checkpoint readCheckpoint(AlternatingBitPacket packet) {
+		try {
+			return Checkpoint.decode(packet.getContent(), ConnectionParameters.SIZE);
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * <b>Builds a ACK (or the SYN-ACK with the parameters, or the FIN-ACK) of
+	 * a Session and sends it to the address and port of the sender.</b>
+	 *
+	 * @param out
+	 *            is the socket to send with
+	 * @param session
+	 *            is the Session
+	 * @param stream
+	 *            is the Stream of the data packet (null for the SYN and FIN)
+	 * @param syn
+	 *            is true, to answer the SYN
+	 * @param fin
+	 *            is true, to answer the FIN
+	 */
+	private void sendAck(DatagramSocket out, Session session, Stream stream, boolean syn, boolean fin) {
+		try {
+			final int seqNr = syn ? session.getParameters().getInitialSequenceNumber() : fin ? 0 : stream.getCurrentSeqNr();
+			final int streamId = stream == null ? 0 : stream.getId();
+			final byte[] content = syn ? session.getAnswer() : fin ? new byte[0] : session.getAckContent(stream);
+			final boolean endFlag = !syn && !fin && session.isLastAck(stream);
+			final AlternatingBitPacket abPacket = new AlternatingBitPacket(session.getConnectionId(), streamId, seqNr, true, endFlag, syn, fin, content, session.getIpAdress(), session.getPort(), session.getChecksumAlgorithm());
+			final DatagramPacket packet = abPacket.createDatagram();
+			final PacketSentEvent event = new PacketSentEvent();
+			event.begin();
+			out.send(packet);
+			getMetrics().packetSent();
+			trace(PacketTraceRecorder.Direction.sent, abPacket, packet.getLength());
+			if (event.shouldCommit()) {
+				event.sequenceNumber = seqNr;
+				event.size = packet.getLength();
+				event.ack = true;
+				event.state = State.waitForData.toString();
+				event.cause = syn ? "synack" : fin ? "finack" : "ack";
+				event.commit();
+			}
+		} catch (IOException exception) {
+			System.err.println("Sorry, something went wrong while sending a packet.");
+			exception.printStackTrace();
+		}
+	}
+
+	/**
+	 * <b>Record a datagram if capturing is enabled.</b>
+	 *
+	 * @param direction
+	 *            is the direction of the datagram
+	 * @param packet
+	 *            is the packet inside the datagram
+	 * @param length
+	 *            is the length of the datagram
+	 */
+	private void trace(PacketTraceRecorder.Direction direction, Packet packet, int length) {
+		final PacketTraceRecorder recorder = getTraceRecorder();
+		if (recorder != null) {
+			try {
+				recorder.record(direction, packet, length);
+			} catch (IOException exception) {
+				System.err.println("Sorry, the packet trace could not be written. Capturing stopped.");
+				setTraceRecorder(null);
+			}
+		}
+	}
+
+	/**
+	 * <b>Get the recorder used for capturing.</b>
+	 *
+	 * @return the recorder, null if capturing is disabled
+	 */
+	private PacketTraceRecorder getTraceRecorder() {
+		return traceRecorder;
+	}
+
+	/**
+	 * <b>Get the factory for the sockets to answer with.</b>
+	 *
+	 * @return the factory
+	 */
+	private DatagramSocketFactory getSocketFactory() {
+		return socketFactory;
+	}
+}
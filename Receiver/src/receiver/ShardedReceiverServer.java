@@ -0,0 +1,473 @@
+package receiver;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import decorator.DatagramSocketFactory;
+import generics.Pair;
+import metrics.TransferMetrics;
+import protocolPackets.AlternatingBitPacket;
+import trace.PacketTraceRecorder;
+
+/**
+ * <b>Server mode of the Receiver for high inbound rates: one socket per
+ * core.</b>
+ *
+ * Receives on port 9876 and answers through the same socket, like the
+ * Receiver.<br>
+ * <br>
+ * Every shard binds a socket of its own to port 9876 with SO_REUSEPORT, so
+ * the operating system spreads the datagrams over the shards by their
+ * addresses and ports. Each shard is an event loop on a thread of its own
+ * with a table of the sessions it owns, which no other thread touches.<br>
+ * <br>
+ * A transfer belongs to the shard that received its first packet. As long as
+ * the sender keeps its port, all its packets arrive there. A packet that
+ * arrives at another shard is looked up in a shared directory and handed to
+ * the owner through its inbox.<br>
+ * <br>
+ * Java can not pin threads to cores. To keep each shard on one core, bind
+ * the process with taskset or numactl. Where SO_REUSEPORT is not supported,
+ * a single shard is used. Only the real network can be used.
+ */
+public class ShardedReceiverServer {
+
+	/**
+	 * <b>The Port to listen to.</b>
+	 */
+	private static final int RECEIVE_PORT = 9876;
+
+	/**
+	 * <b>A session without packets (and FIN) for this long in ms is
+	 * dropped.</b>
+	 */
+	private static final long SESSION_TIMEOUT = 60 * 1000;
+
+	/**
+	 * <b>Maps the IP-Address of the sender and the connection ID to the shard
+	 * owning the transfer.</b>
+	 */
+	private final Map<Pair<String, Integer>, Shard> owners;
+
+	/**
+	 * <b>Checks the packets, writes the files and sends the ACKs.</b>
+	 */
+	private final SessionProcessor processor;
+
+	/**
+	 * <b>File to write to, the connection ID is added to the name.</b>
+	 */
+	private final String file;
+
+	/**
+	 * <b>Number of shards wanted.</b>
+	 */
+	private final int shardCount;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param file
+	 *            is the file to write to, the connection ID of each
+	 *            transfer is added to the name
+	 * @param shardCount
+	 *            is the number of sockets and threads, for example the
+	 *            number of cores
+	 */
+	public ShardedReceiverServer(String file, int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("There must be at least one shard");
+		}
+		this.file = file;
+		this.shardCount = shardCount;
+		this.owners = new ConcurrentHashMap<>();
+		// send ACKs with errors
+		this.processor = new SessionProcessor();
+	}
+
+	/**
+	 * <b>Open the sockets and run the shards, endlessly.</b>
+	 *
+	 * @throws IOException
+	 *             when a socket can not be opened
+	 */
+	public void serve() throws IOException {
+		final List<Shard> shards = new ArrayList<>();
+		try {
+			final boolean reusePort = shardCount > 1 && isReusePortSupported();
+			if (shardCount > 1 && !reusePort) {
+				System.err.println("SO_REUSEPORT is not supported, using a single shard.");
+			}
+			for (int index = 0; index < (reusePort ? shardCount : 1); index++) {
+				shards.add(new Shard(index, reusePort));
+			}
+			System.out.println("Start serving with " + shards.size() + " shards");
+			final List<Thread> threads = new ArrayList<>();
+			for (final Shard shard : shards) {
+				final Thread thread = new Thread(shard, "shard-" + shard.getIndex());
+				thread.start();
+				threads.add(thread);
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for (final Shard shard : shards) {
+				shard.close();
+			}
+		}
+	}
+
+	/**
+	 * <b>Get the file a transfer is stored in.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the file path as String
+	 * @see Receiver#getFile(int)
+	 */
+	public String getFile(int connectionId) {
+		return Session.fileName(file, connectionId);
+	}
+
+	/**
+	 * <b>Get the file a stream of a transfer is stored in.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @param streamId
+	 *            is the stream ID
+	 * @return the file path as String
+	 * @see Receiver#getFile(int, int)
+	 */
+	public String getFile(int connectionId, int streamId) {
+		return Session.fileName(file, connectionId, streamId);
+	}
+
+	/**
+	 * <b>Get the directory a directory transfer is stored in.</b>
+	 *
+	 * @param connectionId
+	 *            is the connection ID of the transfer
+	 * @return the directory path as String
+	 * @see Receiver#getDirectory(int)
+	 */
+	public String getDirectory(int connectionId) {
+		return Session.directoryName(file, connectionId);
+	}
+
+	/**
+	 * <b>Get the counters and gauges of all transfers.</b>
+	 *
+	 * @return the metrics
+	 */
+	public TransferMetrics getMetrics() {
+		return getProcessor().getMetrics();
+	}
+
+	/**
+	 * <b>Set the factory for the sockets to send with.</b>
+	 * Every shard sends through its own socket.
+	 * By default a BrokenDatagramSocket with its standard params is used.
+	 *
+	 * @param socketFactory
+	 *            is the factory to use
+	 */
+	public void setSocketFactory(DatagramSocketFactory socketFactory) {
+		getProcessor().setSocketFactory(socketFactory);
+	}
+
+	/**
+	 * <b>Enable capturing: every datagram send or received is recorded.</b>
+	 *
+	 * @param traceRecorder
+	 *            is the recorder to use, null disables capturing
+	 */
+	public void setTraceRecorder(PacketTraceRecorder traceRecorder) {
+		getProcessor().setTraceRecorder(traceRecorder);
+	}
+
+	/**
+	 * <b>Check if several sockets can be bound to one port.</b>
+	 *
+	 * @return true, if SO_REUSEPORT is supported
+	 * @throws IOException
+	 *             when no socket can be opened at all
+	 */
+	private static boolean isReusePortSupported() throws IOException {
+		try (final DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)) {
+			return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+		}
+	}
+
+	/**
+	 * <b>Get the map of the owners of all transfers.</b>
+	 *
+	 * @return the mapping
+	 */
+	private Map<Pair<String, Integer>, Shard> getOwners() {
+		return owners;
+	}
+
+	/**
+	 * <b>Get the processor of the packets.</b>
+	 *
+	 * @return the processor
+	 */
+	private SessionProcessor getProcessor() {
+		return processor;
+	}
+
+	/**
+	 * <b>One socket with its event loop and its sessions.</b>
+	 */
+	private final class Shard implements Runnable {
+
+		/**
+		 * <b>Number of the shard.</b>
+		 */
+		private final int index;
+
+		/**
+		 * <b>The socket to receive with.</b>
+		 */
+		private final DatagramChannel channel;
+
+		/**
+		 * <b>The socket to receive with, as a socket to send with.</b>
+		 */
+		private final ChannelSocket endpoint;
+
+		/**
+		 * <b>Sends the ACKs through the endpoint.</b>
+		 */
+		private final DatagramSocket out;
+
+		/**
+		 * <b>Waits for datagrams and for the inbox.</b>
+		 */
+		private final Selector selector;
+
+		/**
+		 * <b>The sessions this shard owns, only touched by its thread.</b>
+		 */
+		private final Map<Pair<String, Integer>, Session> sessions;
+
+		/**
+		 * <b>Datagrams of owned sessions that arrived at other shards.</b>
+		 */
+		private final Queue<DatagramPacket> inbox;
+
+		/**
+		 * <b>Time the sessions were last checked for timeouts in ns.</b>
+		 */
+		private long lastSweep;
+
+		/**
+		 * <b>Constructor with following params.</b>
+		 *
+		 * @param index
+		 *            is the number of the shard
+		 * @param reusePort
+		 *            is true, if the socket shares the port with the other
+		 *            shards
+		 * @throws IOException
+		 *             when the socket can not be opened
+		 */
+		private Shard(int index, boolean reusePort) throws IOException {
+			this.index = index;
+			this.sessions = new HashMap<>();
+			this.inbox = new ConcurrentLinkedQueue<>();
+			this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+			try {
+				if (reusePort) {
+					channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+				}
+				channel.bind(new InetSocketAddress(RECEIVE_PORT));
+				channel.configureBlocking(false);
+				this.endpoint = new ChannelSocket(channel);
+				this.out = getProcessor().open(endpoint);
+				this.selector = Selector.open();
+				channel.register(selector, SelectionKey.OP_READ);
+			} catch (IOException exception) {
+				channel.close();
+				throw exception;
+			}
+			this.lastSweep = getProcessor().getNetwork().getClock().nanoTime();
+		}
+
+		/**
+		 * <b>The event loop.</b>
+		 */
+		@Override
+		public void run() {
+			try {
+				while (channel.isOpen()) {
+					selector.select(Session.TIME_WAIT);
+					selector.selectedKeys().clear();
+					receiveAll();
+					DatagramPacket handedOver;
+					while ((handedOver = inbox.poll()) != null) {
+						process(handedOver);
+					}
+					dropIdleSessions();
+				}
+			} catch (IOException exception) {
+				System.err.println("Sorry! Shard " + index + " stopped: " + exception.getMessage());
+			}
+		}
+
+		/**
+		 * <b>Close the socket and the files of all sessions.</b>
+		 */
+		private void close() {
+			try {
+				selector.close();
+				out.close();
+				endpoint.close();
+				channel.close();
+			} catch (IOException exception) {
+				System.err.println("Sorry! The socket of shard " + index + " could not be closed.");
+			}
+			for (final Session session : sessions.values()) {
+				getProcessor().close(session);
+			}
+		}
+
+		/**
+		 * <b>Receive the datagrams waiting at the socket.</b>
+		 *
+		 * @throws IOException
+		 *             when the socket fails
+		 */
+		private void receiveAll() throws IOException {
+			while (true) {
+				// a buffer of its own, it may be handed to another shard
+				final byte[] receivedData = new byte[AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE];
+				final ByteBuffer buffer = ByteBuffer.wrap(receivedData);
+				final InetSocketAddress source = (InetSocketAddress) channel.receive(buffer);
+				if (source == null) {
+					return;
+				}
+				final DatagramPacket datagramPacket = new DatagramPacket(receivedData, buffer.position(), source);
+				if (datagramPacket.getLength() < AlternatingBitPacket.HEADERSIZE) {
+					getProcessor().getMetrics().packetReceived();
+					getProcessor().getMetrics().checksumFailure();
+					continue;
+				}
+				final Pair<String, Integer> key = keyOf(datagramPacket);
+				// the first shard to see the SYN of a transfer owns it
+				Shard owner = getOwners().get(key);
+				if (owner == null) {
+					if (!getProcessor().opens(datagramPacket)) {
+						continue;
+					}
+					owner = getOwners().putIfAbsent(key, this);
+					if (owner == null) {
+						owner = this;
+					}
+				}
+				if (owner == this) {
+					process(datagramPacket);
+				} else {
+					owner.handOver(datagramPacket);
+				}
+			}
+		}
+
+		/**
+		 * <b>Take a datagram of an owned session from another shard.</b>
+		 *
+		 * @param datagramPacket
+		 *            is the datagram
+		 */
+		private void handOver(DatagramPacket datagramPacket) {
+			inbox.add(datagramPacket);
+			selector.wakeup();
+		}
+
+		/**
+		 * <b>Process a datagram of an owned session.</b>
+		 *
+		 * @param datagramPacket
+		 *            is the datagram
+		 */
+		private void process(DatagramPacket datagramPacket) {
+			final Pair<String, Integer> key = keyOf(datagramPacket);
+			Session session = sessions.get(key);
+			if (session == null) {
+				// only a valid SYN starts a session
+				if (!getProcessor().opens(datagramPacket)) {
+					getOwners().remove(key, this);
+					return;
+				}
+				session = new Session(key.getU(), key.getT(), datagramPacket.getPort(), getFile(key.getU()), getProcessor().getNetwork().getClock().nanoTime());
+				sessions.put(key, session);
+			}
+			if (!getProcessor().process(session, datagramPacket, out)) {
+				sessions.remove(key);
+				getOwners().remove(key, this);
+			}
+		}
+
+		/**
+		 * <b>Drop the sessions TIME_WAIT after their FIN, or without packets
+		 * for SESSION_TIMEOUT.</b>
+		 * The sessions are only checked once per TIME_WAIT.
+		 */
+		private void dropIdleSessions() {
+			final long now = getProcessor().getNetwork().getClock().nanoTime();
+			if (now - lastSweep < Session.TIME_WAIT * 1_000_000) {
+				return;
+			}
+			lastSweep = now;
+			final Iterator<Map.Entry<Pair<String, Integer>, Session>> iterator = sessions.entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry<Pair<String, Integer>, Session> entry = iterator.next();
+				if (now - entry.getValue().getExpiry(SESSION_TIMEOUT) >= 0) {
+					iterator.remove();
+					getOwners().remove(entry.getKey(), this);
+					getProcessor().close(entry.getValue());
+				}
+			}
+		}
+
+		/**
+		 * <b>Get the key of the transfer a datagram belongs to.</b>
+		 *
+		 * @param datagramPacket
+		 *            is the datagram
+		 * @return the IP-Address of the sender and the connection ID
+		 */
+		private Pair<String, Integer> keyOf(DatagramPacket datagramPacket) {
+			return new Pair<String, Integer>(datagramPacket.getAddress().getHostAddress(), AlternatingBitPacket.peekConnectionId(datagramPacket));
+		}
+
+		/**
+		 * <b>Get the number of the shard.</b>
+		 *
+		 * @return the number
+		 */
+		private int getIndex() {
+			return index;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package receiver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <b>One stream of a Session: a file with sequence numbers of its own.</b>
+ *
+ * The packets of the streams of a transfer are interleaved, each stream is
+ * checked for duplicates and stored by itself. The Sender has only one packet
+ * on its way, so a lost packet of one stream still holds back the others
+ * until it is resent.
+ */
+final class Stream {
+
+	/**
+	 * <b>Size of the buffer in front of the file in bytes.</b>
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * <b>Stream ID, set by the sender.</b>
+	 */
+	private final int id;
+
+	/**
+	 * <b>File to write to.</b>
+	 */
+	private final String file;
+
+	/**
+	 * <b>Stores the current sequence number.</b>
+	 */
+	private int currentSeqNr;
+
+	/**
+	 * <b>Writes the file (null before the first packet and when closed).</b>
+	 */
+	private OutputStream output;
+
+	/**
+	 * <b>Inflates compressed packets (null before the first one and when
+	 * closed).</b>
+	 */
+	private Inflater inflater;
+
+	/**
+	 * <b>Number of bytes written to the file.</b>
+	 */
+	private long bytesReceived;
+
+	/**
+	 * <b>Number of packets written to the file.</b>
+	 */
+	private int packets;
+
+	/**
+	 * <b>Store if the last packet has arrived.</b>
+	 */
+	private boolean finished;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 * The sequence number is set to the one before the initial sequence
+	 * number, so the first packet is new.
+	 *
+	 * @param id
+	 *            is the stream ID
+	 * @param file
+	 *            is the file to write to
+	 * @param initialSequenceNumber
+	 *            is the sequence number of the first packet
+	 */
+	Stream(int id, String file, int initialSequenceNumber) {
+		this(id, file, null, initialSequenceNumber);
+	}
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 * The content goes to the given OutputStream instead of a file.
+	 *
+	 * @param id
+	 *            is the stream ID
+	 * @param file
+	 *            is the name of the stream in messages
+	 * @param output
+	 *            is where to write the content to
+	 * @param initialSequenceNumber
+	 *            is the sequence number of the first packet
+	 */
+	Stream(int id, String file, OutputStream output, int initialSequenceNumber) {
+		this.id = id;
+		this.file = file;
+		this.output = output;
+		this.currentSeqNr = 1 - initialSequenceNumber;
+		this.bytesReceived = 0;
+		this.finished = false;
+	}
+
+	/**
+	 * <b>Go on with a stream of a broken off transfer.</b>
+	 *
+	 * @param offset
+	 *            is the number of bytes in the file already
+	 * @param complete
+	 *            is true, if the last packet has arrived already
+	 */
+	void resume(long offset, boolean complete) {
+		this.bytesReceived = offset;
+		this.finished = complete;
+	}
+
+	/**
+	 * <b>Append the content of a packet to the file.</b>
+	 * The file is created with the first packet. A resumed stream goes on
+	 * after the bytes received before, anything behind them is dropped.
+	 *
+	 * @param content
+	 *            is the array holding the content
+	 * @param offset
+	 *            is the start of the content in the array
+	 * @param length
+	 *            is the length of the content
+	 * @throws IOException
+	 *             when the file can not be written
+	 */
+	void write(byte[] content, int offset, int length) throws IOException {
+		if (output == null) {
+			final FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.truncate(bytesReceived);
+			channel.position(bytesReceived);
+			output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+		}
+		output.write(content, offset, length);
+		bytesReceived += length;
+		packets++;
+	}
+
+	/**
+	 * <b>Append the content of a compressed packet to the file.</b>
+	 * Each packet is compressed on its own.
+	 *
+	 * @param content
+	 *            is the array holding the content
+	 * @param offset
+	 *            is the start of the content in the array
+	 * @param length
+	 *            is the length of the content
+	 * @param original
+	 *            is the length of the content before compression
+	 * @return the number of bytes written
+	 * @throws IOException
+	 *             when the content is broken or the file can not be written
+	 */
+	int inflate(byte[] content, int offset, int length, int original) throws IOException {
+		if (inflater == null) {
+			inflater = new Inflater();
+		}
+		inflater.reset();
+		inflater.setInput(content, offset, length);
+		final byte[] bytes = new byte[original];
+		try {
+			if (inflater.inflate(bytes) != original || !inflater.finished()) {
+				throw new IOException("A compressed packet of " + file + " has the wrong length.");
+			}
+		} catch (DataFormatException exception) {
+			throw new IOException("A compressed packet of " + file + " is broken.", exception);
+		}
+		write(bytes, 0, original);
+		return original;
+	}
+
+	/**
+	 * <b>Hand everything received so far to the file system.</b>
+	 *
+	 * @throws IOException
+	 *             when the file can not be written
+	 */
+	void flush() throws IOException {
+		if (output != null) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * <b>Mark the stream as finished and close the file.</b>
+	 *
+	 * @throws IOException
+	 *             when the rest of the file can not be written
+	 */
+	void finish() throws IOException {
+		finished = true;
+		close();
+	}
+
+	/**
+	 * <b>Close the file, what has been received so far is kept.</b>
+	 *
+	 * @throws IOException
+	 *             when the rest of the file can not be written
+	 */
+	void close() throws IOException {
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+		if (output != null) {
+			final OutputStream closing = output;
+			output = null;
+			closing.close();
+		}
+	}
+
+	/**
+	 * <b>Get the stream ID.</b>
+	 *
+	 * @return the stream ID
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * <b>Get the file to write to.</b>
+	 *
+	 * @return the file path as String
+	 */
+	String getFile() {
+		return file;
+	}
+
+	/**
+	 * <b>Get the current sequence number.</b>
+	 *
+	 * @return the current sequence number
+	 */
+	int getCurrentSeqNr() {
+		return currentSeqNr;
+	}
+
+	/**
+	 * <b>Set the current sequence number.</b>
+	 *
+	 * @param currentSeqNr
+	 *            is the new sequence number
+	 */
+	void setCurrentSeqNr(int currentSeqNr) {
+		this.currentSeqNr = currentSeqNr;
+	}
+
+	/**
+	 * <b>Get the number of bytes written to the file.</b>
+	 *
+	 * @return the number of bytes
+	 */
+	long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * <b>Get the number of packets written to the file.</b>
+	 *
+	 * @return the number of packets, without duplicates
+	 */
+	int getPackets() {
+		return packets;
+	}
+
+	/**
+	 * <b>Get if the last packet has arrived.</b>
+	 *
+	 * @return true, if the stream is finished
+	 */
+	boolean isFinished() {
+		return finished;
+	}
+}
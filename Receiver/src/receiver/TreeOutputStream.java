@@ -0,0 +1,219 @@
+package receiver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.List;
+
+import protocolPackets.Manifest;
+
+/**
+ * <b>Writes the files of one stream of a directory transfer.</b>
+ *
+ * The files of a stream come back to back, in the order of the Manifest. Each
+ * one is cut off after its size, created below the directory of the transfer
+ * and gets the time of the last modification of the original. The padding of
+ * the last packet is dropped. A resumed stream skips the files it has already
+ * and goes on in the middle of the next one.
+ */
+final class TreeOutputStream extends OutputStream {
+
+	/**
+	 * <b>Size of the buffer in front of a file in bytes.</b>
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * <b>The directory of the transfer.</b>
+	 */
+	private final Path root;
+
+	/**
+	 * <b>The files still to be written.</b>
+	 */
+	private final Iterator<Manifest.Entry> files;
+
+	/**
+	 * <b>The file being written (null before the first and after the
+	 * last).</b>
+	 */
+	private Manifest.Entry current;
+
+	/**
+	 * <b>The path of the file being written.</b>
+	 */
+	private Path target;
+
+	/**
+	 * <b>Writes the file (null when there is none).</b>
+	 */
+	private OutputStream output;
+
+	/**
+	 * <b>Number of bytes the file still misses.</b>
+	 */
+	private long remaining;
+
+	/**
+	 * <b>Number of bytes of the stream received before (0 once the files
+	 * are skipped).</b>
+	 */
+	private long skip;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param root
+	 *            is the directory of the transfer
+	 * @param files
+	 *            are the files of the stream, in the order they are sent
+	 * @param offset
+	 *            is the number of bytes of the stream received before
+	 */
+	TreeOutputStream(Path root, List<Manifest.Entry> files, long offset) {
+		this.root = root.toAbsolutePath().normalize();
+		this.files = files.iterator();
+		this.skip = offset;
+	}
+
+	/**
+	 * <b>Get the path a file of the Manifest is stored at.</b>
+	 *
+	 * @param root
+	 *            is the directory of the transfer
+	 * @param entry
+	 *            is the file or directory
+	 * @return the path
+	 * @throws IOException
+	 *             when the path is not below the directory
+	 */
+	static Path resolve(Path root, Manifest.Entry entry) throws IOException {
+		final Path base = root.toAbsolutePath().normalize();
+		Path path = base;
+		for (String name : entry.getPath().split("/")) {
+			path = path.resolve(name);
+		}
+		path = path.normalize();
+		if (!path.startsWith(base) || path.equals(base)) {
+			throw new IOException("The path " + entry.getPath() + " is not inside " + base + ".");
+		}
+		return path;
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	/**
+	 * <b>Write the next bytes of the stream to the files they belong to.</b>
+	 * Empty files are created as soon as it is their turn.
+	 *
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] content, int offset, int length) throws IOException {
+		while (skip > 0 && files.hasNext()) {
+			final Manifest.Entry file = files.next();
+			if (skip < file.getSize()) {
+				// received in part, go on after what is there
+				open(file, skip);
+				skip = 0;
+			} else {
+				skip -= file.getSize();
+			}
+		}
+		skip = 0;
+		while (true) {
+			if (current == null) {
+				if (!files.hasNext()) {
+					// padding of the last packet
+					return;
+				}
+				open(files.next(), 0);
+			}
+			if (remaining == 0) {
+				closeCurrent();
+			} else if (length == 0) {
+				return;
+			} else {
+				final int count = (int) Math.min(length, remaining);
+				output.write(content, offset, count);
+				offset += count;
+				length -= count;
+				remaining -= count;
+			}
+		}
+	}
+
+	/**
+	 * <b>Hand everything received so far to the file system.</b>
+	 *
+	 * @see java.io.OutputStream#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (output != null) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * <b>Close the file being written, what has been received so far is
+	 * kept.</b>
+	 *
+	 * @see java.io.OutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (output != null) {
+			final OutputStream closing = output;
+			output = null;
+			current = null;
+			closing.close();
+		}
+	}
+
+	/**
+	 * <b>Create the next file.</b>
+	 *
+	 * @param entry
+	 *            is the file
+	 * @param start
+	 *            is the number of bytes in the file already
+	 * @throws IOException
+	 *             when the file can not be created
+	 */
+	private void open(Manifest.Entry entry, long start) throws IOException {
+		target = resolve(root, entry);
+		Files.createDirectories(target.getParent());
+		final FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.truncate(start);
+		channel.position(start);
+		output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+		current = entry;
+		remaining = entry.getSize() - start;
+	}
+
+	/**
+	 * <b>Close the complete file and give it the time of the original.</b>
+	 *
+	 * @throws IOException
+	 *             when the rest of the file can not be written
+	 */
+	private void closeCurrent() throws IOException {
+		final Manifest.Entry complete = current;
+		close();
+		Files.setLastModifiedTime(target, FileTime.fromMillis(complete.getModified()));
+	}
+}
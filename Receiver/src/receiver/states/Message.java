@@ -8,6 +8,16 @@ public enum Message {
 	/**
 	 * <b>Send a packet.</b>
 	 */
-	sendAck;
+	sendAck,
+	
+	/**
+	 * <b>Answer a SYN with the parameters of the transfer.</b>
+	 */
+	sendSynAck,
+	
+	/**
+	 * <b>Answer a FIN, the transfer is closed.</b>
+	 */
+	sendFinAck;
 	
 }
@@ -0,0 +1,250 @@
+package trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import protocolPackets.AlternatingBitPacket;
+
+/**
+ * <b>Offline analysis of a trace written by PacketTraceRecorder.</b>
+ *
+ * Prints the throughput over time, the loss episodes (a segment that had to
+ * be transmitted more than once) and the retransmission efficiency (unique
+ * segments per transmitted segment). Works with sender and receiver traces,
+ * the direction carrying the data is detected automatically.
+ */
+public class TraceAnalyzer {
+
+	/**
+	 * <b>Default width of a throughput bucket in ms.</b>
+	 */
+	private static final long DEFAULT_BUCKET_MILLIS = 100;
+
+	/**
+	 * <b>One loss episode.</b>
+	 */
+	private static class Episode {
+
+		/**
+		 * <b>Time of the first transmission in ns.</b>
+		 */
+		private final long start;
+
+		/**
+		 * <b>Time of the last transmission in ns.</b>
+		 */
+		private final long end;
+
+		/**
+		 * <b>Sequence number of the segment.</b>
+		 */
+		private final int sequenceNumber;
+
+		/**
+		 * <b>Number of transmissions after the first one.</b>
+		 */
+		private final int repeats;
+
+		/**
+		 * <b>Create a new episode with following params.</b>
+		 *
+		 * @param start
+		 *            is the time of the first transmission in ns
+		 * @param end
+		 *            is the time of the last transmission in ns
+		 * @param sequenceNumber
+		 *            is the sequence number of the segment
+		 * @param repeats
+		 *            is the number of transmissions after the first one
+		 */
+		private Episode(long start, long end, int sequenceNumber, int repeats) {
+			this.start = start;
+			this.end = end;
+			this.sequenceNumber = sequenceNumber;
+			this.repeats = repeats;
+		}
+	}
+
+	/**
+	 * <b>The program starts here.</b><br>
+	 * Arguments:<br>
+	 * <br>
+	 * 1. <b>Trace file</b><br>
+	 * 2. <b>Bucket width</b> in ms (optional, default 100)<br>
+	 *
+	 * @param args
+	 *            contains the given arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: TraceAnalyzer <trace file> [bucket width in ms]");
+		} else {
+			try {
+				final long bucketMillis = args.length == 2 ? Long.parseLong(args[1]) : DEFAULT_BUCKET_MILLIS;
+				if (bucketMillis <= 0) {
+					throw new NumberFormatException("The bucket width must be greater than 0");
+				}
+				analyze(Paths.get(args[0]), bucketMillis);
+			} catch (NumberFormatException exception) {
+				System.err.println("Invalid bucket width: " + exception.getMessage());
+			} catch (IOException exception) {
+				System.err.println("Sorry! The trace could not be read: " + exception.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * <b>End a run of transmissions of the same segment.</b>
+	 * A repeated segment is a loss episode. Corrupted packets before the first
+	 * segment belong to no segment and are no episode.
+	 *
+	 * @param episodes
+	 *            are the loss episodes so far
+	 * @param start
+	 *            is the time of the first transmission in ns
+	 * @param end
+	 *            is the time of the last transmission in ns
+	 * @param sequenceNumber
+	 *            is the sequence number of the segment, -1 before the first
+	 * @param length
+	 *            is the number of transmissions of the run
+	 */
+	private static void endRun(List<Episode> episodes, long start, long end, int sequenceNumber, int length) {
+		if (length > 1 && sequenceNumber >= 0) {
+			episodes.add(new Episode(start, end, sequenceNumber, length - 1));
+		}
+	}
+
+	/**
+	 * <b>Analyze a trace and print the results.</b>
+	 *
+	 * @param file
+	 *            is the trace file
+	 * @param bucketMillis
+	 *            is the width of a throughput bucket in ms
+	 * @throws IOException
+	 *             when the file can not be read or is no trace
+	 */
+	public static void analyze(Path file, long bucketMillis) throws IOException {
+		final ByteBuffer buffer;
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.remaining() < PacketTraceRecorder.HEADER_SIZE || buffer.getInt() != PacketTraceRecorder.MAGIC) {
+			throw new IOException("\"" + file + "\" is no packet trace");
+		}
+		final short version = buffer.getShort();
+		if (version != PacketTraceRecorder.VERSION) {
+			throw new IOException("Unsupported trace version " + version);
+		}
+		final int recordSize = buffer.getShort();
+		buffer.getLong();
+		// a trace that was not closed properly ends with zeros
+		int records = buffer.remaining() / recordSize;
+		for (int index = 0; index < records; index++) {
+			if (buffer.getInt(PacketTraceRecorder.HEADER_SIZE + index * recordSize + 16) == 0) {
+				records = index;
+			}
+		}
+
+		// count the data packets per direction to find out which side this is
+		final int[] dataRecords = new int[PacketTraceRecorder.Direction.values().length];
+		for (int index = 0; index < records; index++) {
+			final int position = PacketTraceRecorder.HEADER_SIZE + index * recordSize;
+			if ((buffer.get(position + 9) & (PacketTraceRecorder.FLAG_ACK | PacketTraceRecorder.FLAG_SYN | PacketTraceRecorder.FLAG_FIN)) == 0) {
+				dataRecords[buffer.get(position + 8)]++;
+			}
+		}
+		final int dataDirection = dataRecords[PacketTraceRecorder.Direction.sent.ordinal()] >= dataRecords[PacketTraceRecorder.Direction.received.ordinal()]
+				? PacketTraceRecorder.Direction.sent.ordinal()
+				: PacketTraceRecorder.Direction.received.ordinal();
+
+		final long bucketNanos = bucketMillis * 1_000_000;
+		final List<long[]> buckets = new ArrayList<>();
+		final List<Episode> episodes = new ArrayList<>();
+		long lastTime = 0;
+		int transmissions = 0;
+		int segments = 0;
+		int checksumFailures = 0;
+		// the current run of transmissions of the same segment
+		int runStreamId = -1;
+		int runSequenceNumber = -1;
+		int runLength = 0;
+		long runStart = 0;
+		long runEnd = 0;
+
+		for (int index = 0; index < records; index++) {
+			final int position = PacketTraceRecorder.HEADER_SIZE + index * recordSize;
+			final long time = buffer.getLong(position);
+			final int direction = buffer.get(position + 8);
+			final int flags = buffer.get(position + 9);
+			final int streamId = buffer.getShort(position + 10) & 0xFFFF;
+			final int sequenceNumber = buffer.getInt(position + 12);
+			final int length = buffer.getInt(position + 16);
+			lastTime = Math.max(lastTime, time);
+			// only data packets, not the ACKs, the handshake and the teardown
+			if (direction != dataDirection || (flags & (PacketTraceRecorder.FLAG_ACK | PacketTraceRecorder.FLAG_SYN | PacketTraceRecorder.FLAG_FIN)) != 0) {
+				continue;
+			}
+			transmissions++;
+			if ((flags & PacketTraceRecorder.FLAG_CHECKSUM_VALID) == 0) {
+				// corrupted: the sequence number can not be trusted, but it
+				// belongs to the current run
+				checksumFailures++;
+				runLength++;
+				runEnd = time;
+				continue;
+			}
+			// every stream counts its sequence numbers on its own
+			if (sequenceNumber != runSequenceNumber || streamId != runStreamId) {
+				endRun(episodes, runStart, runEnd, runSequenceNumber, runLength);
+				segments++;
+				runStreamId = streamId;
+				runSequenceNumber = sequenceNumber;
+				runLength = 0;
+				runStart = time;
+				// only new segments count towards the throughput
+				final int bucket = (int) (time / bucketNanos);
+				while (buckets.size() <= bucket) {
+					buckets.add(new long[2]);
+				}
+				buckets.get(bucket)[0]++;
+				buckets.get(bucket)[1] += Math.max(0, length - AlternatingBitPacket.HEADERSIZE);
+			}
+			runLength++;
+			runEnd = time;
+		}
+		// the run of the last segment lasts until the final record, nothing
+		// after it ends it
+		endRun(episodes, runStart, runEnd, runSequenceNumber, runLength);
+
+		// print the results
+		System.out.println("Trace " + file + ": " + records + " records, " + String.format("%.1f", lastTime / 1e6)
+				+ " ms, data " + PacketTraceRecorder.Direction.values()[dataDirection]);
+		System.out.println();
+		System.out.println("Throughput (" + bucketMillis + " ms buckets):");
+		System.out.println("\ttime [ms]\tsegments\tKiB/s");
+		for (int bucket = 0; bucket < buckets.size(); bucket++) {
+			System.out.println("\t" + bucket * bucketMillis + "\t\t" + buckets.get(bucket)[0] + "\t\t"
+					+ String.format("%.1f", buckets.get(bucket)[1] * 1000.0 / bucketMillis / 1024));
+		}
+		System.out.println();
+		System.out.println("Loss episodes: " + episodes.size());
+		System.out.println("\tstart [ms]\tduration [ms]\tSeqNr\trepeats");
+		for (final Episode episode : episodes) {
+			System.out.println("\t" + String.format("%.1f", episode.start / 1e6) + "\t\t"
+					+ String.format("%.1f", (episode.end - episode.start) / 1e6) + "\t\t" + episode.sequenceNumber
+					+ "\t" + episode.repeats);
+		}
+		System.out.println();
+		System.out.println("Checksum failures: " + checksumFailures);
+		System.out.println("Retransmission efficiency: " + segments + " / " + transmissions + " = "
+				+ String.format("%.1f", transmissions == 0 ? 100.0 : segments * 100.0 / transmissions) + "%");
+	}
+}
@@ -0,0 +1,322 @@
+package transport;
+
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * <b>In-memory network of a deterministic simulation.</b>
+ *
+ * Datagrams never touch the operating system: they are put into the mailbox
+ * of the destination port and become visible after the latency has passed on
+ * the SimulatedClock. Bit mistakes, loss and duplicates are applied like in
+ * BrokenDatagramSocket, but drawn from one Random with a fixed seed, so the
+ * same seed always results in the same faults.<br>
+ * <br>
+ * Like a real UDP stack, a datagram arriving at a port no socket is bound to
+ * is lost, and closing a socket discards what it has not received yet.
+ */
+public class SimulatedNetwork implements Network {
+
+	/**
+	 * <b>First port handed out by open().</b>
+	 */
+	private static final int FIRST_EPHEMERAL_PORT = 49152;
+
+	/**
+	 * <b>A datagram on its way.</b>
+	 */
+	private static class Delivery implements Comparable<Delivery> {
+
+		/**
+		 * <b>Virtual time the datagram arrives at in ns.</b>
+		 */
+		private final long time;
+
+		/**
+		 * <b>Keeps datagrams arriving at the same time in sending order.</b>
+		 */
+		private final long order;
+
+		/**
+		 * <b>Port of the sending socket.</b>
+		 */
+		private final int sourcePort;
+
+		/**
+		 * <b>Copy of the payload.</b>
+		 */
+		private final byte[] data;
+
+		/**
+		 * <b>Create a new Delivery with following params.</b>
+		 *
+		 * @param time
+		 *            is the virtual arrival time in ns
+		 * @param order
+		 *            is the sending order
+		 * @param sourcePort
+		 *            is the port of the sending socket
+		 * @param data
+		 *            is the payload
+		 */
+		private Delivery(long time, long order, int sourcePort, byte[] data) {
+			this.time = time;
+			this.order = order;
+			this.sourcePort = sourcePort;
+			this.data = data;
+		}
+
+		@Override
+		public int compareTo(Delivery other) {
+			final int byTime = Long.compare(time, other.time);
+			return byTime != 0 ? byTime : Long.compare(order, other.order);
+		}
+	}
+
+	/**
+	 * <b>The virtual clock.</b>
+	 */
+	private final SimulatedClock clock;
+
+	/**
+	 * <b>Draws all faults.</b>
+	 */
+	private final Random random;
+
+	/**
+	 * <b>Chance of a bit mistake in %.</b>
+	 */
+	private final int bitMistakeChance;
+
+	/**
+	 * <b>Chance of a package loss in %.</b>
+	 */
+	private final int packageLossChance;
+
+	/**
+	 * <b>Chance of a package duplicate in %.</b>
+	 */
+	private final int packageDuplicateChance;
+
+	/**
+	 * <b>One way latency in ns.</b>
+	 */
+	private final long latency;
+
+	/**
+	 * <b>Datagrams by destination port.</b>
+	 */
+	private final Map<Integer, PriorityQueue<Delivery>> mailboxes;
+
+	/**
+	 * <b>Virtual time each bound port was bound at in ns.</b>
+	 */
+	private final Map<Integer, Long> boundPorts;
+
+	/**
+	 * <b>Number of datagrams send so far.</b>
+	 */
+	private long sent;
+
+	/**
+	 * <b>Next port handed out by open().</b>
+	 */
+	private int nextEphemeralPort;
+
+	/**
+	 * <b>Create a new network with following params.</b>
+	 *
+	 * @param seed
+	 *            is the seed of all faults
+	 * @param bitMistakeChance
+	 *            is the chance of a bit mistake (0-100)
+	 * @param packageLossChance
+	 *            is the chance of a package loss (0-100)
+	 * @param packageDuplicateChance
+	 *            is the chance of a package duplicate (0-100)
+	 * @param latencyMillis
+	 *            is the one way latency in ms
+	 */
+	public SimulatedNetwork(long seed, int bitMistakeChance, int packageLossChance, int packageDuplicateChance,
+			long latencyMillis) {
+		if (bitMistakeChance > 100 || bitMistakeChance < 0) {
+			throw new IllegalArgumentException("Bit mistake chance must be between 0 and 100");
+		}
+		if (packageLossChance > 100 || packageLossChance < 0) {
+			throw new IllegalArgumentException("Package loss chance must be between 0 and 100");
+		}
+		if (packageDuplicateChance > 100 || packageDuplicateChance < 0) {
+			throw new IllegalArgumentException("Package duplicate chance must be between 0 and 100");
+		}
+		if (latencyMillis < 0) {
+			throw new IllegalArgumentException("Latency must not be negative");
+		}
+		this.clock = new SimulatedClock();
+		this.random = new Random(seed);
+		this.bitMistakeChance = bitMistakeChance;
+		this.packageLossChance = packageLossChance;
+		this.packageDuplicateChance = packageDuplicateChance;
+		this.latency = latencyMillis * 1_000_000;
+		this.mailboxes = new HashMap<>();
+		this.boundPorts = new HashMap<>();
+		this.sent = 0;
+		this.nextEphemeralPort = FIRST_EPHEMERAL_PORT;
+	}
+
+	@Override
+	public DatagramSocket open() throws SocketException {
+		synchronized (clock) {
+			while (boundPorts.containsKey(nextEphemeralPort)) {
+				nextEphemeralPort++;
+			}
+			return open(nextEphemeralPort++);
+		}
+	}
+
+	@Override
+	public DatagramSocket open(int port) throws SocketException {
+		synchronized (clock) {
+			if (boundPorts.putIfAbsent(port, clock.nanoTime()) != null) {
+				throw new BindException("Address already in use: " + port);
+			}
+			return new SimulatedDatagramSocket(this, port);
+		}
+	}
+
+	@Override
+	public SimulatedClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * <b>Send a datagram, maybe broken.</b>
+	 *
+	 * The caller must hold the monitor of the clock.
+	 *
+	 * @param data
+	 *            is the payload (it is copied)
+	 * @param sourcePort
+	 *            is the port of the sending socket
+	 * @param destinationPort
+	 *            is the port of the receiving socket
+	 */
+	void send(byte[] data, int sourcePort, int destinationPort) {
+		// always draw all three, so one fault does not shift the others
+		final boolean bitMistake = calculateChance(bitMistakeChance);
+		final boolean packageLoss = calculateChance(packageLossChance);
+		final boolean packageDuplicate = calculateChance(packageDuplicateChance);
+		final int count = (bitMistake ? 1 : 0) + (packageLoss ? 1 : 0) + (packageDuplicate ? 1 : 0);
+		final byte[] copy = Arrays.copyOf(data, data.length);
+		if (count == 0) {
+			deliver(copy, sourcePort, destinationPort);
+			return;
+		}
+		// like BrokenDatagramSocket: one of the drawn faults happens
+		int choice = random.nextInt(count);
+		if (bitMistake && choice-- == 0) {
+			if (copy.length > 0) {
+				copy[random.nextInt(copy.length)] = 0;
+			}
+			deliver(copy, sourcePort, destinationPort);
+		} else if (packageLoss && choice-- == 0) {
+			// gone
+		} else {
+			deliver(copy, sourcePort, destinationPort);
+			deliver(copy, sourcePort, destinationPort);
+		}
+	}
+
+	/**
+	 * <b>Take the next datagram that has arrived at a port.</b>
+	 *
+	 * The caller must hold the monitor of the clock.
+	 *
+	 * @param port
+	 *            is the destination port
+	 * @param packet
+	 *            receives the payload (truncated to its buffer) and source
+	 * @return true, if a datagram was received
+	 */
+	boolean poll(int port, DatagramPacket packet) {
+		final PriorityQueue<Delivery> mailbox = mailboxes.get(port);
+		final long boundAt = boundPorts.getOrDefault(port, Long.MAX_VALUE);
+		while (mailbox != null && !mailbox.isEmpty() && mailbox.peek().time <= clock.nanoTime()) {
+			final Delivery delivery = mailbox.poll();
+			// arrived while nobody listened
+			if (delivery.time < boundAt) {
+				continue;
+			}
+			final int length = Math.min(delivery.data.length, packet.getData().length - packet.getOffset());
+			System.arraycopy(delivery.data, 0, packet.getData(), packet.getOffset(), length);
+			packet.setLength(length);
+			packet.setAddress(InetAddress.getLoopbackAddress());
+			packet.setPort(delivery.sourcePort);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * <b>Get the arrival time of the next datagram at a port.</b>
+	 *
+	 * The caller must hold the monitor of the clock.
+	 *
+	 * @param port
+	 *            is the destination port
+	 * @return the virtual time in ns, Long.MAX_VALUE if nothing is on its way
+	 */
+	long nextArrival(int port) {
+		final PriorityQueue<Delivery> mailbox = mailboxes.get(port);
+		return mailbox == null || mailbox.isEmpty() ? Long.MAX_VALUE : mailbox.peek().time;
+	}
+
+	/**
+	 * <b>Release a bound port and discard everything that has arrived.</b>
+	 *
+	 * The caller must hold the monitor of the clock.
+	 *
+	 * @param port
+	 *            is the port
+	 */
+	void release(int port) {
+		boundPorts.remove(port);
+		final PriorityQueue<Delivery> mailbox = mailboxes.get(port);
+		while (mailbox != null && !mailbox.isEmpty() && mailbox.peek().time <= clock.nanoTime()) {
+			mailbox.poll();
+		}
+	}
+
+	/**
+	 * <b>Put a datagram into the mailbox of its destination.</b>
+	 *
+	 * @param data
+	 *            is the payload
+	 * @param sourcePort
+	 *            is the port of the sending socket
+	 * @param destinationPort
+	 *            is the port of the receiving socket
+	 */
+	private void deliver(byte[] data, int sourcePort, int destinationPort) {
+		mailboxes.computeIfAbsent(destinationPort, port -> new PriorityQueue<>())
+				.add(new Delivery(clock.nanoTime() + latency, sent++, sourcePort, data));
+	}
+
+	/**
+	 * <b>This function will give true with a given chance.</b>
+	 *
+	 * @param chance
+	 *            is the chance from 0 to 100
+	 * @return boolean
+	 */
+	private boolean calculateChance(int chance) {
+		return random.nextDouble() < chance / 100.0;
+	}
+}
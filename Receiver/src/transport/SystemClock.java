@@ -0,0 +1,40 @@
+package transport;
+
+/**
+ * <b>The wall clock: plain threads, Thread.sleep and System.nanoTime.</b>
+ */
+public class SystemClock implements Clock {
+
+	/**
+	 * <b>The only instance.</b>
+	 */
+	public static final SystemClock INSTANCE = new SystemClock();
+
+	/**
+	 * <b>Use INSTANCE.</b>
+	 */
+	private SystemClock() {
+	}
+
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	@Override
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+
+	@Override
+	public Thread start(Runnable runnable, String name) {
+		final Thread thread = new Thread(runnable, name);
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void interrupt(Thread thread) {
+		thread.interrupt();
+	}
+}
@@ -5,12 +5,10 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.DatagramSocketImplFactory;
 import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import java.util.TreeMap;
-import java.util.function.Consumer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
 
 /**
  * A class representing a broken output stream.
@@ -20,45 +18,98 @@ import java.util.function.Consumer;
  * - zufällig mit einer konfigurierbaren Wahrscheinlichkeit einen Bitfehler im
  * Paket verursacht<br>
  * - zufällig mit einer konfigurierbaren Wahrscheinlichkeit ein Paket
- * verwirft<br>
- * - zufällig mit einer konfigurierbaren Wahrscheinlichkeit ein Paket
- * dupliziert<br>
+ * verwirft (gleichmäßig oder in Bursts, siehe LossModel)<br>
+ * - Pakete verzögert, mit Jitter und umsortiert (siehe DelayLine)<br>
+ * - die Bandbreite begrenzt und bei voller Warteschlange Pakete verwirft
+ * (siehe Bottleneck)<br>
  * <br>
+ * Sending does not lock and does not allocate: the chances are turned into
+ * thresholds once, the faults are dispatched with a switch over an enum, a
+ * bit mistake is made in a scratch packet every thread keeps and the random
+ * numbers come from ThreadLocalRandom, or from a generator every thread
+ * splits off the seeded SplittableRandom (it is not thread safe, and the
+ * Timer sends through the same socket). The faults are counted instead of
+ * printed.
  *
  * @author nico
  */
 public class BrokenDatagramSocket extends DatagramSocket {
 
+    /**
+     * The things that can happen to a package.
+     */
+    private enum Fault {
+        normal, bitMistake, packageLoss, packageDuplicate
+    }
+
     //Object Variables
     //--------------------------------------------------------------------------
     /**
-     * Generates numbers necessary for the posibility calculation.
+     * The largest payload of a UDP datagram, the size of a scratch buffer.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * The packet every thread makes its bit mistakes in, so the buffer of the
+     * caller is left as it is. The links copy what they take.
      */
-    private final Random numberGenerator;
+    private static final ThreadLocal<DatagramPacket> SCRATCH = ThreadLocal.withInitial(() -> new DatagramPacket(new byte[MAX_DATAGRAM_SIZE], MAX_DATAGRAM_SIZE));
 
     /**
-     * Saves the bit Mistake Chance. A number from 0-100(%). Represents the
-     * chance of creating a bit mistake.
+     * Generates numbers necessary for the posibility calculation, one
+     * generator per thread. Null if ThreadLocalRandom is used.
      */
-    private final int bitMistakeChance;
+    private final ThreadLocal<SplittableRandom> numberGenerator;
 
     /**
-     * Saves the package loss chance. A number from 0-100(%). Represents the
-     * chance of losing a bit.
+     * Hands out the numbers of the generator to the loss model.
      */
-    private final int packageLossChance;
+    private final DoubleSupplier uniform;
 
     /**
-     * Saves the package duplicate Chance. A number from 0-100(%). Represents
-     * the chance of creating a duplicate package.
+     * Saves the bit Mistake Chance as threshold for a number from 0 to 1.
+     * Represents the chance of creating a bit mistake.
      */
-    private final int packageDuplicateChance;
+    private final double bitMistakeThreshold;
 
     /**
-     * Saves the actions performed when a package duplicate/loss or bitMistake
-     * occurs.
+     * Decides which packages are lost. Either uniform with a chance from
+     * 0-100(%) or bursty like a GilbertElliottLossModel.
      */
-    private final Map<String, Consumer<DatagramPacket>> actions;
+    private final LossModel lossModel;
+
+    /**
+     * Saves the package duplicate Chance as threshold for a number from 0 to
+     * 1. Represents the chance of creating a duplicate package.
+     */
+    private final double packageDuplicateThreshold;
+
+    /**
+     * Takes the packages after the errors happened, for example a DelayLine
+     * or a Bottleneck. Null if the packages are sent right away.
+     */
+    private final Link link;
+
+    /**
+     * The socket of the endpoint the packages leave through, so the peer
+     * answers to it. Null if they are sent with this socket.
+     */
+    private final DatagramSocket endpoint;
+
+    /**
+     * Counts the packages sent with a bit mistake.
+     */
+    private final LongAdder bitMistakes;
+
+    /**
+     * Counts the packages that were lost.
+     */
+    private final LongAdder packageLosses;
+
+    /**
+     * Counts the packages that were sent twice.
+     */
+    private final LongAdder packageDuplicates;
 
     //C-Tors
     //--------------------------------------------------------------------------
@@ -85,6 +136,110 @@ public class BrokenDatagramSocket extends DatagramSocket {
      * between 0 and 100.
      */
     public BrokenDatagramSocket(int bitMistakeChance, int packageLossChance, int packageDuplicateChance) throws SocketException {
+        //call other constructor with uniform loss
+        this(bitMistakeChance, LossModel.uniform(packageLossChance), packageDuplicateChance);
+    }
+
+    /**
+     * Initializes a new Broken Output Stream with a custom loss model.
+     *
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which packages are lost. A stateful model (like
+     * GilbertElliottLossModel) must be shared by all sockets using the same
+     * channel.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     */
+    public BrokenDatagramSocket(int bitMistakeChance, LossModel lossModel, int packageDuplicateChance) throws SocketException {
+        //call other constructor without delay
+        this(bitMistakeChance, lossModel, packageDuplicateChance, null);
+    }
+
+    /**
+     * Initializes a new Broken Output Stream with a custom loss model and a
+     * link to the wire.
+     *
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which packages are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param link Takes the packages, for example a DelayLine to delay them
+     * or a Bottleneck to limit the bandwidth (null to send right away). Like
+     * a stateful loss model it must be shared by all sockets of an endpoint.
+     */
+    public BrokenDatagramSocket(int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, Link link) throws SocketException {
+        //call other constructor with ThreadLocalRandom
+        this(bitMistakeChance, lossModel, packageDuplicateChance, link, null);
+    }
+
+    /**
+     * Initializes a new Broken Output Stream with reproducible errors.
+     *
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which packages are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param link Takes the packages (null to send right away).
+     * @param seededRandom A seeded generator shared by all sockets of an
+     * endpoint (null to use ThreadLocalRandom). Every socket splits a
+     * generator of its own off it, and every thread one off that, so the same
+     * seed and the same order of sockets and threads result in the same
+     * errors.
+     */
+    public BrokenDatagramSocket(int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, Link link, SplittableRandom seededRandom) throws SocketException {
+        //call other constructor sending with this socket
+        this(null, bitMistakeChance, lossModel, packageDuplicateChance, link, seededRandom);
+    }
+
+    /**
+     * Initializes the class with standard params (see above), sending
+     * through the socket of an endpoint.
+     *
+     * @param endpoint The socket of the endpoint.
+     */
+    public BrokenDatagramSocket(DatagramSocket endpoint) throws SocketException {
+        //call other constructor with standard params
+        this(endpoint, 20, LossModel.uniform(20), 20, null, null);
+    }
+
+    /**
+     * Initializes a new Broken Output Stream sending through the socket of an
+     * endpoint.
+     *
+     * @param endpoint The socket of the endpoint.
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which packages are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param link Takes the packages (null to send right away), it is
+     * attached to the endpoint.
+     */
+    public BrokenDatagramSocket(DatagramSocket endpoint, int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, Link link) throws SocketException {
+        //call other constructor with ThreadLocalRandom
+        this(endpoint, bitMistakeChance, lossModel, packageDuplicateChance, link, null);
+    }
+
+    /**
+     * Initializes a new Broken Output Stream with reproducible errors,
+     * sending through the socket of an endpoint.
+     *
+     * @param endpoint The socket of the endpoint (null to send with this
+     * socket).
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     * @param lossModel Decides which packages are lost.
+     * @param packageDuplicateChance The package duplicate chance. Must be
+     * between 0 and 100.
+     * @param link Takes the packages (null to send right away), it is
+     * attached to the endpoint.
+     * @param seededRandom A seeded generator shared by all sockets of an
+     * endpoint (null to use ThreadLocalRandom).
+     */
+    public BrokenDatagramSocket(DatagramSocket endpoint, int bitMistakeChance, LossModel lossModel, int packageDuplicateChance, Link link, SplittableRandom seededRandom) throws SocketException {
 
         //call super constructor
         super();
@@ -92,138 +247,189 @@ public class BrokenDatagramSocket extends DatagramSocket {
         if (bitMistakeChance > 100 || bitMistakeChance < 0) {
             throw new IllegalArgumentException("Bit mistake chance must be between 0 and 100");
         }
-        if (packageLossChance > 100 || packageLossChance < 0) {
-            throw new IllegalArgumentException("Package loss chance must be between 0 and 100");
+        if (lossModel == null) {
+            throw new IllegalArgumentException("Loss model must not be null");
         }
         if (packageDuplicateChance > 100 || packageDuplicateChance < 0) {
             throw new IllegalArgumentException("Package duplicate chance must be between 0 and 100");
         }
         //initialize object variables
-        this.numberGenerator = new Random();
-        this.bitMistakeChance = bitMistakeChance;
-        this.packageLossChance = packageLossChance;
-        this.packageDuplicateChance = packageDuplicateChance;
-        this.actions = new TreeMap<>();
-        //action for bitmistake
-        actions.put("bitMistake", (DatagramPacket packet) -> {
-            //load data
-            final byte[] data = packet.getData();
-            //choose the byte to change randomly
-            final int toChange = getNumberGenerator().nextInt(data.length);
-            //change the byte by changing it to 0
-            data[toChange] = 0;
-            try {
-                //now call send of the underlying DatagramScoket
-                super.send(new DatagramPacket(data, data.length, packet.getAddress(), packet.getPort()));
-                System.out.println("\tA bit mistake happened!");
-            } catch (IOException exception) {
-                System.out.println("An error has occured while writing data: ");
-                System.out.println(exception.toString());
+        if (seededRandom == null) {
+            this.numberGenerator = null;
+        } else {
+            //SplittableRandom is not thread safe, split once per socket and
+            //once per thread sending through it
+            final SplittableRandom generator;
+            synchronized (seededRandom) {
+                generator = seededRandom.split();
             }
-        });
-        //action for packageLoss
-        actions.put("packageLoss", (DatagramPacket packet)
-                -> System.out.println("\tA package magically disappeared!"));
-
-        //action for packageDuplicate
-        actions.put("packageDuplicate", (DatagramPacket packet) -> {
-            try {
-                //now call write of underlying writer twice
-                super.send(packet);
-                super.send(packet);
-                System.out.println("\tA duplicate packet was send!");
-            } catch (IOException exception) {
-                System.out.println("An error has occured while writing data: ");
-                System.out.println(exception.toString());
-            }
-        });
-
-        //action for normal 
-        actions.put("normal", (DatagramPacket packet) -> {
-            try {
-                //now call write of underlying writer
-                super.send(packet);
-            } catch (IOException exception) {
-                System.out.println("An error has occured while writing data: ");
-                System.out.println(exception.toString());
-            }
-        });
+            this.numberGenerator = ThreadLocal.withInitial(() -> {
+                synchronized (generator) {
+                    return generator.split();
+                }
+            });
+        }
+        this.uniform = this::nextDouble;
+        this.bitMistakeThreshold = bitMistakeChance / 100.0;
+        this.lossModel = lossModel;
+        this.packageDuplicateThreshold = packageDuplicateChance / 100.0;
+        this.link = link;
+        this.endpoint = endpoint;
+        this.bitMistakes = new LongAdder();
+        this.packageLosses = new LongAdder();
+        this.packageDuplicates = new LongAdder();
+        if (link != null && endpoint != null) {
+            link.attach(endpoint);
+        }
     }
 
     /**
      * The only method that we change. Before sending Data we will calculate
      * wich error happened and change the type of sending according to that
-     * (Duplicate, Bit mistake or Package loss)
+     * (Duplicate, Bit mistake or Package loss). A bit mistake is made in the
+     * scratch packet of the thread, the buffer of the packet is left as it
+     * is.
      *
      * @param packet The packet to be sent.
      * @throws IOException
      */
     @Override
     public void send(DatagramPacket packet) throws IOException {
-
-        //bit mistake
-        final boolean bitMistake = calculateChance(getBitMistakeChance());
-        //package loss
-        final boolean packageLoss = calculateChance(getPackageLossChance());
-        //package duplicate
-        final boolean packageDuplicate = calculateChance(getPackageDuplicateChance());
-
-        final List<Consumer<DatagramPacket>> list = new ArrayList<>();
-        //add them to the list if they exist
-        if (bitMistake) {
-            list.add(getActions().get("bitMistake"));
-        }
-        if (packageLoss) {
-            list.add(getActions().get("packageLoss"));
-        }
-        if (packageDuplicate) {
-            list.add(getActions().get("packageDuplicate"));
-        }
-        //the list is empty -> do nothing except the normal procedure
-        if (list.isEmpty()) {
-            getActions().get("normal").accept(packet);
-        } //list is not empty choose randomly one of the actions to execute
-        else {
-            list.get(getNumberGenerator().nextInt(list.size())).accept(packet);
+        switch (chooseFault()) {
+            case bitMistake:
+                //the caller may resend the buffer, so change a copy: choose
+                //the byte to change randomly and change it to 0
+                if (packet.getLength() > 0) {
+                    final DatagramPacket scratch = SCRATCH.get();
+                    final byte[] data = scratch.getData();
+                    System.arraycopy(packet.getData(), packet.getOffset(), data, 0, packet.getLength());
+                    data[nextInt(packet.getLength())] = 0;
+                    scratch.setData(data, 0, packet.getLength());
+                    scratch.setSocketAddress(packet.getSocketAddress());
+                    transmit(scratch);
+                } else {
+                    transmit(packet);
+                }
+                bitMistakes.increment();
+                break;
+            case packageLoss:
+                packageLosses.increment();
+                break;
+            case packageDuplicate:
+                //now call write of underlying writer twice
+                transmit(packet);
+                transmit(packet);
+                packageDuplicates.increment();
+                break;
+            default:
+                //now call write of underlying writer
+                transmit(packet);
+                break;
         }
-
     }
 
     public static synchronized void setDatagramSocketImplFactory(DatagramSocketImplFactory fac) throws IOException {
         DatagramSocket.setDatagramSocketImplFactory(fac);
     }
 
+    /**
+     * Gets the number of packages sent with a bit mistake.
+     *
+     * @return the number of bit mistakes
+     */
+    public long getBitMistakes() {
+        return bitMistakes.sum();
+    }
+
+    /**
+     * Gets the number of packages that were lost.
+     *
+     * @return the number of lost packages
+     */
+    public long getPackageLosses() {
+        return packageLosses.sum();
+    }
+
+    /**
+     * Gets the number of packages that were sent twice.
+     *
+     * @return the number of duplicates
+     */
+    public long getPackageDuplicates() {
+        return packageDuplicates.sum();
+    }
+
     //Getter and Setter and Private Methods
     //--------------------------------------------------------------------------
-    private Random getNumberGenerator() {
-        return numberGenerator;
+    private LossModel getLossModel() {
+        return lossModel;
+    }
+
+    private Link getLink() {
+        return link;
     }
 
-    private int getBitMistakeChance() {
-        return bitMistakeChance;
+    private DatagramSocket getEndpoint() {
+        return endpoint;
     }
 
-    private int getPackageLossChance() {
-        return packageLossChance;
+    /**
+     * Draws which of the errors happens. Every error is drawn on its own, if
+     * more than one happened one of them is chosen randomly.
+     *
+     * @return the error (normal if none happened)
+     */
+    private Fault chooseFault() {
+        final boolean bitMistake = nextDouble() < bitMistakeThreshold;
+        final boolean packageLoss = getLossModel().isLost(uniform);
+        final boolean packageDuplicate = nextDouble() < packageDuplicateThreshold;
+        final int count = (bitMistake ? 1 : 0) + (packageLoss ? 1 : 0) + (packageDuplicate ? 1 : 0);
+        if (count == 0) {
+            return Fault.normal;
+        }
+        int choice = count == 1 ? 0 : nextInt(count);
+        if (bitMistake && choice-- == 0) {
+            return Fault.bitMistake;
+        }
+        if (packageLoss && choice-- == 0) {
+            return Fault.packageLoss;
+        }
+        return Fault.packageDuplicate;
     }
 
-    private int getPackageDuplicateChance() {
-        return packageDuplicateChance;
+    /**
+     * Sends the packet through the endpoint or with the underlying
+     * DatagramSocket, or hands it to the link if there is one.
+     *
+     * @param packet The packet to be sent.
+     * @throws IOException
+     */
+    private void transmit(DatagramPacket packet) throws IOException {
+        if (getLink() == null && getEndpoint() != null) {
+            getEndpoint().send(packet);
+        } else if (getLink() == null) {
+            super.send(packet);
+        } else {
+            getLink().send(packet);
+        }
     }
 
-    private Map<String, Consumer<DatagramPacket>> getActions() {
-        return actions;
+    /**
+     * Draws a number from 0 (inclusive) to 1 (exclusive).
+     *
+     * @return the number
+     */
+    private double nextDouble() {
+        return numberGenerator == null ? ThreadLocalRandom.current().nextDouble() : numberGenerator.get().nextDouble();
     }
 
     /**
-     * This function will give true with a given chance
+     * Draws a number from 0 (inclusive) to bound (exclusive).
      *
-     * @param chance The chance an integer from 0 to 100.
-     * @return boolean
+     * @param bound The upper bound.
+     * @return the number
      */
-    private boolean calculateChance(int chance) {
-        //if the number generated by numberGenerator is smaller or equal to the
-        //chance (in %) divided by 100 this will result true 
-        return getNumberGenerator().nextDouble() <= chance / 100.0;
+    private int nextInt(int bound) {
+        return numberGenerator == null ? ThreadLocalRandom.current().nextInt(bound) : numberGenerator.get().nextInt(bound);
     }
 }
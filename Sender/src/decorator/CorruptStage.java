@@ -0,0 +1,50 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import transport.Clock;
+
+/**
+ * Causes bit mistakes: with a configurable chance one random byte of a
+ * packet is changed to 0.
+ *
+ * @author nico
+ */
+public class CorruptStage implements ImpairmentStage {
+
+    /**
+     * Saves the bit mistake chance as threshold for a number from 0 to 1.
+     */
+    private final double bitMistakeThreshold;
+
+    /**
+     * Initializes a new corrupt stage.
+     *
+     * @param bitMistakeChance The bit mistake chance. Must be between 0 and
+     * 100.
+     */
+    public CorruptStage(double bitMistakeChance) {
+        if (bitMistakeChance > 100 || bitMistakeChance < 0) {
+            throw new IllegalArgumentException("Bit mistake chance must be between 0 and 100");
+        }
+        this.bitMistakeThreshold = bitMistakeChance / 100.0;
+    }
+
+    @Override
+    public void accept(PacketBatch in, PacketBatch out, Clock clock) {
+        final ThreadLocalRandom numberGenerator = ThreadLocalRandom.current();
+        for (int index = 0; index < in.size(); index++) {
+            final DatagramPacket packet = in.get(index);
+            if (packet.getLength() > 0 && numberGenerator.nextDouble() < bitMistakeThreshold) {
+                //a duplicate may share the packet, so change a copy
+                final byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+                data[numberGenerator.nextInt(data.length)] = 0;
+                out.add(new DatagramPacket(data, data.length, packet.getAddress(), packet.getPort()));
+            } else {
+                out.add(packet);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package decorator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays the packets of a BrokenDatagramSocket, to emulate a long (fat)
+ * network on loopback.
+ *
+ * Every packet is held back for a fixed latency plus a random jitter drawn
+ * from a configurable distribution. With a configurable chance a packet is
+ * held back an extra delay on top, so the packets sent after it overtake
+ * it. Jitter alone reorders packets too, if it is larger than the time
+ * between two packets.<br>
+ * <br>
+ * The packets wait in the work queue of a ScheduledThreadPoolExecutor, a
+ * priority queue ordered by the time the packet is due, and are sent by its
+ * single thread through the attached endpoint.
+ *
+ * @author nico
+ */
+public class DelayLine implements Link {
+
+    /**
+     * The distributions the jitter can be drawn from.
+     */
+    public enum Jitter {
+        /**
+         * Evenly distributed between -jitter and +jitter.
+         */
+        uniform,
+        /**
+         * Normal distributed with a standard deviation of jitter.
+         */
+        normal,
+        /**
+         * Exponential distributed with a mean of jitter (only adds delay,
+         * with a long tail).
+         */
+        exponential;
+
+        /**
+         * Draws a jitter from this distribution.
+         *
+         * @param jitter The jitter in ms.
+         * @return the jitter to add to the latency in ms
+         */
+        public double draw(double jitter) {
+            final ThreadLocalRandom numberGenerator = ThreadLocalRandom.current();
+            switch (this) {
+                case uniform:
+                    return (numberGenerator.nextDouble() * 2 - 1) * jitter;
+                case normal:
+                    return numberGenerator.nextGaussian() * jitter;
+                case exponential:
+                    return -Math.log(1 - numberGenerator.nextDouble()) * jitter;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the fixed latency in ms.
+     */
+    private final double latency;
+
+    /**
+     * Saves the jitter in ms. What it means depends on the distribution.
+     */
+    private final double jitter;
+
+    /**
+     * Saves the distribution of the jitter.
+     */
+    private final Jitter distribution;
+
+    /**
+     * Saves the reorder chance. A number from 0-100(%). Represents the chance
+     * of holding a packet back the reorder delay on top.
+     */
+    private final int reorderChance;
+
+    /**
+     * Saves the extra delay of a reordered packet in ms.
+     */
+    private final double reorderDelay;
+
+    /**
+     * Holds the packets until they are due and sends them.
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Sends the delayed packets if no endpoint is attached.
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * Saves the socket of the endpoint attached last. Null if the packets
+     * are sent with the own socket.
+     */
+    private volatile DatagramSocket endpoint;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a delay line without reordering.
+     *
+     * @param latency The fixed latency in ms.
+     * @param jitter The jitter in ms.
+     * @param distribution The distribution of the jitter.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public DelayLine(double latency, double jitter, Jitter distribution) throws SocketException {
+        //call other constructor without reordering
+        this(latency, jitter, distribution, 0, 0);
+    }
+
+    /**
+     * Initializes a new delay line.
+     *
+     * @param latency The fixed latency in ms.
+     * @param jitter The jitter in ms.
+     * @param distribution The distribution of the jitter.
+     * @param reorderChance The chance of holding a packet back the reorder
+     * delay on top. Must be between 0 and 100.
+     * @param reorderDelay The extra delay of a reordered packet in ms.
+     * @throws SocketException if the socket to send with can not be created
+     */
+    public DelayLine(double latency, double jitter, Jitter distribution, int reorderChance, double reorderDelay) throws SocketException {
+        //check if input params are correct
+        if (latency < 0 || jitter < 0 || reorderDelay < 0) {
+            throw new IllegalArgumentException("Latency, jitter and reorder delay must not be negative");
+        }
+        if (distribution == null) {
+            throw new IllegalArgumentException("Jitter distribution must not be null");
+        }
+        if (reorderChance > 100 || reorderChance < 0) {
+            throw new IllegalArgumentException("Reorder chance must be between 0 and 100");
+        }
+        //initialize object variables
+        this.latency = latency;
+        this.jitter = jitter;
+        this.distribution = distribution;
+        this.reorderChance = reorderChance;
+        this.reorderDelay = reorderDelay;
+        this.socket = new DatagramSocket();
+        this.scheduler = new ScheduledThreadPoolExecutor(1, (Runnable runnable) -> {
+            final Thread thread = new Thread(runnable, "delay-line");
+            //pending packets must not keep the program alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        //closing drops what is still on its way, like pulling the cable
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Sends a copy of the packet once its delay has passed.
+     *
+     * @param packet The packet to be sent.
+     */
+    @Override
+    public void send(DatagramPacket packet) {
+        //copy now, the sender may reuse the buffer
+        final byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+        final DatagramPacket delayed = new DatagramPacket(data, data.length, packet.getAddress(), packet.getPort());
+        final long delay = Math.round(calculateDelay() * 1_000_000);
+        scheduler.schedule(() -> {
+            final DatagramSocket out = getEndpoint() == null ? getSocket() : getEndpoint();
+            //the endpoint is gone, like a pulled cable
+            if (out.isClosed()) {
+                return;
+            }
+            try {
+                out.send(delayed);
+            } catch (IOException exception) {
+                System.out.println("An error has occured while writing data: ");
+                System.out.println(exception.toString());
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the delayed packets through the endpoint from now on.
+     *
+     * @param endpoint The socket of the endpoint.
+     */
+    @Override
+    public void attach(DatagramSocket endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Drops all packets still on their way and closes the socket.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        socket.close();
+    }
+
+    //Getter and Setter and Private Methods
+    //--------------------------------------------------------------------------
+    private DatagramSocket getSocket() {
+        return socket;
+    }
+
+    private DatagramSocket getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Draws the delay of the next packet.
+     *
+     * @return the delay in ms (never negative)
+     */
+    private double calculateDelay() {
+        double delay = latency + distribution.draw(jitter);
+        if (ThreadLocalRandom.current().nextDouble() < reorderChance / 100.0) {
+            delay += reorderDelay;
+        }
+        return Math.max(0, delay);
+    }
+}
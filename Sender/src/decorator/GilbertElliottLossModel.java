@@ -0,0 +1,175 @@
+package decorator;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A two-state Gilbert-Elliott channel that loses packets in bursts.
+ *
+ * The channel is either in the good or in the bad state. Before every packet
+ * it moves from good to bad with the chance p and from bad to good with the
+ * chance r, then the packet is lost with the loss chance of the current
+ * state. The mean burst length is 1/r packets, the share of time spent in
+ * the bad state is p/(p+r).<br>
+ * <br>
+ * With a loss chance of 0 in the good state and 100 in the bad state this is
+ * the simple Gilbert model. All chances are given in % (0-100) like the
+ * other chances of BrokenDatagramSocket, but may have decimals, because
+ * realistic transition chances are small.
+ *
+ * @author nico
+ */
+public class GilbertElliottLossModel implements LossModel {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the chance to move from the good to the bad state in %.
+     */
+    private final double goodToBadChance;
+
+    /**
+     * Saves the chance to move from the bad to the good state in %.
+     */
+    private final double badToGoodChance;
+
+    /**
+     * Saves the chance of losing a packet in the good state in %.
+     */
+    private final double goodLossChance;
+
+    /**
+     * Saves the chance of losing a packet in the bad state in %.
+     */
+    private final double badLossChance;
+
+    /**
+     * Saves the good to bad chance as threshold for a number from 0 to 1.
+     */
+    private final double goodToBadThreshold;
+
+    /**
+     * Saves the bad to good chance as threshold for a number from 0 to 1.
+     */
+    private final double badToGoodThreshold;
+
+    /**
+     * Saves the good state loss chance as threshold for a number from 0 to 1.
+     */
+    private final double goodLossThreshold;
+
+    /**
+     * Saves the bad state loss chance as threshold for a number from 0 to 1.
+     */
+    private final double badLossThreshold;
+
+    /**
+     * Saves whether the channel is in the bad state at the moment.
+     */
+    private final AtomicBoolean bad;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a simple Gilbert model: no loss in the good state, every
+     * packet lost in the bad state.
+     *
+     * @param goodToBadChance The chance to move from good to bad (0-100).
+     * @param badToGoodChance The chance to move from bad to good (0-100).
+     */
+    public GilbertElliottLossModel(double goodToBadChance, double badToGoodChance) {
+        //call other constructor
+        this(goodToBadChance, badToGoodChance, 0, 100);
+    }
+
+    /**
+     * Initializes a new Gilbert-Elliott model, starting in the good state.
+     *
+     * @param goodToBadChance The chance to move from good to bad (0-100).
+     * @param badToGoodChance The chance to move from bad to good (0-100).
+     * @param goodLossChance The loss chance in the good state (0-100).
+     * @param badLossChance The loss chance in the bad state (0-100).
+     */
+    public GilbertElliottLossModel(double goodToBadChance, double badToGoodChance, double goodLossChance, double badLossChance) {
+        //check if input params are correct
+        checkChance(goodToBadChance, "Good to bad chance");
+        checkChance(badToGoodChance, "Bad to good chance");
+        checkChance(goodLossChance, "Good state loss chance");
+        checkChance(badLossChance, "Bad state loss chance");
+        if (goodToBadChance > 0 && badToGoodChance == 0) {
+            throw new IllegalArgumentException("Bad to good chance must be greater than 0, the channel would stay bad forever");
+        }
+        //initialize object variables
+        this.goodToBadChance = goodToBadChance;
+        this.badToGoodChance = badToGoodChance;
+        this.goodLossChance = goodLossChance;
+        this.badLossChance = badLossChance;
+        this.goodToBadThreshold = goodToBadChance / 100.0;
+        this.badToGoodThreshold = badToGoodChance / 100.0;
+        this.goodLossThreshold = goodLossChance / 100.0;
+        this.badLossThreshold = badLossChance / 100.0;
+        this.bad = new AtomicBoolean(false);
+    }
+
+    /**
+     * Moves the channel to its next state and decides the fate of the packet.
+     *
+     * The Timer thread and the sending thread may send at the same time, so
+     * the state is changed with compare and set instead of a lock. A thread
+     * that loses the race retries with the state the other one set.
+     *
+     * @param numberGenerator Draws numbers from 0 (inclusive) to 1
+     * (exclusive).
+     * @return true, if the packet shall be lost
+     */
+    @Override
+    public boolean isLost(DoubleSupplier numberGenerator) {
+        final double transition = numberGenerator.getAsDouble();
+        boolean current;
+        boolean next;
+        //change the state
+        do {
+            current = bad.get();
+            next = current ? transition >= badToGoodThreshold : transition < goodToBadThreshold;
+        } while (!bad.compareAndSet(current, next));
+        //lose with the chance of the current state
+        return numberGenerator.getAsDouble() < (next ? badLossThreshold : goodLossThreshold);
+    }
+
+    //Getter and Setter and Private Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Calculates the long-run share of lost packets, to compare the model
+     * with a uniform loss chance.
+     *
+     * @return the average loss chance in %
+     */
+    public double getAverageLossChance() {
+        if (goodToBadChance == 0) {
+            return goodLossChance;
+        }
+        final double badShare = goodToBadChance / (goodToBadChance + badToGoodChance);
+        return (1 - badShare) * goodLossChance + badShare * badLossChance;
+    }
+
+    /**
+     * Calculates the mean number of packets the channel stays bad.
+     *
+     * @return the mean burst length in packets
+     */
+    public double getMeanBurstLength() {
+        return badToGoodChance == 0 ? Double.POSITIVE_INFINITY : 100.0 / badToGoodChance;
+    }
+
+    /**
+     * Checks that a chance is between 0 and 100.
+     *
+     * @param chance The chance.
+     * @param name The name used in the error message.
+     */
+    private static void checkChance(double chance, String name) {
+        if (chance > 100 || chance < 0 || Double.isNaN(chance)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 100");
+        }
+    }
+}
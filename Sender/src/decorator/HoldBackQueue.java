@@ -0,0 +1,186 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import transport.Clock;
+
+/**
+ * Datagrams a BrokenReceiveSocket has received but holds back, because they
+ * were delayed or duplicated.
+ *
+ * A Sender opens a new socket for every transfer, so the held back
+ * datagrams must outlive the socket: one queue is created per endpoint and
+ * shared by all its receive sockets. The queue is ordered by
+ * the time a datagram is due, so a delayed datagram is overtaken by the ones
+ * received after it.
+ *
+ * @author nico
+ */
+public class HoldBackQueue {
+
+    /**
+     * A datagram waiting to be received.
+     */
+    private static class HeldDatagram implements Comparable<HeldDatagram> {
+
+        /**
+         * Saves the time it is due at in ns.
+         */
+        private final long due;
+
+        /**
+         * Saves the order it was held back in, for datagrams due at the same
+         * time.
+         */
+        private final long order;
+
+        /**
+         * Saves a copy of the payload.
+         */
+        private final byte[] data;
+
+        /**
+         * Saves the address it came from.
+         */
+        private final InetAddress address;
+
+        /**
+         * Saves the port it came from.
+         */
+        private final int port;
+
+        /**
+         * Initializes a new held datagram.
+         *
+         * @param due The time it is due at in ns.
+         * @param order The order it was held back in.
+         * @param packet The received datagram (it is copied).
+         */
+        private HeldDatagram(long due, long order, DatagramPacket packet) {
+            this.due = due;
+            this.order = order;
+            this.data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+            this.address = packet.getAddress();
+            this.port = packet.getPort();
+        }
+
+        @Override
+        public int compareTo(HeldDatagram other) {
+            final int byDue = Long.compare(due, other.due);
+            return byDue != 0 ? byDue : Long.compare(order, other.order);
+        }
+    }
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the clock of the endpoint.
+     */
+    private final Clock clock;
+
+    /**
+     * Saves the fixed delay of a delayed datagram in ms.
+     */
+    private final double latency;
+
+    /**
+     * Saves the jitter of a delayed datagram in ms.
+     */
+    private final double jitter;
+
+    /**
+     * Saves the distribution of the jitter.
+     */
+    private final DelayLine.Jitter distribution;
+
+    /**
+     * Holds the datagrams.
+     */
+    private final PriorityQueue<HeldDatagram> queue;
+
+    /**
+     * Saves the number of datagrams held back so far.
+     */
+    private long held;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new queue.
+     *
+     * @param clock The clock of the endpoint (so it works in a simulation).
+     * @param latency The fixed delay of a delayed datagram in ms.
+     * @param jitter The jitter of a delayed datagram in ms.
+     * @param distribution The distribution of the jitter.
+     */
+    public HoldBackQueue(Clock clock, double latency, double jitter, DelayLine.Jitter distribution) {
+        //check if input params are correct
+        if (clock == null || distribution == null) {
+            throw new IllegalArgumentException("Clock and jitter distribution must not be null");
+        }
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Latency and jitter must not be negative");
+        }
+        //initialize object variables
+        this.clock = clock;
+        this.latency = latency;
+        this.jitter = jitter;
+        this.distribution = distribution;
+        this.queue = new PriorityQueue<>();
+        this.held = 0;
+    }
+
+    /**
+     * Holds a copy of a datagram back.
+     *
+     * @param packet The received datagram.
+     * @param delayed True to hold it back for a random delay, false to let
+     * it be received right away (a duplicate).
+     */
+    public synchronized void hold(DatagramPacket packet, boolean delayed) {
+        final double delay = delayed ? Math.max(0, latency + distribution.draw(jitter)) : 0;
+        queue.add(new HeldDatagram(clock.nanoTime() + Math.round(delay * 1_000_000), held++, packet));
+    }
+
+    /**
+     * Hands out the next datagram that is due.
+     *
+     * @param packet Receives the datagram (truncated to its buffer) and its
+     * source.
+     * @return true, if a datagram was due
+     */
+    public synchronized boolean poll(DatagramPacket packet) {
+        if (queue.isEmpty() || queue.peek().due > clock.nanoTime()) {
+            return false;
+        }
+        final HeldDatagram datagram = queue.poll();
+        final int length = Math.min(datagram.data.length, packet.getData().length - packet.getOffset());
+        System.arraycopy(datagram.data, 0, packet.getData(), packet.getOffset(), length);
+        packet.setLength(length);
+        packet.setAddress(datagram.address);
+        packet.setPort(datagram.port);
+        return true;
+    }
+
+    /**
+     * Calculates how long it takes until the next datagram is due.
+     *
+     * @return the time in ns (0 if one is due, Long.MAX_VALUE if the queue
+     * is empty)
+     */
+    public synchronized long nanosUntilNext() {
+        return queue.isEmpty() ? Long.MAX_VALUE : Math.max(0, queue.peek().due - clock.nanoTime());
+    }
+
+    /**
+     * Get the clock of the endpoint.
+     *
+     * @return the clock
+     */
+    public Clock getClock() {
+        return clock;
+    }
+}
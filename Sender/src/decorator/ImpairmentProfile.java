@@ -0,0 +1,141 @@
+package decorator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the stages of an ImpairmentPipeline from a profile file.
+ *
+ * Every line is one stage, the packets pass them from top to bottom. Empty
+ * lines and everything after a '#' are ignored. The lines look like:
+ * <ul>
+ * <li>loss &lt;chance in %&gt;</li>
+ * <li>loss gilbert &lt;good to bad&gt; &lt;bad to good&gt; [&lt;loss in good&gt; &lt;loss in bad&gt;] (all in %)</li>
+ * <li>corrupt &lt;chance in %&gt;</li>
+ * <li>duplicate &lt;chance in %&gt;</li>
+ * <li>delay &lt;latency in ms&gt; [&lt;jitter in ms&gt; [uniform|normal|exponential]]</li>
+ * <li>shape &lt;rate in KiB/s&gt; &lt;bucket size in bytes&gt; &lt;queue limit in packets&gt;</li>
+ * <li>reorder &lt;chance in %&gt; &lt;distance in packets&gt; &lt;maximum hold in ms&gt;</li>
+ * </ul>
+ *
+ * @author nico
+ */
+public final class ImpairmentProfile {
+
+    /**
+     * No instances, only static methods.
+     */
+    private ImpairmentProfile() {
+    }
+
+    /**
+     * Reads the stages from a file.
+     *
+     * @param file The profile file.
+     * @return the stages in the order the packets pass them
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if a line is not a valid stage
+     */
+    public static List<ImpairmentStage> load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the stages from the lines of a profile.
+     *
+     * @param lines The lines.
+     * @return the stages in the order the packets pass them
+     * @throws IllegalArgumentException if a line is not a valid stage
+     */
+    public static List<ImpairmentStage> parse(List<String> lines) {
+        final List<ImpairmentStage> stages = new ArrayList<>();
+        for (int index = 0; index < lines.size(); index++) {
+            String line = lines.get(index);
+            final int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                stages.add(parseStage(line.split("\\s+")));
+            } catch (IllegalArgumentException exception) {
+                //NumberFormatException is one too
+                throw new IllegalArgumentException("Line " + (index + 1) + " of the profile: " + exception.getMessage(), exception);
+            }
+        }
+        return stages;
+    }
+
+    /**
+     * Creates one stage.
+     *
+     * @param words The words of the line, the first one is the stage.
+     * @return the stage
+     */
+    private static ImpairmentStage parseStage(String[] words) {
+        switch (words[0]) {
+            case "loss":
+                if (words.length > 1 && "gilbert".equals(words[1])) {
+                    checkLength(words, 4, 6, "loss gilbert <goodToBad> <badToGood> [<goodLoss> <badLoss>]");
+                    return new LossStage(words.length == 6
+                            ? new GilbertElliottLossModel(number(words[2]), number(words[3]), number(words[4]), number(words[5]))
+                            : new GilbertElliottLossModel(number(words[2]), number(words[3])));
+                }
+                checkLength(words, 2, 2, "loss <chance>");
+                final double chance = number(words[1]);
+                if (chance > 100 || chance < 0) {
+                    throw new IllegalArgumentException("Package loss chance must be between 0 and 100");
+                }
+                return new LossStage(numberGenerator -> numberGenerator.getAsDouble() < chance / 100.0);
+            case "corrupt":
+                checkLength(words, 2, 2, "corrupt <chance>");
+                return new CorruptStage(number(words[1]));
+            case "duplicate":
+                checkLength(words, 2, 2, "duplicate <chance>");
+                return new DuplicateStage(number(words[1]));
+            case "delay":
+                checkLength(words, 2, 4, "delay <latency> [<jitter> [<distribution>]]");
+                return new DelayStage(number(words[1]), words.length > 2 ? number(words[2]) : 0,
+                        words.length > 3 ? DelayLine.Jitter.valueOf(words[3]) : DelayLine.Jitter.uniform);
+            case "shape":
+                checkLength(words, 4, 4, "shape <rate> <bucketSize> <queueLimit>");
+                return new ShapeStage(number(words[1]) * 1024, Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+            case "reorder":
+                checkLength(words, 4, 4, "reorder <chance> <distance> <maxHold>");
+                return new ReorderStage(number(words[1]), Integer.parseInt(words[2]), number(words[3]));
+            default:
+                throw new IllegalArgumentException("Unknown stage \"" + words[0] + "\"");
+        }
+    }
+
+    /**
+     * Checks the number of words of a line.
+     *
+     * @param words The words.
+     * @param min The smallest allowed number.
+     * @param max The largest allowed number.
+     * @param usage How the line should look like.
+     */
+    private static void checkLength(String[] words, int min, int max, String usage) {
+        if (words.length < min || words.length > max) {
+            throw new IllegalArgumentException("Should look like \"" + usage + "\"");
+        }
+    }
+
+    /**
+     * Parses a number.
+     *
+     * @param word The word.
+     * @return the number
+     */
+    private static double number(String word) {
+        return Double.parseDouble(word);
+    }
+}
@@ -0,0 +1,45 @@
+package decorator;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+import transport.Clock;
+
+/**
+ * Drops the packets a LossModel decides to lose.
+ *
+ * @author nico
+ */
+public class LossStage implements ImpairmentStage {
+
+    /**
+     * Hands out the numbers of ThreadLocalRandom to the loss model.
+     */
+    private static final DoubleSupplier UNIFORM = () -> ThreadLocalRandom.current().nextDouble();
+
+    /**
+     * Decides which packets are lost.
+     */
+    private final LossModel lossModel;
+
+    /**
+     * Initializes a new loss stage.
+     *
+     * @param lossModel Decides which packets are lost.
+     */
+    public LossStage(LossModel lossModel) {
+        if (lossModel == null) {
+            throw new IllegalArgumentException("Loss model must not be null");
+        }
+        this.lossModel = lossModel;
+    }
+
+    @Override
+    public void accept(PacketBatch in, PacketBatch out, Clock clock) {
+        for (int index = 0; index < in.size(); index++) {
+            if (!lossModel.isLost(UNIFORM)) {
+                out.add(in.get(index));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+
+import transport.Clock;
+
+/**
+ * Reorders packets: with a configurable chance a packet is held back until
+ * a number of later packets has passed it. So the tail of a transfer does
+ * not get stuck, a held packet is released after a maximum time anyway.
+ *
+ * @author nico
+ */
+public class ReorderStage implements ImpairmentStage {
+
+    /**
+     * A packet waiting to be overtaken.
+     */
+    private static class HeldPacket {
+
+        /**
+         * Saves the packet.
+         */
+        private final DatagramPacket packet;
+
+        /**
+         * Saves the time it is released at anyway in ns.
+         */
+        private final long deadline;
+
+        /**
+         * Saves the number of packets that still have to pass it.
+         */
+        private int remaining;
+
+        /**
+         * Initializes a new held packet.
+         *
+         * @param packet The packet.
+         * @param deadline The time it is released at anyway in ns.
+         * @param remaining The number of packets that have to pass it.
+         */
+        private HeldPacket(DatagramPacket packet, long deadline, int remaining) {
+            this.packet = packet;
+            this.deadline = deadline;
+            this.remaining = remaining;
+        }
+    }
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the reorder chance as threshold for a number from 0 to 1.
+     */
+    private final double reorderThreshold;
+
+    /**
+     * Saves the number of packets that pass a held packet.
+     */
+    private final int distance;
+
+    /**
+     * Saves the maximum time a packet is held in ns.
+     */
+    private final long maxHold;
+
+    /**
+     * Holds the packets in the order they came in (so the deadlines are
+     * ascending too).
+     */
+    private final ArrayDeque<HeldPacket> held;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new reorder stage.
+     *
+     * @param reorderChance The chance of holding a packet back. Must be
+     * between 0 and 100.
+     * @param distance The number of packets that pass a held packet.
+     * @param maxHold The maximum time a packet is held in ms.
+     */
+    public ReorderStage(double reorderChance, int distance, double maxHold) {
+        if (reorderChance > 100 || reorderChance < 0) {
+            throw new IllegalArgumentException("Reorder chance must be between 0 and 100");
+        }
+        if (distance < 1) {
+            throw new IllegalArgumentException("Distance must be at least 1");
+        }
+        if (maxHold < 0) {
+            throw new IllegalArgumentException("Maximum hold time must not be negative");
+        }
+        this.reorderThreshold = reorderChance / 100.0;
+        this.distance = distance;
+        this.maxHold = Math.round(maxHold * 1_000_000);
+        this.held = new ArrayDeque<>();
+    }
+
+    @Override
+    public void accept(PacketBatch in, PacketBatch out, Clock clock) {
+        final long now = clock.nanoTime();
+        final ThreadLocalRandom numberGenerator = ThreadLocalRandom.current();
+        for (int index = 0; index < in.size(); index++) {
+            final DatagramPacket packet = in.get(index);
+            if (numberGenerator.nextDouble() < reorderThreshold) {
+                held.add(new HeldPacket(packet, now + maxHold, distance));
+                continue;
+            }
+            out.add(packet);
+            //this packet has overtaken all held ones
+            final Iterator<HeldPacket> iterator = held.iterator();
+            while (iterator.hasNext()) {
+                final HeldPacket heldPacket = iterator.next();
+                if (--heldPacket.remaining == 0) {
+                    out.add(heldPacket.packet);
+                    iterator.remove();
+                }
+            }
+        }
+        while (!held.isEmpty() && held.peek().deadline <= now) {
+            out.add(held.poll().packet);
+        }
+    }
+
+    @Override
+    public long nextRelease() {
+        return held.isEmpty() ? Long.MAX_VALUE : held.peek().deadline;
+    }
+}
@@ -0,0 +1,130 @@
+package decorator;
+
+import java.net.DatagramPacket;
+import java.util.ArrayDeque;
+
+import transport.Clock;
+
+/**
+ * Limits the bandwidth with a token bucket and a finite queue, like a
+ * Bottleneck: a packet passes when there are tokens for all its bytes, waits
+ * in the queue otherwise and is dropped when the queue is full (tail-drop).
+ *
+ * @author nico
+ */
+public class ShapeStage implements ImpairmentStage {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    /**
+     * Saves the rate tokens flow in at in bytes per ns.
+     */
+    private final double rate;
+
+    /**
+     * Saves the maximum number of tokens (bytes) in the bucket.
+     */
+    private final double bucketSize;
+
+    /**
+     * Saves the maximum number of waiting packets.
+     */
+    private final int queueLimit;
+
+    /**
+     * Holds the waiting packets.
+     */
+    private final ArrayDeque<DatagramPacket> queue;
+
+    /**
+     * Saves the number of tokens in the bucket.
+     */
+    private double tokens;
+
+    /**
+     * Saves the time the tokens were last refilled at in ns (Long.MIN_VALUE
+     * before the first packet).
+     */
+    private long refilled;
+
+    //C-Tors
+    //--------------------------------------------------------------------------
+    /**
+     * Initializes a new shape stage.
+     *
+     * @param rate The bandwidth in bytes per second.
+     * @param bucketSize The largest burst in bytes that may pass at once.
+     * @param queueLimit The number of packets that may wait.
+     */
+    public ShapeStage(double rate, int bucketSize, int queueLimit) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Rate must be greater than 0");
+        }
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("Bucket size must be greater than 0");
+        }
+        if (queueLimit < 0) {
+            throw new IllegalArgumentException("Queue limit must not be negative");
+        }
+        this.rate = rate / 1e9;
+        this.bucketSize = bucketSize;
+        this.queueLimit = queueLimit;
+        this.queue = new ArrayDeque<>();
+        //start with a full bucket
+        this.tokens = bucketSize;
+        this.refilled = Long.MIN_VALUE;
+    }
+
+    @Override
+    public void accept(PacketBatch in, PacketBatch out, Clock clock) {
+        final long now = clock.nanoTime();
+        if (refilled != Long.MIN_VALUE) {
+            tokens = Math.min(bucketSize, tokens + (now - refilled) * rate);
+        }
+        refilled = now;
+        //the ones waiting first
+        while (!queue.isEmpty() && hasTokensFor(queue.peek())) {
+            pass(queue.poll(), out);
+        }
+        for (int index = 0; index < in.size(); index++) {
+            final DatagramPacket packet = in.get(index);
+            if (queue.isEmpty() && hasTokensFor(packet)) {
+                pass(packet, out);
+            } else if (queue.size() < queueLimit) {
+                queue.add(packet);
+            }
+            //else tail-drop
+        }
+    }
+
+    @Override
+    public long nextRelease() {
+        if (queue.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        final double missing = Math.min(queue.peek().getLength(), bucketSize) - tokens;
+        return refilled + Math.max(0, (long) Math.ceil(missing / rate));
+    }
+
+    /**
+     * Checks if a packet may pass. A packet larger than the bucket may pass
+     * with a full bucket and leaves a debt.
+     *
+     * @param packet The packet.
+     * @return true, if there are enough tokens
+     */
+    private boolean hasTokensFor(DatagramPacket packet) {
+        return tokens >= Math.min(packet.getLength(), bucketSize);
+    }
+
+    /**
+     * Takes the tokens of a packet and passes it on.
+     *
+     * @param packet The packet.
+     * @param out The output batch.
+     */
+    private void pass(DatagramPacket packet, PacketBatch out) {
+        tokens -= packet.getLength();
+        out.add(packet);
+    }
+}
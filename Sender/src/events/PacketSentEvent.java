@@ -0,0 +1,50 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <b>JFR event: a datagram was handed to the socket.</b>
+ */
+@Name("ndpk.PacketSent")
+@Label("Packet Sent")
+@Category({ "ndpk", "Transfer" })
+@Description("A data packet or ACK was send")
+public class PacketSentEvent extends Event {
+
+	/**
+	 * <b>Sequence number of the packet.</b>
+	 */
+	@Label("Sequence Number")
+	public int sequenceNumber;
+
+	/**
+	 * <b>Size of the datagram including the header.</b>
+	 */
+	@Label("Size")
+	@DataAmount
+	public int size;
+
+	/**
+	 * <b>Store if the packet is an ACK.</b>
+	 */
+	@Label("ACK")
+	public boolean ack;
+
+	/**
+	 * <b>State of the endpoint while sending.</b>
+	 */
+	@Label("State")
+	public String state;
+
+	/**
+	 * <b>Why the packet was send ("data", "retransmit" or "ack").</b>
+	 */
+	@Label("Cause")
+	public String cause;
+
+}
@@ -0,0 +1,38 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <b>JFR event: a Transition of the state machine was executed.</b>
+ *
+ * The duration of the event is the time the Transition needed.
+ */
+@Name("ndpk.StateTransition")
+@Label("State Transition")
+@Category({ "ndpk", "State Machine" })
+@Description("A transition of the sender or receiver state machine")
+public class StateTransitionEvent extends Event {
+
+	/**
+	 * <b>The state before the Transition.</b>
+	 */
+	@Label("From")
+	public String from;
+
+	/**
+	 * <b>The state after the Transition.</b>
+	 */
+	@Label("To")
+	public String to;
+
+	/**
+	 * <b>The Message that caused the Transition.</b>
+	 */
+	@Label("Cause")
+	public String cause;
+
+}
@@ -0,0 +1,241 @@
+package metrics;
+
+/**
+ * <b>Immutable copy of TransferMetrics at one point in time.</b>
+ */
+public class MetricsSnapshot {
+
+	/**
+	 * <b>Time since the metrics were reset in ns.</b>
+	 */
+	private final long elapsedNanos;
+
+	/**
+	 * <b>Number of datagrams send.</b>
+	 */
+	private final long packetsSent;
+
+	/**
+	 * <b>Number of datagrams received.</b>
+	 */
+	private final long packetsReceived;
+
+	/**
+	 * <b>Number of retransmits.</b>
+	 */
+	private final long retransmits;
+
+	/**
+	 * <b>Number of timeouts.</b>
+	 */
+	private final long timeouts;
+
+	/**
+	 * <b>Number of checksum failures.</b>
+	 */
+	private final long checksumFailures;
+
+	/**
+	 * <b>Number of duplicates.</b>
+	 */
+	private final long duplicates;
+
+	/**
+	 * <b>Number of delivered file bytes.</b>
+	 */
+	private final long bytesDelivered;
+
+	/**
+	 * <b>Bytes send but not acknowledged yet.</b>
+	 */
+	private final long bytesInFlight;
+
+	/**
+	 * <b>Round trip times in ns.</b>
+	 */
+	private final Histogram roundTripTimes;
+
+	/**
+	 * <b>Delivery times in ns.</b>
+	 */
+	private final Histogram deliveryTimes;
+
+	/**
+	 * <b>Create a new snapshot with following params.</b>
+	 *
+	 * @param elapsedNanos
+	 *            is the time since the metrics were reset in ns
+	 * @param packetsSent
+	 *            is the number of datagrams send
+	 * @param packetsReceived
+	 *            is the number of datagrams received
+	 * @param retransmits
+	 *            is the number of retransmits
+	 * @param timeouts
+	 *            is the number of timeouts
+	 * @param checksumFailures
+	 *            is the number of checksum failures
+	 * @param duplicates
+	 *            is the number of duplicates
+	 * @param bytesDelivered
+	 *            is the number of delivered file bytes
+	 * @param bytesInFlight
+	 *            is the number of bytes not acknowledged yet
+	 * @param roundTripTimes
+	 *            is a copy of the round trip times
+	 * @param deliveryTimes
+	 *            is a copy of the delivery times
+	 */
+	public MetricsSnapshot(long elapsedNanos, long packetsSent, long packetsReceived, long retransmits,
+			long timeouts, long checksumFailures, long duplicates, long bytesDelivered, long bytesInFlight,
+			Histogram roundTripTimes, Histogram deliveryTimes) {
+		this.elapsedNanos = elapsedNanos;
+		this.packetsSent = packetsSent;
+		this.packetsReceived = packetsReceived;
+		this.retransmits = retransmits;
+		this.timeouts = timeouts;
+		this.checksumFailures = checksumFailures;
+		this.duplicates = duplicates;
+		this.bytesDelivered = bytesDelivered;
+		this.bytesInFlight = bytesInFlight;
+		this.roundTripTimes = roundTripTimes;
+		this.deliveryTimes = deliveryTimes;
+	}
+
+	/**
+	 * <b>Get the delivered bytes per second.</b>
+	 *
+	 * @return the goodput (0 if no time has passed)
+	 */
+	public double getGoodput() {
+		return elapsedNanos <= 0 ? 0 : bytesDelivered * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * <b>Get the share of send packets that were retransmits.</b>
+	 *
+	 * @return the retransmission ratio from 0 to 1
+	 */
+	public double getRetransmissionRatio() {
+		return packetsSent == 0 ? 0 : (double) retransmits / packetsSent;
+	}
+
+	/**
+	 * <b>Get the time since the metrics were reset.</b>
+	 *
+	 * @return the elapsed time in ns
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * <b>Get the number of datagrams send.</b>
+	 *
+	 * @return the number of datagrams send
+	 */
+	public long getPacketsSent() {
+		return packetsSent;
+	}
+
+	/**
+	 * <b>Get the number of datagrams received.</b>
+	 *
+	 * @return the number of datagrams received
+	 */
+	public long getPacketsReceived() {
+		return packetsReceived;
+	}
+
+	/**
+	 * <b>Get the number of retransmits.</b>
+	 *
+	 * @return the number of retransmits
+	 */
+	public long getRetransmits() {
+		return retransmits;
+	}
+
+	/**
+	 * <b>Get the number of timeouts.</b>
+	 *
+	 * @return the number of timeouts
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * <b>Get the number of checksum failures.</b>
+	 *
+	 * @return the number of checksum failures
+	 */
+	public long getChecksumFailures() {
+		return checksumFailures;
+	}
+
+	/**
+	 * <b>Get the number of duplicates.</b>
+	 *
+	 * @return the number of duplicates
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * <b>Get the number of delivered file bytes.</b>
+	 *
+	 * @return the number of delivered bytes
+	 */
+	public long getBytesDelivered() {
+		return bytesDelivered;
+	}
+
+	/**
+	 * <b>Get the number of bytes not acknowledged yet.</b>
+	 *
+	 * @return the bytes in flight
+	 */
+	public long getBytesInFlight() {
+		return bytesInFlight;
+	}
+
+	/**
+	 * <b>Get the round trip times in ns.</b>
+	 *
+	 * @return the histogram (must not be changed)
+	 */
+	public Histogram getRoundTripTimes() {
+		return roundTripTimes;
+	}
+
+	/**
+	 * <b>Get the delivery times in ns.</b>
+	 *
+	 * @return the histogram (must not be changed)
+	 */
+	public Histogram getDeliveryTimes() {
+		return deliveryTimes;
+	}
+
+	/**
+	 * <b>toString implemented.</b>
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "send: " + getPacketsSent()
+				+ ", received: " + getPacketsReceived()
+				+ ", retransmits: " + getRetransmits()
+				+ ", timeouts: " + getTimeouts()
+				+ ", checksum failures: " + getChecksumFailures()
+				+ ", duplicates: " + getDuplicates()
+				+ ", delivered: " + getBytesDelivered() + " Bytes"
+				+ ", in flight: " + getBytesInFlight() + " Bytes"
+				+ ", goodput: " + String.format("%.1f", getGoodput() / 1024) + " KiB/s"
+				+ (getRoundTripTimes().getCount() == 0 ? "" : ", RTT [us]: " + getRoundTripTimes().toString(1000))
+				+ (getDeliveryTimes().getCount() == 0 ? "" : ", delivery [us]: " + getDeliveryTimes().toString(1000));
+	}
+}
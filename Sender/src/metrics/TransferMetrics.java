@@ -0,0 +1,330 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <b>Counters and gauges of one endpoint.</b>
+ *
+ * Counters are LongAdders, so the Timer thread and the sending/receiving
+ * thread can update them without contending on a single field.
+ */
+public class TransferMetrics implements TransferMetricsMBean {
+
+	/**
+	 * <b>JMX domain all ndpk MBeans are registered in.</b>
+	 */
+	public static final String DOMAIN = "ndpk";
+
+	/**
+	 * <b>Number of datagrams send.</b>
+	 */
+	private final LongAdder packetsSent;
+
+	/**
+	 * <b>Number of datagrams received.</b>
+	 */
+	private final LongAdder packetsReceived;
+
+	/**
+	 * <b>Number of retransmits.</b>
+	 */
+	private final LongAdder retransmits;
+
+	/**
+	 * <b>Number of timeouts.</b>
+	 */
+	private final LongAdder timeouts;
+
+	/**
+	 * <b>Number of checksum failures.</b>
+	 */
+	private final LongAdder checksumFailures;
+
+	/**
+	 * <b>Number of duplicates.</b>
+	 */
+	private final LongAdder duplicates;
+
+	/**
+	 * <b>Number of delivered file bytes.</b>
+	 */
+	private final LongAdder bytesDelivered;
+
+	/**
+	 * <b>Round trip times in ns.</b>
+	 */
+	private final Histogram roundTripTimes;
+
+	/**
+	 * <b>Times from receiving a packet to its ACK being send in ns.</b>
+	 */
+	private final Histogram deliveryTimes;
+
+	/**
+	 * <b>Bytes send but not acknowledged yet.</b>
+	 */
+	private volatile long bytesInFlight;
+
+	/**
+	 * <b>Time of the last reset in ns (System.nanoTime).</b>
+	 */
+	private volatile long startNanos;
+
+	/**
+	 * <b>Create a new set of metrics with all counters at zero.</b>
+	 */
+	public TransferMetrics() {
+		this.packetsSent = new LongAdder();
+		this.packetsReceived = new LongAdder();
+		this.retransmits = new LongAdder();
+		this.timeouts = new LongAdder();
+		this.checksumFailures = new LongAdder();
+		this.duplicates = new LongAdder();
+		this.bytesDelivered = new LongAdder();
+		this.roundTripTimes = new Histogram();
+		this.deliveryTimes = new Histogram();
+		this.bytesInFlight = 0;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * <b>Register these metrics at the platform MBean server.</b>
+	 *
+	 * The ObjectName will be "ndpk:type=&lt;type&gt;,name=&lt;name&gt;".
+	 *
+	 * @param type
+	 *            is the kind of endpoint (for example "Sender")
+	 * @param name
+	 *            is the name of this transfer
+	 * @return the ObjectName the metrics are registered with
+	 * @throws JMException
+	 *             when the name is invalid or already registered
+	 */
+	public ObjectName register(String type, String name) throws JMException {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * <b>Remove the given MBean from the platform MBean server.</b>
+	 *
+	 * @param objectName
+	 *            is the name returned by register
+	 * @throws JMException
+	 *             when the MBean is not registered
+	 */
+	public static void unregister(ObjectName objectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+
+	/**
+	 * <b>Take a consistent-enough copy of all values.</b>
+	 *
+	 * The single counters are read one after another, so a snapshot taken
+	 * during a transfer may be off by the packets processed meanwhile.
+	 *
+	 * @return the snapshot
+	 */
+	public MetricsSnapshot snapshot() {
+		return new MetricsSnapshot(System.nanoTime() - startNanos, getPacketsSent(), getPacketsReceived(),
+				getRetransmits(), getTimeouts(), getChecksumFailures(), getDuplicates(), getBytesDelivered(),
+				getBytesInFlight(), getRoundTripTimes().copy(), getDeliveryTimes().copy());
+	}
+
+	/**
+	 * <b>A datagram was send.</b>
+	 */
+	public void packetSent() {
+		packetsSent.increment();
+	}
+
+	/**
+	 * <b>A datagram was received.</b>
+	 */
+	public void packetReceived() {
+		packetsReceived.increment();
+	}
+
+	/**
+	 * <b>A packet was send again.</b>
+	 */
+	public void retransmit() {
+		retransmits.increment();
+	}
+
+	/**
+	 * <b>A timer expired.</b>
+	 */
+	public void timeout() {
+		timeouts.increment();
+	}
+
+	/**
+	 * <b>A packet with a wrong checksum was received.</b>
+	 */
+	public void checksumFailure() {
+		checksumFailures.increment();
+	}
+
+	/**
+	 * <b>A duplicate was received.</b>
+	 */
+	public void duplicate() {
+		duplicates.increment();
+	}
+
+	/**
+	 * <b>Bytes of the file were delivered.</b>
+	 *
+	 * @param bytes
+	 *            is the number of delivered bytes
+	 */
+	public void delivered(long bytes) {
+		bytesDelivered.add(bytes);
+	}
+
+	/**
+	 * <b>Record the round trip time of a packet.</b>
+	 *
+	 * @param nanos
+	 *            is the time from sending the packet to receiving its ACK
+	 */
+	public void roundTrip(long nanos) {
+		roundTripTimes.record(nanos);
+	}
+
+	/**
+	 * <b>Record the time a received packet needed to be delivered.</b>
+	 *
+	 * @param nanos
+	 *            is the time from receiving the packet to sending its ACK
+	 */
+	public void deliveryTime(long nanos) {
+		deliveryTimes.record(nanos);
+	}
+
+	/**
+	 * <b>Get the round trip times in ns.</b>
+	 *
+	 * @return the live histogram
+	 */
+	public Histogram getRoundTripTimes() {
+		return roundTripTimes;
+	}
+
+	/**
+	 * <b>Get the delivery times in ns.</b>
+	 *
+	 * @return the live histogram
+	 */
+	public Histogram getDeliveryTimes() {
+		return deliveryTimes;
+	}
+
+	/**
+	 * <b>Set the number of bytes send but not acknowledged yet.</b>
+	 *
+	 * @param bytes
+	 *            is the number of bytes in flight
+	 */
+	public void setBytesInFlight(long bytes) {
+		this.bytesInFlight = bytes;
+	}
+
+	@Override
+	public long getPacketsSent() {
+		return packetsSent.sum();
+	}
+
+	@Override
+	public long getPacketsReceived() {
+		return packetsReceived.sum();
+	}
+
+	@Override
+	public long getRetransmits() {
+		return retransmits.sum();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getChecksumFailures() {
+		return checksumFailures.sum();
+	}
+
+	@Override
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	@Override
+	public long getBytesDelivered() {
+		return bytesDelivered.sum();
+	}
+
+	@Override
+	public long getBytesInFlight() {
+		return bytesInFlight;
+	}
+
+	@Override
+	public long getRoundTripTimeP50() {
+		return getRoundTripTimes().getValueAtPercentile(50) / 1000;
+	}
+
+	@Override
+	public long getRoundTripTimeP99() {
+		return getRoundTripTimes().getValueAtPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getRoundTripTimeP999() {
+		return getRoundTripTimes().getValueAtPercentile(99.9) / 1000;
+	}
+
+	@Override
+	public long getDeliveryTimeP50() {
+		return getDeliveryTimes().getValueAtPercentile(50) / 1000;
+	}
+
+	@Override
+	public long getDeliveryTimeP99() {
+		return getDeliveryTimes().getValueAtPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getDeliveryTimeP999() {
+		return getDeliveryTimes().getValueAtPercentile(99.9) / 1000;
+	}
+
+	@Override
+	public double getGoodput() {
+		return snapshot().getGoodput();
+	}
+
+	@Override
+	public void reset() {
+		packetsSent.reset();
+		packetsReceived.reset();
+		retransmits.reset();
+		timeouts.reset();
+		checksumFailures.reset();
+		duplicates.reset();
+		bytesDelivered.reset();
+		roundTripTimes.reset();
+		deliveryTimes.reset();
+		bytesInFlight = 0;
+		startNanos = System.nanoTime();
+	}
+}
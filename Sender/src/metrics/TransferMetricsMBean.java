@@ -0,0 +1,121 @@
+package metrics;
+
+/**
+ * <b>JMX management interface of TransferMetrics.</b>
+ *
+ * Every getter shows up as a read-only attribute in JConsole/VisualVM.
+ */
+public interface TransferMetricsMBean {
+
+	/**
+	 * <b>Get the number of datagrams send (including retransmits and
+	 * ACKs).</b>
+	 *
+	 * @return the number of datagrams send
+	 */
+	long getPacketsSent();
+
+	/**
+	 * <b>Get the number of datagrams received.</b>
+	 *
+	 * @return the number of datagrams received
+	 */
+	long getPacketsReceived();
+
+	/**
+	 * <b>Get the number of packets that had to be send again.</b>
+	 *
+	 * @return the number of retransmits
+	 */
+	long getRetransmits();
+
+	/**
+	 * <b>Get the number of timer expiries.</b>
+	 *
+	 * @return the number of timeouts
+	 */
+	long getTimeouts();
+
+	/**
+	 * <b>Get the number of received packets with a wrong checksum.</b>
+	 *
+	 * @return the number of checksum failures
+	 */
+	long getChecksumFailures();
+
+	/**
+	 * <b>Get the number of received duplicates (data or ACK).</b>
+	 *
+	 * @return the number of duplicates
+	 */
+	long getDuplicates();
+
+	/**
+	 * <b>Get the number of file bytes that were delivered successfully.</b>
+	 *
+	 * @return the number of delivered bytes
+	 */
+	long getBytesDelivered();
+
+	/**
+	 * <b>Get the number of bytes send but not acknowledged yet.</b>
+	 *
+	 * @return the bytes in flight
+	 */
+	long getBytesInFlight();
+
+	/**
+	 * <b>Get the goodput since the last reset.</b>
+	 *
+	 * @return the delivered bytes per second
+	 */
+	double getGoodput();
+
+	/**
+	 * <b>Get the median of the round trip time (send to valid ACK).</b>
+	 *
+	 * @return the median in microseconds
+	 */
+	long getRoundTripTimeP50();
+
+	/**
+	 * <b>Get the 99th percentile of the round trip time (send to valid ACK).</b>
+	 *
+	 * @return the 99th percentile in microseconds
+	 */
+	long getRoundTripTimeP99();
+
+	/**
+	 * <b>Get the 99.9th percentile of the round trip time (send to valid ACK).</b>
+	 *
+	 * @return the 99.9th percentile in microseconds
+	 */
+	long getRoundTripTimeP999();
+
+	/**
+	 * <b>Get the median of the time from receiving a packet to its ACK being send.</b>
+	 *
+	 * @return the median in microseconds
+	 */
+	long getDeliveryTimeP50();
+
+	/**
+	 * <b>Get the 99th percentile of the time from receiving a packet to its ACK being send.</b>
+	 *
+	 * @return the 99th percentile in microseconds
+	 */
+	long getDeliveryTimeP99();
+
+	/**
+	 * <b>Get the 99.9th percentile of the time from receiving a packet to its ACK being send.</b>
+	 *
+	 * @return the 99.9th percentile in microseconds
+	 */
+	long getDeliveryTimeP999();
+
+	/**
+	 * <b>Set all counters back to zero.</b>
+	 */
+	void reset();
+
+}
@@ -0,0 +1,336 @@
+package protocolPackets;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The parameters of a transfer, exchanged in the handshake.
+ *
+ * The sender offers what it supports in the content of its SYN: the initial
+ * sequence number, the largest payload per packet, the largest window, all
+ * checksum algorithms and all features it can use. The receiver answers with
+ * a SYN-ACK holding the choice: the same initial sequence number, the
+ * smaller payload and window, the fastest common checksum algorithm and the
+ * common features. The connection ID is the one in the header of both.
+ *
+ * Content layout (big endian): initial sequence number (byte), payload size
+ * (int), window (int), checksum algorithms (byte), features (byte).
+ */
+public final class ConnectionParameters {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    //Static Public:
+    /**
+     * Feature: forward error correction.
+     */
+    public final static int FEATURE_FEC = 1;
+
+    /**
+     * Feature: compressed payloads.
+     */
+    public final static int FEATURE_COMPRESSION = 2;
+
+    /**
+     * Feature: selective acknowledgements.
+     */
+    public final static int FEATURE_SACK = 4;
+
+    /**
+     * Feature: several streams with sequence numbers of their own.
+     */
+    public final static int FEATURE_STREAMS = 8;
+
+    /**
+     * Feature: a directory, stream 0 holds its Manifest.
+     */
+    public final static int FEATURE_MANIFEST = 16;
+
+    /**
+     * Feature: resume a broken off transfer, the SYN and SYN-ACK hold a
+     * Checkpoint after the parameters.
+     */
+    public final static int FEATURE_RESUME = 32;
+
+    /**
+     * Feature: send a file as Delta to the old version the receiver has.
+     */
+    public final static int FEATURE_DELTA = 64;
+
+    /**
+     * The largest number of streams of a transfer. The receiver keeps a file
+     * open for each stream.
+     */
+    public final static int MAX_STREAMS = 256;
+
+    /**
+     * The features this implementation can use.
+     */
+    public final static int SUPPORTED_FEATURES = FEATURE_COMPRESSION | FEATURE_STREAMS | FEATURE_MANIFEST | FEATURE_RESUME | FEATURE_DELTA;
+
+    /**
+     * The largest window this implementation can use (stop and wait).
+     */
+    public final static int SUPPORTED_WINDOW = 1;
+
+    /**
+     * Size of the encoded parameters in bytes.
+     */
+    public final static int SIZE = 1 + Integer.BYTES + Integer.BYTES + 1 + 1;
+
+    //Private:
+    /**
+     * The sequence number of the first data packet.
+     */
+    final private int initialSequenceNumber;
+
+    /**
+     * The number of file bytes per packet.
+     */
+    final private int payloadSize;
+
+    /**
+     * The number of packets in flight.
+     */
+    final private int window;
+
+    /**
+     * The bits of the checksum algorithms (offered or chosen).
+     */
+    final private int checksumAlgorithms;
+
+    /**
+     * The bits of the features (offered or chosen).
+     */
+    final private int features;
+
+    //Constructors
+    //--------------------------------------------------------------------------
+    /**
+     * Initialize the parameters.
+     *
+     * @param initialSequenceNumber The sequence number of the first data
+     * packet, either 1 or 0.
+     * @param payloadSize The number of file bytes per packet.
+     * @param window The number of packets in flight.
+     * @param checksumAlgorithms The bits of the checksum algorithms.
+     * @param features The bits of the features.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public ConnectionParameters(int initialSequenceNumber, int payloadSize, int window, int checksumAlgorithms, int features) {
+        if (initialSequenceNumber != 0 && initialSequenceNumber != 1) {
+            throw new IllegalArgumentException("The initial sequence number must be 0 or 1!");
+        }
+        if (payloadSize < 1 || payloadSize > AlternatingBitPacket.PACKETSIZE) {
+            throw new IllegalArgumentException("The payload size must be between 1 and " + AlternatingBitPacket.PACKETSIZE + "!");
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must be at least 1!");
+        }
+        if ((checksumAlgorithms & ChecksumAlgorithm.all()) == 0) {
+            throw new IllegalArgumentException("There must be a known checksum algorithm!");
+        }
+        this.initialSequenceNumber = initialSequenceNumber;
+        this.payloadSize = payloadSize;
+        this.window = window;
+        this.checksumAlgorithms = checksumAlgorithms & ChecksumAlgorithm.all();
+        this.features = features;
+    }
+
+    //public Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Creates the offer of a sender: everything this implementation supports.
+     *
+     * @param initialSequenceNumber The sequence number of the first data
+     * packet, either 1 or 0.
+     * @param payloadSize The largest number of file bytes per packet.
+     * @return The offer.
+     */
+    public static ConnectionParameters offer(int initialSequenceNumber, int payloadSize) {
+        return offer(initialSequenceNumber, payloadSize, SUPPORTED_FEATURES);
+    }
+
+    /**
+     * Creates the offer of a sender with some of the supported features
+     * only. Features like FEATURE_MANIFEST describe the transfer, they are
+     * only offered when they are used.
+     *
+     * @param initialSequenceNumber The sequence number of the first data
+     * packet, either 1 or 0.
+     * @param payloadSize The largest number of file bytes per packet.
+     * @param features The bits of the features to offer.
+     * @return The offer.
+     */
+    public static ConnectionParameters offer(int initialSequenceNumber, int payloadSize, int features) {
+        return new ConnectionParameters(initialSequenceNumber, payloadSize, SUPPORTED_WINDOW, ChecksumAlgorithm.all(), features & SUPPORTED_FEATURES);
+    }
+
+    /**
+     * Creates the limits of a receiver: everything this implementation
+     * supports.
+     *
+     * @return The limits (the initial sequence number is not used).
+     */
+    public static ConnectionParameters supported() {
+        return offer(0, AlternatingBitPacket.PACKETSIZE);
+    }
+
+    /**
+     * Decodes the parameters in the content of a SYN or SYN-ACK.
+     *
+     * @param content The content of the packet.
+     * @return The parameters.
+     * @throws IllegalArgumentException If the content holds no valid
+     * parameters.
+     */
+    public static ConnectionParameters decode(byte[] content) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            return new ConnectionParameters(buffer.get(), buffer.getInt(), buffer.getInt(), buffer.get(), buffer.get());
+        } catch (BufferUnderflowException exception) {
+            throw new IllegalArgumentException("The content is to short for the parameters!");
+        }
+    }
+
+    /**
+     * Encodes the parameters as content of a SYN or SYN-ACK.
+     *
+     * @return The content.
+     */
+    public byte[] encode() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.put((byte) getInitialSequenceNumber());
+        buffer.putInt(getPayloadSize());
+        buffer.putInt(getWindow());
+        buffer.put((byte) getChecksumAlgorithms());
+        buffer.put((byte) getFeatures());
+        return buffer.array();
+    }
+
+    /**
+     * Chooses the parameters of a transfer from the offer of the sender and
+     * what the receiver supports.
+     *
+     * @param supported The limits of the receiver: its largest payload and
+     * window, its checksum algorithms and features.
+     * @return The choice, with one checksum algorithm (CRC-32 if there is no
+     * common one).
+     */
+    public ConnectionParameters negotiate(ConnectionParameters supported) {
+        final ChecksumAlgorithm common = ChecksumAlgorithm.fastest(getChecksumAlgorithms() & supported.getChecksumAlgorithms());
+        return new ConnectionParameters(
+                getInitialSequenceNumber(),
+                Math.min(getPayloadSize(), supported.getPayloadSize()),
+                Math.min(getWindow(), supported.getWindow()),
+                // every endpoint understands CRC-32
+                (common == null ? ChecksumAlgorithm.crc32 : common).bit(),
+                getFeatures() & supported.getFeatures());
+    }
+
+    /**
+     * Checks if these parameters are a valid answer to an offer: nothing
+     * more than offered and exactly one checksum algorithm.
+     *
+     * @param offer The offer of the sender.
+     * @return True if the answer can be used.
+     */
+    public boolean isAnswerTo(ConnectionParameters offer) {
+        return getInitialSequenceNumber() == offer.getInitialSequenceNumber()
+                && getPayloadSize() <= offer.getPayloadSize()
+                && getWindow() <= offer.getWindow()
+                && Integer.bitCount(getChecksumAlgorithms()) == 1
+                && (getChecksumAlgorithms() & ~offer.getChecksumAlgorithms()) == 0
+                && (getFeatures() & ~offer.getFeatures()) == 0;
+    }
+
+    /**
+     * Drops features from a choice, for a receiver that can not use them for
+     * this transfer.
+     *
+     * @param dropped The bits of the features to drop.
+     * @return The parameters without the features.
+     */
+    public ConnectionParameters without(int dropped) {
+        return new ConnectionParameters(getInitialSequenceNumber(), getPayloadSize(), getWindow(), getChecksumAlgorithms(), getFeatures() & ~dropped);
+    }
+
+    /**
+     * Checks if a feature was chosen.
+     *
+     * @param feature The bit of the feature.
+     * @return True if the feature is used.
+     */
+    public boolean hasFeature(int feature) {
+        return (getFeatures() & feature) != 0;
+    }
+
+    /**
+     * Get the sequence number of the first data packet.
+     *
+     * @return The sequence number (0,1).
+     */
+    public int getInitialSequenceNumber() {
+        return initialSequenceNumber;
+    }
+
+    /**
+     * Get the number of file bytes per packet.
+     *
+     * @return The payload size.
+     */
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * Get the number of packets in flight.
+     *
+     * @return The window.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Get the bits of the checksum algorithms.
+     *
+     * @return The bits.
+     */
+    public int getChecksumAlgorithms() {
+        return checksumAlgorithms;
+    }
+
+    /**
+     * Get the chosen (fastest) checksum algorithm.
+     *
+     * @return The algorithm.
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return ChecksumAlgorithm.fastest(getChecksumAlgorithms());
+    }
+
+    /**
+     * Get the bits of the features.
+     *
+     * @return The bits.
+     */
+    public int getFeatures() {
+        return features;
+    }
+
+    /**
+     * <b>toString implemented.</b>
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ISN: " + getInitialSequenceNumber()
+                + ", Payload: " + getPayloadSize()
+                + ", Window: " + getWindow()
+                + ", Checksum: " + getChecksumAlgorithm()
+                + ", Features: " + getFeatures();
+    }
+
+}
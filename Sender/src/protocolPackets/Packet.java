@@ -16,6 +16,16 @@ public interface Packet {
 
 	boolean isEndFlag();
 
+	boolean isSYN();
+
+	boolean isFIN();
+
+	boolean isCompressed();
+
+	int getConnectionId();
+
+	int getStreamId();
+
 	int getSequenceNumber();
     
 }
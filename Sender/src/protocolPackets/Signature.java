@@ -0,0 +1,297 @@
+package protocolPackets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The checksums of the blocks of a file the receiver has already, for a delta
+ * transfer.
+ *
+ * The file is cut into blocks of the same size (a shorter rest at the end is
+ * left out). Each block gets a rolling checksum, which the sender can move
+ * over its data one byte at a time, and a strong hash to make sure a block
+ * with the same rolling checksum really is the same. The sender sends the
+ * blocks it finds as copy instructions (see Delta).
+ *
+ * Content layout (big endian): block size (int), number of blocks (int), then
+ * per block: rolling checksum (int), strong hash (16 bytes).
+ */
+public final class Signature {
+
+    //Object Variables
+    //--------------------------------------------------------------------------
+    //Static Public:
+    /**
+     * Size of the strong hash of a block in bytes.
+     */
+    public final static int STRONG_SIZE = 16;
+
+    /**
+     * The smallest block size.
+     */
+    public final static int MIN_BLOCK_SIZE = 700;
+
+    /**
+     * The largest block size.
+     */
+    public final static int MAX_BLOCK_SIZE = 128 * 1024;
+
+    //Private:
+    /**
+     * The number of bytes per block.
+     */
+    final private int blockSize;
+
+    /**
+     * The rolling checksums, by block.
+     */
+    final private int[] rolling;
+
+    /**
+     * The strong hashes, by block.
+     */
+    final private byte[][] strong;
+
+    //Constructors
+    //--------------------------------------------------------------------------
+    /**
+     * Initialize the signature.
+     *
+     * @param blockSize The number of bytes per block.
+     * @param rolling The rolling checksums, by block.
+     * @param strong The strong hashes, by block.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public Signature(int blockSize, int[] rolling, byte[][] strong) {
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("The block size must be between 1 and " + MAX_BLOCK_SIZE + "!");
+        }
+        if (rolling.length != strong.length) {
+            throw new IllegalArgumentException("There must be a strong hash for each block!");
+        }
+        for (byte[] hash : strong) {
+            if (hash.length != STRONG_SIZE) {
+                throw new IllegalArgumentException("A strong hash must have " + STRONG_SIZE + " bytes!");
+            }
+        }
+        this.blockSize = blockSize;
+        this.rolling = rolling.clone();
+        this.strong = strong.clone();
+    }
+
+    //public Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Computes the signature of a file.
+     *
+     * @param input The content of the file.
+     * @param length The number of bytes of the file.
+     * @return The signature.
+     * @throws IOException If the file can not be read.
+     */
+    public static Signature of(InputStream input, long length) throws IOException {
+        final int blockSize = blockSize(length);
+        final int blocks = (int) Math.min(length / blockSize, Integer.MAX_VALUE);
+        final int[] rolling = new int[blocks];
+        final byte[][] strong = new byte[blocks][];
+        final MessageDigest digest = digest();
+        final byte[] block = new byte[blockSize];
+        for (int index = 0; index < blocks; index++) {
+            if (input.readNBytes(block, 0, blockSize) != blockSize) {
+                // the file got shorter, sign what was there
+                return new Signature(blockSize, Arrays.copyOf(rolling, index), Arrays.copyOf(strong, index));
+            }
+            rolling[index] = rolling(block, 0, blockSize);
+            strong[index] = strong(digest, block, 0, blockSize);
+        }
+        return new Signature(blockSize, rolling, strong);
+    }
+
+    /**
+     * Chooses the block size for a file: about the square root of its
+     * length, so the signature and the bytes of a changed block grow alike.
+     *
+     * @param length The number of bytes of the file.
+     * @return The block size, a multiple of 8 from MIN_BLOCK_SIZE to
+     * MAX_BLOCK_SIZE.
+     */
+    public static int blockSize(long length) {
+        final long root = (long) Math.ceil(Math.sqrt((double) length));
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, (root + 7) / 8 * 8));
+    }
+
+    /**
+     * Computes the rolling checksum of a block: the sum of its bytes in the
+     * low 16 bits, the sum of the running sums in the high 16 bits.
+     *
+     * @param data The array holding the block.
+     * @param offset The start of the block.
+     * @param length The number of bytes of the block.
+     * @return The checksum.
+     */
+    public static int rolling(byte[] data, int offset, int length) {
+        int sum = 0;
+        int weighted = 0;
+        for (int index = 0; index < length; index++) {
+            sum += data[offset + index] & 0xff;
+            weighted += sum;
+        }
+        return checksum(sum, weighted);
+    }
+
+    /**
+     * Moves the rolling checksum of a block one byte further.
+     *
+     * @param checksum The checksum of the block.
+     * @param out The first byte of the block, which is dropped.
+     * @param in The byte after the block, which is added.
+     * @param length The number of bytes of the block.
+     * @return The checksum of the block one byte further.
+     */
+    public static int roll(int checksum, byte out, byte in, int length) {
+        final int sum = (checksum & 0xffff) - (out & 0xff) + (in & 0xff);
+        final int weighted = (checksum >>> 16) - length * (out & 0xff) + sum;
+        return checksum(sum, weighted);
+    }
+
+    /**
+     * Creates the digest for the strong hashes.
+     *
+     * @return The digest, not to be shared between threads.
+     */
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Computes the strong hash of a block: the start of its SHA-256 hash.
+     *
+     * @param digest The digest to use.
+     * @param data The array holding the block.
+     * @param offset The start of the block.
+     * @param length The number of bytes of the block.
+     * @return The hash.
+     */
+    public static byte[] strong(MessageDigest digest, byte[] data, int offset, int length) {
+        digest.update(data, offset, length);
+        return Arrays.copyOf(digest.digest(), STRONG_SIZE);
+    }
+
+    /**
+     * Decodes the signature sent by the receiver.
+     *
+     * @param content The content of the ACKs of the signature stream.
+     * @return The signature.
+     * @throws IllegalArgumentException If the content holds no valid
+     * signature.
+     */
+    public static Signature decode(byte[] content) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            final int blockSize = buffer.getInt();
+            final int blocks = buffer.getInt();
+            if (blocks < 0 || blocks > buffer.remaining() / (Integer.BYTES + STRONG_SIZE)) {
+                throw new IllegalArgumentException("The number of blocks does not fit the content!");
+            }
+            final int[] rolling = new int[blocks];
+            final byte[][] strong = new byte[blocks][STRONG_SIZE];
+            for (int index = 0; index < blocks; index++) {
+                rolling[index] = buffer.getInt();
+                buffer.get(strong[index]);
+            }
+            return new Signature(blockSize, rolling, strong);
+        } catch (BufferUnderflowException exception) {
+            throw new IllegalArgumentException("The content is to short for the signature!");
+        }
+    }
+
+    /**
+     * Encodes the signature, to be sent in the ACKs of the signature stream.
+     *
+     * @return The content.
+     */
+    public byte[] encode() {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Integer.BYTES + getBlocks() * (Integer.BYTES + STRONG_SIZE));
+        buffer.putInt(getBlockSize());
+        buffer.putInt(getBlocks());
+        for (int index = 0; index < getBlocks(); index++) {
+            buffer.putInt(rolling[index]);
+            buffer.put(strong[index]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Get the number of bytes per block.
+     *
+     * @return The block size.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Get the number of blocks.
+     *
+     * @return The number of blocks, without the shorter rest of the file.
+     */
+    public int getBlocks() {
+        return rolling.length;
+    }
+
+    /**
+     * Get the rolling checksum of a block.
+     *
+     * @param block The number of the block.
+     * @return The checksum.
+     */
+    public int getRolling(int block) {
+        return rolling[block];
+    }
+
+    /**
+     * Checks if a block has a strong hash.
+     *
+     * @param block The number of the block.
+     * @param hash The strong hash.
+     * @return True if the hashes are equal.
+     */
+    public boolean isStrong(int block, byte[] hash) {
+        return MessageDigest.isEqual(strong[block], hash);
+    }
+
+    /**
+     * <b>toString implemented.</b>
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Block size: " + getBlockSize()
+                + ", Blocks: " + getBlocks();
+    }
+
+    //private Methods
+    //--------------------------------------------------------------------------
+    /**
+     * Puts the two sums of a rolling checksum together.
+     *
+     * @param sum The sum of the bytes.
+     * @param weighted The sum of the running sums.
+     * @return The checksum.
+     */
+    private static int checksum(int sum, int weighted) {
+        return (sum & 0xffff) | (weighted << 16);
+    }
+
+}
@@ -0,0 +1,251 @@
+package sender;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <b>Compresses the data of a stream ahead of sending, on all cores.</b>
+ *
+ * The data is cut into segments of SEGMENT_SIZE bytes, each one is cut into
+ * chunks by a Compressor of its own (see Compressor) as a task of the common
+ * ForkJoinPool. The chunks are handed to the Sender in the order of the data.
+ * A segment starts with the running ratio of the segments handed over before
+ * it.<br>
+ * <br>
+ * All pipelines together hold at most LOOKAHEAD segments, being compressed or
+ * handed over and not send yet: every segment takes a permit of a Semaphore
+ * they share, so the memory stays bounded however many streams there are. A
+ * stream that finds no permit free sends its next packet as it is, it never
+ * waits for another stream.
+ */
+final class CompressionPipeline {
+
+	/**
+	 * <b>Number of bytes of the data per segment.</b>
+	 */
+	private static final int SEGMENT_SIZE = 256 * 1024;
+
+	/**
+	 * <b>Number of segments compressed ahead by all streams together.</b>
+	 */
+	private static final int LOOKAHEAD = 2 * ForkJoinPool.getCommonPoolParallelism();
+
+	/**
+	 * <b>A permit for each of the LOOKAHEAD segments, shared by all
+	 * pipelines.</b>
+	 */
+	private static final Semaphore PERMITS = new Semaphore(LOOKAHEAD);
+
+	/**
+	 * <b>Ratio of compressed to original bytes the first segment starts
+	 * with.</b>
+	 */
+	private static final double INITIAL_RATIO = 0.5;
+
+	/**
+	 * <b>The data of the stream.</b>
+	 */
+	private final byte[] data;
+
+	/**
+	 * <b>Number of bytes per packet.</b>
+	 */
+	private final int payloadSize;
+
+	/**
+	 * <b>Largest number of segments compressed ahead by this pipeline, its
+	 * fair share of the permits.</b>
+	 */
+	private final int lookahead;
+
+	/**
+	 * <b>The segments being compressed, in the order of the data.</b>
+	 */
+	private final Deque<ForkJoinTask<Segment>> segments;
+
+	/**
+	 * <b>The chunks of the last segment handed over, not send yet.</b>
+	 */
+	private final Deque<Compressor.Chunk> chunks;
+
+	/**
+	 * <b>True, while the chunks hold the permit of the segment they came
+	 * from.</b>
+	 */
+	private boolean handedOver;
+
+	/**
+	 * <b>Number of bytes of the data given to a segment or send as it is.</b>
+	 */
+	private int planned;
+
+	/**
+	 * <b>Running ratio of compressed to original bytes of the segments handed
+	 * over.</b>
+	 */
+	private double ratio;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param data
+	 *            is the data of the stream
+	 * @param offset
+	 *            is the number of bytes send before
+	 * @param payloadSize
+	 *            is the number of bytes per packet
+	 * @param streams
+	 *            is the number of streams that compress ahead at the same
+	 *            time
+	 */
+	CompressionPipeline(byte[] data, int offset, int payloadSize, int streams) {
+		this.data = data;
+		this.payloadSize = payloadSize;
+		this.lookahead = Math.max(1, LOOKAHEAD / Math.max(1, streams));
+		this.segments = new ArrayDeque<>(this.lookahead);
+		this.chunks = new ArrayDeque<>();
+		this.handedOver = false;
+		this.planned = offset;
+		this.ratio = INITIAL_RATIO;
+		fill();
+	}
+
+	/**
+	 * <b>Get the next chunk of the stream.</b>
+	 * Waits for its segment, if it is not compressed yet. Without a segment
+	 * and a free permit the chunk is send as it is.
+	 *
+	 * @return the chunk (past the end of the data an empty one)
+	 */
+	Compressor.Chunk next() {
+		while (chunks.isEmpty()) {
+			if (segments.isEmpty()) {
+				fill();
+			}
+			if (segments.isEmpty()) {
+				final Compressor.Chunk chunk = Compressor.plain(data, planned, data.length, payloadSize);
+				planned += chunk.getLength();
+				return chunk;
+			}
+			final Segment segment = segments.poll().join();
+			ratio = segment.getRatio();
+			chunks.addAll(segment.getChunks());
+			handedOver = true;
+			fill();
+		}
+		final Compressor.Chunk chunk = chunks.poll();
+		// the last chunk of a segment frees its permit
+		if (chunks.isEmpty() && handedOver) {
+			handedOver = false;
+			PERMITS.release();
+		}
+		return chunk;
+	}
+
+	/**
+	 * <b>Stop compressing ahead, the chunks are not needed anymore.</b>
+	 * Frees the permits of the segments.
+	 */
+	void close() {
+		for (ForkJoinTask<Segment> segment : segments) {
+			segment.cancel(false);
+		}
+		PERMITS.release(segments.size() + (handedOver ? 1 : 0));
+		handedOver = false;
+		segments.clear();
+		chunks.clear();
+	}
+
+	/**
+	 * <b>Start compressing segments until lookahead of them are ahead or no
+	 * permit is free.</b>
+	 */
+	private void fill() {
+		while (segments.size() < lookahead && planned < data.length && PERMITS.tryAcquire()) {
+			final int start = planned;
+			final int end = (int) Math.min((long) start + SEGMENT_SIZE, data.length);
+			final double startRatio = ratio;
+			segments.add(ForkJoinPool.commonPool().submit(() -> compress(start, end, startRatio)));
+			planned = end;
+		}
+	}
+
+	/**
+	 * <b>Compress a segment, as a task of the ForkJoinPool.</b>
+	 *
+	 * @param start
+	 *            is the first byte of the segment
+	 * @param end
+	 *            is the end of the segment
+	 * @param startRatio
+	 *            is the running ratio before the segment
+	 * @return the segment
+	 */
+	private Segment compress(int start, int end, double startRatio) {
+		final Compressor compressor = new Compressor(startRatio);
+		try {
+			final List<Compressor.Chunk> compressed = new ArrayList<>();
+			int offset = start;
+			while (offset < end) {
+				final Compressor.Chunk chunk = compressor.next(data, offset, end, payloadSize);
+				compressed.add(chunk);
+				offset += chunk.getLength();
+			}
+			return new Segment(compressed, compressor.getRatio());
+		} finally {
+			compressor.close();
+		}
+	}
+
+	/**
+	 * <b>The chunks of a compressed segment.</b>
+	 */
+	private static final class Segment {
+
+		/**
+		 * <b>The chunks, in the order of the data.</b>
+		 */
+		private final List<Compressor.Chunk> chunks;
+
+		/**
+		 * <b>Running ratio after the segment.</b>
+		 */
+		private final double ratio;
+
+		/**
+		 * <b>Constructor with following params.</b>
+		 *
+		 * @param chunks
+		 *            are the chunks, in the order of the data
+		 * @param ratio
+		 *            is the running ratio after the segment
+		 */
+		Segment(List<Compressor.Chunk> chunks, double ratio) {
+			this.chunks = chunks;
+			this.ratio = ratio;
+		}
+
+		/**
+		 * <b>Get the chunks.</b>
+		 *
+		 * @return the chunks, in the order of the data
+		 */
+		List<Compressor.Chunk> getChunks() {
+			return chunks;
+		}
+
+		/**
+		 * <b>Get the running ratio after the segment.</b>
+		 *
+		 * @return the ratio
+		 */
+		double getRatio() {
+			return ratio;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package sender;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import protocolPackets.AlternatingBitPacket;
+
+/**
+ * <b>Cuts a part of the data of a stream into chunks and compresses each one
+ * to fit a packet.</b>
+ *
+ * A chunk is compressed on its own (Deflate), so the Receiver can inflate
+ * every packet as it arrives. It never reaches beyond the end of the part, so
+ * the parts of a stream can be compressed at the same time (see
+ * CompressionPipeline). A chunk takes as many bytes as the running compression
+ * ratio says will fit into the payload, up to AlternatingBitPacket.MAX_LENGTH;
+ * if they do not fit, fewer bytes are tried. While the ratio shows the data
+ * does not get smaller (zip files, images), the chunks are send as they are
+ * and compression is only tried again every PROBE_INTERVAL packets.
+ */
+final class Compressor {
+
+	/**
+	 * <b>Ratio of compressed to original bytes above which chunks are send as
+	 * they are.</b>
+	 */
+	private static final double SKIP_RATIO = 0.9;
+
+	/**
+	 * <b>Number of chunks send as they are before compression is tried
+	 * again.</b>
+	 */
+	private static final int PROBE_INTERVAL = 32;
+
+	/**
+	 * <b>Weight of the last chunk in the running ratio.</b>
+	 */
+	private static final double WEIGHT = 0.125;
+
+	/**
+	 * <b>Part of the payload a chunk is expected to fill, so most chunks fit
+	 * at the first try.</b>
+	 */
+	private static final double FILL = 0.9;
+
+	/**
+	 * <b>Smallest ratio a chunk size is taken from.</b>
+	 */
+	private static final double MIN_RATIO = 0.01;
+
+	/**
+	 * <b>Compresses the chunks, one after the other.</b>
+	 */
+	private final Deflater deflater;
+
+	/**
+	 * <b>Running ratio of compressed to original bytes.</b>
+	 */
+	private double ratio;
+
+	/**
+	 * <b>Number of chunks send as they are since compression was tried.</b>
+	 */
+	private int skipped;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param ratio
+	 *            is the running ratio of compressed to original bytes so far
+	 */
+	Compressor(double ratio) {
+		this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		this.ratio = ratio;
+		this.skipped = 0;
+	}
+
+	/**
+	 * <b>Get the next chunk as it is: the payload size of bytes, the last one
+	 * of the part only the rest.</b>
+	 *
+	 * @param data
+	 *            is the data of the stream
+	 * @param offset
+	 *            is the number of bytes send before
+	 * @param end
+	 *            is the end of the part of the data
+	 * @param payloadSize
+	 *            is the number of bytes per packet
+	 * @return the chunk
+	 */
+	static Chunk plain(byte[] data, int offset, int end, int payloadSize) {
+		final byte[] content = Arrays.copyOfRange(data, offset, Math.min(end, offset + payloadSize));
+		return new Chunk(offset, content, content.length, false);
+	}
+
+	/**
+	 * <b>Get the next chunk, compressed if that saves bytes.</b>
+	 *
+	 * @param data
+	 *            is the data of the stream
+	 * @param offset
+	 *            is the number of bytes send before
+	 * @param end
+	 *            is the end of the part of the data
+	 * @param payloadSize
+	 *            is the number of bytes per packet
+	 * @return the chunk
+	 */
+	Chunk next(byte[] data, int offset, int end, int payloadSize) {
+		final int remaining = end - offset;
+		if (remaining <= 0 || (ratio > SKIP_RATIO && ++skipped < PROBE_INTERVAL)) {
+			return plain(data, offset, end, payloadSize);
+		}
+		skipped = 0;
+		// a packet as it is holds this many bytes, a compressed one has to
+		// hold more (or be shorter, at the end of the part)
+		final int plainLength = Math.min(remaining, payloadSize);
+		int length = (int) Math.min(Math.min(remaining, AlternatingBitPacket.MAX_LENGTH), payloadSize * FILL / Math.max(ratio, MIN_RATIO));
+		length = Math.max(length, plainLength);
+		while (true) {
+			final byte[] content = deflate(data, offset, length, payloadSize);
+			if (content != null) {
+				update(content.length / (double) length);
+				if (length > plainLength || content.length < plainLength) {
+					return new Chunk(offset, content, length, true);
+				}
+				return plain(data, offset, end, payloadSize);
+			}
+			if (length <= plainLength) {
+				// does not even fit as long as it is
+				update(1);
+				return plain(data, offset, end, payloadSize);
+			}
+			length = Math.max(plainLength, length * 3 / 4);
+		}
+	}
+
+	/**
+	 * <b>Get the running ratio of compressed to original bytes.</b>
+	 *
+	 * @return the ratio, to go on with in the next part
+	 */
+	double getRatio() {
+		return ratio;
+	}
+
+	/**
+	 * <b>Free the memory of the Deflater.</b>
+	 */
+	void close() {
+		deflater.end();
+	}
+
+	/**
+	 * <b>Compress a chunk.</b>
+	 *
+	 * @param data
+	 *            is the data of the stream
+	 * @param offset
+	 *            is the start of the chunk
+	 * @param length
+	 *            is the number of bytes of the chunk
+	 * @param limit
+	 *            is the largest number of compressed bytes
+	 * @return the compressed bytes, null if there are more than limit
+	 */
+	private byte[] deflate(byte[] data, int offset, int length, int limit) {
+		deflater.reset();
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+		final byte[] output = new byte[limit];
+		final int size = deflater.deflate(output);
+		return deflater.finished() ? Arrays.copyOf(output, size) : null;
+	}
+
+	/**
+	 * <b>Add the ratio of a chunk to the running ratio.</b>
+	 *
+	 * @param chunkRatio
+	 *            is the ratio of compressed to original bytes of the chunk
+	 */
+	private void update(double chunkRatio) {
+		ratio += WEIGHT * (chunkRatio - ratio);
+	}
+
+	/**
+	 * <b>The bytes of a stream send in one packet.</b>
+	 */
+	static final class Chunk {
+
+		/**
+		 * <b>Number of bytes of the stream before the chunk.</b>
+		 */
+		private final int offset;
+
+		/**
+		 * <b>Content of the packet.</b>
+		 */
+		private final byte[] content;
+
+		/**
+		 * <b>Number of bytes of the stream in the chunk.</b>
+		 */
+		private final int length;
+
+		/**
+		 * <b>Store if the content is compressed.</b>
+		 */
+		private final boolean compressed;
+
+		/**
+		 * <b>Constructor with following params.</b>
+		 *
+		 * @param offset
+		 *            is the number of bytes of the stream before the chunk
+		 * @param content
+		 *            is the content of the packet
+		 * @param length
+		 *            is the number of bytes of the stream in the chunk
+		 * @param compressed
+		 *            is true, if the content is compressed
+		 */
+		Chunk(int offset, byte[] content, int length, boolean compressed) {
+			this.offset = offset;
+			this.content = content;
+			this.length = length;
+			this.compressed = compressed;
+		}
+
+		/**
+		 * <b>Get the number of bytes of the stream before the chunk.</b>
+		 *
+		 * @return the number of bytes
+		 */
+		int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * <b>Get the content of the packet.</b>
+		 *
+		 * @return the content
+		 */
+		byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * <b>Get the number of bytes of the stream in the chunk.</b>
+		 *
+		 * @return the number of bytes
+		 */
+		int getLength() {
+			return length;
+		}
+
+		/**
+		 * <b>Get if the content is compressed.</b>
+		 *
+		 * @return true, if it has to be inflated
+		 */
+		boolean isCompressed() {
+			return compressed;
+		}
+	}
+}
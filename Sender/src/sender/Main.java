@@ -2,6 +2,12 @@ package sender;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.management.JMException;
+
+import metrics.TransferMetrics;
+import trace.PacketTraceRecorder;
 
 public class Main {
 	
@@ -10,8 +16,10 @@ public class Main {
 	 * Call the program with argument "-help" to see the use instructions,
 	 * otherwise two arguments are needed:<br>
 	 * <br>
-	 * 1. <b>File Name</b> (including the path, if program does not start in the same folder as the file<br>
+	 * 1. <b>File Name</b> of a file or directory (including the path, if program does not start in the same folder as the file<br>
 	 * 2. <b>Destination</b> IP-Address or "localhost"<br>
+	 * <br>
+	 * Optional: <b>-trace &lt;file&gt;</b> records every datagram<br>
 	 * 
 	 * @param args contains the given arguments
 	 */
@@ -22,9 +30,9 @@ public class Main {
 			showHelp();
 		} 
 		// check number of given arguments
-		else if (args.length != 2) {
+		else if (args.length != 2 && !(args.length == 4 && "-trace".equals(args[2]))) {
 			showError(
-					"The number of arguments must be 2, but was " + args.length + "."
+					"The number of arguments must be 2 (or 4 with -trace), but was " + args.length + "."
 					+ "\r\n"
 					+ "If you need help, start the program with the -help argument."
 					);
@@ -36,14 +44,6 @@ public class Main {
 					+ "\r\n"
 					+ "If you need help, start the program with the -help argument.");
 		}
-		// check if the given file is a directory
-		else if (new File(args[0]).isDirectory()) {
-			showError(
-					"\"" + args[0] + "\" is a directory and not a file."
-					+ "\r\n"
-					+ "If you need help, start the program with the -help argument."
-					);
-		}
 		// check if the given file exists
 		else if (!new File(args[0]).exists()) {
 			showError(
@@ -57,11 +57,31 @@ public class Main {
 			// get values from arguments
 			final String fileName = args[0];
 			final String destination = "localhost".equals(args[1]) ? "127.0.0.1" : args[1];
+			final String traceFile = args.length == 4 ? args[3] : null;
+			// open the trace first, its failure is not one of the transfer
+			final PacketTraceRecorder traceRecorder;
 			try {
+				traceRecorder = traceFile == null ? null : new PacketTraceRecorder(Paths.get(traceFile));
+			} catch (IOException exception) {
+				showError(
+						"Sorry! The trace file \"" + traceFile + "\" could not be created."
+						+ "\r\n"
+						+ "Please check the path or start without -trace."
+						);
+				return;
+			}
+			// a null recorder is allowed and just not closed
+			try (final PacketTraceRecorder recorder = traceRecorder) {
 				// create new sender object, new File(fileName).toPath() might throw an exception
+				// (a directory is send with all its files)
 				final Sender sender = new Sender(new File(fileName).toPath(), destination);
+				// make the metrics visible in JConsole
+				registerMetrics(sender.getMetrics(), fileName);
+				// capture every datagram if wanted
+				sender.setTraceRecorder(recorder);
 				// start sending
 				sender.send();
+				System.out.println(sender.getMetrics().snapshot());
 			} catch (IOException exception) {
 				showError(
 						"Sorry! An Error occured while reading the File \"" + fileName + "\"."
@@ -90,15 +110,35 @@ public class Main {
 				+ "\tto use the relative path from the program to the file.\r\n"
 				+ "\tYou can reach the parent folder using \"../\" in the path.\r\n"
 				+ "\tExample File Name: \"../../Folder/File.txt\"\r\n"
+				+ "\tA directory is send with all its subdirectories and files.\r\n"
 				+ "\r\n"
 				+ "2. Destination\r\n"
 				+ "\tThis argument is the IPv4-Address of the receiver.\r\n"
 				+ "\tIf the receiver is localhost, you can just type \"localhost\"\r\n"
 				+ "\tinstead of the IP-Address \"127.0.0.1\"\r\n"
 				+ "\tExample IPv4-Address: \"192.169.2.1\"\r\n"
+				+ "\r\n"
+				+ "Optional: -trace <file>\r\n"
+				+ "\tRecords every datagram send or received in the given file.\r\n"
+				+ "\tAnalyze it with \"java trace.TraceAnalyzer <file>\".\r\n"
 				+ "\r\n");
 	}
 	
+	/**
+	 * <b>Register the metrics of a transfer as MBean.</b>
+	 * The transfer works without them, so a failure is only reported.
+	 * 
+	 * @param metrics are the metrics to register
+	 * @param name is the name of the transfer
+	 */
+	private static void registerMetrics(TransferMetrics metrics, String name) {
+		try {
+			metrics.register("Sender", name);
+		} catch (JMException exception) {
+			showError("The metrics could not be registered: " + exception.getMessage());
+		}
+	}
+	
 	/**
 	 * <b>Print the given Error Message.</b>
 	 * 
@@ -1,45 +1,118 @@
 package sender;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 import decorator.BrokenDatagramSocket;
+import decorator.DatagramSocketFactory;
+import events.PacketReceivedEvent;
+import events.PacketSentEvent;
+import events.StateTransitionEvent;
 import generics.Pair;
+import metrics.TransferMetrics;
 import protocolPackets.AlternatingBitPacket;
+import protocolPackets.Checkpoint;
+import protocolPackets.ChecksumAlgorithm;
+import protocolPackets.ConnectionParameters;
+import protocolPackets.Delta;
+import protocolPackets.Manifest;
+import protocolPackets.Packet;
+import protocolPackets.Signature;
 import sender.states.Message;
 import sender.states.State;
 import sender.states.Transition;
 import sender.timer.Timer;
+import trace.PacketTraceRecorder;
+import transport.Network;
+import transport.UdpNetwork;
 
 /**
  * <b>Sender class.</b>
  * 
- * Sends to port 9876 and receives on port 8765
+ * Sends to port 9876 of the Receiver from a single socket, bound to a free
+ * port for each transfer. The Receiver answers to the address and port the
+ * packets come from, so any number of transfers can run on one host.<br>
+ * <br>
+ * Every transfer starts with a handshake: a SYN offers the parameters the
+ * Sender supports, the SYN-ACK of the Receiver holds the ones to use (see
+ * ConnectionParameters). When the last packet is acknowledged, a FIN closes
+ * the connection. All data has arrived by then, so if no FIN-ACK comes back
+ * after MAX_FIN_RETRANSMITS tries, the Sender stops anyway.<br>
+ * <br>
+ * Several files are send as streams of one transfer, each one with sequence
+ * numbers of its own (the Receiver stores and acknowledges them separately).
+ * Every stream is an alternating bit sender of its own, with one packet in
+ * flight and a Timer of its own, so a lost packet only holds back its stream
+ * while the others go on. The streams take turns in starting new packets, so
+ * small files are done early. How many packets all streams have in flight
+ * together is limited by a congestion window: it grows with every ACK, by one
+ * packet up to the slow start threshold and by one per window after it, and
+ * falls back to one packet after a timeout, at most once per window.<br>
+ * <br>
+ * A directory is send as one transfer, too: stream 0 holds its Manifest with
+ * the paths, sizes and times of all directories and files, the files follow
+ * back to back in up to DIRECTORY_STREAMS streams. The Manifest is send
+ * first, so the Receiver knows where to store the files before they arrive.<br>
+ * <br>
+ * A transfer that broke off can be resumed: the SYN holds the identity of
+ * the data (see Checkpoint), and a Receiver that kept part of it answers with
+ * the number of bytes it has of each stream. Only the rest is send.<br>
+ * <br>
+ * A single file can be send as Delta to an old version the Receiver has of
+ * a file with the same name (the SYN holds the name, see Checkpoint): its
+ * Signature comes back in the ACKs of the empty packets of stream
+ * Delta.SIGNATURE_STREAM, then stream 0 holds the changed bytes and the blocks
+ * to copy instead of the whole file.<br>
+ * <br>
+ * If the Receiver supports it, the packets are compressed chunk by chunk (see
+ * Compressor): a packet then holds more bytes of the file than its payload
+ * size. Data that does not get smaller is send as it is. The chunks are
+ * compressed ahead on all cores (see CompressionPipeline), so compression does
+ * not slow down sending.
  */
 public class Sender {
 
 	/**
-	 * <b>The Port to send to.</b>
+	 * <b>The Port of the Receiver.</b>
 	 */
-	private static final int SEND_PORT = 9876;
+	private static final int RECEIVER_PORT = 9876;
 
 	/**
-	 * <b>The port to listen to.</b>
+	 * <b>Default timeout in ms.</b>
 	 */
-	private static final int RECEIVE_PORT = 8765;
+	private static final long DEFAULT_TIMEOUT = 300;
 
 	/**
-	 * <b>Default timeout in ms.</b>
+	 * <b>Number of times the FIN is resend before giving up.</b>
 	 */
-	private static final long DEFAULT_TIMEOUT = 300;
+	private static final int MAX_FIN_RETRANSMITS = 3;
+
+	/**
+	 * <b>Largest number of streams the files of a directory are spread
+	 * over.</b>
+	 */
+	private static final int DIRECTORY_STREAMS = 8;
+
+	/**
+	 * <b>Number of packets all streams may have in flight at the start.</b>
+	 */
+	private static final double INITIAL_WINDOW = 2;
 
 	/**
 	 * <b>Current state.</b>
@@ -47,7 +120,8 @@ public class Sender {
 	private State currentState;
 
 	/**
-	 * <b>Current timer (may be running or not).</b>
+	 * <b>Timer of the SYN or the FIN (may be running or not).</b>
+	 * The packets of the streams have Timers of their own.
 	 */
 	private Timer timer;
 
@@ -56,6 +130,42 @@ public class Sender {
 	 */
 	private final String ipAdress;
 
+	/**
+	 * <b>Connection ID of this transfer.</b>
+	 * The Receiver tells the transfers of one host apart by it.
+	 */
+	private int connectionId;
+
+	/**
+	 * <b>Largest number of file bytes per packet to offer.</b>
+	 */
+	private int maxPayloadSize;
+
+	/**
+	 * <b>Store if compressed payloads are offered.</b>
+	 */
+	private boolean compression;
+
+	/**
+	 * <b>Store if a Delta to the old version of the Receiver is offered.</b>
+	 */
+	private boolean delta;
+
+	/**
+	 * <b>Store if resuming a broken off transfer is offered.</b>
+	 */
+	private boolean resume;
+
+	/**
+	 * <b>The parameters offered in the SYN (null before the handshake).</b>
+	 */
+	private ConnectionParameters offer;
+
+	/**
+	 * <b>The parameters of the transfer (null before the handshake).</b>
+	 */
+	private ConnectionParameters parameters;
+
 	/**
 	 * <b>Map that maps a State to its code.</b>
 	 */
@@ -67,41 +177,192 @@ public class Sender {
 	private final Map<Pair<State, Message>, Transition> transitions;
 
 	/**
-	 * <b>File to be send as byte[].</b>
+	 * <b>Map that maps a Pair of State and Message to the code of a
+	 * stream.</b>
+	 */
+	private final Map<Pair<State, Message>, StreamTransition> streamTransitions;
+
+	/**
+	 * <b>The files to be send, one stream each.</b>
+	 */
+	private final List<Stream> streams;
+
+	/**
+	 * <b>The stream that started the last packet, the next one is chosen
+	 * after it (round robin).</b>
+	 */
+	private Stream currentStream;
+
+	/**
+	 * <b>Store if a directory is send: stream 0 holds its Manifest.</b>
 	 */
-	private final byte[] data;
+	private final boolean directory;
 
 	/**
-	 * <b>Stores the number of bytes send.</b>
+	 * <b>The SHA-256 hash of all streams, to resume the transfer.</b>
 	 */
-	private int bytesSend;
+	private final byte[] identity;
 
 	/**
-	 * <b>Stores the number of bytes send in the last sending process.</b>
+	 * <b>The SHA-256 hash of the file name, so the Receiver finds the old
+	 * version for a Delta (null if the transfer has none).</b>
 	 */
-	private int bytesSendInLastPacket;
+	private final byte[] name;
+
+	/**
+	 * <b>What the Receiver already has (null if nothing).</b>
+	 */
+	private Checkpoint checkpoint;
 
 	/**
 	 * <b>Store if Sender is sending or not.</b>
+	 * The Timer stops sending when the FIN-ACK does not come.
+	 */
+	private volatile boolean sending;
+
+	/**
+	 * <b>Number of times the FIN has been resend.</b>
+	 */
+	private int finRetransmits;
+
+	/**
+	 * <b>Counters and gauges of this transfer.</b>
+	 */
+	private final TransferMetrics metrics;
+
+	/**
+	 * <b>Records every datagram if capturing is enabled (may be null).</b>
+	 */
+	private PacketTraceRecorder traceRecorder;
+
+	/**
+	 * <b>Creates the socket to send with.</b>
+	 */
+	private DatagramSocketFactory socketFactory;
+
+	/**
+	 * <b>Provides the socket of the transfer and the Clock.</b>
+	 */
+	private Network network;
+
+	/**
+	 * <b>The socket of the transfer: the answers arrive at it (null when not
+	 * sending).</b>
+	 */
+	private volatile DatagramSocket socket;
+
+	/**
+	 * <b>Sends through the socket of the transfer (null when not
+	 * sending).</b>
 	 */
-	private boolean sending;
+	private volatile DatagramSocket sendSocket;
+
+	/**
+	 * <b>Time the SYN or the FIN was send in ns (Clock of the network).</b>
+	 */
+	private volatile long sentNanos;
+
+	/**
+	 * <b>Store if the SYN was send more than once.</b>
+	 * Round trip times of these packets are ambiguous and not recorded.
+	 */
+	private volatile boolean retransmitted;
+
+	/**
+	 * <b>Store if the SYN or the FIN has not been acknowledged yet.</b>
+	 * Guarded by this, like the state of the streams: a Timer thread must not
+	 * resend a packet (and move bytesSend back) once its ACK was accepted.
+	 */
+	private boolean awaitingAck;
+
+	/**
+	 * <b>Congestion window: the number of packets all streams may have in
+	 * flight together (guarded by this).</b>
+	 */
+	private double window;
+
+	/**
+	 * <b>Slow start threshold: up to it the window grows by one packet per
+	 * ACK, above it by one packet per window (guarded by this).</b>
+	 */
+	private double threshold;
+
+	/**
+	 * <b>Time the window was made smaller in ns (Clock of the network),
+	 * packets send before are lost in the same go (guarded by this).</b>
+	 */
+	private long windowReducedNanos;
+
+	/**
+	 * <b>Number of streams with a packet in flight (guarded by this).</b>
+	 */
+	private int packetsInFlight;
+
+	/**
+	 * <b>Number of bytes of the data in the packets in flight (guarded by
+	 * this).</b>
+	 */
+	private long bytesInFlight;
 
 	/**
 	 * <b>Constructor with following params.</b>
 	 * 
 	 * @param file
-	 *            is the file to be send
+	 *            is the file or directory to be send
 	 * @param ipAdress
 	 *            is the IP-Address of the receiver
 	 * @throws IOException
 	 *             when an error occurs while reading the file in a byte[]
 	 */
 	public Sender(Path file, String ipAdress) throws IOException {
+		this(Files.isDirectory(file) ? readDirectory(file) : Collections.singletonList(Files.readAllBytes(file)), Files.isDirectory(file), nameOf(file), ipAdress);
+	}
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 * 
+	 * @param files
+	 *            are the files to be send, stream IDs in this order
+	 * @param ipAdress
+	 *            is the IP-Address of the receiver
+	 * @throws IOException
+	 *             when an error occurs while reading a file in a byte[]
+	 */
+	public Sender(List<Path> files, String ipAdress) throws IOException {
+		this(readFiles(files), false, files.size() == 1 ? nameOf(files.get(0)) : null, ipAdress);
+	}
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 * 
+	 * @param data
+	 *            are the contents of the streams, stream IDs in this order
+	 * @param directory
+	 *            is true, if stream 0 holds a Manifest
+	 * @param name
+	 *            is the name of the file, null if there is none
+	 * @param ipAdress
+	 *            is the IP-Address of the receiver
+	 */
+	private Sender(List<byte[]> data, boolean directory, String name, String ipAdress) {
+		if (data.isEmpty() || data.size() > ConnectionParameters.MAX_STREAMS) {
+			throw new IllegalArgumentException("There must be 1 to " + ConnectionParameters.MAX_STREAMS + " files!");
+		}
 		// store the destination IP-Address
 		this.ipAdress = ipAdress;
 
-		// read file in byte array
-		this.data = Files.readAllBytes(file);
+		// one stream per byte array
+		this.streams = new ArrayList<>(data.size());
+		for (byte[] content : data) {
+			this.streams.add(new Stream(this.streams.size(), content));
+		}
+		this.currentStream = this.streams.get(0);
+		this.directory = directory;
+		this.identity = Checkpoint.identity(data);
+		this.name = name == null ? null : Checkpoint.nameOf(name);
+
+		// choose a connection ID, hardly ever the one of another transfer
+		this.connectionId = ThreadLocalRandom.current().nextInt();
 
 		// implement all possible actions
 		this.actions = new HashMap<>();
@@ -109,31 +370,145 @@ public class Sender {
 
 		// implement all possible transitions
 		this.transitions = new HashMap<>();
+		this.streamTransitions = new HashMap<>();
 		implementTransitions();
 
+		// offer full packets
+		this.maxPayloadSize = AlternatingBitPacket.PACKETSIZE;
+
+		// offer compression
+		this.compression = true;
+		this.delta = true;
+		this.resume = true;
+
 		// set start state
-		this.currentState = State.waitForCall0;
+		this.currentState = State.waitForCallSyn;
 
 		// Sender is not sending yet
-		this.bytesSend = 0;
 		this.sending = false;
+
+		// no packets counted yet
+		this.metrics = new TransferMetrics();
+
+		// send with errors
+		this.socketFactory = BrokenDatagramSocket::new;
+
+		// receive from the real network
+		this.network = UdpNetwork.INSTANCE;
+	}
+
+	/**
+	 * <b>Get the name of a file, without its directories.</b>
+	 * 
+	 * @param file
+	 *            is the file
+	 * @return the name, null if the path has none
+	 */
+	private static String nameOf(Path file) {
+		final Path name = file.toAbsolutePath().normalize().getFileName();
+		return name == null ? null : name.toString();
+	}
+
+	/**
+	 * <b>Read files in byte arrays.</b>
+	 * 
+	 * @param files
+	 *            are the files
+	 * @return the contents, in the same order
+	 * @throws IOException
+	 *             when an error occurs while reading a file
+	 */
+	private static List<byte[]> readFiles(List<Path> files) throws IOException {
+		final List<byte[]> data = new ArrayList<>(files.size());
+		for (Path file : files) {
+			data.add(Files.readAllBytes(file));
+		}
+		return data;
+	}
+
+	/**
+	 * <b>Read a directory in byte arrays, one per stream.</b>
+	 * The first one is the Manifest, the files follow back to back in the
+	 * others, in the order of the Manifest. Links and other special files
+	 * are left out.
+	 * 
+	 * @param directory
+	 *            is the directory
+	 * @return the contents of the streams
+	 * @throws IOException
+	 *             when an error occurs while reading a file
+	 */
+	private static List<byte[]> readDirectory(Path directory) throws IOException {
+		// parents come before their content
+		final List<Path> paths;
+		try (java.util.stream.Stream<Path> walk = Files.walk(directory)) {
+			paths = walk.filter(path -> !path.equals(directory)).sorted().collect(Collectors.toList());
+		}
+		final long files = paths.stream().filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).count();
+		final Manifest layout = new Manifest((int) Math.min(files, DIRECTORY_STREAMS), Collections.emptyList());
+
+		final List<Manifest.Entry> entries = new ArrayList<>();
+		final List<ByteArrayOutputStream> contents = new ArrayList<>();
+		for (int stream = 0; stream < layout.getStreams(); stream++) {
+			contents.add(new ByteArrayOutputStream());
+		}
+		int file = 0;
+		for (Path path : paths) {
+			final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			final String name = directory.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+			final long modified = attributes.lastModifiedTime().toMillis();
+			if (attributes.isDirectory()) {
+				entries.add(new Manifest.Entry(name, Manifest.DIRECTORY, modified));
+			} else if (attributes.isRegularFile()) {
+				// the size is the one read, the file may have changed
+				final byte[] content = Files.readAllBytes(path);
+				entries.add(new Manifest.Entry(name, content.length, modified));
+				contents.get(layout.getStream(file) - 1).write(content);
+				file++;
+			}
+		}
+
+		final List<byte[]> data = new ArrayList<>();
+		data.add(new Manifest(layout.getStreams(), entries).encode());
+		for (ByteArrayOutputStream content : contents) {
+			data.add(content.toByteArray());
+		}
+		return data;
 	}
 
 	/**
 	 * <b>Start sending the file.</b>
 	 */
 	public void send() {
+		// one socket for the whole transfer, the Receiver answers to it
+		try {
+			setSocket(getNetwork().open());
+			setSendSocket(getSocketFactory().create(getSocket()));
+		} catch (SocketException exception) {
+			System.err.println("Sorry, something went wrong with the Socket.");
+			exception.printStackTrace();
+			closeSockets();
+			return;
+		}
+
 		// set sending true
 		setSending(true);
-		System.out.println("Start sending");
+		System.out.println("Start sending from port " + getSocket().getLocalPort());
 
-		// loop while Sender is sending
-		while (isSending()) {
-			System.out.println();
-			System.out.println(getCurrentState().toString() + " (" + getBytesSend() + " / " + getData().length + " Bytes send)");
-			// get the action of the current state and execute it, next state
-			// will be returned and set as new current state
-			setCurrentState(getActions().get(getCurrentState()).execute());
+		try {
+			// loop while Sender is sending
+			while (isSending()) {
+				System.out.println();
+				System.out.println(getCurrentState().toString() + " (" + getBytesSend() + " / " + getSize() + " Bytes send)");
+				// get the action of the current state and execute it, next state
+				// will be returned and set as new current state
+				setCurrentState(getActions().get(getCurrentState()).execute());
+			}
+		} finally {
+			closeSockets();
+			for (Stream stream : getStreams()) {
+				stream.close();
+			}
 		}
 		System.out.println("Finished sending");
 	}
@@ -153,35 +528,176 @@ public class Sender {
 	 * @return the number of bytes, that have already been send
 	 */
 	public int getBytesSend() {
+		int bytesSend = 0;
+		for (Stream stream : getStreams()) {
+			bytesSend += stream.getBytesSend();
+		}
 		return bytesSend;
 	}
 
+	/**
+	 * <b>Get the number of bytes of all files.</b>
+	 * In a delta transfer it is the size of the Delta, once the Signature
+	 * has arrived.
+	 *
+	 * @return the number of bytes to send
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Stream stream : getStreams()) {
+			size += stream.getData().length;
+		}
+		return size;
+	}
+
+	/**
+	 * <b>Get the counters and gauges of this transfer.</b>
+	 *
+	 * @return the metrics
+	 */
+	public TransferMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * <b>Get the connection ID of this transfer.</b>
+	 *
+	 * @return the connection ID
+	 */
+	public int getConnectionId() {
+		return connectionId;
+	}
+
+	/**
+	 * <b>Set the connection ID of this transfer.</b>
+	 * By default a random one is used. Must be set before sending.
+	 *
+	 * @param connectionId
+	 *            is the connection ID
+	 */
+	public void setConnectionId(int connectionId) {
+		this.connectionId = connectionId;
+	}
+
+	/**
+	 * <b>Set the largest number of file bytes per packet to offer.</b>
+	 * By default full packets are offered, the Receiver may choose less.
+	 * Must be set before sending.
+	 *
+	 * @param maxPayloadSize
+	 *            is the number of bytes, between 1 and
+	 *            AlternatingBitPacket.PACKETSIZE
+	 */
+	public void setMaxPayloadSize(int maxPayloadSize) {
+		if (maxPayloadSize < 1 || maxPayloadSize > AlternatingBitPacket.PACKETSIZE) {
+			throw new IllegalArgumentException("The payload size must be between 1 and " + AlternatingBitPacket.PACKETSIZE);
+		}
+		this.maxPayloadSize = maxPayloadSize;
+	}
+
+	/**
+	 * <b>Get the parameters of the transfer.</b>
+	 *
+	 * @return the parameters chosen by the Receiver, null before the
+	 *         handshake
+	 */
+	public ConnectionParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * <b>Set if compressed payloads are offered.</b>
+	 * By default they are, the Receiver decides. Must be set before sending.
+	 *
+	 * @param compression
+	 *            is true, to offer compression
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * <b>Set if a Delta to the old version of the Receiver is offered.</b>
+	 * By default it is, the Receiver decides. Must be set before sending.
+	 *
+	 * @param delta
+	 *            is true, to offer a Delta
+	 */
+	public void setDelta(boolean delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 * <b>Set if resuming a broken off transfer is offered.</b>
+	 * By default it is, the Receiver decides. Must be set before sending.
+	 *
+	 * @param resume
+	 *            is true, to offer resuming
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * <b>Set the factory for the socket to send with.</b>
+	 * By default a BrokenDatagramSocket with its standard params is used.
+	 *
+	 * @param socketFactory
+	 *            is the factory to use
+	 */
+	public void setSocketFactory(DatagramSocketFactory socketFactory) {
+		this.socketFactory = socketFactory;
+	}
+
+	/**
+	 * <b>Set where the socket of the transfer and the Clock come from.</b>
+	 * By default the real network and the wall clock are used.
+	 *
+	 * @param network
+	 *            is the network to use
+	 */
+	public void setNetwork(Network network) {
+		this.network = network;
+	}
+
+	/**
+	 * <b>Enable capturing: every datagram send or received is recorded.</b>
+	 *
+	 * @param traceRecorder
+	 *            is the recorder to use, null disables capturing
+	 */
+	public void setTraceRecorder(PacketTraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
 	/**
 	 * <b>Implement all States and map the code to the State</b>
 	 */
 	private void implementActions() {
-		// implement the waitForCall0 State
-		getActions().put(State.waitForCall0, () -> {
-			// when in this state, call transition to send the packet
-			return getTransitions().get(new Pair<State, Message>(State.waitForCall0, Message.sendPacket)).execute();
+		// implement the waitForCallSyn State
+		getActions().put(State.waitForCallSyn, () -> {
+			// when in this state, call transition to send the SYN
+			return getTransitions().get(new Pair<State, Message>(State.waitForCallSyn, Message.sendPacket)).execute();
 		});
 
-		// implement the waitForAck0 State
-		getActions().put(State.waitForAck0, () -> {
-			// wait for ACK 0 and return the new State
-			return waitForAck(0);
+		// implement the waitForSynAck State
+		getActions().put(State.waitForSynAck, () -> {
+			// wait for the SYN-ACK and return the new State
+			return waitForSynAck();
 		});
 
-		// implement the waitForCall1 State
-		getActions().put(State.waitForCall1, () -> {
-			// when in this state, call transition to send the packet
-			return getTransitions().get(new Pair<State, Message>(State.waitForCall1, Message.sendPacket)).execute();
+		// implement the waitForAcks State
+		getActions().put(State.waitForAcks, () -> {
+			// start the packets the window allows, then wait for an ACK and
+			// return the new State
+			sendPackets();
+			return waitForAck();
 		});
 
-		// implement the waitForAck1 State
-		getActions().put(State.waitForAck1, () -> {
-			// wait for ACK 1 and return the new State
-			return waitForAck(1);
+		// implement the waitForFinAck State
+		getActions().put(State.waitForFinAck, () -> {
+			// wait for the FIN-ACK and return the new State
+			return waitForFinAck();
 		});
 	}
 
@@ -190,8 +706,84 @@ public class Sender {
 	 * Message.<b>
 	 */
 	private void implementTransitions() {
+		// implement transition waitForCallSyn -> sendPacket -> waitForSynAck
+		addTransition(State.waitForCallSyn, Message.sendPacket, () -> {
+			// offer everything supported, starting with a random bit (the
+			// Manifest only for a directory, a Delta only for a single file
+			// with a name)
+			int features = ConnectionParameters.SUPPORTED_FEATURES;
+			if (!isDirectory()) {
+				features &= ~ConnectionParameters.FEATURE_MANIFEST;
+			}
+			if (isDirectory() || getStreams().size() > 1 || getName() == null || !isDeltaOffered()) {
+				features &= ~ConnectionParameters.FEATURE_DELTA;
+			}
+			if (!isResumeOffered()) {
+				features &= ~ConnectionParameters.FEATURE_RESUME;
+			}
+			if (!isCompression()) {
+				features &= ~ConnectionParameters.FEATURE_COMPRESSION;
+			}
+			setOffer(ConnectionParameters.offer(ThreadLocalRandom.current().nextInt(2), getMaxPayloadSize(), features));
+			// send SYN
+			sendSyn(State.waitForSynAck);
+			// return new state
+			return State.waitForSynAck;
+		});
+
+		// implement transition waitForSynAck -> timeout -> waitForSynAck
+		addTransition(State.waitForSynAck, Message.timeout, () -> {
+			synchronized (this) {
+				// the SYN-ACK came in just before, nothing to resend
+				if (!isAwaitingAck()) {
+					return State.waitForSynAck;
+				}
+				System.out.println("\tTimeout! Resending SYN now...");
+				getMetrics().timeout();
+				getMetrics().retransmit();
+				setRetransmitted(true);
+				// send SYN again
+				sendSyn(State.waitForSynAck);
+			}
+			// state won't change
+			return State.waitForSynAck;
+		});
+
+		// implement transition waitForSynAck -> packetReceived -> waitForCall0/1
+		addTransition(State.waitForSynAck, Message.packetReceived, () -> {
+			// stop timer
+			getTimer().interrupt();
+			System.out.println("\tTimer stopped!");
+			// the Signature for a Delta is asked for in a stream of its own
+			if (isDelta()) {
+				getStreams().add(new Stream(Delta.SIGNATURE_STREAM));
+			}
+			// the first packet of each stream has the initial sequence number,
+			// what the Receiver already has is skipped
+			for (Stream stream : getStreams()) {
+				stream.start(getParameters().getInitialSequenceNumber());
+				if (getCheckpoint() != null) {
+					stream.resume(getCheckpoint().getOffset(stream.getId()));
+				}
+			}
+			// start with the first stream that has not ended
+			setCurrentStream(getStreams().get(getStreams().size() - 1));
+			startWindow();
+			// return new state
+			return State.waitForAcks;
+		});
+
+		// implement transition waitForAcks -> close -> waitForFinAck
+		addTransition(State.waitForAcks, Message.close, () -> {
+			// send FIN
+			setFinRetransmits(0);
+			sendFin(State.waitForFinAck);
+			// return new state
+			return State.waitForFinAck;
+		});
+
 		// implement transition waitForCall0 -> packetReceived -> waitForCall0
-		getTransitions().put(new Pair<State, Message>(State.waitForCall0, Message.packetReceived), () -> {
+		addStreamTransition(State.waitForCall0, Message.packetReceived, stream -> {
 			// nothing to do here, so this transition won't be called.
 			// it's just here, so the corresponding diagram is completely
 			// implemented.
@@ -199,34 +791,32 @@ public class Sender {
 		});
 
 		// implement transition waitForCall0 -> sendPacket -> waitForAck0
-		getTransitions().put(new Pair<State, Message>(State.waitForCall0, Message.sendPacket), () -> {
+		addStreamTransition(State.waitForCall0, Message.sendPacket, stream -> {
 			// send packet
-			sendPacket(State.waitForAck0);
+			sendPacket(stream, State.waitForAck0);
 			// return new state
 			return State.waitForAck0;
 		});
 
 		// implement transition waitForAck0 -> timeout -> waitForAck0
-		getTransitions().put(new Pair<State, Message>(State.waitForAck0, Message.timeout), () -> {
-			System.out.println("\tTimeout! Resending now...");
-			// send packet again
-			setBytesSend(getBytesSend() - getBytesSendInLastPacket());
-			sendPacket(State.waitForAck0);
+		addStreamTransition(State.waitForAck0, Message.timeout, stream -> {
+			resendPacket(stream, State.waitForAck0);
 			// state won't change
 			return State.waitForAck0;
 		});
 
 		// implement transition waitForAck0 -> packetReceived -> waitForCall1
-		getTransitions().put(new Pair<State, Message>(State.waitForAck0, Message.packetReceived), () -> {
+		addStreamTransition(State.waitForAck0, Message.packetReceived, stream -> {
 			// stop timer
-			getTimer().interrupt();
-			System.out.println("\tTimer stopped!");
-			// return new state
+			stream.getTimer().interrupt();
+			System.out.println("\tTimer of stream " + stream.getId() + " stopped!");
+			stream.acknowledge();
+			// return new state, the next packet has SeqNr 1
 			return State.waitForCall1;
 		});
 
 		// implement transition waitForCall1 -> packetReceived -> waitForCall1
-		getTransitions().put(new Pair<State, Message>(State.waitForCall1, Message.packetReceived), () -> {
+		addStreamTransition(State.waitForCall1, Message.packetReceived, stream -> {
 			// nothing to do here, so this transition won't be called.
 			// it's just here, so the corresponding diagram is completely
 			// implemented.
@@ -234,141 +824,967 @@ public class Sender {
 		});
 
 		// implement transition waitForCall1 -> sendPacket -> waitForAck1
-		getTransitions().put(new Pair<State, Message>(State.waitForCall1, Message.sendPacket), () -> {
+		addStreamTransition(State.waitForCall1, Message.sendPacket, stream -> {
 			// send packet
-			sendPacket(State.waitForAck1);
+			sendPacket(stream, State.waitForAck1);
 			// return new state
 			return State.waitForAck1;
 		});
 
 		// implement transition waitForAck1 -> timeout -> waitForAck1
-		getTransitions().put(new Pair<State, Message>(State.waitForAck1, Message.timeout), () -> {
-			System.out.println("\tTimeout! Resending now...");
-			// send packet again
-			setBytesSend(getBytesSend() - getBytesSendInLastPacket());
-			sendPacket(State.waitForAck1);
+		addStreamTransition(State.waitForAck1, Message.timeout, stream -> {
+			resendPacket(stream, State.waitForAck1);
 			// state won't change
 			return State.waitForAck1;
 		});
 
 		// implement transition waitForAck1 -> packetReceived -> waitForCall0
-		getTransitions().put(new Pair<State, Message>(State.waitForAck1, Message.packetReceived), () -> {
+		addStreamTransition(State.waitForAck1, Message.packetReceived, stream -> {
+			// stop timer
+			stream.getTimer().interrupt();
+			System.out.println("\tTimer of stream " + stream.getId() + " stopped!");
+			stream.acknowledge();
+			// return new state, the next packet has SeqNr 0
+			return State.waitForCall0;
+		});
+
+		// implement transition waitForFinAck -> timeout -> waitForFinAck
+		addTransition(State.waitForFinAck, Message.timeout, () -> {
+			synchronized (this) {
+				// the FIN-ACK came in just before, nothing to resend
+				if (!isAwaitingAck()) {
+					return State.waitForFinAck;
+				}
+				getMetrics().timeout();
+				// all data has arrived, do not wait forever for the FIN-ACK
+				if (getFinRetransmits() >= MAX_FIN_RETRANSMITS) {
+					System.out.println("\tTimeout! No FIN-ACK, closing anyway...");
+					setAwaitingAck(false);
+					setSending(false);
+					return State.waitForFinAck;
+				}
+				System.out.println("\tTimeout! Resending FIN now...");
+				getMetrics().retransmit();
+				setFinRetransmits(getFinRetransmits() + 1);
+				// send FIN again
+				sendFin(State.waitForFinAck);
+			}
+			// state won't change
+			return State.waitForFinAck;
+		});
+
+		// implement transition waitForFinAck -> packetReceived -> waitForCallSyn
+		addTransition(State.waitForFinAck, Message.packetReceived, () -> {
 			// stop timer
 			getTimer().interrupt();
 			System.out.println("\tTimer stopped!");
-			// return new state
-			return State.waitForCall0;
+			// closed, ready for the next connection
+			setSending(false);
+			return State.waitForCallSyn;
 		});
 	}
 
 	/**
-	 * <b>Splits the data in a packet, sends it with a BrokenDatagramSocket and
-	 * starts the Timer.</b>
+	 * <b>Record a datagram if capturing is enabled.</b>
 	 * 
-	 * @param state
-	 *            is the state which the Timer shall send the timeout from
+	 * @param direction
+	 *            is the direction of the datagram
+	 * @param packet
+	 *            is the packet inside the datagram
+	 * @param length
+	 *            is the length of the datagram
 	 */
-	private void sendPacket(State state) {
-		// content is a sub-array of the data array with the length defined in
-		// AlternatingBitPacket (last package may be smaller)
-		final byte[] content = Arrays.copyOfRange(getData(), getBytesSend(), getBytesSend() + AlternatingBitPacket.PACKETSIZE);
-
-		// send the packet with the BrokenDatagramSocket to create errors
-		try (final BrokenDatagramSocket socket = new BrokenDatagramSocket()) {
-			// set sequenceNr depending on which state we are going to
-			final int seqNr = state == State.waitForAck0 ? 0 : 1;
-			// calculate it this packet is the last packet of the data
-			final boolean endFlag = (getBytesSend() + content.length) >= getData().length;
-			// create a packet with SeqNr, ACK = false and content
-			final AlternatingBitPacket abPacket = new AlternatingBitPacket(seqNr, false, endFlag, content, getIpAdress(), SEND_PORT);
-			final DatagramPacket packet = abPacket.createDatagram();
+	private void trace(PacketTraceRecorder.Direction direction, Packet packet, int length) {
+		if (getTraceRecorder() != null) {
+			try {
+				getTraceRecorder().record(direction, packet, length);
+			} catch (IOException exception) {
+				System.err.println("Sorry, the packet trace could not be written. Capturing stopped.");
+				setTraceRecorder(null);
+			}
+		}
+	}
 
-			// store new timer and start it
-			setTimer(new Timer(DEFAULT_TIMEOUT, getTransitions().get(new Pair<State, Message>(state, Message.timeout))));
-			getTimer().start();
-			System.out.println("\tTimer started!");
-			
-			// send the packet
-			socket.send(packet);
-			System.out.println("\tPacket " + abPacket.getSequenceNumber() + " send to " + getIpAdress() + ":" + SEND_PORT + "!");
+	/**
+	 * <b>Map the code of a Transition to a Pair of State and Message.</b>
+	 * The Transition is wrapped, so that every execution is visible as
+	 * StateTransitionEvent in a flight recording.
+	 * 
+	 * @param from
+	 *            is the state the Transition starts in
+	 * @param message
+	 *            is the Message that causes the Transition
+	 * @param transition
+	 *            is the code of the Transition
+	 */
+	private void addTransition(State from, Message message, Transition transition) {
+		getTransitions().put(new Pair<State, Message>(from, message), () -> {
+			final StateTransitionEvent event = new StateTransitionEvent();
+			event.begin();
+			final State to = transition.execute();
+			if (event.shouldCommit()) {
+				event.from = from.toString();
+				event.to = to.toString();
+				event.cause = message.toString();
+				event.commit();
+			}
+			return to;
+		});
+	}
+
+	/**
+	 * <b>Map the code of a Transition of a stream to a Pair of State and
+	 * Message.</b>
+	 * Like addTransition, every execution is visible as StateTransitionEvent.
+	 * 
+	 * @param from
+	 *            is the state the stream starts in
+	 * @param message
+	 *            is the Message that causes the Transition
+	 * @param transition
+	 *            is the code of the Transition
+	 */
+	private void addStreamTransition(State from, Message message, StreamTransition transition) {
+		getStreamTransitions().put(new Pair<State, Message>(from, message), stream -> {
+			final StateTransitionEvent event = new StateTransitionEvent();
+			event.begin();
+			final State to = transition.execute(stream);
+			if (event.shouldCommit()) {
+				event.from = from.toString();
+				event.to = to.toString();
+				event.cause = message.toString();
+				event.commit();
+			}
+			return to;
+		});
+	}
+
+	/**
+	 * <b>Execute the Transition of a stream for a Message and set its new
+	 * state.</b>
+	 * The Timers of the streams run in threads of their own, so the streams
+	 * change their states one at a time.
+	 * 
+	 * @param stream
+	 *            is the stream
+	 * @param message
+	 *            is the Message
+	 */
+	private synchronized void fire(Stream stream, Message message) {
+		stream.setState(getStreamTransitions().get(new Pair<State, Message>(stream.getState(), message)).execute(stream));
+	}
+
+	/**
+	 * <b>The Timer of a stream ran out: resend its packet, unless it was
+	 * acknowledged just before.</b>
+	 * 
+	 * @param stream
+	 *            is the stream
+	 * @param state
+	 *            is the state the Timer was started in
+	 * @return the state of the stream
+	 */
+	private synchronized State timeout(Stream stream, State state) {
+		if (stream.getState() == state && stream.isAwaitingAck()) {
+			fire(stream, Message.timeout);
+		}
+		return stream.getState();
+	}
+
+	/**
+	 * <b>Sends the SYN with the offer and starts the Timer.</b>
+	 * 
+	 * @param state
+	 *            is the state which the Timer shall send the timeout from
+	 */
+	private void sendSyn(State state) {
+		try {
+			// the SYN carries the offer, the identity of the data and the
+			// name of the file, its sequence number is the initial one
+			final byte[] content = new Checkpoint(getIdentity(), new int[0], getName()).appendTo(getOffer().encode());
+			final AlternatingBitPacket abPacket = new AlternatingBitPacket(getConnectionId(), getOffer().getInitialSequenceNumber(), false, false, true, false, content, getIpAdress(), RECEIVER_PORT, ChecksumAlgorithm.crc32);
+			setAwaitingAck(true);
+			setSentNanos(getNetwork().getClock().nanoTime());
+			setTimer(transmit(abPacket, state, isRetransmitted() ? "retransmit" : "syn", getTransitions().get(new Pair<State, Message>(state, Message.timeout))));
 		} catch (UnknownHostException exception) {
 			System.err.println("Sorry, the given IP-Address can not be found.");
 			exception.printStackTrace();
-		} catch (SocketException exception) {
-			System.err.println("Sorry, something went wrong with the Socket.");
+		}
+	}
+
+	/**
+	 * <b>Sends the FIN and starts the Timer.</b>
+	 * 
+	 * @param state
+	 *            is the state which the Timer shall send the timeout from
+	 */
+	private void sendFin(State state) {
+		try {
+			// the FIN has no content
+			final AlternatingBitPacket abPacket = new AlternatingBitPacket(getConnectionId(), 0, false, false, false, true, new byte[0], getIpAdress(), RECEIVER_PORT, getParameters().getChecksumAlgorithm());
+			setAwaitingAck(true);
+			setSentNanos(getNetwork().getClock().nanoTime());
+			setTimer(transmit(abPacket, state, getFinRetransmits() > 0 ? "retransmit" : "fin", getTransitions().get(new Pair<State, Message>(state, Message.timeout))));
+		} catch (UnknownHostException exception) {
+			System.err.println("Sorry, the given IP-Address can not be found.");
 			exception.printStackTrace();
+		}
+	}
+
+	/**
+	 * <b>Start the packets of the streams, as many as the window allows.</b>
+	 */
+	private void sendPackets() {
+		Stream stream;
+		while (hasWindow() && (stream = nextStream()) != null) {
+			setCurrentStream(stream);
+			fire(stream, Message.sendPacket);
+		}
+	}
+
+	/**
+	 * <b>Choose the stream of the next packet: the next one that has not
+	 * ended and has no packet in flight (round robin). The Manifest of a
+	 * directory and the Signature of a delta transfer go first, the others
+	 * wait until they ended.</b>
+	 * Taking turns keeps a small file from waiting behind a big one. A lost
+	 * packet only holds back its own stream, the Timer of the stream resends
+	 * it while the others go on.
+	 * 
+	 * @return the stream, null if no stream may start a packet now
+	 */
+	private Stream nextStream() {
+		final Stream first = isDirectory() ? getStreams().get(0) : isDelta() ? getStreams().get(Delta.SIGNATURE_STREAM) : null;
+		if (first != null && !first.isEnded()) {
+			return first.isAwaitingAck() ? null : first;
+		}
+		final int current = getCurrentStream().getId();
+		for (int offset = 1; offset <= getStreams().size(); offset++) {
+			final Stream stream = getStreams().get((current + offset) % getStreams().size());
+			if (!stream.isEnded() && !stream.isAwaitingAck()) {
+				return stream;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * <b>Get if the last packets of all streams have been acknowledged.</b>
+	 * 
+	 * @return true, if all files have arrived
+	 */
+	private boolean isDone() {
+		for (Stream stream : getStreams()) {
+			if (!stream.isEnded()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <b>Splits the data of a stream in a packet, sends it and starts the
+	 * Timer of the stream.</b>
+	 * 
+	 * @param stream
+	 *            is the stream to send from
+	 * @param state
+	 *            is the state which the Timer shall send the timeout from
+	 */
+	private void sendPacket(Stream stream, State state) {
+		// content is the next chunk of the data array (see nextChunk), a
+		// stream that asks the Receiver sends empty packets
+		final Compressor.Chunk chunk = nextChunk(stream);
+		final byte[] content = chunk.getContent();
+		// calculate it this packet is the last packet of the stream
+		final boolean endFlag = !stream.isAsking() && (stream.getBytesSend() + chunk.getLength()) >= stream.getData().length;
+
+		// update bytes send variables
+		stream.setBytesSendInLastPacket(chunk.getLength());
+		stream.setBytesSend(stream.getBytesSend() + stream.getBytesSendInLastPacket());
+
+		try {
+			// set sequenceNr depending on which state we are going to
+			final int seqNr = state == State.waitForAck0 ? 0 : 1;
+			// create a packet with stream, SeqNr, ACK = false and content
+			final AlternatingBitPacket abPacket = new AlternatingBitPacket(getConnectionId(), stream.getId(), seqNr, false, endFlag, false, false, chunk.isCompressed(), chunk.getLength(), content, getIpAdress(), RECEIVER_PORT, getParameters().getChecksumAlgorithm());
+			startFlight(stream);
+			stream.setSentNanos(getNetwork().getClock().nanoTime());
+			stream.setTimer(transmit(abPacket, state, stream.isRetransmitted() ? "retransmit" : "data", () -> timeout(stream, state)));
+		} catch (UnknownHostException exception) {
+			System.err.println("Sorry, the given IP-Address can not be found.");
+			exception.printStackTrace();
+		}
+	}
+
+	/**
+	 * <b>Resend the packet in flight of a stream after its Timer ran out.</b>
+	 * The window falls back to one packet, once for all packets lost in the
+	 * same go.
+	 * 
+	 * @param stream
+	 *            is the stream
+	 * @param state
+	 *            is the state which the Timer shall send the timeout from
+	 */
+	private void resendPacket(Stream stream, State state) {
+		System.out.println("\tTimeout! Resending packet of stream " + stream.getId() + " now...");
+		getMetrics().timeout();
+		getMetrics().retransmit();
+		stream.setRetransmitted(true);
+		reduceWindow(stream.getSentNanos());
+		// send packet again
+		stream.setBytesSend(stream.getBytesSend() - stream.getBytesSendInLastPacket());
+		sendPacket(stream, state);
+	}
+
+	/**
+	 * <b>Get the chunk of the data array to send next.</b>
+	 * 
+	 * It has the negotiated payload size (the last one holds the rest of the
+	 * data only), or holds more bytes compressed if compression was chosen. A packet that is
+	 * resent after a timeout gets the same chunk again, the Receiver may have
+	 * it already.
+	 * 
+	 * @param stream
+	 *            is the stream to send from
+	 * @return the chunk
+	 */
+	private Compressor.Chunk nextChunk(Stream stream) {
+		if (stream.isAsking()) {
+			return new Compressor.Chunk(stream.getBytesSend(), new byte[0], 0, false);
+		}
+		final Compressor.Chunk last = stream.getChunk();
+		if (last != null && last.getOffset() == stream.getBytesSend()) {
+			return last;
+		}
+		final Compressor.Chunk chunk;
+		if (getParameters().hasFeature(ConnectionParameters.FEATURE_COMPRESSION)) {
+			// the pipeline starts after what the Receiver has and after the
+			// Delta replaced the data
+			if (stream.getPipeline() == null) {
+				stream.setPipeline(new CompressionPipeline(stream.getData(), stream.getBytesSend(), getParameters().getPayloadSize(), getStreams().size()));
+			}
+			chunk = stream.getPipeline().next();
+		} else {
+			chunk = Compressor.plain(stream.getData(), stream.getBytesSend(), stream.getData().length, getParameters().getPayloadSize());
+		}
+		stream.setChunk(chunk);
+		return chunk;
+	}
+
+	/**
+	 * <b>Sends a packet with the socket of the DatagramSocketFactory and
+	 * starts a Timer.</b>
+	 * 
+	 * @param abPacket
+	 *            is the packet to send
+	 * @param state
+	 *            is the state the packet is waiting for its ACK in
+	 * @param cause
+	 *            is the reason for sending, as shown in a flight recording
+	 * @param timeout
+	 *            is the Transition the Timer executes when it runs out
+	 * @return the Timer, already started
+	 */
+	private Timer transmit(AlternatingBitPacket abPacket, State state, String cause, Transition timeout) {
+		// start the timer first, the ACK may come before send returns
+		final Timer timer = new Timer(getNetwork().getClock(), DEFAULT_TIMEOUT, timeout);
+		timer.start();
+		System.out.println("\tTimer started!");
+
+		// send the packet with the BrokenDatagramSocket to create errors
+		try {
+			final DatagramPacket packet = abPacket.createDatagram();
+
+			// send the packet
+			final PacketSentEvent event = new PacketSentEvent();
+			event.begin();
+			getSendSocket().send(packet);
+			getMetrics().packetSent();
+			trace(PacketTraceRecorder.Direction.sent, abPacket, packet.getLength());
+			if (event.shouldCommit()) {
+				event.sequenceNumber = abPacket.getSequenceNumber();
+				event.size = packet.getLength();
+				event.ack = false;
+				event.state = state.toString();
+				event.cause = cause;
+				event.commit();
+			}
+			System.out.println("\t" + (abPacket.isSYN() ? "SYN" : abPacket.isFIN() ? "FIN" : "Packet") + " " + abPacket.getSequenceNumber() + " send to " + getIpAdress() + ":" + RECEIVER_PORT + "!");
 		} catch (IOException exception) {
 			System.err.println("Sorry, something went wrong while sending a packet.");
 			exception.printStackTrace();
 		}
-		
-		// update bytes send variables
-		setBytesSendInLastPacket(content.length);
-		setBytesSend(getBytesSend() + getBytesSendInLastPacket());
+		return timer;
 	}
 
 	/**
-	 * <b>Waits for a incoming packet and validates it.</b> Returns a new State
-	 * after calling the transition, if the packet was valid
+	 * <b>Record a received packet, if the event is enabled.</b>
+	 * 
+	 * @param event
+	 *            is the event begun when waiting started
+	 * @param sequenceNumber
+	 *            is the sequence number of the packet
+	 * @param size
+	 *            is the number of bytes of the datagram
+	 * @param ack
+	 *            is true, if the packet was an ACK
+	 * @param cause
+	 *            is what became of the packet
+	 */
+	private void recordReceived(PacketReceivedEvent event, int sequenceNumber, int size, boolean ack, String cause) {
+		if (event.shouldCommit()) {
+			event.sequenceNumber = sequenceNumber;
+			event.size = size;
+			event.ack = ack;
+			event.state = getCurrentState().toString();
+			event.cause = cause;
+			event.commit();
+		}
+	}
+
+	/**
+	 * <b>Waits for the SYN-ACK and takes the parameters of the transfer from
+	 * it.</b> Returns a new State after calling the transition, if the packet
+	 * was valid
 	 * 
-	 * @param ackNr
-	 *            is the expected ACK-Nr
 	 * @return the next State (might be the same as before)
 	 */
-	private State waitForAck(int ackNr) {
+	private State waitForSynAck() {
 		State nextState = getCurrentState();
+		final PacketReceivedEvent event = new PacketReceivedEvent();
+		event.begin();
+		// the event is only filled if it is recorded
+		int sequenceNumber = 0;
+		int size = 0;
+		boolean ack = false;
+		String cause = "error";
 
-		try (final DatagramSocket socket = new DatagramSocket(RECEIVE_PORT)) {
+		try {
+			// wait for the answer as long as the Timer resends
+			getSocket().setSoTimeout(0);
 			// Received data will be stored in this array (header and content)
 			final byte[] receivedData = new byte[AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE];
 			// receive packet
 			final DatagramPacket datagramPacket = new DatagramPacket(receivedData, receivedData.length);
-			socket.receive(datagramPacket);
-			// Wrap in AlternatingBitPacket
+			getSocket().receive(datagramPacket);
+			// Wrap in AlternatingBitPacket (the handshake always uses CRC-32)
 			final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket);
 
-			System.out.println("\tACK " + packet.getSequenceNumber() + " received!");
-			
-			// check if packet is correct
-			final boolean isAck = packet.isACK();
-			final boolean ackValid = packet.checkSequenceNumber(ackNr);
+			System.out.println("\tSYN-ACK " + packet.getSequenceNumber() + " received!");
+			getMetrics().packetReceived();
+			trace(PacketTraceRecorder.Direction.received, packet, datagramPacket.getLength());
+
+			// check if packet is correct, a SYN-ACK of another transfer is not
+			final boolean isSynAck = packet.isSYN() && packet.isACK() && packet.getConnectionId() == getConnectionId();
 			final boolean checksumValid = packet.checkChecksum();
+			final ConnectionParameters answer = checksumValid && isSynAck ? readAnswer(packet) : null;
+			// a resumable transfer must say what the Receiver has
+			final Checkpoint received = answer != null && answer.hasFeature(ConnectionParameters.FEATURE_RESUME) ? readCheckpoint(packet) : null;
+			final boolean answerValid = answer != null && (received != null || !answer.hasFeature(ConnectionParameters.FEATURE_RESUME));
+			sequenceNumber = packet.getSequenceNumber();
+			size = datagramPacket.getLength();
+			ack = isSynAck;
 
-			// valid?
-			if (isAck && ackValid && checksumValid) {
-				System.out.println("\tACK " + packet.getSequenceNumber() + " accepted!");
+			if (!checksumValid) {
+				getMetrics().checksumFailure();
+				cause = "checksum";
+			} else if (!answerValid) {
+				cause = "unexpected";
+			} else {
+				cause = "accepted";
+			}
+
+			// valid? (and not resent by the Timer right now)
+			if (answerValid && acknowledge()) {
+				System.out.println("\tSYN-ACK accepted! " + answer + (received == null ? "" : ", " + received));
+				setParameters(answer);
+				setCheckpoint(received);
+				// only unambiguous samples (Karn's algorithm)
+				if (!isRetransmitted()) {
+					getMetrics().roundTrip(getNetwork().getClock().nanoTime() - getSentNanos());
+				}
+				setRetransmitted(false);
 				// execute transition and set next state
 				nextState = getTransitions().get(new Pair<State, Message>(getCurrentState(), Message.packetReceived))
 						.execute();
-				// stop sending if all bytes are send
-				setSending(getData().length > getBytesSend());
+				// the Receiver can not tell the streams apart or would store
+				// the Manifest as a file, send nothing
+				if (getStreams().size() > 1 && !answer.hasFeature(ConnectionParameters.FEATURE_STREAMS)
+						|| isDirectory() && !answer.hasFeature(ConnectionParameters.FEATURE_MANIFEST)) {
+					System.err.println("Sorry, the Receiver does not support " + (isDirectory() ? "directories." : "several files in one transfer."));
+					nextState = getTransitions().get(new Pair<State, Message>(nextState, Message.close))
+							.execute();
+				}
+				// the Receiver has everything already, just close
+				else if (isDone()) {
+					nextState = getTransitions().get(new Pair<State, Message>(nextState, Message.close))
+							.execute();
+				}
 			}
 		} catch (IOException exception) {
 			System.err.println("Ups, somethig went wrong while receiving the receivers answer. Trying again...");
 		}
+		recordReceived(event, sequenceNumber, size, ack, cause);
 		// return current state if there was an error or next state if it was
 		// successful
 		return nextState;
 	}
 
 	/**
-	 * <b>Store if Sender is sending or not.</b>
+	 * <b>Waits for the FIN-ACK.</b> Returns a new State after calling the
+	 * transition, if the packet was valid. Gives up waiting now and then, to
+	 * notice when the Timer stopped sending.
 	 * 
-	 * @param sending
+	 * @return the next State (might be the same as before)
+	 */
+	private State waitForFinAck() {
+		State nextState = getCurrentState();
+		final PacketReceivedEvent event = new PacketReceivedEvent();
+		event.begin();
+		// the event is only filled if it is recorded
+		int sequenceNumber = 0;
+		int size = 0;
+		boolean ack = false;
+		String cause = "error";
+
+		try {
+			getSocket().setSoTimeout((int) DEFAULT_TIMEOUT);
+			// Received data will be stored in this array (header and content)
+			final byte[] receivedData = new byte[AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE];
+			// receive packet
+			final DatagramPacket datagramPacket = new DatagramPacket(receivedData, receivedData.length);
+			getSocket().receive(datagramPacket);
+			// Wrap in AlternatingBitPacket
+			final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket, getParameters().getChecksumAlgorithm());
+
+			System.out.println("\tFIN-ACK received!");
+			getMetrics().packetReceived();
+			trace(PacketTraceRecorder.Direction.received, packet, datagramPacket.getLength());
+
+			// check if packet is correct, late ACKs of the data are not
+			final boolean isFinAck = packet.isFIN() && packet.isACK() && packet.getConnectionId() == getConnectionId();
+			final boolean checksumValid = packet.checkChecksum();
+			sequenceNumber = packet.getSequenceNumber();
+			size = datagramPacket.getLength();
+			ack = isFinAck;
+
+			if (!checksumValid) {
+				getMetrics().checksumFailure();
+				cause = "checksum";
+			} else if (!isFinAck) {
+				cause = "unexpected";
+			} else {
+				cause = "accepted";
+			}
+
+			// valid? (and not given up by the Timer right now)
+			if (isFinAck && checksumValid && acknowledge()) {
+				System.out.println("\tFIN-ACK accepted!");
+				// execute transition and set next state
+				nextState = getTransitions().get(new Pair<State, Message>(getCurrentState(), Message.packetReceived))
+						.execute();
+			}
+		} catch (SocketTimeoutException exception) {
+			// nothing came, check if still sending
+			cause = "timeout";
+		} catch (IOException exception) {
+			System.err.println("Ups, somethig went wrong while receiving the receivers answer. Trying again...");
+		}
+		recordReceived(event, sequenceNumber, size, ack, cause);
+		// return current state if there was an error or next state if it was
+		// successful
+		return nextState;
+	}
+
+	/**
+	 * <b>Read the parameters chosen by the Receiver from a SYN-ACK.</b>
+	 * 
+	 * @param packet
+	 *            is the SYN-ACK
+	 * @return the parameters, null if they are broken or were not offered
+	 */
+	private ConnectionParameters readAnswer(AlternatingBitPacket packet) {
+		try {
+			final ConnectionParameters answer = ConnectionParameters.decode(packet.getContent());
+			return answer.isAnswerTo(getOffer()) ? answer : null;
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * <b>Read what the Receiver already has from a SYN-ACK.</b>
+	 * 
+	 * @param packet
+	 *            is the SYN-ACK
+	 * @return the checkpoint, null if it is broken or of other data
+	 */
+	private Checkpoint readCheckpoint(AlternatingBitPacket packet) {
+		try {
+			final Checkpoint received = Checkpoint.decode(packet.getContent(), ConnectionParameters.SIZE);
+			return received.isOf(getIdentity()) ? received : null;
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * <b>Waits for a incoming packet and validates it.</b> Calls the
+	 * transition of its stream, if the packet was the ACK of the packet in
+	 * flight of the stream, and closes the connection once all streams have
+	 * ended.
+	 * 
+	 * @return the next State (might be the same as before)
+	 */
+	private State waitForAck() {
+		State nextState = getCurrentState();
+		final PacketReceivedEvent event = new PacketReceivedEvent();
+		event.begin();
+		// the event is only filled if it is recorded
+		int sequenceNumber = 0;
+		int size = 0;
+		boolean ack = false;
+		String cause = "error";
+
+		try {
+			// wait for the answer as long as the Timer resends
+			getSocket().setSoTimeout(0);
+			// Received data will be stored in this array (header and content)
+			final byte[] receivedData = new byte[AlternatingBitPacket.PACKETSIZE + AlternatingBitPacket.HEADERSIZE];
+			// receive packet
+			final DatagramPacket datagramPacket = new DatagramPacket(receivedData, receivedData.length);
+			getSocket().receive(datagramPacket);
+			// Wrap in AlternatingBitPacket
+			final AlternatingBitPacket packet = new AlternatingBitPacket(datagramPacket, getParameters().getChecksumAlgorithm());
+
+			System.out.println("\tACK " + packet.getSequenceNumber() + " received!");
+			getMetrics().packetReceived();
+			trace(PacketTraceRecorder.Direction.received, packet, datagramPacket.getLength());
+
+			// check if packet is correct, an ACK of another transfer or a late
+			// SYN-ACK is not
+			final boolean isAck = packet.isACK() && !packet.isSYN() && !packet.isFIN() && packet.getConnectionId() == getConnectionId();
+			// the stream waits for the ACK of its packet in flight
+			final Stream stream = packet.getStreamId() < getStreams().size() ? getStreams().get(packet.getStreamId()) : null;
+			final boolean ackValid = stream != null && stream.isAwaitingAck() && packet.checkSequenceNumber(stream.getSequenceNumber());
+			final boolean checksumValid = packet.checkChecksum();
+			sequenceNumber = packet.getSequenceNumber();
+			size = datagramPacket.getLength();
+			ack = isAck;
+
+			if (!checksumValid) {
+				getMetrics().checksumFailure();
+				cause = "checksum";
+			} else if (!isAck) {
+				cause = "unexpected";
+			} else if (!ackValid) {
+				// ACK of the previous packet (of this or another stream)
+				getMetrics().duplicate();
+				cause = "duplicate";
+			} else {
+				cause = "accepted";
+			}
+
+			// valid? (and not resent by the Timer right now)
+			if (isAck && ackValid && checksumValid && acknowledge(stream)) {
+				System.out.println("\tACK " + packet.getSequenceNumber() + " of stream " + stream.getId() + " accepted!");
+				// the ACKs of the Signature stream hold the Signature
+				if (stream.isAsking()) {
+					stream.answer(packet.getContent(), packet.isEndFlag());
+					if (stream.isEnded()) {
+						encodeDelta(stream.getAnswer());
+					}
+				}
+				getMetrics().delivered(stream.getBytesSendInLastPacket());
+				// only unambiguous samples (Karn's algorithm)
+				if (!stream.isRetransmitted()) {
+					getMetrics().roundTrip(getNetwork().getClock().nanoTime() - stream.getSentNanos());
+				}
+				stream.setRetransmitted(false);
+				// execute the transition of the stream
+				fire(stream, Message.packetReceived);
+				// close the connection if all streams are send
+				if (isDone()) {
+					nextState = getTransitions().get(new Pair<State, Message>(nextState, Message.close))
+							.execute();
+				}
+			}
+		} catch (IOException exception) {
+			System.err.println("Ups, somethig went wrong while receiving the receivers answer. Trying again...");
+		}
+		recordReceived(event, sequenceNumber, size, ack, cause);
+		// return current state if there was an error or next state if it was
+		// successful
+		return nextState;
+	}
+
+	/**
+	 * <b>Replace the file in stream 0 by its Delta to the old version of the
+	 * Receiver.</b>
+	 * A broken Signature is not used, the Delta holds all bytes then.
+	 * 
+	 * @param content
+	 *            is the content of the ACKs of the Signature stream
+	 */
+	private void encodeDelta(byte[] content) {
+		Signature signature;
+		try {
+			signature = Signature.decode(content);
+		} catch (IllegalArgumentException exception) {
+			System.err.println("Sorry, the Signature of the Receiver is broken. Sending the whole file.");
+			signature = null;
+		}
+		final Stream stream = getStreams().get(0);
+		final int size = stream.getData().length;
+		stream.setData(Delta.encode(stream.getData(), signature));
+		System.out.println("\tDelta to " + signature + ": " + stream.getData().length + " of " + size + " Bytes");
+	}
+
+	/**
+	 * <b>Mark the packet in flight of a stream as acknowledged, unless its
+	 * Timer resends it right now.</b>
+	 * Waits while the Timer resends the packet, so bytesSend is never moved
+	 * back after the ACK was accepted. The window grows.
+	 * 
+	 * @param stream
+	 *            is the stream
+	 * @return true, if the packet was still waiting for its ACK
+	 */
+	private synchronized boolean acknowledge(Stream stream) {
+		if (!stream.isAwaitingAck()) {
+			return false;
+		}
+		stream.setAwaitingAck(false);
+		packetsInFlight--;
+		bytesInFlight -= stream.getBytesSendInLastPacket();
+		getMetrics().setBytesInFlight(bytesInFlight);
+		// slow start, then one packet more per window
+		window = Math.min(getStreams().size(), window < threshold ? window + 1 : window + 1 / window);
+		return true;
+	}
+
+	/**
+	 * <b>A stream starts a packet: count it as in flight, unless it is
+	 * resent.</b>
+	 * 
+	 * @param stream
+	 *            is the stream
+	 */
+	private synchronized void startFlight(Stream stream) {
+		if (stream.isAwaitingAck()) {
+			return;
+		}
+		stream.setAwaitingAck(true);
+		packetsInFlight++;
+		bytesInFlight += stream.getBytesSendInLastPacket();
+		getMetrics().setBytesInFlight(bytesInFlight);
+	}
+
+	/**
+	 * <b>Start the window of the data packets, after the handshake.</b>
+	 */
+	private synchronized void startWindow() {
+		window = Math.min(getStreams().size(), INITIAL_WINDOW);
+		threshold = getStreams().size();
+		windowReducedNanos = getNetwork().getClock().nanoTime();
+		packetsInFlight = 0;
+		bytesInFlight = 0;
+	}
+
+	/**
+	 * <b>Get if another stream may start a packet.</b>
+	 * 
+	 * @return true, if fewer packets than the window are in flight
+	 */
+	private synchronized boolean hasWindow() {
+		return packetsInFlight < (int) window;
+	}
+
+	/**
+	 * <b>A packet was lost: the window falls back to one packet and the slow
+	 * start threshold to half the packets in flight.</b>
+	 * Packets send before the last reduction were lost in the same go, they
+	 * do not reduce the window again.
+	 * 
+	 * @param sentNanos
+	 *            is the time the lost packet was send in ns (Clock of the
+	 *            network)
+	 */
+	private synchronized void reduceWindow(long sentNanos) {
+		if (sentNanos - windowReducedNanos < 0) {
+			return;
+		}
+		threshold = Math.max(1, packetsInFlight / 2.0);
+		window = 1;
+		windowReducedNanos = getNetwork().getClock().nanoTime();
+	}
+
+	/**
+	 * <b>Mark the SYN or the FIN as acknowledged, unless the Timer did
+	 * first.</b>
+	 * Waits while the Timer resends the packet.
+	 * 
+	 * @return true, if the packet was still waiting for its ACK
+	 */
+	private synchronized boolean acknowledge() {
+		if (!isAwaitingAck()) {
+			return false;
+		}
+		setAwaitingAck(false);
+		return true;
+	}
+
+	/**
+	 * <b>Get if the SYN or the FIN has not been acknowledged yet.</b>
+	 * 
+	 * @return true, if the ACK is still missing
+	 */
+	private synchronized boolean isAwaitingAck() {
+		return awaitingAck;
+	}
+
+	/**
+	 * <b>Store if the SYN or the FIN has not been acknowledged yet.</b>
+	 * 
+	 * @param awaitingAck
 	 *            is the value to set
 	 */
-	private void setSending(boolean sending) {
-		this.sending = sending;
+	private synchronized void setAwaitingAck(boolean awaitingAck) {
+		this.awaitingAck = awaitingAck;
+	}
+
+	/**
+	 * <b>Get if compressed payloads are offered.</b>
+	 * 
+	 * @return true, if compression is offered
+	 */
+	private boolean isCompression() {
+		return compression;
 	}
 
 	/**
-	 * <b>Set the number of bytes send.</b>
+	 * <b>Get if a Delta to the old version of the Receiver is offered.</b>
 	 * 
-	 * @param bytesSend
-	 *            is the number of bytes that have been send
+	 * @return true, if a Delta is offered
 	 */
-	private void setBytesSend(int bytesSend) {
-		this.bytesSend = bytesSend;
+	private boolean isDeltaOffered() {
+		return delta;
+	}
+
+	/**
+	 * <b>Get if resuming a broken off transfer is offered.</b>
+	 * 
+	 * @return true, if resuming is offered
+	 */
+	private boolean isResumeOffered() {
+		return resume;
+	}
+
+	/**
+	 * <b>Get the largest number of file bytes per packet to offer.</b>
+	 * 
+	 * @return the number of bytes
+	 */
+	private int getMaxPayloadSize() {
+		return maxPayloadSize;
+	}
+
+	/**
+	 * <b>Get the parameters offered in the SYN.</b>
+	 * 
+	 * @return the offer, null before the handshake
+	 */
+	private ConnectionParameters getOffer() {
+		return offer;
+	}
+
+	/**
+	 * <b>Set the parameters offered in the SYN.</b>
+	 * 
+	 * @param offer
+	 *            is the offer
+	 */
+	private void setOffer(ConnectionParameters offer) {
+		this.offer = offer;
+	}
+
+	/**
+	 * <b>Set the parameters of the transfer.</b>
+	 * 
+	 * @param parameters
+	 *            are the parameters chosen by the Receiver
+	 */
+	private void setParameters(ConnectionParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * <b>Get the time the SYN or the FIN was send.</b>
+	 * 
+	 * @return the time in ns (Clock of the network)
+	 */
+	private long getSentNanos() {
+		return sentNanos;
+	}
+
+	/**
+	 * <b>Set the time the SYN or the FIN was send.</b>
+	 * 
+	 * @param sentNanos
+	 *            is the time in ns (Clock of the network)
+	 */
+	private void setSentNanos(long sentNanos) {
+		this.sentNanos = sentNanos;
+	}
+
+	/**
+	 * <b>Get if the SYN was send more than once.</b>
+	 * 
+	 * @return true, if the packet was retransmitted
+	 */
+	private boolean isRetransmitted() {
+		return retransmitted;
+	}
+
+	/**
+	 * <b>Store if the SYN was send more than once.</b>
+	 * 
+	 * @param retransmitted
+	 *            is the value to set
+	 */
+	private void setRetransmitted(boolean retransmitted) {
+		this.retransmitted = retransmitted;
+	}
+
+	/**
+	 * <b>Get the number of times the FIN has been resend.</b>
+	 * 
+	 * @return the number of retransmissions
+	 */
+	private int getFinRetransmits() {
+		return finRetransmits;
+	}
+
+	/**
+	 * <b>Set the number of times the FIN has been resend.</b>
+	 * 
+	 * @param finRetransmits
+	 *            is the number of retransmissions
+	 */
+	private void setFinRetransmits(int finRetransmits) {
+		this.finRetransmits = finRetransmits;
+	}
+
+	/**
+	 * <b>Store if Sender is sending or not.</b>
+	 * 
+	 * @param sending
+	 *            is the value to set
+	 */
+	private void setSending(boolean sending) {
+		this.sending = sending;
 	}
 
 	/**
@@ -389,6 +1805,16 @@ public class Sender {
 		return transitions;
 	}
 
+	/**
+	 * <b>Get the map that maps a Pair of State and Message to the code of a
+	 * stream.</b>
+	 * 
+	 * @return the mapping
+	 */
+	private Map<Pair<State, Message>, StreamTransition> getStreamTransitions() {
+		return streamTransitions;
+	}
+
 	/**
 	 * <b>Get the current state.</b>
 	 * 
@@ -409,12 +1835,87 @@ public class Sender {
 	}
 
 	/**
-	 * <b>Get the file to be send as byte[].</b>
+	 * <b>Get the files to be send, one stream each.</b>
 	 * 
-	 * @return the file as byte[]
+	 * @return the streams, ordered by stream ID
 	 */
-	private byte[] getData() {
-		return data;
+	private List<Stream> getStreams() {
+		return streams;
+	}
+
+	/**
+	 * <b>Get the SHA-256 hash of all streams.</b>
+	 * 
+	 * @return the identity
+	 */
+	private byte[] getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * <b>Get the SHA-256 hash of the file name.</b>
+	 * 
+	 * @return the name, null if the transfer has none
+	 */
+	private byte[] getName() {
+		return name;
+	}
+
+	/**
+	 * <b>Get what the Receiver already has.</b>
+	 * 
+	 * @return the checkpoint, null if nothing
+	 */
+	private Checkpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * <b>Set what the Receiver already has.</b>
+	 * 
+	 * @param checkpoint
+	 *            is the checkpoint, null if nothing
+	 */
+	private void setCheckpoint(Checkpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * <b>Get if a file is send as Delta to the old version of the
+	 * Receiver.</b>
+	 * 
+	 * @return true, if the Receiver chose a delta transfer
+	 */
+	private boolean isDelta() {
+		return getParameters() != null && getParameters().hasFeature(ConnectionParameters.FEATURE_DELTA);
+	}
+
+	/**
+	 * <b>Get if a directory is send.</b>
+	 * 
+	 * @return true, if stream 0 holds a Manifest
+	 */
+	private boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * <b>Get the stream that started the last packet.</b>
+	 * 
+	 * @return the stream
+	 */
+	private Stream getCurrentStream() {
+		return currentStream;
+	}
+
+	/**
+	 * <b>Set the stream that started the last packet.</b>
+	 * 
+	 * @param currentStream
+	 *            is the stream
+	 */
+	private void setCurrentStream(Stream currentStream) {
+		this.currentStream = currentStream;
 	}
 
 	/**
@@ -427,7 +1928,7 @@ public class Sender {
 	}
 
 	/**
-	 * <b>Get the current timer (may be running or not).</b>
+	 * <b>Get the Timer of the SYN or the FIN (may be running or not).</b>
 	 * 
 	 * @return the timer
 	 */
@@ -436,7 +1937,7 @@ public class Sender {
 	}
 
 	/**
-	 * <b>Set the current timer (may be running or not).</b>
+	 * <b>Set the Timer of the SYN or the FIN (may be running or not).</b>
 	 * 
 	 * @param timer
 	 *            is the timer
@@ -446,21 +1947,99 @@ public class Sender {
 	}
 
 	/**
-	 * <b>Set the number of bytes send in the last sending process.</b>
+	 * <b>Get the recorder used for capturing.</b>
 	 * 
-	 * @param bytesSendInLastPacket
-	 *            is the number of bytes
+	 * @return the recorder, null if capturing is disabled
 	 */
-	private void setBytesSendInLastPacket(int bytesSendInLastPacket) {
-		this.bytesSendInLastPacket = bytesSendInLastPacket;
+	private PacketTraceRecorder getTraceRecorder() {
+		return traceRecorder;
 	}
 
 	/**
-	 * <b>Get the number of bytes send in the last sending process.</b>
+	 * <b>Get the factory for the socket to send with.</b>
 	 * 
-	 * @return the number of bytes
+	 * @return the factory
 	 */
-	private int getBytesSendInLastPacket() {
-		return bytesSendInLastPacket;
+	private DatagramSocketFactory getSocketFactory() {
+		return socketFactory;
+	}
+
+	/**
+	 * <b>Get the socket of the transfer.</b>
+	 * 
+	 * @return the socket, null when not sending
+	 */
+	private DatagramSocket getSocket() {
+		return socket;
+	}
+
+	/**
+	 * <b>Set the socket of the transfer.</b>
+	 * 
+	 * @param socket
+	 *            is the socket
+	 */
+	private void setSocket(DatagramSocket socket) {
+		this.socket = socket;
+	}
+
+	/**
+	 * <b>Get the socket sending through the socket of the transfer.</b>
+	 * 
+	 * @return the socket, null when not sending
+	 */
+	private DatagramSocket getSendSocket() {
+		return sendSocket;
+	}
+
+	/**
+	 * <b>Set the socket sending through the socket of the transfer.</b>
+	 * 
+	 * @param sendSocket
+	 *            is the socket
+	 */
+	private void setSendSocket(DatagramSocket sendSocket) {
+		this.sendSocket = sendSocket;
+	}
+
+	/**
+	 * <b>Close the sockets of the transfer.</b>
+	 * The socket to send with is closed first, it may be the socket of the
+	 * transfer itself.
+	 */
+	private void closeSockets() {
+		if (getSendSocket() != null) {
+			getSendSocket().close();
+			setSendSocket(null);
+		}
+		if (getSocket() != null) {
+			getSocket().close();
+			setSocket(null);
+		}
+	}
+
+	/**
+	 * <b>Get where the socket of the transfer and the Clock come from.</b>
+	 * 
+	 * @return the network
+	 */
+	private Network getNetwork() {
+		return network;
+	}
+
+	/**
+	 * <b>This interface describes a Transition of a stream from one state to
+	 * another.</b>
+	 */
+	private interface StreamTransition {
+
+		/**
+		 * <b>Execute this Transition.</b>
+		 * 
+		 * @param stream
+		 *            is the stream changing its state
+		 * @return is the new state of the stream
+		 */
+		State execute(Stream stream);
 	}
 }
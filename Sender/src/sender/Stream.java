@@ -0,0 +1,420 @@
+package sender;
+
+import java.io.ByteArrayOutputStream;
+
+import sender.states.State;
+import sender.timer.Timer;
+
+/**
+ * <b>One stream of a transfer: a file with sequence numbers of its own.</b>
+ *
+ * Every stream is an alternating bit sender of its own: it has at most one
+ * packet on its way, with a Timer of its own, and goes through the states
+ * waitForCall0/1 and waitForAck0/1 on its own. The streams of a transfer take
+ * turns in starting new packets, so a small file does not wait behind a big
+ * one, and share the window of the Sender. A stream that asks the Receiver
+ * sends empty packets instead and collects the content of their ACKs, until
+ * the ACK with the end flag.
+ */
+final class Stream {
+
+	/**
+	 * <b>Stream ID, the position of the file in the list of the Sender.</b>
+	 */
+	private final int id;
+
+	/**
+	 * <b>File to be send as byte[].</b>
+	 */
+	private byte[] data;
+
+	/**
+	 * <b>Content of the ACKs so far (null unless the stream asks the
+	 * Receiver).</b>
+	 */
+	private final ByteArrayOutputStream answer;
+
+	/**
+	 * <b>Stores the number of bytes send.</b>
+	 */
+	private int bytesSend;
+
+	/**
+	 * <b>Stores the number of bytes send in the last sending process.</b>
+	 */
+	private int bytesSendInLastPacket;
+
+	/**
+	 * <b>The chunk of the last packet, resent as it is after a timeout (null
+	 * before the first packet).</b>
+	 */
+	private Compressor.Chunk chunk;
+
+	/**
+	 * <b>Compresses the chunks ahead (null unless compression was chosen and
+	 * the first packet was send).</b>
+	 */
+	private CompressionPipeline pipeline;
+
+	/**
+	 * <b>Sequence number of the next packet (0,1).</b>
+	 */
+	private int sequenceNumber;
+
+	/**
+	 * <b>Store if the last packet has been acknowledged.</b>
+	 */
+	private boolean ended;
+
+	/**
+	 * <b>State of the stream: waitForCall0/1 or waitForAck0/1 (guarded by
+	 * the Sender).</b>
+	 */
+	private State state;
+
+	/**
+	 * <b>Timer of the packet in flight (null before the first packet).</b>
+	 */
+	private Timer timer;
+
+	/**
+	 * <b>Store if the packet in flight has not been acknowledged yet
+	 * (guarded by the Sender).</b>
+	 */
+	private boolean awaitingAck;
+
+	/**
+	 * <b>Time the packet in flight was send in ns (Clock of the
+	 * network).</b>
+	 */
+	private long sentNanos;
+
+	/**
+	 * <b>Store if the packet in flight was send more than once.</b>
+	 * Round trip times of these packets are ambiguous and not recorded.
+	 */
+	private boolean retransmitted;
+
+	/**
+	 * <b>Constructor with following params.</b>
+	 *
+	 * @param id
+	 *            is the stream ID
+	 * @param data
+	 *            is the file to be send
+	 */
+	Stream(int id, byte[] data) {
+		this.id = id;
+		this.data = data;
+		this.answer = null;
+		this.bytesSend = 0;
+		this.ended = false;
+	}
+
+	/**
+	 * <b>Constructor of a stream that asks the Receiver.</b>
+	 *
+	 * @param id
+	 *            is the stream ID
+	 */
+	Stream(int id) {
+		this.id = id;
+		this.data = new byte[0];
+		this.answer = new ByteArrayOutputStream();
+		this.bytesSend = 0;
+		this.ended = false;
+	}
+
+	/**
+	 * <b>Start with the initial sequence number of the transfer.</b>
+	 *
+	 * @param initialSequenceNumber
+	 *            is the sequence number of the first packet
+	 */
+	void start(int initialSequenceNumber) {
+		this.sequenceNumber = initialSequenceNumber;
+		this.state = initialSequenceNumber == 0 ? State.waitForCall0 : State.waitForCall1;
+	}
+
+	/**
+	 * <b>Skip what the Receiver already has of the stream.</b>
+	 *
+	 * @param offset
+	 *            is the number of bytes the Receiver has
+	 */
+	void resume(int offset) {
+		bytesSend = Math.min(offset, data.length);
+		ended = offset > 0 && offset >= data.length;
+	}
+
+	/**
+	 * <b>The packet in flight was acknowledged: go on with the next sequence
+	 * number.</b>
+	 */
+	void acknowledge() {
+		sequenceNumber = 1 - sequenceNumber;
+		ended = answer == null ? bytesSend >= data.length : ended;
+	}
+
+	/**
+	 * <b>Store the content of an ACK of a stream that asks the
+	 * Receiver.</b>
+	 *
+	 * @param content
+	 *            is the content of the ACK
+	 * @param last
+	 *            is true, if the ACK has the end flag
+	 */
+	void answer(byte[] content, boolean last) {
+		answer.write(content, 0, content.length);
+		ended = last;
+	}
+
+	/**
+	 * <b>Get if the stream asks the Receiver.</b>
+	 *
+	 * @return true, if its packets are empty
+	 */
+	boolean isAsking() {
+		return answer != null;
+	}
+
+	/**
+	 * <b>Get the content of the ACKs so far.</b>
+	 *
+	 * @return the content
+	 */
+	byte[] getAnswer() {
+		return answer.toByteArray();
+	}
+
+	/**
+	 * <b>Get the stream ID.</b>
+	 *
+	 * @return the stream ID
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * <b>Get the file to be send as byte[].</b>
+	 *
+	 * @return the file as byte[]
+	 */
+	byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * <b>Set the file to be send as byte[], before the first packet.</b>
+	 *
+	 * @param data
+	 *            is the file as byte[]
+	 */
+	void setData(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * <b>Get the number of bytes send.</b>
+	 *
+	 * @return the number of bytes
+	 */
+	int getBytesSend() {
+		return bytesSend;
+	}
+
+	/**
+	 * <b>Set the number of bytes send.</b>
+	 *
+	 * @param bytesSend
+	 *            is the number of bytes
+	 */
+	void setBytesSend(int bytesSend) {
+		this.bytesSend = bytesSend;
+	}
+
+	/**
+	 * <b>Get the number of bytes send in the last sending process.</b>
+	 *
+	 * @return the number of bytes
+	 */
+	int getBytesSendInLastPacket() {
+		return bytesSendInLastPacket;
+	}
+
+	/**
+	 * <b>Set the number of bytes send in the last sending process.</b>
+	 *
+	 * @param bytesSendInLastPacket
+	 *            is the number of bytes
+	 */
+	void setBytesSendInLastPacket(int bytesSendInLastPacket) {
+		this.bytesSendInLastPacket = bytesSendInLastPacket;
+	}
+
+	/**
+	 * <b>Get the chunk of the last packet.</b>
+	 *
+	 * @return the chunk, null before the first packet
+	 */
+	Compressor.Chunk getChunk() {
+		return chunk;
+	}
+
+	/**
+	 * <b>Set the chunk of the last packet.</b>
+	 *
+	 * @param chunk
+	 *            is the chunk
+	 */
+	void setChunk(Compressor.Chunk chunk) {
+		this.chunk = chunk;
+	}
+
+	/**
+	 * <b>Get the pipeline that compresses the chunks ahead.</b>
+	 *
+	 * @return the pipeline, null before the first compressed packet
+	 */
+	CompressionPipeline getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * <b>Set the pipeline that compresses the chunks ahead.</b>
+	 *
+	 * @param pipeline
+	 *            is the pipeline
+	 */
+	void setPipeline(CompressionPipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * <b>Get the state of the stream.</b>
+	 *
+	 * @return waitForCall0/1 or waitForAck0/1, null before the handshake
+	 */
+	State getState() {
+		return state;
+	}
+
+	/**
+	 * <b>Set the state of the stream.</b>
+	 *
+	 * @param state
+	 *            is waitForCall0/1 or waitForAck0/1
+	 */
+	void setState(State state) {
+		this.state = state;
+	}
+
+	/**
+	 * <b>Get the Timer of the packet in flight.</b>
+	 *
+	 * @return the timer, null before the first packet
+	 */
+	Timer getTimer() {
+		return timer;
+	}
+
+	/**
+	 * <b>Set the Timer of the packet in flight.</b>
+	 *
+	 * @param timer
+	 *            is the timer
+	 */
+	void setTimer(Timer timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * <b>Get if the packet in flight has not been acknowledged yet.</b>
+	 *
+	 * @return true, if the ACK is still missing
+	 */
+	boolean isAwaitingAck() {
+		return awaitingAck;
+	}
+
+	/**
+	 * <b>Store if the packet in flight has not been acknowledged yet.</b>
+	 *
+	 * @param awaitingAck
+	 *            is the value to set
+	 */
+	void setAwaitingAck(boolean awaitingAck) {
+		this.awaitingAck = awaitingAck;
+	}
+
+	/**
+	 * <b>Get the time the packet in flight was send.</b>
+	 *
+	 * @return the time in ns (Clock of the network)
+	 */
+	long getSentNanos() {
+		return sentNanos;
+	}
+
+	/**
+	 * <b>Set the time the packet in flight was send.</b>
+	 *
+	 * @param sentNanos
+	 *            is the time in ns (Clock of the network)
+	 */
+	void setSentNanos(long sentNanos) {
+		this.sentNanos = sentNanos;
+	}
+
+	/**
+	 * <b>Get if the packet in flight was send more than once.</b>
+	 *
+	 * @return true, if the packet was retransmitted
+	 */
+	boolean isRetransmitted() {
+		return retransmitted;
+	}
+
+	/**
+	 * <b>Store if the packet in flight was send more than once.</b>
+	 *
+	 * @param retransmitted
+	 *            is the value to set
+	 */
+	void setRetransmitted(boolean retransmitted) {
+		this.retransmitted = retransmitted;
+	}
+
+	/**
+	 * <b>Stop the Timer and compressing ahead, the transfer is over.</b>
+	 */
+	void close() {
+		if (timer != null) {
+			timer.interrupt();
+		}
+		if (pipeline != null) {
+			pipeline.close();
+			pipeline = null;
+		}
+	}
+
+	/**
+	 * <b>Get the sequence number of the next packet.</b>
+	 *
+	 * @return the sequence number (0,1)
+	 */
+	int getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * <b>Get if the last packet has been acknowledged.</b>
+	 *
+	 * @return true, if the whole file has arrived
+	 */
+	boolean isEnded() {
+		return ended;
+	}
+}
@@ -18,6 +18,11 @@ public enum Message {
 	/**
 	 * <b>A packet was received.</b>
 	 */
-	packetReceived
+	packetReceived,
+	
+	/**
+	 * <b>All data is acknowledged, close the connection.</b>
+	 */
+	close
 
 }
@@ -5,6 +5,23 @@ package sender.states;
  */
 public enum State {
 	
+	/**
+	 * <b>Waiting for a call to open the connection.</b>
+	 */
+	waitForCallSyn,
+	
+	/**
+	 * <b>Waiting for the SYN-ACK with the parameters of the transfer.</b>
+	 */
+	waitForSynAck,
+	
+	/**
+	 * <b>Waiting for the ACKs of the packets in flight, at most one per
+	 * stream.</b>
+	 * Each stream goes through waitForCall0/1 and waitForAck0/1 on its own.
+	 */
+	waitForAcks,
+	
 	/**
 	 * <b>Waiting for a call with SeqNr 0.</b>
 	 */
@@ -23,7 +40,12 @@ public enum State {
 	/**
 	 * <b>Waiting for an ACK with SeqNr 1.</b>
 	 */
-	waitForAck1;
+	waitForAck1,
+	
+	/**
+	 * <b>Waiting for the FIN-ACK that closes the connection.</b>
+	 */
+	waitForFinAck;
 	
 	/**
 	 * <b>This interface describes an Action of a State.</b>
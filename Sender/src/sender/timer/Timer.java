@@ -1,11 +1,18 @@
 package sender.timer;
 
+import events.TimeoutEvent;
 import sender.states.Transition;
+import transport.Clock;
 
 /**
  * <b>Timer, that executes a Transition after timeout.</b>
  */
-public class Timer extends Thread {
+public class Timer implements Runnable {
+
+	/**
+	 * <b>Stores the Clock the Timer sleeps on.</b>
+	 */
+	private final Clock clock;
 
 	/**
 	 * <b>Stores the time to sleep before the Timer timeouts.</b>
@@ -16,27 +23,54 @@ public class Timer extends Thread {
 	 * <b>Stores the Transition to be executed after timeout</b>
 	 */
 	private final Transition transition;
+
+	/**
+	 * <b>Stores the thread the Timer runs in (null before start).</b>
+	 */
+	private Thread thread;
 	
 	/**
 	 * <b>Create a new object of Timer with following params.</b>
 	 * 
+	 * @param clock
+	 *            is the Clock to sleep on
 	 * @param timeout
 	 *            is the time to sleep before the Timer timeouts
 	 * @param transition
 	 *            is the Transition to be executet after timeout
 	 */
-	public Timer(long timeout, Transition transition) {
+	public Timer(Clock clock, long timeout, Transition transition) {
+		this.clock = clock;
 		this.timeout = timeout;
 		this.transition = transition;
 	}
 
+	/**
+	 * <b>Start the Timer in a new thread of its Clock.</b>
+	 */
+	public void start() {
+		this.thread = getClock().start(this, "timer");
+	}
 
+	/**
+	 * <b>Stop the Timer before it timeouts.</b>
+	 */
+	public void interrupt() {
+		if (thread != null) {
+			getClock().interrupt(thread);
+		}
+	}
 	
 	@Override
 	public void run() {
 		try {
 			// sleep
-			sleep(getTimeout());
+			getClock().sleep(getTimeout());
+			final TimeoutEvent event = new TimeoutEvent();
+			if (event.shouldCommit()) {
+				event.timeout = getTimeout();
+				event.commit();
+			}
 			// execute the transition
 			getTransition().execute();
 		} catch (InterruptedException e) {
@@ -46,6 +80,15 @@ public class Timer extends Thread {
 
 
 	
+	/**
+	 * <b>Get the Clock the Timer sleeps on.</b>
+	 * 
+	 * @return the clock
+	 */
+	private Clock getClock() {
+		return clock;
+	}
+
 	/**
 	 * <b>Get the time to sleep before the Timer timeouts.</b>
 	 * 
@@ -0,0 +1,209 @@
+package trace;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import protocolPackets.Packet;
+
+/**
+ * <b>Appends one compact binary record per datagram to a memory-mapped
+ * file.</b>
+ *
+ * File layout (big endian):<br>
+ * <br>
+ * header: magic (int), version (short), record size (short), start time in
+ * ms since the epoch (long)<br>
+ * record: time since start in ns (long), direction (byte), flags (byte),
+ * stream ID (short), sequence number (int), datagram length (int),
+ * connection ID (int)<br>
+ * <br>
+ * The file is mapped in regions of REGION_SIZE bytes, so recording a packet
+ * is a few stores into memory and the operating system writes them back.
+ */
+public class PacketTraceRecorder implements AutoCloseable {
+
+	/**
+	 * <b>Magic number at the start of every trace ("NDPK").</b>
+	 */
+	public static final int MAGIC = 0x4E44504B;
+
+	/**
+	 * <b>Version of the file layout.</b>
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * <b>Size of the file header in bytes.</b>
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	/**
+	 * <b>Size of one record in bytes.</b>
+	 */
+	public static final int RECORD_SIZE = 24;
+
+	/**
+	 * <b>Flag: the packet is an ACK.</b>
+	 */
+	public static final int FLAG_ACK = 1;
+
+	/**
+	 * <b>Flag: the end flag of the packet is set.</b>
+	 */
+	public static final int FLAG_END = 2;
+
+	/**
+	 * <b>Flag: the checksum of the packet is valid.</b>
+	 */
+	public static final int FLAG_CHECKSUM_VALID = 4;
+
+	/**
+	 * <b>Flag: the packet belongs to the handshake.</b>
+	 */
+	public static final int FLAG_SYN = 8;
+
+	/**
+	 * <b>Flag: the packet closes the connection.</b>
+	 */
+	public static final int FLAG_FIN = 16;
+
+	/**
+	 * <b>Flag: the content is compressed.</b>
+	 */
+	public static final int FLAG_COMPRESSED = 32;
+
+	/**
+	 * <b>Number of bytes mapped at once.</b>
+	 */
+	private static final int REGION_SIZE = RECORD_SIZE * 43690;
+
+	/**
+	 * <b>Direction of a recorded datagram.</b>
+	 */
+	public enum Direction {
+
+		/**
+		 * <b>The datagram was send by this endpoint.</b>
+		 */
+		sent,
+
+		/**
+		 * <b>The datagram was received by this endpoint.</b>
+		 */
+		received
+	}
+
+	/**
+	 * <b>The trace file.</b>
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * <b>Time the recording started in ns (System.nanoTime).</b>
+	 */
+	private final long startNanos;
+
+	/**
+	 * <b>The currently mapped region.</b>
+	 */
+	private MappedByteBuffer region;
+
+	/**
+	 * <b>File offset of the currently mapped region.</b>
+	 */
+	private long regionOffset;
+
+	/**
+	 * <b>Create a new trace file (an existing one is overwritten).</b>
+	 *
+	 * @param file
+	 *            is the file to write to
+	 * @throws IOException
+	 *             when the file can not be created or mapped
+	 */
+	public PacketTraceRecorder(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.startNanos = System.nanoTime();
+		this.regionOffset = 0;
+		this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+		// write the header
+		region.putInt(MAGIC);
+		region.putShort(VERSION);
+		region.putShort((short) RECORD_SIZE);
+		region.putLong(System.currentTimeMillis());
+	}
+
+	/**
+	 * <b>Record a datagram.</b>
+	 *
+	 * @param direction
+	 *            is the direction of the datagram
+	 * @param packet
+	 *            is the packet inside the datagram
+	 * @param length
+	 *            is the length of the datagram
+	 * @throws IOException
+	 *             when the next region of the file can not be mapped
+	 */
+	public synchronized void record(Direction direction, Packet packet, int length) throws IOException {
+		if (region.remaining() < RECORD_SIZE) {
+			nextRegion();
+		}
+		int flags = 0;
+		if (packet.isACK()) {
+			flags |= FLAG_ACK;
+		}
+		if (packet.isEndFlag()) {
+			flags |= FLAG_END;
+		}
+		if (packet.checkChecksum()) {
+			flags |= FLAG_CHECKSUM_VALID;
+		}
+		if (packet.isSYN()) {
+			flags |= FLAG_SYN;
+		}
+		if (packet.isFIN()) {
+			flags |= FLAG_FIN;
+		}
+		if (packet.isCompressed()) {
+			flags |= FLAG_COMPRESSED;
+		}
+		region.putLong(System.nanoTime() - startNanos);
+		region.put((byte) direction.ordinal());
+		region.put((byte) flags);
+		region.putShort((short) packet.getStreamId());
+		region.putInt(packet.getSequenceNumber());
+		region.putInt(length);
+		region.putInt(packet.getConnectionId());
+	}
+
+	/**
+	 * <b>Cut the file to the recorded size and close it.</b>
+	 *
+	 * @throws IOException
+	 *             when the file can not be truncated or closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		final long size = regionOffset + region.position();
+		region.force();
+		channel.truncate(size);
+		channel.close();
+	}
+
+	/**
+	 * <b>Map the region after the current one.</b>
+	 *
+	 * @throws IOException
+	 *             when the region can not be mapped
+	 */
+	private void nextRegion() throws IOException {
+		regionOffset += region.position();
+		region.force();
+		region = channel.map(FileChannel.MapMode.READ_WRITE, regionOffset, REGION_SIZE);
+	}
+}
@@ -0,0 +1,50 @@
+package transport;
+
+/**
+ * <b>Source of time for an endpoint.</b>
+ *
+ * Everything that waits (the Timer) or measures time (round trip times) goes
+ * through a Clock, so that a simulation can replace the wall clock with a
+ * virtual one.
+ */
+public interface Clock {
+
+	/**
+	 * <b>Get the current time.</b>
+	 *
+	 * @return the time in ns, only differences are meaningful
+	 */
+	long nanoTime();
+
+	/**
+	 * <b>Let the calling thread sleep.</b>
+	 *
+	 * @param millis
+	 *            is the time to sleep in ms
+	 * @throws InterruptedException
+	 *             when the thread was interrupted with interrupt(Thread)
+	 */
+	void sleep(long millis) throws InterruptedException;
+
+	/**
+	 * <b>Run code in a new thread that lives in the time of this Clock.</b>
+	 *
+	 * @param runnable
+	 *            is the code to run
+	 * @param name
+	 *            is the name of the thread
+	 * @return the started thread
+	 */
+	Thread start(Runnable runnable, String name);
+
+	/**
+	 * <b>Interrupt a thread started by this Clock.</b>
+	 *
+	 * A sleeping thread wakes up with an InterruptedException.
+	 *
+	 * @param thread
+	 *            is the thread to interrupt
+	 */
+	void interrupt(Thread thread);
+
+}
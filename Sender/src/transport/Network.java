@@ -0,0 +1,40 @@
+package transport;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+/**
+ * <b>Where an endpoint gets its sockets and its Clock from.</b>
+ */
+public interface Network {
+
+	/**
+	 * <b>Create a socket bound to a free port, to send and receive with.</b>
+	 * The peer answers to this port, like to the socket of a client.
+	 *
+	 * @return the socket
+	 * @throws SocketException
+	 *             when the socket can not be created
+	 */
+	DatagramSocket open() throws SocketException;
+
+	/**
+	 * <b>Create a socket bound to a local port, to send and receive
+	 * with.</b>
+	 *
+	 * @param port
+	 *            is the port to listen to
+	 * @return the socket
+	 * @throws SocketException
+	 *             when the socket can not be created or bound
+	 */
+	DatagramSocket open(int port) throws SocketException;
+
+	/**
+	 * <b>Get the Clock of this network.</b>
+	 *
+	 * @return the clock
+	 */
+	Clock getClock();
+
+}
@@ -0,0 +1,303 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * <b>Virtual clock of a deterministic simulation.</b>
+ *
+ * Every thread started with start(Runnable, String) is a participant of the
+ * simulation. Only one participant runs at a time, the others are blocked
+ * (sleeping or waiting for a datagram). When the running participant blocks,
+ * the participant with the earliest wake up time continues, ties are broken
+ * by the order the participants were started in. Time only advances when
+ * every participant is blocked and then jumps straight to the next wake up
+ * time, so a 300 ms timeout costs no wall clock time at all.<br>
+ * <br>
+ * Because of this strict hand-over, the interleaving of the participants
+ * depends on nothing but the virtual time. Together with a seeded
+ * SimulatedNetwork every run reproduces exactly.<br>
+ * <br>
+ * All state is guarded by the monitor of this object. SimulatedNetwork and
+ * SimulatedDatagramSocket synchronize on it too.
+ */
+public class SimulatedClock implements Clock {
+
+	/**
+	 * <b>A thread taking part in the simulation.</b>
+	 */
+	private static class Participant {
+
+		/**
+		 * <b>The thread.</b>
+		 */
+		private Thread thread;
+
+		/**
+		 * <b>Returns the virtual time this participant wants to continue at,
+		 * null if it is ready now.</b>
+		 */
+		private LongSupplier wakeTime;
+
+		/**
+		 * <b>Store if the participant may be woken up by an interrupt.</b>
+		 */
+		private boolean interruptible;
+
+		/**
+		 * <b>Store if the participant was interrupted.</b>
+		 */
+		private boolean interrupted;
+	}
+
+	/**
+	 * <b>All participants in the order they were started.</b>
+	 */
+	private final List<Participant> participants;
+
+	/**
+	 * <b>Participants by their thread.</b>
+	 */
+	private final Map<Thread, Participant> threads;
+
+	/**
+	 * <b>The participant that is allowed to run (null if none).</b>
+	 */
+	private Participant current;
+
+	/**
+	 * <b>The virtual time in ns.</b>
+	 */
+	private long now;
+
+	/**
+	 * <b>Time is not advanced beyond this point.</b>
+	 */
+	private long limit;
+
+	/**
+	 * <b>Store if no participant can continue before the limit.</b>
+	 */
+	private boolean stalled;
+
+	/**
+	 * <b>Store if the simulation was stopped.</b>
+	 */
+	private boolean stopped;
+
+	/**
+	 * <b>Create a new clock at time 0.</b>
+	 */
+	public SimulatedClock() {
+		this.participants = new ArrayList<>();
+		this.threads = new HashMap<>();
+		this.current = null;
+		this.now = 0;
+		this.limit = Long.MAX_VALUE;
+		this.stalled = false;
+		this.stopped = false;
+	}
+
+	@Override
+	public synchronized long nanoTime() {
+		return now;
+	}
+
+	@Override
+	public synchronized void sleep(long millis) throws InterruptedException {
+		final Participant participant = self();
+		if (!participant.interrupted) {
+			final long wakeTime = now + millis * 1_000_000;
+			participant.interruptible = true;
+			try {
+				block(() -> wakeTime);
+			} finally {
+				participant.interruptible = false;
+			}
+		}
+		if (participant.interrupted) {
+			participant.interrupted = false;
+			throw new InterruptedException();
+		}
+	}
+
+	@Override
+	public synchronized Thread start(Runnable runnable, String name) {
+		if (stopped) {
+			throw new SimulationStoppedException();
+		}
+		final Participant participant = new Participant();
+		final Thread thread = new Thread(() -> run(participant, runnable), name);
+		// threads blocked at the end of a simulation must not keep the JVM
+		thread.setDaemon(true);
+		participant.thread = thread;
+		participants.add(participant);
+		threads.put(thread, participant);
+		thread.start();
+		// started from outside the simulation while nobody runs
+		if (current == null) {
+			schedule();
+		}
+		return thread;
+	}
+
+	@Override
+	public synchronized void interrupt(Thread thread) {
+		final Participant participant = threads.get(thread);
+		if (participant != null) {
+			participant.interrupted = true;
+		}
+	}
+
+	/**
+	 * <b>Wait (in real time) until a participant has finished.</b>
+	 *
+	 * @param thread
+	 *            is a thread returned by start
+	 * @param timeoutMillis
+	 *            is the maximum virtual time to let pass
+	 * @return true, if the participant finished, false if the virtual time
+	 *         limit was reached or no participant could continue
+	 */
+	public synchronized boolean awaitTermination(Thread thread, long timeoutMillis) {
+		limit = timeoutMillis > (Long.MAX_VALUE - now) / 1_000_000 ? Long.MAX_VALUE : now + timeoutMillis * 1_000_000;
+		stalled = false;
+		if (current == null) {
+			schedule();
+		}
+		while (threads.containsKey(thread) && !stalled && !stopped) {
+			waitForChange();
+		}
+		return !threads.containsKey(thread);
+	}
+
+	/**
+	 * <b>Stop the simulation.</b>
+	 *
+	 * Every participant throws a SimulationStoppedException the next time it
+	 * blocks (or right away, if it is blocked already).
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		notifyAll();
+	}
+
+	/**
+	 * <b>Block the calling participant until it is its turn again.</b>
+	 *
+	 * The caller must hold the monitor of this clock. It is released while
+	 * waiting, so other participants can change the state the wake up time
+	 * depends on.
+	 *
+	 * @param wakeTime
+	 *            returns the virtual time the caller wants to continue at,
+	 *            Long.MAX_VALUE if only a change by another participant can
+	 *            wake it up
+	 */
+	void block(LongSupplier wakeTime) {
+		final Participant participant = self();
+		participant.wakeTime = wakeTime;
+		current = null;
+		schedule();
+		awaitTurn(participant);
+		participant.wakeTime = null;
+	}
+
+	/**
+	 * <b>Get the participant of the calling thread.</b>
+	 *
+	 * @return the participant
+	 */
+	private Participant self() {
+		final Participant participant = threads.get(Thread.currentThread());
+		if (participant == null) {
+			throw new IllegalStateException("Only threads started by the SimulatedClock may block");
+		}
+		return participant;
+	}
+
+	/**
+	 * <b>Body of every participant thread.</b>
+	 *
+	 * @param participant
+	 *            is the participant
+	 * @param runnable
+	 *            is the code to run
+	 */
+	private void run(Participant participant, Runnable runnable) {
+		try {
+			synchronized (this) {
+				awaitTurn(participant);
+			}
+			runnable.run();
+		} catch (SimulationStoppedException exception) {
+			// just end this thread
+		} finally {
+			synchronized (this) {
+				participants.remove(participant);
+				threads.remove(participant.thread);
+				if (current == participant) {
+					current = null;
+					schedule();
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * <b>Wait until the given participant may run.</b>
+	 *
+	 * @param participant
+	 *            is the participant
+	 */
+	private void awaitTurn(Participant participant) {
+		while (current != participant && !stopped) {
+			waitForChange();
+		}
+		if (stopped) {
+			throw new SimulationStoppedException();
+		}
+	}
+
+	/**
+	 * <b>Choose the next participant to run and advance the time.</b>
+	 */
+	private void schedule() {
+		Participant next = null;
+		long nextTime = Long.MAX_VALUE;
+		for (final Participant participant : participants) {
+			final long time = participant.wakeTime == null || (participant.interrupted && participant.interruptible)
+					? now
+					: participant.wakeTime.getAsLong();
+			// strictly earlier, so ties go to the participant started first
+			if (time < nextTime) {
+				next = participant;
+				nextTime = time;
+			}
+		}
+		if (next == null || nextTime > limit) {
+			stalled = true;
+		} else {
+			now = Math.max(now, nextTime);
+			current = next;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * <b>Wait for the monitor to be notified.</b>
+	 *
+	 * Real interrupts have no meaning inside a simulation and are ignored.
+	 */
+	private void waitForChange() {
+		try {
+			wait();
+		} catch (InterruptedException exception) {
+			// see above
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package transport;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.DatagramSocketImpl;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+/**
+ * <b>DatagramSocket of a SimulatedNetwork.</b>
+ *
+ * Only send, receive, close and the timeout are supported, that is all the
+ * endpoints use. No operating system socket is ever opened.
+ */
+public class SimulatedDatagramSocket extends DatagramSocket {
+
+	/**
+	 * <b>The network this socket belongs to.</b>
+	 */
+	private final SimulatedNetwork network;
+
+	/**
+	 * <b>The local port.</b>
+	 */
+	private final int port;
+
+	/**
+	 * <b>Timeout of receive in ms (0 = wait forever).</b>
+	 */
+	private int timeout;
+
+	/**
+	 * <b>Store if the socket was closed.</b>
+	 */
+	private boolean closed;
+
+	/**
+	 * <b>Create a new socket with following params.</b>
+	 *
+	 * Use SimulatedNetwork.open to create one.
+	 *
+	 * @param network
+	 *            is the network
+	 * @param port
+	 *            is the local port
+	 */
+	SimulatedDatagramSocket(SimulatedNetwork network, int port) {
+		super(new DetachedImpl());
+		this.network = network;
+		this.port = port;
+		this.timeout = 0;
+		this.closed = false;
+	}
+
+	@Override
+	public void send(DatagramPacket packet) throws IOException {
+		synchronized (network.getClock()) {
+			if (closed) {
+				throw new SocketException("Socket is closed");
+			}
+			final byte[] data = new byte[packet.getLength()];
+			System.arraycopy(packet.getData(), packet.getOffset(), data, 0, data.length);
+			network.send(data, port, packet.getPort());
+		}
+	}
+
+	@Override
+	public void receive(DatagramPacket packet) throws IOException {
+		final SimulatedClock clock = network.getClock();
+		synchronized (clock) {
+			final long deadline = timeout == 0 ? Long.MAX_VALUE : clock.nanoTime() + timeout * 1_000_000L;
+			while (true) {
+				if (closed) {
+					throw new SocketException("Socket is closed");
+				}
+				if (network.poll(port, packet)) {
+					return;
+				}
+				if (clock.nanoTime() >= deadline) {
+					throw new SocketTimeoutException("Receive timed out");
+				}
+				clock.block(() -> Math.min(deadline, network.nextArrival(port)));
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (network.getClock()) {
+			if (!closed) {
+				closed = true;
+				network.release(port);
+			}
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		synchronized (network.getClock()) {
+			return closed;
+		}
+	}
+
+	@Override
+	public void setSoTimeout(int timeout) throws SocketException {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout < 0");
+		}
+		synchronized (network.getClock()) {
+			this.timeout = timeout;
+		}
+	}
+
+	@Override
+	public int getSoTimeout() {
+		synchronized (network.getClock()) {
+			return timeout;
+		}
+	}
+
+	@Override
+	public int getLocalPort() {
+		return port;
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	/**
+	 * <b>Implementation that is never used, it only keeps DatagramSocket from
+	 * creating a real socket.</b>
+	 */
+	@SuppressWarnings("deprecation")
+	private static class DetachedImpl extends DatagramSocketImpl {
+
+		@Override
+		protected void create() throws SocketException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void bind(int lport, InetAddress laddr) throws SocketException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void send(DatagramPacket p) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected int peek(InetAddress i) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected int peekData(DatagramPacket p) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void receive(DatagramPacket p) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void setTTL(byte ttl) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected byte getTTL() throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void setTimeToLive(int ttl) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected int getTimeToLive() throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void join(InetAddress inetaddr) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void leave(InetAddress inetaddr) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void joinGroup(SocketAddress mcastaddr, NetworkInterface netIf) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void leaveGroup(SocketAddress mcastaddr, NetworkInterface netIf) throws IOException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		protected void close() {
+			// nothing was opened
+		}
+
+		@Override
+		public void setOption(int optID, Object value) throws SocketException {
+			throw new SocketException("Simulated socket");
+		}
+
+		@Override
+		public Object getOption(int optID) throws SocketException {
+			throw new SocketException("Simulated socket");
+		}
+	}
+}
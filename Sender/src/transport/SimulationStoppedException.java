@@ -0,0 +1,23 @@
+package transport;
+
+/**
+ * <b>Thrown into every thread that is still blocked when a simulation is
+ * stopped.</b>
+ *
+ * It is unchecked, so it passes the IOException handlers of Sender and
+ * Receiver and ends the thread.
+ */
+public class SimulationStoppedException extends RuntimeException {
+
+	/**
+	 * <b>Serialization version.</b>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * <b>Create a new exception.</b>
+	 */
+	public SimulationStoppedException() {
+		super("The simulation was stopped");
+	}
+}
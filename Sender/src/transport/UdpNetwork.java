@@ -0,0 +1,37 @@
+package transport;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+/**
+ * <b>The real network: UDP sockets of the operating system and the wall
+ * clock.</b>
+ */
+public class UdpNetwork implements Network {
+
+	/**
+	 * <b>The only instance.</b>
+	 */
+	public static final UdpNetwork INSTANCE = new UdpNetwork();
+
+	/**
+	 * <b>Use INSTANCE.</b>
+	 */
+	private UdpNetwork() {
+	}
+
+	@Override
+	public DatagramSocket open() throws SocketException {
+		return new DatagramSocket();
+	}
+
+	@Override
+	public DatagramSocket open(int port) throws SocketException {
+		return new DatagramSocket(port);
+	}
+
+	@Override
+	public Clock getClock() {
+		return SystemClock.INSTANCE;
+	}
+}